@@ -3,22 +3,32 @@ package com.pharma.pdms;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
  * Main Spring Boot Application class for the Pharmaceutical Database Management System (PDMS)
- * Configures component scanning, entity scanning, and repository scanning
+ * Configures component scanning, entity scanning, repository scanning and scheduled jobs
  */
 @SpringBootApplication
+@EnableScheduling
 @EntityScan(basePackages = {"com.pharma.pdms.models"})
 @EnableJpaRepositories(basePackages = {"com.pharma.pdms.repositories"})
 public class PdmsApplication {
 
+    /**
+     * Startup steps kept for the startup report; later steps are dropped once the buffer is full
+     */
+    private static final int STARTUP_STEP_CAPACITY = 10000;
+
     public static void main(String[] args) {
-        SpringApplication.run(PdmsApplication.class, args);
+        SpringApplication application = new SpringApplication(PdmsApplication.class);
+        application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEP_CAPACITY));
+        application.run(args);
     }
     
     /**
@@ -37,4 +47,4 @@ public class PdmsApplication {
             }
         };
     }
-}
\ No newline at end of file
+}
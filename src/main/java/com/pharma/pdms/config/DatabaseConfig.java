@@ -1,58 +1,119 @@
 package com.pharma.pdms.config;
 
+import com.pharma.pdms.utils.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 
 import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Database configuration class implementing the Singleton pattern
  * This ensures that only one instance of the DataSource is created,
  * improving application performance and resource management
+ * The primary is a Hikari pool built from spring.datasource.*; read-only work is routed to
+ * replicas, each its own Hikari pool built from pdms.datasource.replicas[n].*
  */
 @Configuration
 public class DatabaseConfig {
 
-    @Value("${spring.datasource.url}")
-    private String databaseUrl;
-    
-    @Value("${spring.datasource.driver-class-name}")
-    private String driverClassName;
-    
+    private static final Logger log = LoggerFactory.getLogger(DatabaseConfig.class);
+
+    @Value("${pdms.datasource.replica-max-lag-ms:1000}")
+    private long replicaMaxLagMillis;
+
+    @Value("${pdms.datasource.lag-check-ms:1000}")
+    private long lagCheckMillis;
+
     // Singleton instance holder
     private static class DataSourceHolder {
         private static DataSource INSTANCE = null;
     }
-    
+
     /**
-     * Creates a DataSource bean as a singleton using Spring's bean management
-     * Spring ensures that this bean will be a singleton within the application context
+     * Creates the DataSource used by JPA: a lazy proxy over the replica router,
+     * so the route is picked at the first statement rather than at transaction begin
      */
     @Bean
-    public DataSource dataSource() {
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * Creates the router over the primary and any configured replicas
+     */
+    @Bean
+    public ReplicaRoutingDataSource routingDataSource(Environment environment) {
+        Binder binder = Binder.get(environment);
+        // A replica reading is trusted for a few check intervals before it ages out
+        return new ReplicaRoutingDataSource(primaryDataSource(binder), replicaDataSources(binder),
+            replicaMaxLagMillis, lagCheckMillis * 3);
+    }
+
+    /**
+     * Creates one pool per pdms.datasource.replicas[n] entry, named replica-(n + 1)
+     */
+    static Map<String, DataSource> replicaDataSources(Binder binder) {
+        List<DataSourceProperties> entries = binder.bind("pdms.datasource.replicas",
+            Bindable.listOf(DataSourceProperties.class)).orElse(Collections.emptyList());
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            String name = "replica-" + (i + 1);
+            replicas.put(name, pooledDataSource(binder, "pdms.datasource.replicas[" + i + "]", entries.get(i), name));
+        }
+        return replicas;
+    }
+
+    /**
+     * Creates the primary DataSource as a singleton
+     */
+    private static DataSource primaryDataSource(Binder binder) {
         // Check if we already have an instance
         if (DataSourceHolder.INSTANCE == null) {
             synchronized (DatabaseConfig.class) {
                 if (DataSourceHolder.INSTANCE == null) {
-                    DriverManagerDataSource dataSource = new DriverManagerDataSource();
-                    dataSource.setUrl(databaseUrl);
-                    dataSource.setDriverClassName(driverClassName);
-                    
+                    DataSourceProperties properties = binder.bind("spring.datasource",
+                        Bindable.of(DataSourceProperties.class)).orElseGet(DataSourceProperties::new);
+
                     // Store the reference to our singleton
-                    DataSourceHolder.INSTANCE = dataSource;
-                    
-                    System.out.println("Created new database connection pool as a singleton");
+                    DataSourceHolder.INSTANCE = pooledDataSource(binder, "spring.datasource", properties, "primary");
                 }
             }
         }
-        
+
         return DataSourceHolder.INSTANCE;
     }
-    
+
+    /**
+     * Build a Hikari pool from url, username, password and driver-class-name under a prefix,
+     * with pool settings from prefix.hikari.*
+     */
+    private static HikariDataSource pooledDataSource(Binder binder, String prefix, DataSourceProperties properties,
+                                                     String name) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind(prefix + ".hikari", Bindable.ofInstance(dataSource));
+        dataSource.setPoolName("pdms-" + name);
+        log.info("datasource.pool_created name={} url={} max_pool_size={}", name, dataSource.getJdbcUrl(),
+            dataSource.getMaximumPoolSize());
+        return dataSource;
+    }
+
     /**
-     * Gets the singleton DataSource instance directly (rarely needed outside Spring context)
+     * Gets the singleton primary DataSource instance directly (rarely needed outside Spring context)
      */
     public static DataSource getInstance() {
         if (DataSourceHolder.INSTANCE == null) {
@@ -60,4 +121,4 @@ public class DatabaseConfig {
         }
         return DataSourceHolder.INSTANCE;
     }
-}
\ No newline at end of file
+}
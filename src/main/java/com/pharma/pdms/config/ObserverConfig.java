@@ -1,31 +1,46 @@
 package com.pharma.pdms.config;
 
+import com.pharma.pdms.utils.observer.DashboardFeedObserver;
 import com.pharma.pdms.utils.observer.ExpiryDateObserver;
 import com.pharma.pdms.utils.observer.InventoryObserver;
 import com.pharma.pdms.utils.observer.LowStockAlertObserver;
 import com.pharma.pdms.utils.observer.MedicineInventorySubject;
+import com.pharma.pdms.utils.observer.ScreeningCatalogueObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
 import javax.annotation.PostConstruct;
 
 /**
  * Configuration to wire up the Observer pattern components on application startup
+ * Kept eager under lazy initialisation, as nothing else would create it
  */
 @Configuration
+@Lazy(false)
 public class ObserverConfig {
+    private static final Logger log = LoggerFactory.getLogger(ObserverConfig.class);
+
     private final MedicineInventorySubject medicineInventorySubject;
     private final LowStockAlertObserver lowStockAlertObserver;
     private final ExpiryDateObserver expiryDateObserver;
+    private final DashboardFeedObserver dashboardFeedObserver;
+    private final ScreeningCatalogueObserver screeningCatalogueObserver;
     
     @Autowired
     public ObserverConfig(
             MedicineInventorySubject medicineInventorySubject,
             LowStockAlertObserver lowStockAlertObserver,
-            ExpiryDateObserver expiryDateObserver) {
+            ExpiryDateObserver expiryDateObserver,
+            DashboardFeedObserver dashboardFeedObserver,
+            ScreeningCatalogueObserver screeningCatalogueObserver) {
         this.medicineInventorySubject = medicineInventorySubject;
         this.lowStockAlertObserver = lowStockAlertObserver;
         this.expiryDateObserver = expiryDateObserver;
+        this.dashboardFeedObserver = dashboardFeedObserver;
+        this.screeningCatalogueObserver = screeningCatalogueObserver;
     }
     
     @PostConstruct
@@ -33,8 +48,10 @@ public class ObserverConfig {
         // Register all observers to the subject
         medicineInventorySubject.registerObserver(lowStockAlertObserver);
         medicineInventorySubject.registerObserver(expiryDateObserver);
-        
-        // Log that observers are registered
-        System.out.println("Registered inventory observers: LowStockAlertObserver, ExpiryDateObserver");
+        medicineInventorySubject.registerObserver(dashboardFeedObserver);
+        medicineInventorySubject.registerObserver(screeningCatalogueObserver);
+
+        log.info("observers.registered observers={}",
+            "LowStockAlertObserver,ExpiryDateObserver,DashboardFeedObserver,ScreeningCatalogueObserver");
     }
 }
\ No newline at end of file
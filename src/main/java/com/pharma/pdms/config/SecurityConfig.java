@@ -0,0 +1,80 @@
+package com.pharma.pdms.config;
+
+import com.pharma.pdms.models.Role;
+import com.pharma.pdms.repositories.UserRepository;
+import com.pharma.pdms.utils.security.AuthorityCache;
+import com.pharma.pdms.utils.security.JwtAuthenticationFilter;
+import com.pharma.pdms.utils.security.JwtTokenService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Stateless security: every API request authenticates with a bearer token issued by
+ * /api/auth/login. Users and roles are only read from the database at login; requests
+ * are authenticated from the token and AuthorityCache.
+ */
+@Configuration
+@EnableWebSecurity
+public class SecurityConfig {
+
+    @Bean
+    public SecurityFilterChain securityFilterChain(
+            HttpSecurity http, JwtTokenService tokenService, AuthorityCache authorityCache) throws Exception {
+        http.cors().and()
+            .csrf().disable()
+            .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
+            .exceptionHandling()
+                .authenticationEntryPoint((request, response, e) ->
+                    response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Authentication required"))
+                .and()
+            .authorizeRequests()
+                .antMatchers(HttpMethod.OPTIONS, "/**").permitAll()
+                .antMatchers("/api/auth/login").permitAll()
+                .antMatchers("/swagger-ui/**", "/swagger-ui.html", "/v3/api-docs/**", "/error").permitAll()
+                .antMatchers("/api/monitoring/**", "/api/users/**").hasAuthority("ROLE_ADMIN")
+                .anyRequest().authenticated()
+                .and()
+            .addFilterBefore(new JwtAuthenticationFilter(tokenService, authorityCache),
+                UsernamePasswordAuthenticationFilter.class);
+        return http.build();
+    }
+
+    /**
+     * Used by login only
+     */
+    @Bean
+    public UserDetailsService userDetailsService(UserRepository userRepository) {
+        return username -> userRepository.findByUsername(username)
+            .map(user -> User.withUsername(user.getUsername())
+                .password(user.getPassword())
+                .disabled(Boolean.FALSE.equals(user.getIsActive()))
+                .authorities(user.getRoles().stream().map(Role::getName).map(Enum::name).toArray(String[]::new))
+                .build())
+            .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+    }
+
+    @Bean
+    public PasswordEncoder passwordEncoder() {
+        return new BCryptPasswordEncoder();
+    }
+
+    @Bean
+    public AuthenticationManager authenticationManager(AuthenticationConfiguration configuration) throws Exception {
+        return configuration.getAuthenticationManager();
+    }
+}
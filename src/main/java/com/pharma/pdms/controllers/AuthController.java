@@ -0,0 +1,43 @@
+package com.pharma.pdms.controllers;
+
+import com.pharma.pdms.services.AuthService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Controller for signing in
+ */
+@RestController
+@RequestMapping("/api/auth")
+public class AuthController {
+    private final AuthService authService;
+    
+    @Autowired
+    public AuthController(AuthService authService) {
+        this.authService = authService;
+    }
+    
+    /**
+     * Exchange a username and password for a bearer token
+     * @param credentials Map with "username" and "password"
+     * @return Token, its lifetime and the user's roles; 401 if the credentials are rejected
+     */
+    @PostMapping("/login")
+    public ResponseEntity<Map<String, Object>> login(@RequestBody Map<String, String> credentials) {
+        String username = credentials.get("username");
+        String password = credentials.get("password");
+        if (username == null || password == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(authService.login(username, password));
+        } catch (AuthenticationException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+    }
+}
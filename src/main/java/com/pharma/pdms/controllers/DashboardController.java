@@ -6,12 +6,15 @@ import com.pharma.pdms.models.Transaction;
 import com.pharma.pdms.services.MedicineService;
 import com.pharma.pdms.services.PatientService;
 import com.pharma.pdms.services.PrescriptionService;
+import com.pharma.pdms.utils.sse.DashboardEventBroadcaster;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -29,15 +32,18 @@ public class DashboardController {
     private final MedicineService medicineService;
     private final PatientService patientService;
     private final PrescriptionService prescriptionService;
+    private final DashboardEventBroadcaster dashboardBroadcaster;
     
     @Autowired
     public DashboardController(
             MedicineService medicineService,
             PatientService patientService,
-            PrescriptionService prescriptionService) {
+            PrescriptionService prescriptionService,
+            DashboardEventBroadcaster dashboardBroadcaster) {
         this.medicineService = medicineService;
         this.patientService = patientService;
         this.prescriptionService = prescriptionService;
+        this.dashboardBroadcaster = dashboardBroadcaster;
     }
     
     /**
@@ -75,6 +81,17 @@ public class DashboardController {
         return ResponseEntity.ok(stats);
     }
     
+    /**
+     * Subscribe to pushed dashboard deltas instead of polling
+     * Events: stock, low-stock, low-stock-cleared, expiring, expiring-cleared, prescriptions,
+     * and resync when the client fell behind and should reload the snapshot endpoints
+     * @return Server-Sent Events stream
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamUpdates() {
+        return dashboardBroadcaster.subscribe();
+    }
+    
     /**
      * Get a list of medicines that are expiring soon
      * @param days Number of days to consider for expiry (default: 30)
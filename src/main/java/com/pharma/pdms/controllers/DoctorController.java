@@ -1,33 +1,55 @@
 package com.pharma.pdms.controllers;
 
 import com.pharma.pdms.models.Doctor;
+import com.pharma.pdms.repositories.EntityVersion;
+import com.pharma.pdms.repositories.TableFingerprint;
 import com.pharma.pdms.services.DoctorService;
+import com.pharma.pdms.utils.http.ConditionalGetSupport;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/doctors")
 public class DoctorController {
     private final DoctorService doctorService;
+    private final ConditionalGetSupport conditionalGet;
     
     @Autowired
-    public DoctorController(DoctorService doctorService) {
+    public DoctorController(DoctorService doctorService, ConditionalGetSupport conditionalGet) {
         this.doctorService = doctorService;
+        this.conditionalGet = conditionalGet;
     }
     
     @GetMapping
-    public ResponseEntity<List<Doctor>> getAllDoctors() {
-        return ResponseEntity.ok(doctorService.getAllDoctors());
+    public ResponseEntity<List<Doctor>> getAllDoctors(WebRequest request) {
+        // Answer revalidations from the table fingerprint without loading the list
+        TableFingerprint fingerprint = doctorService.getDoctorFingerprint();
+        String etag = conditionalGet.collectionTag("doctors", fingerprint);
+        if (conditionalGet.isNotModified(request, "doctors", etag, conditionalGet.lastModified(fingerprint))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(doctorService.getAllDoctors());
     }
     
     @GetMapping("/{id}")
-    public ResponseEntity<Doctor> getDoctorById(@PathVariable Long id) {
+    public ResponseEntity<Doctor> getDoctorById(@PathVariable Long id, WebRequest request) {
+        Optional<EntityVersion> version = doctorService.getDoctorVersion(id);
+        if (!version.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        String etag = conditionalGet.entityTag("doctor", id, version.get());
+        if (conditionalGet.isNotModified(request, "doctor", etag, conditionalGet.lastModified(version.get()))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
         return doctorService.getDoctorById(id)
-                .map(ResponseEntity::ok)
+                .map(doctor -> ResponseEntity.ok().eTag(etag).body(doctor))
                 .orElse(ResponseEntity.notFound().build());
     }
     
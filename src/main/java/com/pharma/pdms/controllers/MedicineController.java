@@ -1,33 +1,88 @@
 package com.pharma.pdms.controllers;
 
 import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.models.MedicineLot;
+import com.pharma.pdms.repositories.EntityVersion;
+import com.pharma.pdms.repositories.TableFingerprint;
+import com.pharma.pdms.services.DemandForecastService;
+import com.pharma.pdms.services.MedicineCatalogueService;
 import com.pharma.pdms.services.MedicineService;
+import com.pharma.pdms.services.ReservationService;
+import com.pharma.pdms.utils.catalogue.CatalogueEntry;
+import com.pharma.pdms.utils.http.ConditionalGetSupport;
+import com.pharma.pdms.utils.inventory.LotAllocation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/medicines")
 public class MedicineController {
     private final MedicineService medicineService;
+    private final ReservationService reservationService;
+    private final ConditionalGetSupport conditionalGet;
+    private final MedicineCatalogueService catalogueService;
+    private final DemandForecastService forecastService;
     
     @Autowired
-    public MedicineController(MedicineService medicineService) {
+    public MedicineController(
+            MedicineService medicineService,
+            ReservationService reservationService,
+            ConditionalGetSupport conditionalGet,
+            MedicineCatalogueService catalogueService,
+            DemandForecastService forecastService) {
         this.medicineService = medicineService;
+        this.reservationService = reservationService;
+        this.conditionalGet = conditionalGet;
+        this.catalogueService = catalogueService;
+        this.forecastService = forecastService;
     }
     
     @GetMapping
-    public ResponseEntity<List<Medicine>> getAllMedicines() {
-        return ResponseEntity.ok(medicineService.getAllMedicines());
+    public ResponseEntity<List<Medicine>> getAllMedicines(WebRequest request) {
+        // Answer revalidations from the table fingerprint without loading the list
+        TableFingerprint fingerprint = medicineService.getMedicineFingerprint();
+        String etag = conditionalGet.collectionTag("medicines", fingerprint);
+        if (conditionalGet.isNotModified(request, "medicines", etag, conditionalGet.lastModified(fingerprint))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(medicineService.getAllMedicines());
     }
     
     @GetMapping("/{id}")
-    public ResponseEntity<Medicine> getMedicineById(@PathVariable Long id) {
+    public ResponseEntity<Medicine> getMedicineById(@PathVariable Long id, WebRequest request) {
+        Optional<EntityVersion> version = medicineService.getMedicineVersion(id);
+        if (!version.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        String etag = conditionalGet.entityTag("medicine", id, version.get());
+        if (conditionalGet.isNotModified(request, "medicine", etag, conditionalGet.lastModified(version.get()))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
         return medicineService.getMedicineById(id)
+                .map(medicine -> ResponseEntity.ok().eTag(etag).body(medicine))
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * Catalogue view of all medicines served from this node's memory
+     * May trail the database by the staleness reported at /api/monitoring/catalogue
+     */
+    @GetMapping("/catalogue")
+    public ResponseEntity<List<CatalogueEntry>> getCatalogue() {
+        return ResponseEntity.ok(catalogueService.getAll());
+    }
+    
+    @GetMapping("/catalogue/{id}")
+    public ResponseEntity<CatalogueEntry> getCatalogueEntry(@PathVariable Long id) {
+        return catalogueService.get(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -86,6 +141,53 @@ public class MedicineController {
                 .orElse(ResponseEntity.notFound().build());
     }
     
+    @GetMapping("/{id}/lots")
+    public ResponseEntity<List<MedicineLot>> getLots(@PathVariable Long id) {
+        return ResponseEntity.ok(medicineService.getLots(id));
+    }
+    
+    @PostMapping("/{id}/lots")
+    public ResponseEntity<MedicineLot> receiveLot(@PathVariable Long id, @RequestBody MedicineLot lot) {
+        return medicineService.receiveLot(id, lot)
+                .map(createdLot -> new ResponseEntity<>(createdLot, HttpStatus.CREATED))
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    @PostMapping("/{id}/dispense")
+    public ResponseEntity<List<LotAllocation>> dispense(
+            @PathVariable Long id,
+            @RequestBody Map<String, Integer> dispenseRequest) {
+        
+        Integer quantity = dispenseRequest.get("quantity");
+        if (quantity == null || quantity <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        List<LotAllocation> allocations = medicineService.dispense(id, quantity);
+        return allocations.isEmpty() ? ResponseEntity.notFound().build() : ResponseEntity.ok(allocations);
+    }
+    
+    @GetMapping("/{id}/available")
+    public ResponseEntity<Map<String, Object>> getAvailability(@PathVariable Long id) {
+        return ResponseEntity.ok(reservationService.getAvailability(id));
+    }
+    
+    /**
+     * Get the demand forecast behind a medicine's reorder level
+     * @param days Number of days of daily forecast to include (default: 14)
+     */
+    @GetMapping("/{id}/forecast")
+    public ResponseEntity<Map<String, Object>> getForecast(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "14") int days) {
+        if (days < 1 || days > 366) {
+            return ResponseEntity.badRequest().build();
+        }
+        return forecastService.getForecast(id, days)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
     @GetMapping("/inventory-value")
     public ResponseEntity<Map<String, Double>> getInventoryValue() {
         Double value = medicineService.calculateTotalInventoryValue();
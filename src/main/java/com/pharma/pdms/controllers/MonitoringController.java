@@ -0,0 +1,300 @@
+package com.pharma.pdms.controllers;
+
+import com.pharma.pdms.services.AuthService;
+import com.pharma.pdms.services.DemandForecastService;
+import com.pharma.pdms.services.ExpirySweepService;
+import com.pharma.pdms.services.InventoryOutboxRelay;
+import com.pharma.pdms.services.MedicineCatalogueService;
+import com.pharma.pdms.services.NotificationDeliveryService;
+import com.pharma.pdms.services.PartitionMaintenanceService;
+import com.pharma.pdms.services.PrescriptionArchiveService;
+import com.pharma.pdms.services.ReservationService;
+import com.pharma.pdms.services.ScreeningService;
+import com.pharma.pdms.services.SearchService;
+import com.pharma.pdms.utils.admission.AdmissionControlFilter;
+import com.pharma.pdms.utils.coalescing.CoalescingAspect;
+import com.pharma.pdms.utils.concurrency.OptimisticRetryExecutor;
+import com.pharma.pdms.utils.datasource.ReplicaRoutingDataSource;
+import com.pharma.pdms.utils.http.ConditionalGetSupport;
+import com.pharma.pdms.utils.idempotency.IdempotencyStore;
+import com.pharma.pdms.utils.notification.AlertLogSampler;
+import com.pharma.pdms.utils.sse.DashboardEventBroadcaster;
+import com.pharma.pdms.utils.startup.StartupReport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Controller exposing operational metrics
+ */
+@RestController
+@RequestMapping("/api/monitoring")
+public class MonitoringController {
+    
+    private final OptimisticRetryExecutor retryExecutor;
+    private final ReservationService reservationService;
+    private final InventoryOutboxRelay outboxRelay;
+    private final DashboardEventBroadcaster dashboardBroadcaster;
+    private final ConditionalGetSupport conditionalGet;
+    private final SearchService searchService;
+    private final ScreeningService screeningService;
+    private final ReplicaRoutingDataSource routingDataSource;
+    private final MedicineCatalogueService catalogueService;
+    private final PartitionMaintenanceService partitionService;
+    private final PrescriptionArchiveService archiveService;
+    private final DemandForecastService forecastService;
+    private final StartupReport startupReport;
+    private final AlertLogSampler alertLogSampler;
+    private final NotificationDeliveryService deliveryService;
+    private final AuthService authService;
+    private final AdmissionControlFilter admissionControlFilter;
+    private final CoalescingAspect coalescingAspect;
+    private final IdempotencyStore idempotencyStore;
+    private final ExpirySweepService expirySweepService;
+    
+    @Autowired
+    public MonitoringController(
+            OptimisticRetryExecutor retryExecutor,
+            ReservationService reservationService,
+            InventoryOutboxRelay outboxRelay,
+            DashboardEventBroadcaster dashboardBroadcaster,
+            ConditionalGetSupport conditionalGet,
+            SearchService searchService,
+            ScreeningService screeningService,
+            ReplicaRoutingDataSource routingDataSource,
+            MedicineCatalogueService catalogueService,
+            PartitionMaintenanceService partitionService,
+            PrescriptionArchiveService archiveService,
+            DemandForecastService forecastService,
+            StartupReport startupReport,
+            AlertLogSampler alertLogSampler,
+            NotificationDeliveryService deliveryService,
+            AuthService authService,
+            AdmissionControlFilter admissionControlFilter,
+            CoalescingAspect coalescingAspect,
+            IdempotencyStore idempotencyStore,
+            ExpirySweepService expirySweepService) {
+        this.retryExecutor = retryExecutor;
+        this.reservationService = reservationService;
+        this.outboxRelay = outboxRelay;
+        this.dashboardBroadcaster = dashboardBroadcaster;
+        this.conditionalGet = conditionalGet;
+        this.searchService = searchService;
+        this.screeningService = screeningService;
+        this.routingDataSource = routingDataSource;
+        this.catalogueService = catalogueService;
+        this.partitionService = partitionService;
+        this.archiveService = archiveService;
+        this.forecastService = forecastService;
+        this.startupReport = startupReport;
+        this.alertLogSampler = alertLogSampler;
+        this.deliveryService = deliveryService;
+        this.authService = authService;
+        this.admissionControlFilter = admissionControlFilter;
+        this.coalescingAspect = coalescingAspect;
+        this.idempotencyStore = idempotencyStore;
+        this.expirySweepService = expirySweepService;
+    }
+    
+    /**
+     * Get optimistic locking conflict and retry metrics
+     * @param top Number of most contended rows to include (default: 10)
+     * @return Map containing conflict counters, retry rate and hot rows
+     */
+    @GetMapping("/concurrency")
+    public ResponseEntity<Map<String, Object>> getConcurrencyStats(
+            @RequestParam(defaultValue = "10") int top) {
+        return ResponseEntity.ok(retryExecutor.getStats(top));
+    }
+    
+    /**
+     * Get stock reservation counters
+     * @return Map containing live reservations across the cluster and this node's reserve, reject and consume counts
+     */
+    @GetMapping("/reservations")
+    public ResponseEntity<Map<String, Object>> getReservationStats() {
+        return ResponseEntity.ok(reservationService.getStats());
+    }
+    
+    /**
+     * Get inventory outbox relay lag and throughput
+     * @return Map containing pending and abandoned events, lag and delivery counters
+     */
+    @GetMapping("/outbox")
+    public ResponseEntity<Map<String, Object>> getOutboxStats() {
+        return ResponseEntity.ok(outboxRelay.getStats());
+    }
+    
+    /**
+     * Re-deliver retained outbox events to the observers, including abandoned ones
+     * @param fromOffset Id of the first event to deliver again
+     * @return Updated relay statistics
+     */
+    @PostMapping("/outbox/replay")
+    public ResponseEntity<Map<String, Object>> replayOutbox(@RequestParam long fromOffset) {
+        outboxRelay.replayFrom(fromOffset);
+        return ResponseEntity.ok(outboxRelay.getStats());
+    }
+    
+    /**
+     * Get dashboard push feed subscriber and delivery counters
+     * @return Map containing subscriber count and published, delivered and dropped events
+     */
+    @GetMapping("/sse")
+    public ResponseEntity<Map<String, Object>> getSseStats() {
+        return ResponseEntity.ok(dashboardBroadcaster.getStats());
+    }
+    
+    /**
+     * Get full versus 304 Not Modified response counts per resource
+     * Every 304 is a response body not sent and an entity load not performed
+     * @return Map of resource counters
+     */
+    @GetMapping("/conditional-get")
+    public ResponseEntity<Map<String, Object>> getConditionalGetStats() {
+        return ResponseEntity.ok(conditionalGet.getStats());
+    }
+    
+    /**
+     * Get search index size and indexing lag
+     * Lag is the time from a committed write to it becoming searchable
+     * @return Map of index metrics
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> getSearchStats() {
+        return ResponseEntity.ok(searchService.getStats());
+    }
+    
+    /**
+     * Get screening engine size and latency
+     * @return Map of interaction graph, cache and screen metrics
+     */
+    @GetMapping("/screening")
+    public ResponseEntity<Map<String, Object>> getScreeningStats() {
+        return ResponseEntity.ok(screeningService.getStats());
+    }
+    
+    /**
+     * Get connection and statement counts per route, replica lag and fallbacks to the primary
+     * @return Map of routing metrics
+     */
+    @GetMapping("/datasource")
+    public ResponseEntity<Map<String, Object>> getDataSourceStats() {
+        return ResponseEntity.ok(routingDataSource.getStats());
+    }
+    
+    /**
+     * Get catalogue coherence metrics for this node
+     * Staleness is the time from a medicine write to it being applied here
+     * @return Map of listener, reload and staleness metrics
+     */
+    @GetMapping("/catalogue")
+    public ResponseEntity<Map<String, Object>> getCatalogueStats() {
+        return ResponseEntity.ok(catalogueService.getStats());
+    }
+    
+    /**
+     * Get partition counts, range and default-partition rows for the history tables
+     * @return Map of partitioning metrics
+     */
+    @GetMapping("/partitions")
+    public ResponseEntity<Map<String, Object>> getPartitionStats() {
+        return ResponseEntity.ok(partitionService.getStats());
+    }
+    
+    /**
+     * Get cold archive file counts, archived rows, size and the last archiving run
+     * @return Map of archive metrics
+     */
+    @GetMapping("/archive")
+    public ResponseEntity<Map<String, Object>> getArchiveStats() {
+        return ResponseEntity.ok(archiveService.getStats());
+    }
+    
+    /**
+     * Get the last demand forecasting run: medicines, days folded in, duration and reorder level changes
+     * @return Map of forecasting metrics
+     */
+    @GetMapping("/forecast")
+    public ResponseEntity<Map<String, Object>> getForecastStats() {
+        return ResponseEntity.ok(forecastService.getStats());
+    }
+    
+    /**
+     * Get startup timings of this node
+     * @return Map containing milestones from JVM start, per-phase and slowest per-bean timings, the first request and warm-up progress
+     */
+    @GetMapping("/startup")
+    public ResponseEntity<Map<String, Object>> getStartupReport() {
+        return ResponseEntity.ok(startupReport.getReport());
+    }
+    
+    /**
+     * Get alert log sampling metrics
+     * @return Map containing the sampling window, alert lines logged and repeats suppressed
+     */
+    @GetMapping("/alerts")
+    public ResponseEntity<Map<String, Object>> getAlertStats() {
+        return ResponseEntity.ok(alertLogSampler.getStats());
+    }
+    
+    /**
+     * Get notification delivery metrics
+     * @return Map containing per-channel limits, in-flight sends, outcomes and queue depth by status
+     */
+    @GetMapping("/notifications")
+    public ResponseEntity<Map<String, Object>> getNotificationStats() {
+        return ResponseEntity.ok(deliveryService.getStats());
+    }
+    
+    /**
+     * Get authentication cache metrics
+     * @return Map containing verified-token cache and per-user authority cache counters
+     */
+    @GetMapping("/auth")
+    public ResponseEntity<Map<String, Object>> getAuthStats() {
+        return ResponseEntity.ok(authService.getStats());
+    }
+    
+    /**
+     * Get admission control metrics
+     * @return Map containing limit, in-flight, queued and shed counts per request class
+     */
+    @GetMapping("/admission")
+    public ResponseEntity<Map<String, Object>> getAdmissionStats() {
+        return ResponseEntity.ok(admissionControlFilter.getStats());
+    }
+    
+    /**
+     * Get request coalescing metrics
+     * @return Map containing executions, joined and TTL-served calls per coalesced method
+     */
+    @GetMapping("/coalescing")
+    public ResponseEntity<Map<String, Object>> getCoalescingStats() {
+        return ResponseEntity.ok(coalescingAspect.getStats());
+    }
+    
+    /**
+     * Get idempotency key metrics
+     * @return Map containing claimed, replayed, waited and mismatched request counts
+     */
+    @GetMapping("/idempotency")
+    public ResponseEntity<Map<String, Object>> getIdempotencyStats() {
+        return ResponseEntity.ok(idempotencyStore.getStats());
+    }
+    
+    /**
+     * Get the report of the last expiry sweep finished on this node
+     * @return Map containing quarantined units and value by category, deactivated medicines and top items
+     */
+    @GetMapping("/expiry-sweep")
+    public ResponseEntity<Map<String, Object>> getExpirySweepReport() {
+        return ResponseEntity.ok(expirySweepService.getLastReport());
+    }
+}
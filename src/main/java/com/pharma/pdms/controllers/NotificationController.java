@@ -0,0 +1,42 @@
+package com.pharma.pdms.controllers;
+
+import com.pharma.pdms.models.NotificationDelivery;
+import com.pharma.pdms.services.NotificationDeliveryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Controller for the notification dead-letter store
+ */
+@RestController
+@RequestMapping("/api/notifications")
+public class NotificationController {
+    private final NotificationDeliveryService deliveryService;
+    
+    @Autowired
+    public NotificationController(NotificationDeliveryService deliveryService) {
+        this.deliveryService = deliveryService;
+    }
+    
+    /**
+     * Get notifications that exhausted their delivery attempts, newest first
+     * @param limit Maximum number returned (default: 50)
+     */
+    @GetMapping("/dead-letters")
+    public ResponseEntity<List<NotificationDelivery>> getDeadLetters(@RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(deliveryService.getDeadLetters(Math.max(1, Math.min(limit, 500))));
+    }
+    
+    /**
+     * Queue a dead-lettered notification again with a fresh set of attempts
+     */
+    @PostMapping("/dead-letters/{id}/retry")
+    public ResponseEntity<Void> retryDeadLetter(@PathVariable Long id) {
+        return deliveryService.retryDeadLetter(id)
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.notFound().build();
+    }
+}
@@ -1,33 +1,55 @@
 package com.pharma.pdms.controllers;
 
 import com.pharma.pdms.models.Patient;
+import com.pharma.pdms.repositories.EntityVersion;
+import com.pharma.pdms.repositories.TableFingerprint;
 import com.pharma.pdms.services.PatientService;
+import com.pharma.pdms.utils.http.ConditionalGetSupport;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/patients")
 public class PatientController {
     private final PatientService patientService;
+    private final ConditionalGetSupport conditionalGet;
     
     @Autowired
-    public PatientController(PatientService patientService) {
+    public PatientController(PatientService patientService, ConditionalGetSupport conditionalGet) {
         this.patientService = patientService;
+        this.conditionalGet = conditionalGet;
     }
     
     @GetMapping
-    public ResponseEntity<List<Patient>> getAllPatients() {
-        return ResponseEntity.ok(patientService.getAllPatients());
+    public ResponseEntity<List<Patient>> getAllPatients(WebRequest request) {
+        // Answer revalidations from the table fingerprint without loading the list
+        TableFingerprint fingerprint = patientService.getPatientFingerprint();
+        String etag = conditionalGet.collectionTag("patients", fingerprint);
+        if (conditionalGet.isNotModified(request, "patients", etag, conditionalGet.lastModified(fingerprint))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(patientService.getAllPatients());
     }
     
     @GetMapping("/{id}")
-    public ResponseEntity<Patient> getPatientById(@PathVariable Long id) {
+    public ResponseEntity<Patient> getPatientById(@PathVariable Long id, WebRequest request) {
+        Optional<EntityVersion> version = patientService.getPatientVersion(id);
+        if (!version.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        String etag = conditionalGet.entityTag("patient", id, version.get());
+        if (conditionalGet.isNotModified(request, "patient", etag, conditionalGet.lastModified(version.get()))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
         return patientService.getPatientById(id)
-                .map(ResponseEntity::ok)
+                .map(patient -> ResponseEntity.ok().eTag(etag).body(patient))
                 .orElse(ResponseEntity.notFound().build());
     }
     
@@ -80,6 +80,13 @@ public class PrescriptionController {
         return new ResponseEntity<>(createdItem, HttpStatus.CREATED);
     }
     
+    @PatchMapping("/items/{itemId}/dispense")
+    public ResponseEntity<PrescriptionItem> dispensePrescriptionItem(@PathVariable Long itemId) {
+        return prescriptionService.dispensePrescriptionItem(itemId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
     @PutMapping("/{id}")
     public ResponseEntity<Prescription> updatePrescription(
             @PathVariable Long id, 
@@ -0,0 +1,71 @@
+package com.pharma.pdms.controllers;
+
+import com.pharma.pdms.models.PurchaseOrder;
+import com.pharma.pdms.services.PurchaseOrderService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controller for supplier purchase orders raised by the replenishment cycle
+ */
+@RestController
+@RequestMapping("/api/purchase-orders")
+public class PurchaseOrderController {
+    private final PurchaseOrderService purchaseOrderService;
+    
+    @Autowired
+    public PurchaseOrderController(PurchaseOrderService purchaseOrderService) {
+        this.purchaseOrderService = purchaseOrderService;
+    }
+    
+    /**
+     * Get purchase orders of a cycle, or all orders in a status
+     * @param cycle Cycle key (default: the current cycle)
+     * @param status Optional status; takes precedence over cycle
+     */
+    @GetMapping
+    public ResponseEntity<List<PurchaseOrder>> getPurchaseOrders(
+            @RequestParam(required = false) String cycle,
+            @RequestParam(required = false) PurchaseOrder.Status status) {
+        if (status != null) {
+            return ResponseEntity.ok(purchaseOrderService.getOrdersByStatus(status));
+        }
+        return ResponseEntity.ok(purchaseOrderService.getOrdersForCycle(cycle));
+    }
+    
+    @GetMapping("/{id}")
+    public ResponseEntity<PurchaseOrder> getPurchaseOrderById(@PathVariable Long id) {
+        return purchaseOrderService.getOrderById(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * Run the replenishment cycle now; safe to repeat within a cycle
+     * @return Orders created, lines added and low-stock medicines without a supplier
+     */
+    @PostMapping("/generate")
+    public ResponseEntity<Map<String, Object>> generate() {
+        return ResponseEntity.ok(purchaseOrderService.generate());
+    }
+    
+    @PatchMapping("/{id}/status")
+    public ResponseEntity<PurchaseOrder> updateStatus(
+            @PathVariable Long id,
+            @RequestBody Map<String, String> statusRequest) {
+        String status = statusRequest.get("status");
+        PurchaseOrder.Status newStatus;
+        try {
+            newStatus = PurchaseOrder.Status.valueOf(status == null ? "" : status.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return purchaseOrderService.updateStatus(id, newStatus)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,51 @@
+package com.pharma.pdms.controllers;
+
+import com.pharma.pdms.services.SalesReportService;
+import com.pharma.pdms.utils.reporting.SalesReport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+
+/**
+ * Controller for sales reports
+ */
+@RestController
+@RequestMapping("/api/reports")
+public class ReportController {
+    
+    private final SalesReportService salesReportService;
+    
+    @Autowired
+    public ReportController(SalesReportService salesReportService) {
+        this.salesReportService = salesReportService;
+    }
+    
+    /**
+     * Get sales of completed transactions grouped by a dimension and period
+     * @param from First day included (default: a year before to)
+     * @param to Last day included (default: today)
+     * @param groupBy medicine, category, manufacturer or supplier
+     * @param period day, week, month, quarter, year or total
+     * @return Quantity, revenue and line count per group and period, with totals
+     */
+    @GetMapping("/sales")
+    public ResponseEntity<SalesReport> getSalesReport(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "medicine") String groupBy,
+            @RequestParam(defaultValue = "month") String period) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusYears(1).plusDays(1);
+        if (start.isAfter(end) || !SalesReportService.GROUPS.contains(groupBy)
+                || !SalesReportService.PERIODS.contains(period)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(salesReportService.getSalesReport(start, end, groupBy, period));
+    }
+}
@@ -0,0 +1,49 @@
+package com.pharma.pdms.controllers;
+
+import com.pharma.pdms.models.DrugInteraction;
+import com.pharma.pdms.services.ScreeningService;
+import com.pharma.pdms.utils.screening.ScreeningWarning;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Controller for allergy and drug-interaction screening
+ */
+@RestController
+@RequestMapping("/api/screening")
+public class ScreeningController {
+    
+    private final ScreeningService screeningService;
+    
+    @Autowired
+    public ScreeningController(ScreeningService screeningService) {
+        this.screeningService = screeningService;
+    }
+    
+    /**
+     * Screen a medicine for a patient without creating a prescription item
+     * @return Warnings, most severe first
+     */
+    @GetMapping("/check")
+    public ResponseEntity<List<ScreeningWarning>> check(@RequestParam Long patientId, @RequestParam Long medicineId) {
+        return ResponseEntity.ok(screeningService.screen(patientId, medicineId));
+    }
+    
+    @PostMapping("/interactions")
+    public ResponseEntity<DrugInteraction> addInteraction(@RequestBody DrugInteraction interaction) {
+        return new ResponseEntity<>(screeningService.addInteraction(interaction), HttpStatus.CREATED);
+    }
+    
+    /**
+     * Reload the interaction graph after bulk changes to the drug_interactions table
+     */
+    @PostMapping("/interactions/reload")
+    public ResponseEntity<Void> reloadInteractions() {
+        screeningService.reloadInteractions();
+        return ResponseEntity.noContent().build();
+    }
+}
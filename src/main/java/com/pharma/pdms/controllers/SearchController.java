@@ -0,0 +1,44 @@
+package com.pharma.pdms.controllers;
+
+import com.pharma.pdms.services.SearchService;
+import com.pharma.pdms.utils.search.SearchIndex;
+import com.pharma.pdms.utils.search.SearchResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Controller for unified search across medicines, patients, doctors and suppliers
+ */
+@RestController
+@RequestMapping("/api/search")
+public class SearchController {
+    
+    private final SearchService searchService;
+    
+    @Autowired
+    public SearchController(SearchService searchService) {
+        this.searchService = searchService;
+    }
+    
+    /**
+     * Search all entity types, ranked by relevance
+     * @param q Search text; supports "phrases", -exclusions and prefix* terms
+     * @param type Optional entity type to restrict hits to; facet counts always cover every type
+     * @param limit Maximum number of hits
+     * @return Ranked hits and per-type facet counts
+     */
+    @GetMapping
+    public ResponseEntity<SearchResult> search(
+            @RequestParam String q,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "20") int limit) {
+        if (q.trim().isEmpty() || (type != null && !SearchIndex.TYPES.contains(type))) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(searchService.search(q, type, limit));
+    }
+}
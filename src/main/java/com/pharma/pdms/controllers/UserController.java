@@ -0,0 +1,52 @@
+package com.pharma.pdms.controllers;
+
+import com.pharma.pdms.models.ERole;
+import com.pharma.pdms.services.AuthService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Controller for user role administration
+ */
+@RestController
+@RequestMapping("/api/users")
+public class UserController {
+    private final AuthService authService;
+    
+    @Autowired
+    public UserController(AuthService authService) {
+        this.authService = authService;
+    }
+    
+    /**
+     * Replace a user's roles; tokens issued before the change stop working
+     * @param request Map with "roles" (e.g. ["ROLE_PHARMACIST"]) and optionally "active"
+     */
+    @PutMapping("/{id}/roles")
+    public ResponseEntity<Map<String, Object>> updateRoles(
+            @PathVariable Long id,
+            @RequestBody Map<String, Object> request) {
+        Object roles = request.get("roles");
+        Object active = request.get("active");
+        if (!(roles instanceof List) || (active != null && !(active instanceof Boolean))) {
+            return ResponseEntity.badRequest().build();
+        }
+        Set<ERole> roleNames = EnumSet.noneOf(ERole.class);
+        try {
+            for (Object role : (List<?>) roles) {
+                roleNames.add(ERole.valueOf(String.valueOf(role).toUpperCase()));
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return authService.updateRoles(id, roleNames, (Boolean) active)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,62 @@
+package com.pharma.pdms.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Smoothed demand state and derived reorder level of a medicine.
+ * Updated in place by the nightly forecasting job, one day of history at a time.
+ */
+@Entity
+@Table(name = "demand_forecasts")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DemandForecast {
+    
+    @Id
+    @Column(name = "medicine_id")
+    private Long medicineId;
+    
+    @Column(name = "level", nullable = false)
+    private Double level = 0.0;
+    
+    @Column(name = "trend", nullable = false)
+    private Double trend = 0.0;
+    
+    /**
+     * Additive day-of-week factors, Monday first, comma-separated
+     */
+    @Column(name = "seasonal_factors", length = 200, nullable = false)
+    private String seasonalFactors;
+    
+    @Column(name = "error_variance", nullable = false)
+    private Double errorVariance = 0.0;
+    
+    @Column(name = "observations", nullable = false)
+    private Integer observations = 0;
+    
+    /**
+     * Last day of history folded into the state
+     */
+    @Column(name = "last_day")
+    @Temporal(TemporalType.DATE)
+    private Date lastDay;
+    
+    /**
+     * Expected demand over the lead time, as of the last update
+     */
+    @Column(name = "lead_time_demand")
+    private Double leadTimeDemand;
+    
+    @Column(name = "reorder_level")
+    private Integer reorderLevel;
+    
+    @Column(name = "updated_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updatedAt;
+}
@@ -64,6 +64,10 @@ public class Doctor {
     @Temporal(TemporalType.TIMESTAMP)
     private Date updatedAt;
     
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private Long version;
+    
     @OneToMany(mappedBy = "doctor", cascade = CascadeType.ALL)
     private Set<Prescription> prescriptions = new HashSet<>();
     
@@ -0,0 +1,60 @@
+package com.pharma.pdms.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.Date;
+
+/**
+ * DrugInteraction entity representing a known interaction between two medicines
+ * The pair is unordered; screening treats A-B and B-A alike
+ */
+@Entity
+@Table(name = "drug_interactions",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"medicine_a_id", "medicine_b_id"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DrugInteraction {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    @Column(name = "medicine_a_id", nullable = false)
+    private Long medicineAId;
+    
+    @NotNull
+    @Column(name = "medicine_b_id", nullable = false)
+    private Long medicineBId;
+    
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "severity", nullable = false)
+    private Severity severity = Severity.MODERATE;
+    
+    @Size(max = 500)
+    @Column(name = "description", length = 500)
+    private String description;
+    
+    @Column(name = "created_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = new Date();
+    }
+    
+    public enum Severity {
+        MINOR,
+        MODERATE,
+        MAJOR,
+        CONTRAINDICATED
+    }
+}
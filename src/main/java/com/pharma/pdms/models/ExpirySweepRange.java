@@ -0,0 +1,80 @@
+package com.pharma.pdms.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Checkpoint of one id range of a nightly expiry sweep: the last medicine id done and
+ * running totals. A node works on a range under a lease; a range whose node died is
+ * resumed from last_id once the lease expires. Written by ExpirySweepService through JDBC.
+ */
+@Entity
+@Table(name = "expiry_sweep_ranges",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"run_date", "range_index"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpirySweepRange {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    /**
+     * Stock in lots expiring before this day is quarantined
+     */
+    @Column(name = "run_date", nullable = false)
+    @Temporal(TemporalType.DATE)
+    private Date runDate;
+    
+    @Column(name = "range_index", nullable = false)
+    private Integer rangeIndex;
+    
+    /**
+     * Medicine ids after range_start up to and including range_end
+     */
+    @Column(name = "range_start", nullable = false)
+    private Long rangeStart;
+    
+    @Column(name = "range_end", nullable = false)
+    private Long rangeEnd;
+    
+    @Column(name = "last_id", nullable = false)
+    private Long lastId;
+    
+    @Column(name = "completed", nullable = false)
+    private Boolean completed = false;
+    
+    /**
+     * Set on range 0 by the node that sends the run's report
+     */
+    @Column(name = "report_sent", nullable = false)
+    private Boolean reportSent = false;
+    
+    @Column(name = "claimed_by", length = 64)
+    private String claimedBy;
+    
+    @Column(name = "lease_until")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date leaseUntil;
+    
+    @Column(name = "medicines_checked", nullable = false)
+    private Long medicinesChecked = 0L;
+    
+    @Column(name = "medicines_deactivated", nullable = false)
+    private Long medicinesDeactivated = 0L;
+    
+    @Column(name = "lots_quarantined", nullable = false)
+    private Long lotsQuarantined = 0L;
+    
+    @Column(name = "units_quarantined", nullable = false)
+    private Long unitsQuarantined = 0L;
+    
+    @Column(name = "updated_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updatedAt;
+}
@@ -0,0 +1,61 @@
+package com.pharma.pdms.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Response stored for an Idempotency-Key, shared by all nodes. Written and read by
+ * IdempotencyStore through JDBC; mapped here so the table is part of the schema.
+ */
+@Entity
+@Table(name = "idempotency_keys",
+       indexes = @Index(name = "idx_idempotency_keys_expires_at", columnList = "expires_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+    
+    /**
+     * Client identity and the key it sent
+     */
+    @Id
+    @Column(name = "idempotency_key", length = 320)
+    private String idempotencyKey;
+    
+    /**
+     * SHA-256 of method, path and body; a reused key with a different request is refused
+     */
+    @Column(name = "fingerprint", nullable = false)
+    private byte[] fingerprint;
+    
+    /**
+     * Null while the first request is still running
+     */
+    @Column(name = "status")
+    private Integer status;
+    
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+    
+    @Column(name = "body")
+    private byte[] body;
+    
+    /**
+     * Set while the first request runs; an expired lease means its node died
+     */
+    @Column(name = "lease_until")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date leaseUntil;
+    
+    @Column(name = "created_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+    
+    @Column(name = "expires_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date expiresAt;
+}
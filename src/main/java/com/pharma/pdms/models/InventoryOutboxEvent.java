@@ -0,0 +1,59 @@
+package com.pharma.pdms.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Outbox entry for an inventory change, written in the same transaction as the change
+ * Each entry records its own delivery, so one that commits late is still relayed
+ */
+@Entity
+@Table(name = "inventory_outbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryOutboxEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "medicine_id", nullable = false)
+    private Long medicineId;
+    
+    @Column(name = "event_type", length = 30, nullable = false)
+    private String eventType;
+    
+    @Column(name = "payload", columnDefinition = "text", nullable = false)
+    private String payload;
+    
+    @Column(name = "created_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+    
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+    
+    @Column(name = "delivered_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date deliveredAt;
+    
+    /**
+     * Set when the relay gave up on the event after too many failed attempts
+     */
+    @Column(name = "failed_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date failedAt;
+    
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = new Date();
+    }
+}
@@ -53,7 +53,7 @@ public class Medicine {
     @Column(name = "reorder_level")
     private Integer reorderLevel = 10;
     
-    @NotNull
+    // Earliest expiry across the lots in stock; null while out of stock
     @Column(name = "expiry_date")
     @Temporal(TemporalType.DATE)
     private Date expiryDate;
@@ -66,6 +66,10 @@ public class Medicine {
     @Temporal(TemporalType.TIMESTAMP)
     private Date updatedAt;
     
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private Long version;
+    
     @NotBlank
     @Size(max = 50)
     private String category;
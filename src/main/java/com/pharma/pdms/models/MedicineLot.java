@@ -0,0 +1,79 @@
+package com.pharma.pdms.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.Date;
+
+/**
+ * MedicineLot entity representing one received batch of a medicine
+ * Stock totals and expiry on Medicine are derived from its lots
+ */
+@Entity
+@Table(name = "medicine_lots")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MedicineLot {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "medicine_id", nullable = false)
+    private Medicine medicine;
+    
+    @Size(max = 50)
+    @Column(name = "batch_number")
+    private String batchNumber;
+    
+    @NotNull
+    @Column(name = "expiry_date")
+    @Temporal(TemporalType.DATE)
+    private Date expiryDate;
+    
+    @NotNull
+    @Min(0)
+    private Integer quantity;
+    
+    /**
+     * Expired units taken out of sellable stock by the expiry sweep
+     */
+    @Column(name = "quarantined_quantity", columnDefinition = "integer default 0 not null")
+    private Integer quarantinedQuantity = 0;
+    
+    @Column(name = "quarantined_on")
+    @Temporal(TemporalType.DATE)
+    private Date quarantinedOn;
+    
+    @Column(name = "created_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+    
+    @Column(name = "updated_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updatedAt;
+    
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private Long version;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = new Date();
+        updatedAt = new Date();
+    }
+    
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = new Date();
+    }
+}
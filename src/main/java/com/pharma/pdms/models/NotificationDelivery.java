@@ -0,0 +1,79 @@
+package com.pharma.pdms.models;
+
+import com.pharma.pdms.utils.notification.NotificationType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Queued notification and its delivery state. Rows that exhaust their attempts stay
+ * in the table as DEAD and form the dead-letter store until retried or purged.
+ */
+@Entity
+@Table(name = "notification_deliveries",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"dedup_key"}),
+       indexes = @Index(name = "idx_notification_deliveries_due", columnList = "status, channel, next_attempt_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationDelivery {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "channel", length = 10, nullable = false)
+    @Enumerated(EnumType.STRING)
+    private NotificationType channel;
+    
+    @Column(name = "recipient", nullable = false)
+    private String recipient;
+    
+    @Column(name = "subject")
+    private String subject;
+    
+    @Column(name = "message", columnDefinition = "text")
+    private String message;
+    
+    /**
+     * Caller-chosen key; a second notification with the same key is not queued
+     */
+    @Column(name = "dedup_key", length = 200)
+    private String dedupKey;
+    
+    @Column(name = "status", length = 10, nullable = false)
+    @Enumerated(EnumType.STRING)
+    private Status status = Status.PENDING;
+    
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+    
+    @Column(name = "next_attempt_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date nextAttemptAt;
+    
+    /**
+     * Set while a node is sending; an expired lease means the node died mid-send
+     */
+    @Column(name = "lease_until")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date leaseUntil;
+    
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+    
+    @Column(name = "created_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+    
+    @Column(name = "sent_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date sentAt;
+    
+    public enum Status {
+        PENDING, SENT, DEAD
+    }
+}
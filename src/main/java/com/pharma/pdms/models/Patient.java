@@ -68,6 +68,10 @@ public class Patient {
     @Temporal(TemporalType.TIMESTAMP)
     private Date updatedAt;
     
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private Long version;
+    
     @OneToMany(mappedBy = "patient", cascade = CascadeType.ALL)
     private Set<Prescription> prescriptions = new HashSet<>();
     
@@ -43,6 +43,10 @@ public class Prescription {
     @Temporal(TemporalType.TIMESTAMP)
     private Date updatedAt;
     
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private Long version;
+    
     @Column(name = "is_filled")
     private Boolean isFilled = false;
     
@@ -1,5 +1,6 @@
 package com.pharma.pdms.models;
 
+import com.pharma.pdms.utils.screening.ScreeningWarning;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -7,7 +8,9 @@ import lombok.NoArgsConstructor;
 import javax.persistence.*;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * PrescriptionItem entity representing an item in a prescription
@@ -23,8 +26,10 @@ public class PrescriptionItem {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
+    // prescriptions may be range-partitioned, which rules out a database foreign key to it
     @ManyToOne
-    @JoinColumn(name = "prescription_id", nullable = false)
+    @JoinColumn(name = "prescription_id", nullable = false,
+                foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Prescription prescription;
     
     @ManyToOne
@@ -46,8 +51,32 @@ public class PrescriptionItem {
     @Temporal(TemporalType.TIMESTAMP)
     private Date updatedAt;
     
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private Long version;
+    
     @Column(name = "is_dispensed")
     private Boolean isDispensed = false;
+
+    @Column(name = "dispensed_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date dispensedAt;
+
+    /**
+     * Units held for this item until it is dispensed or the hold lapses at reservedUntil
+     */
+    @Column(name = "reserved_quantity", nullable = false)
+    private Integer reservedQuantity = 0;
+
+    @Column(name = "reserved_until")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date reservedUntil;
+
+    /**
+     * Allergy and interaction warnings found when the item was added; not persisted
+     */
+    @Transient
+    private List<ScreeningWarning> warnings = new ArrayList<>();
     
     @PrePersist
     protected void onCreate() {
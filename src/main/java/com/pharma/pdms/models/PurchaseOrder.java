@@ -0,0 +1,83 @@
+package com.pharma.pdms.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Purchase order raised for one supplier in one replenishment cycle. A supplier has at most
+ * one DRAFT per cycle; once it is sent, a later run in the same cycle opens a follow-up draft.
+ */
+@Entity
+@Table(name = "purchase_orders")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaseOrder {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @ManyToOne
+    @JoinColumn(name = "supplier_id", nullable = false)
+    private Supplier supplier;
+    
+    /**
+     * Replenishment cycle the order belongs to, e.g. 2024-03-18 or 2024-W12
+     */
+    @Column(name = "cycle_key", length = 20, nullable = false)
+    private String cycleKey;
+    
+    @Column(name = "status", length = 20, nullable = false)
+    @Enumerated(EnumType.STRING)
+    private Status status = Status.DRAFT;
+    
+    @Column(name = "line_count")
+    private Integer lineCount = 0;
+    
+    @Column(name = "total_amount")
+    private BigDecimal totalAmount = BigDecimal.ZERO;
+    
+    @Column(name = "created_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+    
+    @Column(name = "updated_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updatedAt;
+    
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private Long version;
+    
+    @OneToMany(mappedBy = "purchaseOrder")
+    private List<PurchaseOrderLine> lines = new ArrayList<>();
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = new Date();
+        updatedAt = new Date();
+    }
+    
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = new Date();
+    }
+    
+    /**
+     * Drafts can still gain lines within their cycle; drafts and sent orders count as stock on order
+     */
+    public enum Status {
+        DRAFT,
+        SENT,
+        RECEIVED,
+        CANCELLED
+    }
+}
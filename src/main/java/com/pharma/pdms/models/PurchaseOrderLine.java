@@ -0,0 +1,53 @@
+package com.pharma.pdms.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Quantity of one medicine ordered on a purchase order
+ */
+@Entity
+@Table(name = "purchase_order_lines",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"purchase_order_id", "medicine_id"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaseOrderLine {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "purchase_order_id", nullable = false)
+    private PurchaseOrder purchaseOrder;
+    
+    @ManyToOne
+    @JoinColumn(name = "medicine_id", nullable = false)
+    private Medicine medicine;
+    
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+    
+    @Column(name = "unit_price")
+    private BigDecimal unitPrice;
+    
+    @Column(name = "line_total")
+    private BigDecimal lineTotal;
+    
+    @Column(name = "created_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = new Date();
+    }
+}
@@ -53,6 +53,10 @@ public class Supplier {
     @Temporal(TemporalType.TIMESTAMP)
     private Date updatedAt;
     
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private Long version;
+    
     @Column(name = "is_active")
     private Boolean isActive = true;
     
@@ -47,8 +47,10 @@ public class Transaction {
     @Column(name = "receipt_number")
     private String receiptNumber;
     
+    // prescriptions may be range-partitioned, which rules out a database foreign key to it
     @ManyToOne
-    @JoinColumn(name = "prescription_id")
+    @JoinColumn(name = "prescription_id",
+                foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Prescription prescription;
     
     @Column(name = "created_at")
@@ -59,6 +61,10 @@ public class Transaction {
     @Temporal(TemporalType.TIMESTAMP)
     private Date updatedAt;
     
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0 not null")
+    private Long version;
+    
     @OneToMany(mappedBy = "transaction", cascade = CascadeType.ALL)
     private Set<TransactionItem> transactionItems = new HashSet<>();
     
@@ -49,6 +49,16 @@ public class User {
               inverseJoinColumns = @JoinColumn(name = "role_id"))
     private Set<Role> roles = new HashSet<>();
     
+    /**
+     * Bumped whenever roles or the active flag change; tokens carry the version they were issued at
+     */
+    @Column(name = "roles_version", columnDefinition = "bigint default 0 not null")
+    private Long rolesVersion = 0L;
+    
+    @Column(name = "roles_changed_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date rolesChangedAt;
+    
     @Column(name = "first_name")
     private String firstName;
     
@@ -0,0 +1,13 @@
+package com.pharma.pdms.repositories;
+
+import com.pharma.pdms.models.DemandForecast;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository interface for DemandForecast entity
+ * Implements Repository pattern
+ */
+@Repository
+public interface DemandForecastRepository extends JpaRepository<DemandForecast, Long> {
+}
@@ -1,12 +1,14 @@
 package com.pharma.pdms.repositories;
 
 import com.pharma.pdms.models.Doctor;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository interface for Doctor entity
@@ -15,10 +17,28 @@ import java.util.List;
 @Repository
 public interface DoctorRepository extends JpaRepository<Doctor, Long> {
     
-    List<Doctor> findByName(String name);
+    @Query("SELECT d FROM Doctor d WHERE lower(concat(d.firstName, ' ', d.lastName)) LIKE lower(concat('%', :name, '%'))")
+    List<Doctor> findByNameContainingIgnoreCase(@Param("name") String name);
     
     List<Doctor> findBySpecialization(String specialization);
     
-    @Query("SELECT d FROM Doctor d WHERE d.name LIKE %:keyword% OR d.specialization LIKE %:keyword% OR d.hospital LIKE %:keyword%")
+    Optional<Doctor> findByLicenseNumber(String licenseNumber);
+    
+    /**
+     * Case-insensitive email lookup, served by the lower(email) index
+     */
+    @Query("SELECT d FROM Doctor d WHERE lower(d.email) = lower(:email)")
+    Optional<Doctor> findByEmail(@Param("email") String email);
+    
+    @Query("SELECT d FROM Doctor d WHERE d.firstName LIKE %:keyword% OR d.lastName LIKE %:keyword% OR d.specialization LIKE %:keyword%")
     List<Doctor> searchDoctors(@Param("keyword") String keyword);
+    
+    @Query("SELECT d FROM Prescription p JOIN p.doctor d GROUP BY d ORDER BY COUNT(p) DESC")
+    List<Doctor> findTopDoctorsByPrescriptionCount(Pageable pageable);
+    
+    @Query("SELECT d.version AS version, d.updatedAt AS updatedAt FROM Doctor d WHERE d.id = :id")
+    Optional<EntityVersion> findVersionById(@Param("id") Long id);
+    
+    @Query("SELECT MAX(d.updatedAt) AS maxUpdatedAt, COUNT(d) AS rowCount FROM Doctor d")
+    TableFingerprint findFingerprint();
 }
\ No newline at end of file
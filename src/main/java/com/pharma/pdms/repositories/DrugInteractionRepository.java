@@ -0,0 +1,22 @@
+package com.pharma.pdms.repositories;
+
+import com.pharma.pdms.models.DrugInteraction;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository interface for DrugInteraction entity
+ * Implements Repository pattern
+ */
+@Repository
+public interface DrugInteractionRepository extends JpaRepository<DrugInteraction, Long> {
+    
+    /**
+     * Flat projection of every interaction: medicine A id, medicine B id, severity, description
+     */
+    @Query("SELECT i.medicineAId, i.medicineBId, i.severity, i.description FROM DrugInteraction i")
+    List<Object[]> findAllPairs();
+}
@@ -0,0 +1,13 @@
+package com.pharma.pdms.repositories;
+
+import java.util.Date;
+
+/**
+ * Projection of the validators of a single row, read without loading the entity
+ */
+public interface EntityVersion {
+    
+    Long getVersion();
+    
+    Date getUpdatedAt();
+}
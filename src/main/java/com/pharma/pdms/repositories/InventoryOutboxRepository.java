@@ -0,0 +1,57 @@
+package com.pharma.pdms.repositories;
+
+import com.pharma.pdms.models.InventoryOutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Repository interface for InventoryOutboxEvent entity
+ * Implements Repository pattern
+ */
+@Repository
+public interface InventoryOutboxRepository extends JpaRepository<InventoryOutboxEvent, Long> {
+    
+    /**
+     * Claim the medicines whose oldest pending event no other relay holds, and lock their
+     * pending events in id order. Holding a medicine's head event keeps other relays off
+     * the whole medicine, so its events are delivered in order even with several relays,
+     * and a busy medicine is drained a full batch at a time.
+     */
+    @Query(value = "WITH heads AS MATERIALIZED (SELECT h.id FROM inventory_outbox h"
+        + " WHERE h.delivered_at IS NULL AND h.failed_at IS NULL"
+        + " AND NOT EXISTS (SELECT 1 FROM inventory_outbox p WHERE p.medicine_id = h.medicine_id AND p.id < h.id"
+        + " AND p.delivered_at IS NULL AND p.failed_at IS NULL)"
+        + " ORDER BY h.id LIMIT :limit FOR UPDATE SKIP LOCKED)"
+        + " SELECT * FROM inventory_outbox e"
+        + " WHERE e.delivered_at IS NULL AND e.failed_at IS NULL"
+        + " AND e.medicine_id IN (SELECT c.medicine_id FROM inventory_outbox c WHERE c.id IN (SELECT id FROM heads))"
+        + " ORDER BY e.id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<InventoryOutboxEvent> claimPending(@Param("limit") int limit);
+    
+    @Query("SELECT COUNT(e) FROM InventoryOutboxEvent e WHERE e.deliveredAt IS NULL AND e.failedAt IS NULL")
+    long countPending();
+    
+    @Query("SELECT MIN(e.createdAt) FROM InventoryOutboxEvent e WHERE e.deliveredAt IS NULL AND e.failedAt IS NULL")
+    Date findOldestPendingCreatedAt();
+    
+    @Query("SELECT COUNT(e) FROM InventoryOutboxEvent e WHERE e.failedAt IS NOT NULL")
+    long countFailed();
+    
+    @Query("SELECT COALESCE(MAX(e.id), 0) FROM InventoryOutboxEvent e")
+    Long findHeadOffset();
+    
+    @Modifying
+    @Query("UPDATE InventoryOutboxEvent e SET e.deliveredAt = NULL, e.failedAt = NULL, e.attempts = 0, e.lastError = NULL"
+        + " WHERE e.id >= :fromId")
+    int markPendingFrom(@Param("fromId") Long fromId);
+    
+    @Modifying
+    @Query("DELETE FROM InventoryOutboxEvent e WHERE e.deliveredAt < :before")
+    int deleteDeliveredBefore(@Param("before") Date before);
+}
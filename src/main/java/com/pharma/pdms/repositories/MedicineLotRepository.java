@@ -0,0 +1,26 @@
+package com.pharma.pdms.repositories;
+
+import com.pharma.pdms.models.MedicineLot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository interface for MedicineLot entity
+ * Implements Repository pattern
+ */
+@Repository
+public interface MedicineLotRepository extends JpaRepository<MedicineLot, Long> {
+    
+    List<MedicineLot> findByMedicineId(Long medicineId);
+    
+    List<MedicineLot> findByMedicineIdAndQuantityGreaterThanOrderByExpiryDateAsc(Long medicineId, Integer quantity);
+    
+    /**
+     * Flat projection of every lot with stock: id, medicine id, batch number, expiry date, quantity, medicine version
+     */
+    @Query("SELECT l.id, l.medicine.id, l.batchNumber, l.expiryDate, l.quantity, l.medicine.version FROM MedicineLot l WHERE l.quantity > 0")
+    List<Object[]> findAllWithStock();
+}
@@ -7,8 +7,11 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository interface for Medicine entity
@@ -19,6 +22,8 @@ public interface MedicineRepository extends JpaRepository<Medicine, Long> {
     
     List<Medicine> findByName(String name);
     
+    List<Medicine> findByNameContainingIgnoreCase(String name);
+    
     List<Medicine> findByCategory(String category);
     
     List<Medicine> findBySupplier(Supplier supplier);
@@ -31,6 +36,48 @@ public interface MedicineRepository extends JpaRepository<Medicine, Long> {
     @Query("SELECT m FROM Medicine m WHERE m.expiryDate <= :date AND m.isActive = true")
     List<Medicine> findExpiringMedicines(@Param("date") Date date);
     
+    @Query("SELECT COALESCE(SUM(m.unitPrice * m.quantityInStock), 0) FROM Medicine m")
+    BigDecimal calculateTotalInventoryValue();
+    
+    @Query("SELECT m FROM Medicine m WHERE m.quantityInStock > 0 AND NOT EXISTS (SELECT l.id FROM MedicineLot l WHERE l.medicine = m)")
+    List<Medicine> findMedicinesWithoutLots();
+    
     @Query("SELECT m FROM Medicine m WHERE m.name LIKE %:keyword% OR m.description LIKE %:keyword% OR m.category LIKE %:keyword%")
     List<Medicine> searchMedicines(@Param("keyword") String keyword);
+    
+    @Query("SELECT m.version AS version, m.updatedAt AS updatedAt FROM Medicine m WHERE m.id = :id")
+    Optional<EntityVersion> findVersionById(@Param("id") Long id);
+    
+    @Query("SELECT MAX(m.updatedAt) AS maxUpdatedAt, COUNT(m) AS rowCount FROM Medicine m")
+    TableFingerprint findFingerprint();
+    
+    /**
+     * Flat projection used by prescription screening: id, name, category
+     */
+    @Query("SELECT m.id, m.name, m.category FROM Medicine m")
+    List<Object[]> findScreeningTerms();
+    
+    @Query("SELECT m.id, m.name, m.category FROM Medicine m WHERE m.id IN :ids")
+    List<Object[]> findScreeningTermsByIdIn(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Flat projection for the in-memory catalogue: id, name, unit price, stock, expiry date, category, version
+     */
+    @Query("SELECT m.id, m.name, m.unitPrice, m.quantityInStock, m.expiryDate, m.category, m.version FROM Medicine m")
+    List<Object[]> findCatalogueRows();
+    
+    @Query("SELECT m.id, m.name, m.unitPrice, m.quantityInStock, m.expiryDate, m.category, m.version FROM Medicine m WHERE m.id = :id")
+    List<Object[]> findCatalogueRow(@Param("id") Long id);
+    
+    /**
+     * Row count and version sum, compared against the catalogue to detect missed changes
+     */
+    @Query("SELECT COUNT(m), COALESCE(SUM(m.version), 0) FROM Medicine m")
+    List<Object[]> findCatalogueChecksum();
+    
+    /**
+     * Flat projection for sales reports: id, name, category, manufacturer, supplier id, supplier name
+     */
+    @Query("SELECT m.id, m.name, m.category, m.manufacturer, s.id, s.name FROM Medicine m LEFT JOIN m.supplier s")
+    List<Object[]> findReportAttributes();
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.pharma.pdms.repositories;
+
+import com.pharma.pdms.models.NotificationDelivery;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository interface for NotificationDelivery entity
+ * Implements Repository pattern
+ */
+@Repository
+public interface NotificationDeliveryRepository extends JpaRepository<NotificationDelivery, Long> {
+    
+    List<NotificationDelivery> findByStatusOrderByIdDesc(NotificationDelivery.Status status, Pageable pageable);
+}
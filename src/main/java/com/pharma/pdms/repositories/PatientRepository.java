@@ -1,12 +1,15 @@
 package com.pharma.pdms.repositories;
 
 import com.pharma.pdms.models.Patient;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository interface for Patient entity
@@ -15,11 +18,42 @@ import java.util.List;
 @Repository
 public interface PatientRepository extends JpaRepository<Patient, Long> {
     
-    List<Patient> findByName(String name);
+    @Query("SELECT p FROM Patient p WHERE lower(concat(p.firstName, ' ', p.lastName)) LIKE lower(concat('%', :name, '%'))")
+    List<Patient> findByNameContainingIgnoreCase(@Param("name") String name);
     
-    @Query("SELECT p FROM Patient p WHERE p.name LIKE %:keyword% OR p.address LIKE %:keyword% OR p.email LIKE %:keyword%")
+    /**
+     * Case-insensitive email lookup, served by the lower(email) index
+     */
+    @Query("SELECT p FROM Patient p WHERE lower(p.email) = lower(:email)")
+    Optional<Patient> findByEmail(@Param("email") String email);
+    
+    @Query("SELECT p FROM Patient p WHERE p.phone = :phone")
+    Optional<Patient> findByPhoneNumber(@Param("phone") String phone);
+    
+    @Query("SELECT p FROM Patient p WHERE p.firstName LIKE %:keyword% OR p.lastName LIKE %:keyword% OR p.address LIKE %:keyword% OR p.email LIKE %:keyword%")
     List<Patient> searchPatients(@Param("keyword") String keyword);
     
     @Query("SELECT p FROM Patient p ORDER BY p.createdAt DESC")
-    List<Patient> findRecentPatients(org.springframework.data.domain.Pageable pageable);
-}
\ No newline at end of file
+    List<Patient> findRecentPatients(Pageable pageable);
+    
+    @Query("SELECT pa FROM Prescription p JOIN p.patient pa GROUP BY pa ORDER BY COUNT(p) DESC")
+    List<Patient> findTopPatientsByPrescriptionCount(Pageable pageable);
+    
+    @Query("SELECT p.version AS version, p.updatedAt AS updatedAt FROM Patient p WHERE p.id = :id")
+    Optional<EntityVersion> findVersionById(@Param("id") Long id);
+    
+    @Query("SELECT MAX(p.updatedAt) AS maxUpdatedAt, COUNT(p) AS rowCount FROM Patient p")
+    TableFingerprint findFingerprint();
+    
+    /**
+     * Flat projection of patients with recorded allergies: id, allergies
+     */
+    @Query("SELECT p.id, p.allergies FROM Patient p WHERE p.allergies IS NOT NULL AND p.allergies <> ''")
+    List<Object[]> findAllergies();
+    
+    /**
+     * Flat projection of the given patients' allergies: id, allergies
+     */
+    @Query("SELECT p.id, p.allergies FROM Patient p WHERE p.id IN :ids")
+    List<Object[]> findAllergiesByIdIn(@Param("ids") Collection<Long> ids);
+}
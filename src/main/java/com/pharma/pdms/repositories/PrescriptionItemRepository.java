@@ -8,6 +8,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -19,8 +21,23 @@ public interface PrescriptionItemRepository extends JpaRepository<PrescriptionIt
     
     List<PrescriptionItem> findByPrescription(Prescription prescription);
     
+    List<PrescriptionItem> findByPrescriptionId(Long prescriptionId);
+    
     List<PrescriptionItem> findByMedicine(Medicine medicine);
     
     @Query("SELECT pi FROM PrescriptionItem pi JOIN pi.prescription p WHERE p.patient.id = :patientId")
     List<PrescriptionItem> findByPatientId(@Param("patientId") Long patientId);
-}
\ No newline at end of file
+    
+    /**
+     * Flat projection of items created since a date, dispensed or not:
+     * id, prescription id, patient id, medicine id, created at
+     */
+    @Query("SELECT pi.id, p.id, p.patient.id, pi.medicine.id, pi.createdAt FROM PrescriptionItem pi JOIN pi.prescription p WHERE pi.createdAt >= :since")
+    List<Object[]> findActiveMedicationsSince(@Param("since") Date since);
+    
+    @Query("SELECT pi.id, p.id, p.patient.id, pi.medicine.id, pi.createdAt FROM PrescriptionItem pi JOIN pi.prescription p WHERE pi.id IN :ids AND pi.createdAt >= :since")
+    List<Object[]> findActiveMedicationsByIdIn(@Param("ids") Collection<Long> ids, @Param("since") Date since);
+    
+    @Query("SELECT COUNT(pi) FROM PrescriptionItem pi WHERE pi.createdAt >= :since")
+    long countCreatedSince(@Param("since") Date since);
+}
@@ -10,6 +10,7 @@ import org.springframework.stereotype.Repository;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository interface for Prescription entity
@@ -20,8 +21,12 @@ public interface PrescriptionRepository extends JpaRepository<Prescription, Long
     
     List<Prescription> findByPatient(Patient patient);
     
+    List<Prescription> findByPatientId(Long patientId);
+    
     List<Prescription> findByDoctor(Doctor doctor);
     
+    List<Prescription> findByDoctorId(Long doctorId);
+    
     List<Prescription> findByPrescriptionDateBetween(Date startDate, Date endDate);
     
     @Query("SELECT COUNT(p) FROM Prescription p WHERE p.prescriptionDate >= :date")
@@ -29,4 +34,7 @@ public interface PrescriptionRepository extends JpaRepository<Prescription, Long
     
     @Query("SELECT p FROM Prescription p ORDER BY p.prescriptionDate DESC")
     List<Prescription> findRecentPrescriptions(org.springframework.data.domain.Pageable pageable);
-}
\ No newline at end of file
+    
+    @Query("SELECT p.patient.id FROM Prescription p WHERE p.id = :id")
+    Optional<Long> findPatientIdById(@Param("id") Long id);
+}
@@ -0,0 +1,19 @@
+package com.pharma.pdms.repositories;
+
+import com.pharma.pdms.models.PurchaseOrder;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository interface for PurchaseOrder entity
+ * Implements Repository pattern
+ */
+@Repository
+public interface PurchaseOrderRepository extends JpaRepository<PurchaseOrder, Long> {
+    
+    List<PurchaseOrder> findByCycleKeyOrderBySupplierNameAsc(String cycleKey);
+    
+    List<PurchaseOrder> findByStatusOrderByCreatedAtDesc(PurchaseOrder.Status status);
+}
@@ -0,0 +1,14 @@
+package com.pharma.pdms.repositories;
+
+import java.util.Date;
+
+/**
+ * Projection summarising a table for list validators: any insert, update or delete
+ * changes either the row count or the latest update time
+ */
+public interface TableFingerprint {
+    
+    Date getMaxUpdatedAt();
+    
+    Long getRowCount();
+}
@@ -0,0 +1,191 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.models.ERole;
+import com.pharma.pdms.models.Role;
+import com.pharma.pdms.models.User;
+import com.pharma.pdms.repositories.RoleRepository;
+import com.pharma.pdms.repositories.UserRepository;
+import com.pharma.pdms.utils.security.AuthorityCache;
+import com.pharma.pdms.utils.security.JwtTokenService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Service for logins and role changes. Login is the only point where a user's roles are
+ * read to authenticate; the token carries them from then on. A role change bumps the
+ * user's roles version and updates this node's AuthorityCache at once; other nodes pick
+ * it up from a periodic poll of recently changed users, so a revoked role stops working
+ * cluster-wide within role-sync-ms.
+ */
+@Service
+public class AuthService {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthService.class);
+
+    /**
+     * Overlap between polls, covering commits that land just behind the poll
+     */
+    private static final long SYNC_OVERLAP_MILLIS = 1000;
+
+    private final UserRepository userRepository;
+    private final RoleRepository roleRepository;
+    private final AuthenticationManager authenticationManager;
+    private final PasswordEncoder passwordEncoder;
+    private final JwtTokenService tokenService;
+    private final AuthorityCache authorityCache;
+    private final TransactionTemplate transactionTemplate;
+    private final String adminUsername;
+    private final String adminPassword;
+    private final String adminEmail;
+    // Tokens older than their lifetime are expired, so earlier role changes no longer matter
+    private volatile long syncedUpTo;
+
+    @Autowired
+    public AuthService(
+            UserRepository userRepository,
+            RoleRepository roleRepository,
+            AuthenticationManager authenticationManager,
+            PasswordEncoder passwordEncoder,
+            JwtTokenService tokenService,
+            AuthorityCache authorityCache,
+            PlatformTransactionManager transactionManager,
+            @Value("${pdms.security.admin.username:admin}") String adminUsername,
+            @Value("${pdms.security.admin.password:admin}") String adminPassword,
+            @Value("${pdms.security.admin.email:admin@pharmacy.com}") String adminEmail) {
+        this.userRepository = userRepository;
+        this.roleRepository = roleRepository;
+        this.authenticationManager = authenticationManager;
+        this.passwordEncoder = passwordEncoder;
+        this.tokenService = tokenService;
+        this.authorityCache = authorityCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.adminUsername = adminUsername;
+        this.adminPassword = adminPassword;
+        this.adminEmail = adminEmail;
+        this.syncedUpTo = System.currentTimeMillis() - tokenService.getExpirationMillis();
+    }
+
+    /**
+     * Create the roles, and an administrator when there are no users yet
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createDefaults() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (ERole name : ERole.values()) {
+                if (!roleRepository.findByName(name).isPresent()) {
+                    roleRepository.save(new Role(name));
+                }
+            }
+            if (userRepository.count() == 0) {
+                User admin = new User(adminUsername, adminEmail, passwordEncoder.encode(adminPassword));
+                admin.getRoles().add(roleRepository.findByName(ERole.ROLE_ADMIN).orElseThrow(IllegalStateException::new));
+                userRepository.save(admin);
+                log.info("security.admin_created username={}", adminUsername);
+            }
+        });
+    }
+
+    /**
+     * Check credentials and issue an access token
+     *
+     * @throws org.springframework.security.core.AuthenticationException if the credentials are wrong or the user is disabled
+     */
+    public Map<String, Object> login(String username, String password) {
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+        User user = transactionTemplate.execute(status -> {
+            User found = userRepository.findByUsername(username).orElseThrow(IllegalStateException::new);
+            found.setLastLogin(new Date());
+            return userRepository.save(found);
+        });
+
+        Set<String> roles = roleNames(user);
+        long rolesVersion = user.getRolesVersion() == null ? 0 : user.getRolesVersion();
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("token", tokenService.issue(user.getId(), user.getUsername(), roles, rolesVersion));
+        response.put("tokenType", "Bearer");
+        response.put("expiresInMillis", tokenService.getExpirationMillis());
+        response.put("username", user.getUsername());
+        response.put("roles", roles);
+        return response;
+    }
+
+    /**
+     * Replace a user's roles and optionally its active flag. Tokens issued before the change stop working.
+     *
+     * @param active New active flag, or null to leave it unchanged
+     */
+    public Optional<Map<String, Object>> updateRoles(Long userId, Set<ERole> roleNames, Boolean active) {
+        Optional<User> updated = transactionTemplate.execute(status -> userRepository.findById(userId).map(user -> {
+            Set<Role> roles = new HashSet<>();
+            for (ERole name : roleNames) {
+                roles.add(roleRepository.findByName(name).orElseGet(() -> roleRepository.save(new Role(name))));
+            }
+            user.setRoles(roles);
+            if (active != null) {
+                user.setIsActive(active);
+            }
+            user.setRolesVersion((user.getRolesVersion() == null ? 0 : user.getRolesVersion()) + 1);
+            user.setRolesChangedAt(new Date());
+            return userRepository.save(user);
+        }));
+        return updated.map(user -> {
+            authorityCache.update(user.getId(), user.getRolesVersion(), !Boolean.FALSE.equals(user.getIsActive()), roleNames(user));
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("id", user.getId());
+            result.put("username", user.getUsername());
+            result.put("roles", roleNames(user));
+            result.put("active", !Boolean.FALSE.equals(user.getIsActive()));
+            result.put("rolesVersion", user.getRolesVersion());
+            return result;
+        });
+    }
+
+    /**
+     * Apply role changes made through other nodes, and forget users idle for a token lifetime
+     */
+    @Scheduled(fixedDelayString = "${pdms.security.role-sync-ms:5000}")
+    public void syncRoleChanges() {
+        long now = System.currentTimeMillis();
+        List<User> changed = transactionTemplate.execute(status ->
+            userRepository.findByRolesChangedAtAfter(new Date(syncedUpTo - SYNC_OVERLAP_MILLIS)));
+        for (User user : changed) {
+            authorityCache.update(user.getId(), user.getRolesVersion() == null ? 0 : user.getRolesVersion(),
+                !Boolean.FALSE.equals(user.getIsActive()), roleNames(user));
+        }
+        syncedUpTo = now;
+        authorityCache.purgeIdle(tokenService.getExpirationMillis());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tokens", tokenService.getStats());
+        stats.put("authorities", authorityCache.getStats());
+        stats.put("roleChangesSyncedUpTo", new Date(syncedUpTo));
+        return stats;
+    }
+
+    private static Set<String> roleNames(User user) {
+        return user.getRoles().stream().map(role -> role.getName().name()).collect(Collectors.toCollection(TreeSet::new));
+    }
+}
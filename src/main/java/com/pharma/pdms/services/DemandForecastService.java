@@ -0,0 +1,401 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.models.DemandForecast;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.repositories.DemandForecastRepository;
+import com.pharma.pdms.utils.DateUtils;
+import com.pharma.pdms.utils.forecast.DemandModel;
+import com.pharma.pdms.utils.forecast.ReorderPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Service forecasting daily demand per medicine and deriving reorder levels from it.
+ * Demand is what was dispensed on prescriptions, dated by when it was dispensed, plus
+ * over-the-counter sales (completed transactions without a prescription). Items are also
+ * bounded by creation date so only the partitions that can hold them are read; an item
+ * dispensed more than dispense-window-days after it was written is not counted.
+ * Every medicine keeps a Holt-Winters state in
+ * demand_forecasts; the nightly job folds in only the days since each state's last
+ * update, in windows of a few weeks, updating all medicines in parallel. Reorder levels
+ * are written back to medicines once a model has seen enough history, and every medicine
+ * whose level changed gets an outbox event and a catalogue notification like any other
+ * medicine update, so low-stock alerts are re-evaluated against the new level.
+ * One node runs the update at a time: the run holds a session advisory lock, which the
+ * database releases if the node dies, and a node that finds it taken skips the run.
+ */
+@Service
+public class DemandForecastService {
+
+    private static final Logger log = LoggerFactory.getLogger(DemandForecastService.class);
+
+    private static final int WINDOW_DAYS = 28;
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String RUN_LOCK = "hashtext('pdms_demand_forecast')";
+
+    static final String DEMAND_QUERY = "SELECT medicine_id, day, SUM(quantity) FROM ("
+        + " SELECT pi.medicine_id, CAST(pi.dispensed_at AS date) AS day, pi.quantity FROM prescription_items pi"
+        + " WHERE pi.dispensed_at >= ? AND pi.dispensed_at < ? AND pi.created_at >= ? AND pi.created_at < ?"
+        + " UNION ALL"
+        + " SELECT ti.medicine_id, CAST(t.transaction_date AS date), ti.quantity"
+        + " FROM transactions t JOIN transaction_items ti ON ti.transaction_id = t.id"
+        + " WHERE t.prescription_id IS NULL AND t.payment_status = 'COMPLETED'"
+        + " AND t.transaction_date >= ? AND t.transaction_date < ?"
+        + ") demand GROUP BY medicine_id, day";
+
+    private static final String UPSERT_FORECAST = "INSERT INTO demand_forecasts (medicine_id, level, trend,"
+        + " seasonal_factors, error_variance, observations, last_day, lead_time_demand, reorder_level, updated_at)"
+        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, now())"
+        + " ON CONFLICT (medicine_id) DO UPDATE SET level = EXCLUDED.level, trend = EXCLUDED.trend,"
+        + " seasonal_factors = EXCLUDED.seasonal_factors, error_variance = EXCLUDED.error_variance,"
+        + " observations = EXCLUDED.observations, last_day = EXCLUDED.last_day,"
+        + " lead_time_demand = EXCLUDED.lead_time_demand, reorder_level = EXCLUDED.reorder_level,"
+        + " updated_at = EXCLUDED.updated_at";
+
+    // Bumping the version keeps concurrent edits of the medicine from silently restoring the old level;
+    // only rows whose level actually changed are returned, as snapshots for their events
+    static final String UPDATE_REORDER_LEVELS = "UPDATE medicines m SET reorder_level = c.level,"
+        + " version = m.version + 1, updated_at = now()"
+        + " FROM unnest(?::bigint[], ?::int[]) AS c(id, level)"
+        + " WHERE m.id = c.id AND m.reorder_level IS DISTINCT FROM c.level"
+        + " RETURNING m.id, m.name, m.category, m.manufacturer, m.batch_number, m.unit_price,"
+        + " m.quantity_in_stock, m.reorder_level, m.expiry_date, m.is_active, m.version";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final DemandForecastRepository forecastRepository;
+    private final InventoryOutboxService outboxService;
+    private final MedicineCatalogueService catalogueService;
+    private final DemandModel.Parameters parameters;
+    private final ReorderPolicy reorderPolicy;
+    private final ForkJoinPool pool;
+    private final boolean enabled;
+    private final int historyDays;
+    private final int minObservations;
+    private final int dispenseWindowDays;
+
+    private volatile long lastRunAt;
+    private volatile long lastRunMillis;
+    private volatile int lastRunMedicines;
+    private volatile long lastRunDays;
+    private volatile int lastRunReorderChanges;
+
+    @Autowired
+    public DemandForecastService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            DemandForecastRepository forecastRepository,
+            InventoryOutboxService outboxService,
+            MedicineCatalogueService catalogueService,
+            @Value("${pdms.forecast.enabled:true}") boolean enabled,
+            @Value("${pdms.forecast.history-days:364}") int historyDays,
+            @Value("${pdms.forecast.min-observations:28}") int minObservations,
+            @Value("${pdms.forecast.dispense-window-days:90}") int dispenseWindowDays,
+            @Value("${pdms.forecast.lead-time-days:7}") int leadTimeDays,
+            @Value("${pdms.forecast.service-level:0.95}") double serviceLevel,
+            @Value("${pdms.forecast.min-reorder-level:1}") int minReorderLevel,
+            @Value("${pdms.forecast.alpha:0.2}") double alpha,
+            @Value("${pdms.forecast.beta:0.05}") double beta,
+            @Value("${pdms.forecast.gamma:0.1}") double gamma,
+            @Value("${pdms.forecast.phi:0.98}") double phi,
+            @Value("${pdms.forecast.parallelism:0}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.forecastRepository = forecastRepository;
+        this.outboxService = outboxService;
+        this.catalogueService = catalogueService;
+        this.parameters = new DemandModel.Parameters(alpha, beta, gamma, phi, alpha);
+        this.reorderPolicy = new ReorderPolicy(leadTimeDays, serviceLevel, minReorderLevel);
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.enabled = enabled;
+        this.historyDays = historyDays;
+        this.minObservations = minObservations;
+        this.dispenseWindowDays = dispenseWindowDays;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Scheduled(cron = "${pdms.forecast.cron:0 30 1 * * *}")
+    public void runNightly() {
+        if (enabled) {
+            updateForecasts(LocalDate.now().minusDays(1));
+        }
+    }
+
+    /**
+     * Bring every medicine's model up to date through the given day and refresh reorder levels,
+     * unless another node or thread is already doing so
+     *
+     * @return Number of medicines whose reorder level changed
+     */
+    public int updateForecasts(LocalDate through) {
+        // The lock belongs to this connection's session, so it is held across the run's many transactions
+        Integer changed = jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (Statement statement = connection.createStatement();
+                 ResultSet locked = statement.executeQuery("SELECT pg_try_advisory_lock(" + RUN_LOCK + ")")) {
+                if (!locked.next() || !locked.getBoolean(1)) {
+                    log.info("forecast.skipped reason=running_elsewhere");
+                    return 0;
+                }
+            }
+            try {
+                return runUpdate(through);
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SELECT pg_advisory_unlock(" + RUN_LOCK + ")");
+                }
+            }
+        });
+        return changed == null ? 0 : changed;
+    }
+
+    private int runUpdate(LocalDate through) {
+        long start = System.currentTimeMillis();
+        Map<Long, Integer> currentLevels = new HashMap<>();
+        Map<Long, DemandModel> models = loadModels(through, currentLevels);
+
+        LocalDate earliest = through;
+        for (DemandModel model : models.values()) {
+            if (model.getLastDay().isBefore(earliest)) {
+                earliest = model.getLastDay();
+            }
+        }
+        // A model left behind for longer than the history window resumes at its start
+        LocalDate from = earliest.plusDays(1).isBefore(through.minusDays(historyDays - 1))
+            ? through.minusDays(historyDays - 1) : earliest.plusDays(1);
+
+        for (LocalDate windowStart = from; !windowStart.isAfter(through); windowStart = windowStart.plusDays(WINDOW_DAYS)) {
+            LocalDate windowEnd = windowStart.plusDays(WINDOW_DAYS - 1).isAfter(through)
+                ? through : windowStart.plusDays(WINDOW_DAYS - 1);
+            Map<Long, double[]> demand = loadDemand(windowStart, windowEnd);
+            LocalDate firstDay = windowStart;
+            pool.submit(() -> models.entrySet().parallelStream()
+                .forEach(entry -> apply(entry.getValue(), demand.get(entry.getKey()), firstDay, windowEnd))).join();
+        }
+
+        List<Object[]> forecastRows = pool.submit(() -> models.entrySet().parallelStream()
+            .map(entry -> forecastRow(entry.getKey(), entry.getValue()))
+            .collect(Collectors.toList())).join();
+        List<Object[]> reorderChanges = new ArrayList<>();
+        for (Object[] row : forecastRows) {
+            Integer level = (Integer) row[8];
+            if (level != null && !level.equals(currentLevels.get((Long) row[0]))) {
+                reorderChanges.add(new Object[] {row[0], level});
+            }
+        }
+
+        writeBatches(UPSERT_FORECAST, forecastRows);
+        int changed = writeReorderLevels(reorderChanges);
+
+        lastRunAt = System.currentTimeMillis();
+        lastRunMillis = lastRunAt - start;
+        lastRunMedicines = models.size();
+        lastRunDays = from.isAfter(through) ? 0 : ChronoUnit.DAYS.between(from, through) + 1;
+        lastRunReorderChanges = changed;
+        log.info("forecast.updated medicines={} days={} took_ms={} reorder_levels_changed={}",
+            models.size(), lastRunDays, lastRunMillis, changed);
+        return changed;
+    }
+
+    /**
+     * Forecast for one medicine
+     *
+     * @param days Number of days of daily forecast to include
+     */
+    public Optional<Map<String, Object>> getForecast(Long medicineId, int days) {
+        return forecastRepository.findById(medicineId).map(forecast -> {
+            DemandModel model = toModel(forecast);
+            List<Map<String, Object>> daily = new ArrayList<>();
+            for (int h = 1; h <= days; h++) {
+                Map<String, Object> day = new LinkedHashMap<>();
+                day.put("date", model.getLastDay().plusDays(h));
+                day.put("demand", model.forecast(h, parameters));
+                daily.add(day);
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("medicineId", medicineId);
+            result.put("reorderLevel", forecast.getReorderLevel());
+            result.put("leadTimeDays", reorderPolicy.getLeadTimeDays());
+            result.put("serviceLevel", reorderPolicy.getServiceLevel());
+            result.put("leadTimeDemand", forecast.getLeadTimeDemand());
+            result.put("forecastErrorStdDev", Math.sqrt(model.getErrorVariance()));
+            result.put("observations", model.getObservations());
+            result.put("lastDay", model.getLastDay());
+            result.put("daily", daily);
+            return result;
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("leadTimeDays", reorderPolicy.getLeadTimeDays());
+        stats.put("serviceLevel", reorderPolicy.getServiceLevel());
+        stats.put("parallelism", pool.getParallelism());
+        stats.put("lastRunAgeMillis", lastRunAt == 0 ? null : System.currentTimeMillis() - lastRunAt);
+        stats.put("lastRunMillis", lastRunMillis);
+        stats.put("lastRunMedicines", lastRunMedicines);
+        stats.put("lastRunDays", lastRunDays);
+        stats.put("lastRunReorderChanges", lastRunReorderChanges);
+        return stats;
+    }
+
+    /**
+     * Load the saved model of every medicine, starting new medicines from their creation
+     * day or the start of the history window, whichever is later
+     */
+    private Map<Long, DemandModel> loadModels(LocalDate through, Map<Long, Integer> currentLevels) {
+        Map<Long, DemandModel> saved = new HashMap<>();
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+            "SELECT medicine_id, level, trend, seasonal_factors, error_variance, observations, last_day FROM demand_forecasts",
+            resultSet -> {
+                saved.put(resultSet.getLong(1), new DemandModel(resultSet.getDouble(2), resultSet.getDouble(3),
+                    DemandModel.parseSeasonal(resultSet.getString(4)), resultSet.getDouble(5), resultSet.getInt(6),
+                    resultSet.getDate(7).toLocalDate()));
+            }));
+
+        LocalDate historyStart = through.minusDays(historyDays);
+        Map<Long, DemandModel> models = new ConcurrentHashMap<>();
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+            "SELECT id, reorder_level, created_at FROM medicines",
+            resultSet -> {
+                long id = resultSet.getLong(1);
+                currentLevels.put(id, (Integer) resultSet.getObject(2));
+                DemandModel model = saved.get(id);
+                if (model == null) {
+                    LocalDate created = DateUtils.toLocalDate(resultSet.getTimestamp(3));
+                    model = new DemandModel(created == null || created.isBefore(historyStart)
+                        ? historyStart : created.minusDays(1));
+                }
+                models.put(id, model);
+            }));
+        return models;
+    }
+
+    /**
+     * Daily demand per medicine over an inclusive window, indexed by day within the window
+     */
+    private Map<Long, double[]> loadDemand(LocalDate firstDay, LocalDate lastDay) {
+        int days = (int) ChronoUnit.DAYS.between(firstDay, lastDay) + 1;
+        Date from = Date.valueOf(firstDay);
+        Date to = Date.valueOf(lastDay.plusDays(1));
+        Date createdFrom = Date.valueOf(firstDay.minusDays(dispenseWindowDays));
+        Map<Long, double[]> demand = new HashMap<>();
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(DEMAND_QUERY, resultSet -> {
+            int index = (int) ChronoUnit.DAYS.between(firstDay, resultSet.getDate(2).toLocalDate());
+            if (index >= 0 && index < days) {
+                demand.computeIfAbsent(resultSet.getLong(1), id -> new double[days])[index] += resultSet.getDouble(3);
+            }
+        }, from, to, createdFrom, to, from, to));
+        return demand;
+    }
+
+    private void apply(DemandModel model, double[] demand, LocalDate firstDay, LocalDate lastDay) {
+        for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            if (day.isAfter(model.getLastDay())) {
+                double quantity = demand == null ? 0 : demand[(int) ChronoUnit.DAYS.between(firstDay, day)];
+                model.update(day, quantity, parameters);
+            }
+        }
+    }
+
+    /**
+     * Row for UPSERT_FORECAST; the reorder level is null until the model has enough history
+     */
+    private Object[] forecastRow(Long medicineId, DemandModel model) {
+        double leadTimeDemand = model.forecastTotal(reorderPolicy.getLeadTimeDays(), parameters);
+        Integer reorderLevel = model.getObservations() >= minObservations
+            ? reorderPolicy.reorderLevel(leadTimeDemand, model.getErrorVariance()) : null;
+        return new Object[] {medicineId, model.getLevel(), model.getTrend(), model.formatSeasonal(),
+            model.getErrorVariance(), model.getObservations(), Date.valueOf(model.getLastDay()),
+            leadTimeDemand, reorderLevel};
+    }
+
+    private void writeBatches(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            List<Object[]> batch = rows.subList(from, Math.min(rows.size(), from + BATCH_SIZE));
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, batch));
+        }
+    }
+
+    /**
+     * Set the new reorder levels one batch per transaction, recording every medicine that
+     * actually changed in the outbox and the catalogue as part of the same transaction
+     *
+     * @param changes Rows of medicine id, reorder level
+     * @return Number of medicines whose level changed
+     */
+    private int writeReorderLevels(List<Object[]> changes) {
+        int changed = 0;
+        for (int from = 0; from < changes.size(); from += BATCH_SIZE) {
+            List<Object[]> batch = changes.subList(from, Math.min(changes.size(), from + BATCH_SIZE));
+            Long[] ids = batch.stream().map(row -> (Long) row[0]).toArray(Long[]::new);
+            Integer[] levels = batch.stream().map(row -> (Integer) row[1]).toArray(Integer[]::new);
+            Integer updated = transactionTemplate.execute(status -> {
+                List<Medicine> medicines = jdbcTemplate.query(UPDATE_REORDER_LEVELS,
+                    (resultSet, rowNum) -> toMedicine(resultSet), ids, levels);
+                for (Medicine medicine : medicines) {
+                    outboxService.record(medicine, InventoryOutboxService.UPDATED);
+                    catalogueService.publishChange(medicine);
+                }
+                return medicines.size();
+            });
+            changed += updated == null ? 0 : updated;
+        }
+        return changed;
+    }
+
+    private static Medicine toMedicine(ResultSet resultSet) throws SQLException {
+        Medicine medicine = new Medicine();
+        medicine.setId(resultSet.getLong("id"));
+        medicine.setName(resultSet.getString("name"));
+        medicine.setCategory(resultSet.getString("category"));
+        medicine.setManufacturer(resultSet.getString("manufacturer"));
+        medicine.setBatchNumber(resultSet.getString("batch_number"));
+        medicine.setUnitPrice(resultSet.getBigDecimal("unit_price"));
+        medicine.setQuantityInStock((Integer) resultSet.getObject("quantity_in_stock"));
+        medicine.setReorderLevel((Integer) resultSet.getObject("reorder_level"));
+        medicine.setExpiryDate(resultSet.getDate("expiry_date"));
+        medicine.setIsActive((Boolean) resultSet.getObject("is_active"));
+        medicine.setVersion(resultSet.getLong("version"));
+        return medicine;
+    }
+
+    private static DemandModel toModel(DemandForecast forecast) {
+        return new DemandModel(forecast.getLevel(), forecast.getTrend(),
+            DemandModel.parseSeasonal(forecast.getSeasonalFactors()), forecast.getErrorVariance(),
+            forecast.getObservations(), DateUtils.toLocalDate(forecast.getLastDay()));
+    }
+}
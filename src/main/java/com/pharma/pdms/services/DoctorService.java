@@ -1,8 +1,13 @@
 package com.pharma.pdms.services;
 
+import com.pharma.pdms.exceptions.ConcurrentUpdateException;
 import com.pharma.pdms.models.Doctor;
 import com.pharma.pdms.repositories.DoctorRepository;
+import com.pharma.pdms.repositories.EntityVersion;
+import com.pharma.pdms.repositories.TableFingerprint;
+import com.pharma.pdms.utils.concurrency.OptimisticRetryExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -11,39 +16,61 @@ import java.util.Optional;
 
 @Service
 public class DoctorService {
+    private static final int TOP_DOCTORS = 10;
+    
     private final DoctorRepository doctorRepository;
+    private final OptimisticRetryExecutor retryExecutor;
     
     @Autowired
-    public DoctorService(DoctorRepository doctorRepository) {
+    public DoctorService(DoctorRepository doctorRepository,
+                         OptimisticRetryExecutor retryExecutor) {
         this.doctorRepository = doctorRepository;
+        this.retryExecutor = retryExecutor;
     }
     
+    @Transactional(readOnly = true)
     public List<Doctor> getAllDoctors() {
         return doctorRepository.findAll();
     }
     
+    @Transactional(readOnly = true)
+    public Optional<EntityVersion> getDoctorVersion(Long id) {
+        return doctorRepository.findVersionById(id);
+    }
+    
+    @Transactional(readOnly = true)
+    public TableFingerprint getDoctorFingerprint() {
+        return doctorRepository.findFingerprint();
+    }
+    
+    @Transactional(readOnly = true)
     public Optional<Doctor> getDoctorById(Long id) {
         return doctorRepository.findById(id);
     }
     
+    @Transactional(readOnly = true)
     public List<Doctor> searchDoctorsByName(String name) {
         return doctorRepository.findByNameContainingIgnoreCase(name);
     }
     
+    @Transactional(readOnly = true)
     public List<Doctor> getDoctorsBySpecialization(String specialization) {
         return doctorRepository.findBySpecialization(specialization);
     }
     
+    @Transactional(readOnly = true)
     public Optional<Doctor> getDoctorByEmail(String email) {
         return doctorRepository.findByEmail(email);
     }
     
+    @Transactional(readOnly = true)
     public Optional<Doctor> getDoctorByLicenseNumber(String licenseNumber) {
         return doctorRepository.findByLicenseNumber(licenseNumber);
     }
     
+    @Transactional(readOnly = true)
     public List<Doctor> getTopDoctorsByPrescriptionCount() {
-        return doctorRepository.findTopDoctorsByPrescriptionCount();
+        return doctorRepository.findTopDoctorsByPrescriptionCount(PageRequest.of(0, TOP_DOCTORS));
     }
     
     @Transactional
@@ -51,13 +78,25 @@ public class DoctorService {
         return doctorRepository.save(doctor);
     }
     
-    @Transactional
+    /**
+     * Update a doctor, retrying on concurrent modification.
+     * A client that sends the version it read gets a conflict instead of overwriting a newer row.
+     */
     public Optional<Doctor> updateDoctor(Long id, Doctor doctorDetails) {
-        return doctorRepository.findById(id)
+        return retryExecutor.execute("Doctor#" + id, () -> doctorRepository.findById(id)
             .map(existingDoctor -> {
+                if (doctorDetails.getVersion() != null
+                        && !doctorDetails.getVersion().equals(existingDoctor.getVersion())) {
+                    throw new ConcurrentUpdateException("Doctor " + id + " was modified by another user (expected version "
+                        + doctorDetails.getVersion() + ", found " + existingDoctor.getVersion() + ")");
+                }
+                
                 // Update only the non-null properties
-                if (doctorDetails.getName() != null) {
-                    existingDoctor.setName(doctorDetails.getName());
+                if (doctorDetails.getFirstName() != null) {
+                    existingDoctor.setFirstName(doctorDetails.getFirstName());
+                }
+                if (doctorDetails.getLastName() != null) {
+                    existingDoctor.setLastName(doctorDetails.getLastName());
                 }
                 if (doctorDetails.getSpecialization() != null) {
                     existingDoctor.setSpecialization(doctorDetails.getSpecialization());
@@ -65,8 +104,8 @@ public class DoctorService {
                 if (doctorDetails.getLicenseNumber() != null) {
                     existingDoctor.setLicenseNumber(doctorDetails.getLicenseNumber());
                 }
-                if (doctorDetails.getPhoneNumber() != null) {
-                    existingDoctor.setPhoneNumber(doctorDetails.getPhoneNumber());
+                if (doctorDetails.getPhone() != null) {
+                    existingDoctor.setPhone(doctorDetails.getPhone());
                 }
                 if (doctorDetails.getEmail() != null) {
                     existingDoctor.setEmail(doctorDetails.getEmail());
@@ -74,8 +113,9 @@ public class DoctorService {
                 if (doctorDetails.getAddress() != null) {
                     existingDoctor.setAddress(doctorDetails.getAddress());
                 }
-                return doctorRepository.save(existingDoctor);
-            });
+                // Flush so a version conflict surfaces inside the retried transaction
+                return doctorRepository.saveAndFlush(existingDoctor);
+            }));
     }
     
     @Transactional
@@ -0,0 +1,378 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.utils.inventory.ExpiredStock;
+import com.pharma.pdms.utils.notification.NotificationFactory;
+import com.pharma.pdms.utils.notification.NotificationType;
+import com.pharma.pdms.utils.notification.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Nightly sweep for expired stock. Medicines whose earliest lot expired and that still
+ * hold stock are split into id ranges. The ranges are walked in parallel by keyset in
+ * chunks of chunk-size ids. Each medicine is handled in its own transaction: stock in
+ * expired lots is quarantined, and a medicine left with nothing sellable is
+ * deactivated. Every range keeps a checkpoint row under a lease, advanced after each
+ * chunk. A sweep interrupted by a crash resumes from the last checkpoint, on startup or
+ * on another node once the lease expires. Nodes running the sweep together share its
+ * ranges. A token bucket caps the medicines processed per second across all workers.
+ * Once every range is done, one aggregated report is logged and emailed.
+ */
+@Service
+public class ExpirySweepService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpirySweepService.class);
+
+    private static final String CANDIDATE = "expiry_date < ? AND quantity_in_stock > 0";
+
+    private static final String BOUNDS = "SELECT MIN(id), MAX(id), COUNT(*) FROM medicines WHERE " + CANDIDATE;
+
+    private static final String CREATE_RANGE = "INSERT INTO expiry_sweep_ranges"
+        + " (run_date, range_index, range_start, range_end, last_id, completed, report_sent,"
+        + " medicines_checked, medicines_deactivated, lots_quarantined, units_quarantined, updated_at)"
+        + " VALUES (?, ?, ?, ?, ?, false, false, 0, 0, 0, 0, now()) ON CONFLICT (run_date, range_index) DO NOTHING";
+
+    private static final String CLAIM_RANGE = "UPDATE expiry_sweep_ranges"
+        + " SET claimed_by = ?, lease_until = now() + make_interval(secs => ?), updated_at = now()"
+        + " WHERE id = (SELECT id FROM expiry_sweep_ranges WHERE run_date = ? AND NOT completed"
+        + " AND (lease_until IS NULL OR lease_until < now()) ORDER BY range_index LIMIT 1 FOR UPDATE SKIP LOCKED)"
+        + " RETURNING id, range_end, last_id";
+
+    private static final String NEXT_CHUNK = "SELECT id FROM medicines"
+        + " WHERE id > ? AND id <= ? AND " + CANDIDATE + " ORDER BY id LIMIT ?";
+
+    private static final String CHECKPOINT = "UPDATE expiry_sweep_ranges"
+        + " SET last_id = ?, completed = ?, medicines_checked = medicines_checked + ?,"
+        + " medicines_deactivated = medicines_deactivated + ?, lots_quarantined = lots_quarantined + ?,"
+        + " units_quarantined = units_quarantined + ?, lease_until = now() + make_interval(secs => ?), updated_at = now()"
+        + " WHERE id = ? AND claimed_by = ?";
+
+    private static final String COUNT_RANGES = "SELECT COUNT(*) FROM expiry_sweep_ranges WHERE run_date = ?";
+
+    private static final String PENDING_RANGES = "SELECT COUNT(*) FROM expiry_sweep_ranges WHERE run_date = ? AND NOT completed";
+
+    private static final String CLAIM_REPORT = "UPDATE expiry_sweep_ranges SET report_sent = true"
+        + " WHERE run_date = ? AND range_index = 0 AND NOT report_sent";
+
+    private static final String INTERRUPTED_RUNS = "SELECT DISTINCT run_date FROM expiry_sweep_ranges"
+        + " WHERE NOT completed AND run_date >= ? ORDER BY run_date";
+
+    private static final String RUN_TOTALS = "SELECT COUNT(*), COALESCE(SUM(medicines_checked), 0),"
+        + " COALESCE(SUM(medicines_deactivated), 0), COALESCE(SUM(lots_quarantined), 0), COALESCE(SUM(units_quarantined), 0)"
+        + " FROM expiry_sweep_ranges WHERE run_date = ?";
+
+    private static final String BY_CATEGORY = "SELECT COALESCE(m.category, 'Uncategorised'), COUNT(DISTINCT m.id),"
+        + " SUM(l.quarantined_quantity), SUM(l.quarantined_quantity * COALESCE(m.unit_price, 0))"
+        + " FROM medicine_lots l JOIN medicines m ON m.id = l.medicine_id WHERE l.quarantined_on = ?"
+        + " GROUP BY 1 ORDER BY 4 DESC";
+
+    private static final String TOP_ITEMS = "SELECT m.id, m.name, m.is_active, SUM(l.quarantined_quantity),"
+        + " SUM(l.quarantined_quantity * COALESCE(m.unit_price, 0))"
+        + " FROM medicine_lots l JOIN medicines m ON m.id = l.medicine_id WHERE l.quarantined_on = ?"
+        + " GROUP BY m.id, m.name, m.is_active ORDER BY 5 DESC LIMIT ?";
+
+    private static final RowMapper<long[]> CLAIMED = (resultSet, rowNum) ->
+        new long[] {resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3)};
+
+    private final MedicineService medicineService;
+    private final JdbcTemplate jdbcTemplate;
+    private final NotificationFactory notificationFactory;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final int parallelism;
+    private final int leaseSeconds;
+    private final int reportTopItems;
+    private final String reportRecipient;
+    private final TokenBucket rateLimit;
+    private final ExecutorService workers;
+    private final ExecutorService coordinator;
+    private volatile Map<String, Object> lastReport = Collections.emptyMap();
+
+    @Autowired
+    public ExpirySweepService(
+            MedicineService medicineService,
+            JdbcTemplate jdbcTemplate,
+            NotificationFactory notificationFactory,
+            @Value("${pdms.expiry-sweep.enabled:true}") boolean enabled,
+            @Value("${pdms.expiry-sweep.chunk-size:200}") int chunkSize,
+            @Value("${pdms.expiry-sweep.parallelism:4}") int parallelism,
+            @Value("${pdms.expiry-sweep.medicines-per-second:50}") double medicinesPerSecond,
+            @Value("${pdms.expiry-sweep.lease-seconds:300}") int leaseSeconds,
+            @Value("${pdms.expiry-sweep.report-top-items:20}") int reportTopItems,
+            @Value("${pdms.expiry-sweep.report-recipient:admin@pharmacy.com}") String reportRecipient) {
+        this.medicineService = medicineService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.notificationFactory = notificationFactory;
+        this.enabled = enabled;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.parallelism = Math.max(1, parallelism);
+        this.leaseSeconds = leaseSeconds;
+        this.reportTopItems = reportTopItems;
+        this.reportRecipient = reportRecipient;
+        this.rateLimit = new TokenBucket(medicinesPerSecond, this.parallelism);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "expiry-sweep-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.coordinator = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expiry-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Ranges in progress keep their checkpoint and are resumed after the lease expires
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    @Scheduled(cron = "${pdms.expiry-sweep.cron:0 0 1 * * *}")
+    public void runNightly() {
+        if (enabled) {
+            // Off the scheduler thread, which the other scheduled jobs share
+            coordinator.execute(() -> sweep(LocalDate.now()));
+        }
+    }
+
+    /**
+     * Resume a sweep from today or yesterday that a crash or shutdown left unfinished
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        if (!enabled) {
+            return;
+        }
+        List<LocalDate> runs = jdbcTemplate.queryForList(INTERRUPTED_RUNS, Date.class, Date.valueOf(LocalDate.now().minusDays(1)))
+            .stream().map(Date::toLocalDate).collect(Collectors.toList());
+        for (LocalDate runDate : runs) {
+            log.info("expiry_sweep.resuming run_date={}", runDate);
+            coordinator.execute(() -> sweep(runDate));
+        }
+    }
+
+    /**
+     * Quarantine stock in lots that expired before the given day, resuming the run for that
+     * day if it was started before. Returns once every range of the run is done, taking over
+     * ranges whose node stopped renewing its lease.
+     *
+     * @return The aggregated report if this node sent it, otherwise empty
+     */
+    public synchronized Map<String, Object> sweep(LocalDate runDate) {
+        long start = System.currentTimeMillis();
+        Date day = Date.valueOf(runDate);
+        createRanges(day);
+
+        String owner = UUID.randomUUID().toString();
+        while (true) {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                running.add(workers.submit(() -> {
+                    long[] range;
+                    while ((range = claimRange(day, owner)) != null) {
+                        sweepRange(day, owner, range[0], range[1], range[2]);
+                    }
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> worker : running) {
+                    try {
+                        worker.get();
+                    } catch (ExecutionException e) {
+                        // The range keeps its checkpoint and is claimed again when its lease expires
+                        log.error("expiry_sweep.range_failed run_date={}", runDate, e.getCause());
+                    }
+                }
+                Long pending = jdbcTemplate.queryForObject(PENDING_RANGES, Long.class, day);
+                if (pending == null || pending == 0) {
+                    break;
+                }
+                // Ranges leased by other nodes: wait for them to finish or for their leases to expire
+                Thread.sleep(TimeUnit.SECONDS.toMillis(leaseSeconds) / 4);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Collections.emptyMap();
+            }
+        }
+
+        if (jdbcTemplate.update(CLAIM_REPORT, day) == 0) {
+            // Another node finishing the same run sends the report
+            return Collections.emptyMap();
+        }
+        Map<String, Object> report = buildReport(day);
+        report.put("tookMillis", System.currentTimeMillis() - start);
+        lastReport = report;
+        emit(runDate, report);
+        return report;
+    }
+
+    /**
+     * Report of the last run this node finished
+     */
+    public Map<String, Object> getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Split the candidates into id ranges; the first node to start the run decides them
+     */
+    private void createRanges(Date day) {
+        Long existing = jdbcTemplate.queryForObject(COUNT_RANGES, Long.class, day);
+        if (existing != null && existing > 0) {
+            return;
+        }
+        long[] bounds = jdbcTemplate.queryForObject(BOUNDS, (resultSet, rowNum) ->
+            new long[] {resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3)}, day);
+        if (bounds[2] == 0) {
+            // Record an empty range so the run counts as done
+            jdbcTemplate.update(CREATE_RANGE, day, 0, 0L, 0L, 0L);
+            return;
+        }
+        long ranges = Math.max(1, Math.min(parallelism, (bounds[2] + chunkSize - 1) / chunkSize));
+        long span = (bounds[1] - bounds[0] + ranges) / ranges;
+        for (int i = 0; i < ranges; i++) {
+            long rangeStart = bounds[0] - 1 + i * span;
+            long rangeEnd = i == ranges - 1 ? bounds[1] : rangeStart + span;
+            jdbcTemplate.update(CREATE_RANGE, day, i, rangeStart, rangeEnd, rangeStart);
+        }
+    }
+
+    private long[] claimRange(Date day, String owner) {
+        List<long[]> claimed = jdbcTemplate.query(CLAIM_RANGE, CLAIMED, owner, leaseSeconds, day);
+        return claimed.isEmpty() ? null : claimed.get(0);
+    }
+
+    private void sweepRange(Date day, String owner, long rangeId, long rangeEnd, long lastId) throws InterruptedException {
+        LocalDate runDate = day.toLocalDate();
+        while (true) {
+            List<Long> ids = jdbcTemplate.queryForList(NEXT_CHUNK, Long.class, lastId, rangeEnd, day, chunkSize);
+            long deactivated = 0;
+            long lots = 0;
+            long units = 0;
+            for (Long id : ids) {
+                rateLimit.acquire();
+                Optional<ExpiredStock> expired;
+                try {
+                    expired = medicineService.quarantineExpired(id, runDate);
+                } catch (RuntimeException e) {
+                    // Still a candidate, so the next sweep picks it up again
+                    log.warn("expiry_sweep.medicine_failed medicine_id={}", id, e);
+                    continue;
+                }
+                if (expired.isPresent()) {
+                    deactivated += expired.get().isDeactivated() ? 1 : 0;
+                    lots += expired.get().getQuarantinedLots().size();
+                    units += expired.get().getQuarantinedUnits();
+                }
+            }
+            boolean completed = ids.size() < chunkSize;
+            if (!ids.isEmpty()) {
+                lastId = ids.get(ids.size() - 1);
+            }
+            int updated = jdbcTemplate.update(CHECKPOINT, lastId, completed, ids.size(), deactivated, lots, units,
+                leaseSeconds, rangeId, owner);
+            if (updated == 0) {
+                // The lease expired and another node took the range over from the last checkpoint
+                log.warn("expiry_sweep.lease_lost range_id={} last_id={}", rangeId, lastId);
+                return;
+            }
+            if (completed) {
+                return;
+            }
+        }
+    }
+
+    private Map<String, Object> buildReport(Date day) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("runDate", day.toLocalDate().toString());
+        jdbcTemplate.query(RUN_TOTALS, resultSet -> {
+            report.put("ranges", resultSet.getLong(1));
+            report.put("medicinesChecked", resultSet.getLong(2));
+            report.put("medicinesDeactivated", resultSet.getLong(3));
+            report.put("lotsQuarantined", resultSet.getLong(4));
+            report.put("unitsQuarantined", resultSet.getLong(5));
+        }, day);
+
+        List<Map<String, Object>> byCategory = new ArrayList<>();
+        double totalValue = 0;
+        for (Map<String, Object> row : jdbcTemplate.query(BY_CATEGORY, (resultSet, rowNum) -> {
+            Map<String, Object> category = new LinkedHashMap<>();
+            category.put("category", resultSet.getString(1));
+            category.put("medicines", resultSet.getLong(2));
+            category.put("units", resultSet.getLong(3));
+            category.put("value", resultSet.getDouble(4));
+            return category;
+        }, day)) {
+            totalValue += (Double) row.get("value");
+            byCategory.add(row);
+        }
+        report.put("valueQuarantined", totalValue);
+        report.put("byCategory", byCategory);
+        report.put("topItems", jdbcTemplate.query(TOP_ITEMS, (resultSet, rowNum) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("medicineId", resultSet.getLong(1));
+            item.put("name", resultSet.getString(2));
+            item.put("active", resultSet.getBoolean(3));
+            item.put("units", resultSet.getLong(4));
+            item.put("value", resultSet.getDouble(5));
+            return item;
+        }, day, reportTopItems));
+        return report;
+    }
+
+    /**
+     * Log and email the report; the email is deduplicated per run, so nodes finishing
+     * together send it once
+     */
+    private void emit(LocalDate runDate, Map<String, Object> report) {
+        log.info("expiry_sweep.report run_date={} medicines_checked={} medicines_deactivated={} lots_quarantined={}"
+                + " units_quarantined={} value_quarantined={}",
+            runDate, report.get("medicinesChecked"), report.get("medicinesDeactivated"), report.get("lotsQuarantined"),
+            report.get("unitsQuarantined"), String.format("%.2f", (Double) report.get("valueQuarantined")));
+
+        StringBuilder message = new StringBuilder()
+            .append("Expiry sweep for ").append(runDate).append(": ")
+            .append(report.get("unitsQuarantined")).append(" units in ").append(report.get("lotsQuarantined"))
+            .append(" lots quarantined (value ").append(String.format("%.2f", (Double) report.get("valueQuarantined")))
+            .append("), ").append(report.get("medicinesDeactivated")).append(" medicines deactivated.\n");
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> byCategory = (List<Map<String, Object>>) report.get("byCategory");
+        for (Map<String, Object> category : byCategory) {
+            message.append("\n").append(category.get("category")).append(": ").append(category.get("units"))
+                .append(" units, value ").append(String.format("%.2f", (Double) category.get("value")));
+        }
+        notificationFactory.createNotificationService(NotificationType.EMAIL)
+            .sendNotification(reportRecipient, "Expiry sweep report " + runDate, message.toString(),
+                "expiry-sweep:" + runDate);
+    }
+}
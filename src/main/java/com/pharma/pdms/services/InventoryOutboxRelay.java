@@ -0,0 +1,228 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.models.InventoryOutboxEvent;
+import com.pharma.pdms.repositories.InventoryOutboxRepository;
+import com.pharma.pdms.utils.observer.MedicineInventorySubject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Relay draining the inventory outbox to the inventory observers.
+ * Each batch claims the medicines whose oldest undelivered event is not held by another
+ * relay, locks their pending events with FOR UPDATE SKIP LOCKED and marks them delivered
+ * in the same transaction, so several nodes can relay at once and an event that commits
+ * after later ids is still picked up. A medicine's pending events are claimed together,
+ * and within a batch events are split into lanes by medicine id that run in parallel,
+ * each delivering its medicines' events in id order. Delivery is
+ * at-least-once: a failed event stays pending and is retried until it has failed
+ * max-attempts times.
+ */
+@Service
+public class InventoryOutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryOutboxRelay.class);
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final InventoryOutboxRepository outboxRepository;
+    private final InventoryOutboxService outboxService;
+    private final MedicineInventorySubject inventorySubject;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService laneExecutor;
+    private final int lanes;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final int retentionDays;
+
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final AtomicLong lastBatchEventsPerSecond = new AtomicLong();
+
+    @Autowired
+    public InventoryOutboxRelay(
+            InventoryOutboxRepository outboxRepository,
+            InventoryOutboxService outboxService,
+            MedicineInventorySubject inventorySubject,
+            PlatformTransactionManager transactionManager,
+            @Value("${pdms.outbox.lanes:4}") int lanes,
+            @Value("${pdms.outbox.batch-size:200}") int batchSize,
+            @Value("${pdms.outbox.max-attempts:10}") int maxAttempts,
+            @Value("${pdms.outbox.retention-days:7}") int retentionDays) {
+        this.outboxRepository = outboxRepository;
+        this.outboxService = outboxService;
+        this.inventorySubject = inventorySubject;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.lanes = Math.max(1, lanes);
+        this.laneExecutor = Executors.newFixedThreadPool(this.lanes);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * Drain the outbox until nothing is left to claim or a batch fails
+     */
+    @Scheduled(fixedDelayString = "${pdms.outbox.relay-interval-ms:500}")
+    public void relay() {
+        Integer delivered;
+        do {
+            // A short batch does not mean the outbox is empty: the claim stops at the medicines it could lock
+            delivered = transactionTemplate.execute(status -> relayBatch());
+        } while (delivered != null && delivered > 0);
+    }
+
+    /**
+     * Claim and deliver one batch, recording the outcome on each event.
+     *
+     * @return Number of events claimed, or -1 if any of them failed
+     */
+    private int relayBatch() {
+        List<InventoryOutboxEvent> events = outboxRepository.claimPending(batchSize);
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        long started = System.nanoTime();
+        Map<Integer, List<InventoryOutboxEvent>> eventsByLane = new LinkedHashMap<>();
+        for (InventoryOutboxEvent event : events) {
+            int lane = (int) Math.floorMod(event.getMedicineId(), (long) lanes);
+            eventsByLane.computeIfAbsent(lane, key -> new ArrayList<>()).add(event);
+        }
+
+        List<CompletableFuture<Map<Long, String>>> laneResults = new ArrayList<>();
+        for (List<InventoryOutboxEvent> laneEvents : eventsByLane.values()) {
+            laneResults.add(CompletableFuture.supplyAsync(() -> deliverLane(laneEvents), laneExecutor));
+        }
+
+        // Each lane reports the events it failed on by id
+        Map<Long, String> failed = new HashMap<>();
+        for (CompletableFuture<Map<Long, String>> result : laneResults) {
+            failed.putAll(result.join());
+        }
+
+        // A medicine's events after its failed one were not attempted and stay pending
+        Set<Long> blockedMedicines = new HashSet<>();
+        Date now = new Date();
+        for (InventoryOutboxEvent event : events) {
+            String error = failed.get(event.getId());
+            if (error != null) {
+                recordFailure(event, error, now);
+                blockedMedicines.add(event.getMedicineId());
+            } else if (!blockedMedicines.contains(event.getMedicineId())) {
+                event.setAttempts(event.getAttempts() + 1);
+                event.setDeliveredAt(now);
+            }
+        }
+        if (!failed.isEmpty()) {
+            failures.increment();
+        }
+        batches.increment();
+
+        long elapsedNanos = Math.max(1, System.nanoTime() - started);
+        lastBatchEventsPerSecond.set(events.size() * TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+        return failed.isEmpty() ? events.size() : -1;
+    }
+
+    /**
+     * Deliver a lane's events in order. After a failure the lane skips the rest of that
+     * medicine's events, so they are not delivered out of order, and carries on with the others.
+     *
+     * @return The ids of the failed events with their error
+     */
+    private Map<Long, String> deliverLane(List<InventoryOutboxEvent> laneEvents) {
+        Map<Long, String> failed = new HashMap<>();
+        Set<Long> blockedMedicines = new HashSet<>();
+        for (InventoryOutboxEvent event : laneEvents) {
+            if (blockedMedicines.contains(event.getMedicineId())) {
+                continue;
+            }
+            try {
+                inventorySubject.stockUpdated(outboxService.toMedicine(event));
+                relayed.increment();
+            } catch (RuntimeException e) {
+                log.warn("outbox.delivery_failed event={} medicine={} attempt={} error={}",
+                    event.getId(), event.getMedicineId(), event.getAttempts() + 1, e.getMessage());
+                failed.put(event.getId(), String.valueOf(e.getMessage()));
+                blockedMedicines.add(event.getMedicineId());
+            }
+        }
+        return failed;
+    }
+
+    private void recordFailure(InventoryOutboxEvent event, String error, Date now) {
+        event.setAttempts(event.getAttempts() + 1);
+        event.setLastError(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+        if (event.getAttempts() >= maxAttempts) {
+            // Give up on a poison event so it cannot hold back its medicine's later events forever
+            event.setFailedAt(now);
+            skipped.increment();
+            log.error("outbox.event_abandoned event={} medicine={} attempts={}",
+                event.getId(), event.getMedicineId(), event.getAttempts());
+        }
+    }
+
+    /**
+     * Re-deliver every retained event from the given id onwards, including abandoned ones
+     *
+     * @param fromOffset Id of the first event to deliver again
+     */
+    public void replayFrom(long fromOffset) {
+        Integer reset = transactionTemplate.execute(status -> outboxRepository.markPendingFrom(fromOffset));
+        log.info("outbox.replay from={} events={}", fromOffset, reset);
+    }
+
+    /**
+     * Delete events delivered longer ago than the retention period
+     */
+    @Scheduled(cron = "${pdms.outbox.cleanup-cron:0 30 3 * * *}")
+    public void purgeDelivered() {
+        Date before = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+        Integer deleted = transactionTemplate.execute(status -> outboxRepository.deleteDeliveredBefore(before));
+        log.info("outbox.purged deleted={}", deleted);
+    }
+
+    public Map<String, Object> getStats() {
+        Date oldestPending = outboxRepository.findOldestPendingCreatedAt();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("headOffset", outboxRepository.findHeadOffset());
+        stats.put("lagEvents", outboxRepository.countPending());
+        stats.put("lagMillis", oldestPending != null ? System.currentTimeMillis() - oldestPending.getTime() : 0L);
+        stats.put("abandonedEvents", outboxRepository.countFailed());
+        stats.put("relayed", relayed.sum());
+        stats.put("batches", batches.sum());
+        stats.put("failedBatches", failures.sum());
+        stats.put("skippedEvents", skipped.sum());
+        stats.put("lastBatchEventsPerSecond", lastBatchEventsPerSecond.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        laneExecutor.shutdown();
+    }
+}
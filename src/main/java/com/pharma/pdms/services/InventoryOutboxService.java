@@ -0,0 +1,103 @@
+package com.pharma.pdms.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.models.InventoryOutboxEvent;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.repositories.InventoryOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Service writing inventory changes to the transactional outbox.
+ * Events are stored in the same transaction as the change they describe, so
+ * an event exists if and only if the change was committed.
+ */
+@Service
+public class InventoryOutboxService {
+
+    public static final String CREATED = "CREATED";
+    public static final String UPDATED = "UPDATED";
+    public static final String STOCK_ADJUSTED = "STOCK_ADJUSTED";
+    public static final String DISPENSED = "DISPENSED";
+    public static final String LOT_RECEIVED = "LOT_RECEIVED";
+    public static final String EXPIRED = "EXPIRED";
+    public static final String DELETED = "DELETED";
+
+    private final InventoryOutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public InventoryOutboxService(InventoryOutboxRepository outboxRepository, ObjectMapper objectMapper) {
+        this.outboxRepository = outboxRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Record a snapshot of the medicine as it is being committed
+     *
+     * @param medicine The changed medicine
+     * @param eventType One of the event type constants
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Medicine medicine, String eventType) {
+        InventoryOutboxEvent event = new InventoryOutboxEvent();
+        event.setMedicineId(medicine.getId());
+        event.setEventType(eventType);
+        event.setPayload(toPayload(medicine));
+        outboxRepository.save(event);
+    }
+
+    /**
+     * Record that a medicine is being deleted. The snapshot carries no stock or expiry,
+     * so observers drop any alerts they hold for it.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordDeleted(Medicine medicine) {
+        Medicine snapshot = new Medicine();
+        snapshot.setId(medicine.getId());
+        snapshot.setName(medicine.getName());
+        snapshot.setCategory(medicine.getCategory());
+        snapshot.setManufacturer(medicine.getManufacturer());
+        snapshot.setIsActive(false);
+        snapshot.setVersion(medicine.getVersion());
+        record(snapshot, DELETED);
+    }
+
+    /**
+     * Rebuild the medicine snapshot carried by an event
+     */
+    public Medicine toMedicine(InventoryOutboxEvent event) {
+        try {
+            return objectMapper.readValue(event.getPayload(), Medicine.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable outbox payload for event " + event.getId(), e);
+        }
+    }
+
+    private String toPayload(Medicine medicine) {
+        // Only the fields observers need; the full entity would drag in the supplier graph
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("id", medicine.getId());
+        snapshot.put("name", medicine.getName());
+        snapshot.put("category", medicine.getCategory());
+        snapshot.put("manufacturer", medicine.getManufacturer());
+        snapshot.put("batchNumber", medicine.getBatchNumber());
+        snapshot.put("unitPrice", medicine.getUnitPrice());
+        snapshot.put("quantityInStock", medicine.getQuantityInStock());
+        snapshot.put("reorderLevel", medicine.getReorderLevel());
+        snapshot.put("expiryDate", medicine.getExpiryDate());
+        snapshot.put("isActive", medicine.getIsActive());
+        snapshot.put("version", medicine.getVersion());
+        try {
+            return objectMapper.writeValueAsString(snapshot);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialise outbox payload for medicine " + medicine.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.pharma.pdms.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.utils.DateUtils;
+import com.pharma.pdms.utils.catalogue.CatalogueChange;
+import com.pharma.pdms.utils.catalogue.CatalogueEntry;
+import com.pharma.pdms.utils.catalogue.MedicineCatalogue;
+import com.pharma.pdms.utils.cluster.PgChannelListener;
+import com.pharma.pdms.utils.datasource.ReplicaRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Service keeping a node-local medicine catalogue coherent across the cluster.
+ * MedicineService writes publish a change with pg_notify inside their transaction,
+ * so it is delivered to every listening node if and only if the write commits.
+ * Each node listens on a dedicated primary connection, reloads the whole catalogue
+ * whenever it (re)connects, and reconciles against a row-count/version checksum
+ * periodically to catch anything missed. Staleness is measured as the time from
+ * the write to the change being applied on this node.
+ */
+@Service
+public class MedicineCatalogueService {
+
+    private static final Logger log = LoggerFactory.getLogger(MedicineCatalogueService.class);
+
+    static final String CHANNEL = "medicine_catalogue";
+
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+
+    private final MedicineCatalogue catalogue;
+    private final MedicineRepository medicineRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate primaryReads;
+    private final String nodeId;
+    private final PgChannelListener listener;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder ignored = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder reconcileMismatches = new LongAdder();
+    private final LongAdder lagTotalMillis = new LongAdder();
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+    private volatile long lastReloadAt;
+
+    @Autowired
+    public MedicineCatalogueService(
+            MedicineCatalogue catalogue,
+            MedicineRepository medicineRepository,
+            ReplicaRoutingDataSource routingDataSource,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager) {
+        this.catalogue = catalogue;
+        this.medicineRepository = medicineRepository;
+        this.objectMapper = objectMapper;
+        // A read-write transaction keeps catalogue loads on the primary rather than a lagging replica
+        this.primaryReads = new TransactionTemplate(transactionManager);
+        this.nodeId = resolveNodeId();
+        this.listener = new PgChannelListener(CHANNEL, routingDataSource.getPrimary(), new PgChannelListener.Handler() {
+            @Override
+            public void connected() {
+                // Changes made while this node was not listening are only visible through a reload
+                reload();
+            }
+
+            @Override
+            public void received(List<String> payloads) {
+                payloads.forEach(MedicineCatalogueService.this::handle);
+            }
+        });
+    }
+
+    /**
+     * Start listening; the listener loads the catalogue once it is subscribed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        listener.stop();
+    }
+
+    public List<CatalogueEntry> getAll() {
+        return catalogue.getAll();
+    }
+
+    public Optional<CatalogueEntry> get(Long id) {
+        return catalogue.get(id);
+    }
+
+    /**
+     * Publish a medicine's new state to every node once the surrounding transaction commits
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishChange(Medicine medicine) {
+        CatalogueEntry entry = CatalogueEntry.of(medicine);
+        String payload = toPayload(new CatalogueChange(CatalogueChange.UPSERT, medicine.getId(), entry,
+            nodeId, System.currentTimeMillis()));
+        if (payload.length() > MAX_PAYLOAD_BYTES) {
+            payload = toPayload(new CatalogueChange(CatalogueChange.RELOAD, medicine.getId(), null,
+                nodeId, System.currentTimeMillis()));
+        }
+        notifyNodes(payload);
+    }
+
+    /**
+     * Have every node re-read a medicine changed outside JPA once the surrounding transaction commits
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishReload(Long medicineId) {
+        notifyNodes(toPayload(new CatalogueChange(CatalogueChange.RELOAD, medicineId, null,
+            nodeId, System.currentTimeMillis())));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishDelete(Long medicineId) {
+        notifyNodes(toPayload(new CatalogueChange(CatalogueChange.DELETE, medicineId, null,
+            nodeId, System.currentTimeMillis())));
+    }
+
+    /**
+     * Compare the catalogue with a checksum of the table and reload on mismatch.
+     * Catches notifications lost while a node was not listening.
+     */
+    @Scheduled(fixedDelayString = "${pdms.catalogue.reconcile-ms:60000}", initialDelayString = "${pdms.catalogue.reconcile-ms:60000}")
+    public void reconcile() {
+        catalogue.purgeTombstones();
+        Object[] checksum = primaryReads.execute(status -> medicineRepository.findCatalogueChecksum().get(0));
+        long rows = ((Number) checksum[0]).longValue();
+        long versionSum = ((Number) checksum[1]).longValue();
+
+        long localVersionSum = 0;
+        List<CatalogueEntry> entries = catalogue.getAll();
+        for (CatalogueEntry entry : entries) {
+            localVersionSum += entry.getVersion() == null ? 0 : entry.getVersion();
+        }
+        if (rows != entries.size() || versionSum != localVersionSum) {
+            reconcileMismatches.increment();
+            reload();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long now = System.currentTimeMillis();
+        long appliedCount = applied.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("node", nodeId);
+        stats.put("entries", catalogue.size());
+        stats.put("listening", listener.isListening());
+        stats.put("disconnectedForMillis", listener.getDisconnectedForMillis());
+        stats.put("published", published.sum());
+        stats.put("received", received.sum());
+        stats.put("applied", appliedCount);
+        stats.put("ignoredAsStale", ignored.sum());
+        stats.put("reloads", reloads.sum());
+        stats.put("reconcileMismatches", reconcileMismatches.sum());
+        stats.put("disconnects", listener.getDisconnects());
+        stats.put("lastReloadAgeMillis", lastReloadAt == 0 ? null : now - lastReloadAt);
+        stats.put("lastStalenessMillis", lastLagMillis.get());
+        stats.put("maxStalenessMillis", maxLagMillis.get());
+        stats.put("avgStalenessMillis", appliedCount == 0 ? 0.0 : (double) lagTotalMillis.sum() / appliedCount);
+        return stats;
+    }
+
+    private void handle(String payload) {
+        received.increment();
+        CatalogueChange change;
+        try {
+            change = objectMapper.readValue(payload, CatalogueChange.class);
+        } catch (JsonProcessingException e) {
+            log.warn("catalogue.notification_malformed error={}", e.getMessage());
+            return;
+        }
+
+        boolean changed;
+        if (CatalogueChange.DELETE.equals(change.getOp())) {
+            catalogue.remove(change.getId());
+            changed = true;
+        } else if (CatalogueChange.RELOAD.equals(change.getOp())) {
+            changed = primaryReads.execute(status -> medicineRepository.findCatalogueRow(change.getId()))
+                .stream().map(MedicineCatalogueService::toEntry).map(catalogue::apply).findFirst().orElse(false);
+        } else {
+            changed = catalogue.apply(change.getEntry());
+        }
+
+        if (changed) {
+            long lag = Math.max(0, System.currentTimeMillis() - change.getSentAt());
+            applied.increment();
+            lagTotalMillis.add(lag);
+            lastLagMillis.set(lag);
+            maxLagMillis.accumulateAndGet(lag, Math::max);
+        } else {
+            ignored.increment();
+        }
+    }
+
+    private void reload() {
+        List<Object[]> rows = primaryReads.execute(status -> medicineRepository.findCatalogueRows());
+        List<CatalogueEntry> entries = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            entries.add(toEntry(row));
+        }
+        catalogue.replaceAll(entries);
+        reloads.increment();
+        lastReloadAt = System.currentTimeMillis();
+        log.info("catalogue.reloaded medicines={}", entries.size());
+    }
+
+    private void notifyNodes(String payload) {
+        // pg_notify returns void, so wrap it in a query Hibernate can map
+        entityManager.createNativeQuery("SELECT COUNT(*) FROM (SELECT pg_notify(:channel, :payload)) AS n")
+            .setParameter("channel", CHANNEL)
+            .setParameter("payload", payload)
+            .getSingleResult();
+        published.increment();
+    }
+
+    private String toPayload(CatalogueChange change) {
+        try {
+            return objectMapper.writeValueAsString(change);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialise catalogue change for medicine " + change.getId(), e);
+        }
+    }
+
+    private static CatalogueEntry toEntry(Object[] row) {
+        return new CatalogueEntry((Long) row[0], (String) row[1], (BigDecimal) row[2], (Integer) row[3],
+            DateUtils.toLocalDate((Date) row[4]), (String) row[5], (Long) row[6]);
+    }
+
+    private static String resolveNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,261 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.exceptions.ConcurrentUpdateException;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.models.MedicineLot;
+import com.pharma.pdms.repositories.MedicineLotRepository;
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.utils.DateUtils;
+import com.pharma.pdms.utils.inventory.FefoLotQueue;
+import com.pharma.pdms.utils.inventory.LotAllocation;
+import com.pharma.pdms.utils.inventory.LotAllocationIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Service for lot-level inventory.
+ * Keeps the FEFO index in step with the medicine_lots table and derives the
+ * stock total, earliest expiry and batch number on Medicine from the lots.
+ * Must be called inside the transaction that saves the medicine. Every lot change
+ * saves the medicine, so a queue is tagged with the medicine version it matches and
+ * reloaded when the row shows another node has changed the lots since.
+ */
+@Service
+public class MedicineLotService {
+
+    private static final Logger log = LoggerFactory.getLogger(MedicineLotService.class);
+
+    private static final long LOCK_TIMEOUT_SECONDS = 5;
+
+    private final MedicineLotRepository lotRepository;
+    private final MedicineRepository medicineRepository;
+    private final LotAllocationIndex lotIndex;
+
+    @Autowired
+    public MedicineLotService(
+            MedicineLotRepository lotRepository,
+            MedicineRepository medicineRepository,
+            LotAllocationIndex lotIndex) {
+        this.lotRepository = lotRepository;
+        this.medicineRepository = medicineRepository;
+        this.lotIndex = lotIndex;
+    }
+
+    /**
+     * Move stock of medicines created before lots existed into a lot of their own,
+     * then load every lot with stock into the FEFO index
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void loadIndex() {
+        for (Medicine medicine : medicineRepository.findMedicinesWithoutLots()) {
+            lotRepository.save(newLot(medicine, medicine.getBatchNumber(),
+                medicine.getExpiryDate(), medicine.getQuantityInStock()));
+        }
+
+        Map<Long, FefoLotQueue> queues = new HashMap<>();
+        List<Object[]> rows = lotRepository.findAllWithStock();
+        for (Object[] row : rows) {
+            Long medicineId = (Long) row[1];
+            FefoLotQueue queue = queues.computeIfAbsent(medicineId, id -> new FefoLotQueue());
+            queue.add((Long) row[0], (String) row[2], DateUtils.toLocalDate((Date) row[3]), (Integer) row[4]);
+            queue.setMedicineVersion((Long) row[5]);
+        }
+
+        lotIndex.clear();
+        queues.forEach(lotIndex::put);
+        log.info("inventory.fefo_index_loaded lots={} medicines={}", rows.size(), queues.size());
+    }
+
+    /**
+     * Record the initial stock of a newly created medicine as its first lot
+     */
+    public void registerInitialLot(Medicine medicine) {
+        if (medicine.getQuantityInStock() == null || medicine.getQuantityInStock() <= 0) {
+            return;
+        }
+        if (medicine.getExpiryDate() == null) {
+            throw new IllegalArgumentException("Initial stock needs an expiry date");
+        }
+        FefoLotQueue queue = lockQueue(medicine);
+        MedicineLot lot = lotRepository.save(newLot(medicine, medicine.getBatchNumber(),
+            medicine.getExpiryDate(), medicine.getQuantityInStock()));
+        queue.add(lot.getId(), lot.getBatchNumber(), DateUtils.toLocalDate(lot.getExpiryDate()), lot.getQuantity());
+    }
+
+    /**
+     * Receive a new lot (or more units of an existing batch with the same expiry)
+     * and refresh the derived totals on the medicine
+     */
+    public MedicineLot receiveLot(Medicine medicine, MedicineLot lotDetails) {
+        FefoLotQueue queue = lockQueue(medicine);
+        MedicineLot lot = addToLot(medicine, lotDetails.getBatchNumber(),
+            lotDetails.getExpiryDate(), lotDetails.getQuantity(), queue);
+        refreshTotals(medicine, queue);
+        return lot;
+    }
+
+    /**
+     * Apply a signed stock adjustment.
+     * Negative quantities are taken first-expiry-first-out across lots; positive
+     * quantities are returned to the medicine's current batch, so a medicine without
+     * stock has to receive a lot instead.
+     *
+     * @return The lots consumed by a negative adjustment, empty otherwise
+     */
+    public List<LotAllocation> adjustStock(Medicine medicine, int quantity) {
+        FefoLotQueue queue = lockQueue(medicine);
+        List<LotAllocation> allocations = Collections.emptyList();
+
+        if (quantity < 0) {
+            allocations = queue.allocate(-quantity);
+            for (LotAllocation allocation : allocations) {
+                MedicineLot lot = lotRepository.findById(allocation.getLotId())
+                    .orElseThrow(() -> new ObjectOptimisticLockingFailureException(MedicineLot.class, allocation.getLotId()));
+                // The index is stale if another node changed this lot; retrying reloads it
+                if (lot.getQuantity() != allocation.getQuantityBefore()) {
+                    throw new ObjectOptimisticLockingFailureException(MedicineLot.class, lot.getId());
+                }
+                lot.setQuantity(lot.getQuantity() - allocation.getQuantity());
+                lotRepository.save(lot);
+            }
+        } else if (quantity > 0) {
+            if (queue.getEarliestExpiry() == null) {
+                throw new IllegalArgumentException("Medicine " + medicine.getId()
+                    + " has no batch in stock to return units to; receive a lot instead");
+            }
+            addToLot(medicine, medicine.getBatchNumber(), medicine.getExpiryDate(), quantity, queue);
+        }
+
+        refreshTotals(medicine, queue);
+        return allocations;
+    }
+
+    /**
+     * Move the stock of lots that expired before the given day into quarantine and
+     * refresh the derived totals on the medicine
+     *
+     * @return The lots quarantined and their quantities
+     */
+    public List<LotAllocation> quarantineExpired(Medicine medicine, LocalDate before) {
+        FefoLotQueue queue = lockQueue(medicine);
+        List<LotAllocation> removed = queue.removeExpiredBefore(before);
+        for (LotAllocation allocation : removed) {
+            MedicineLot lot = lotRepository.findById(allocation.getLotId())
+                .orElseThrow(() -> new ObjectOptimisticLockingFailureException(MedicineLot.class, allocation.getLotId()));
+            if (lot.getQuantity() != allocation.getQuantityBefore()) {
+                throw new ObjectOptimisticLockingFailureException(MedicineLot.class, lot.getId());
+            }
+            lot.setQuarantinedQuantity(lot.getQuarantinedQuantity() + lot.getQuantity());
+            lot.setQuarantinedOn(DateUtils.toDate(before));
+            lot.setQuantity(0);
+            lotRepository.save(lot);
+        }
+        if (!removed.isEmpty()) {
+            refreshTotals(medicine, queue);
+        }
+        return removed;
+    }
+
+    public List<MedicineLot> getLotsInStock(Long medicineId) {
+        return lotRepository.findByMedicineIdAndQuantityGreaterThanOrderByExpiryDateAsc(medicineId, 0);
+    }
+
+    private MedicineLot addToLot(Medicine medicine, String batchNumber, Date expiryDate, int quantity, FefoLotQueue queue) {
+        LocalDate expiry = DateUtils.toLocalDate(expiryDate);
+        MedicineLot lot = lotRepository.findByMedicineId(medicine.getId()).stream()
+            .filter(existing -> Objects.equals(existing.getBatchNumber(), batchNumber)
+                && expiry.equals(DateUtils.toLocalDate(existing.getExpiryDate())))
+            .findFirst()
+            .orElseGet(() -> newLot(medicine, batchNumber, expiryDate, 0));
+
+        lot.setQuantity(lot.getQuantity() + quantity);
+        MedicineLot savedLot = lotRepository.save(lot);
+        queue.add(savedLot.getId(), batchNumber, expiry, quantity);
+        return savedLot;
+    }
+
+    private void refreshTotals(Medicine medicine, FefoLotQueue queue) {
+        medicine.setQuantityInStock((int) queue.getOnHand());
+        // Both are null once the last lot is empty
+        medicine.setExpiryDate(DateUtils.toDate(queue.getEarliestExpiry()));
+        medicine.setBatchNumber(queue.getEarliestBatchNumber());
+        // Totals can come out as they were read (one node adds what another took), and an
+        // unchanged row is not written: touch it so the version still moves with the lots
+        medicine.setUpdatedAt(new Date());
+    }
+
+    /**
+     * Lock the medicine's queue until the surrounding transaction completes, loading
+     * it from the database if it is missing or was built from another version of the
+     * medicine. On commit the queue is tagged with the version just written; on
+     * rollback it is evicted so the next caller reloads the committed state.
+     */
+    private FefoLotQueue lockQueue(Medicine medicine) {
+        Long medicineId = medicine.getId();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Lot changes must run inside a transaction");
+        }
+
+        ReentrantLock lock = lotIndex.lockFor(medicineId);
+        try {
+            if (!lock.tryLock(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new ConcurrentUpdateException("Timed out waiting for lots of medicine " + medicineId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrentUpdateException("Interrupted while waiting for lots of medicine " + medicineId, e);
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                FefoLotQueue committed = lotIndex.get(medicineId);
+                if (status != STATUS_COMMITTED) {
+                    lotIndex.evict(medicineId);
+                } else if (committed != null) {
+                    committed.setMedicineVersion(medicine.getVersion());
+                }
+                lock.unlock();
+            }
+        });
+
+        FefoLotQueue queue = lotIndex.get(medicineId);
+        if (queue == null || !Objects.equals(queue.getMedicineVersion(), medicine.getVersion())) {
+            queue = new FefoLotQueue();
+            queue.setMedicineVersion(medicine.getVersion());
+            for (MedicineLot lot : getLotsInStock(medicineId)) {
+                queue.add(lot.getId(), lot.getBatchNumber(), DateUtils.toLocalDate(lot.getExpiryDate()), lot.getQuantity());
+            }
+            lotIndex.put(medicineId, queue);
+        }
+        return queue;
+    }
+
+    private MedicineLot newLot(Medicine medicine, String batchNumber, Date expiryDate, int quantity) {
+        MedicineLot lot = new MedicineLot();
+        lot.setMedicine(medicine);
+        lot.setBatchNumber(batchNumber);
+        lot.setExpiryDate(expiryDate);
+        lot.setQuantity(quantity);
+        return lot;
+    }
+}
@@ -1,69 +1,132 @@
 package com.pharma.pdms.services;
 
+import com.pharma.pdms.exceptions.ConcurrentUpdateException;
 import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.models.MedicineLot;
+import com.pharma.pdms.repositories.EntityVersion;
 import com.pharma.pdms.repositories.MedicineRepository;
-import com.pharma.pdms.utils.observer.MedicineInventorySubject;
+import com.pharma.pdms.repositories.TableFingerprint;
+import com.pharma.pdms.utils.DateUtils;
+import com.pharma.pdms.utils.coalescing.Coalesced;
+import com.pharma.pdms.utils.concurrency.OptimisticRetryExecutor;
+import com.pharma.pdms.utils.inventory.ExpiredStock;
+import com.pharma.pdms.utils.inventory.LotAllocation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Service for Medicine-related operations
- * Uses Observer pattern to notify about inventory changes
+ * Inventory changes are written to the transactional outbox, from which
+ * the observers are notified after commit
+ * Writes are guarded by optimistic locking and retried on conflict
+ * Stock is held in lots; totals and expiry on Medicine are derived from them
+ * Committed changes are pushed to every node's catalogue
  */
 @Service
 public class MedicineService {
     private final MedicineRepository medicineRepository;
-    private final MedicineInventorySubject inventorySubject;
+    private final InventoryOutboxService outboxService;
+    private final OptimisticRetryExecutor retryExecutor;
+    private final MedicineLotService lotService;
+    private final MedicineCatalogueService catalogueService;
+    private final ReservationService reservationService;
     
     @Autowired
     public MedicineService(MedicineRepository medicineRepository, 
-                          MedicineInventorySubject inventorySubject) {
+                          InventoryOutboxService outboxService,
+                          OptimisticRetryExecutor retryExecutor,
+                          MedicineLotService lotService,
+                          MedicineCatalogueService catalogueService,
+                          ReservationService reservationService) {
         this.medicineRepository = medicineRepository;
-        this.inventorySubject = inventorySubject;
+        this.outboxService = outboxService;
+        this.retryExecutor = retryExecutor;
+        this.lotService = lotService;
+        this.catalogueService = catalogueService;
+        this.reservationService = reservationService;
     }
     
+    @Transactional(readOnly = true)
     public List<Medicine> getAllMedicines() {
         return medicineRepository.findAll();
     }
     
+    @Transactional(readOnly = true)
+    public Optional<EntityVersion> getMedicineVersion(Long id) {
+        return medicineRepository.findVersionById(id);
+    }
+    
+    @Transactional(readOnly = true)
+    public TableFingerprint getMedicineFingerprint() {
+        return medicineRepository.findFingerprint();
+    }
+    
+    @Transactional(readOnly = true)
     public Optional<Medicine> getMedicineById(Long id) {
         return medicineRepository.findById(id);
     }
     
+    @Transactional(readOnly = true)
     public List<Medicine> searchMedicinesByName(String name) {
         return medicineRepository.findByNameContainingIgnoreCase(name);
     }
     
+    @Transactional(readOnly = true)
     public List<Medicine> getMedicinesByCategory(String category) {
         return medicineRepository.findByCategory(category);
     }
     
+    @Coalesced(ttlMillis = "${pdms.coalescing.ttl-ms:1000}")
+    @Transactional(readOnly = true)
     public List<Medicine> getLowStockMedicines() {
         return medicineRepository.findLowStockMedicines();
     }
     
+    @Coalesced(ttlMillis = "${pdms.coalescing.ttl-ms:1000}")
+    @Transactional(readOnly = true)
     public List<Medicine> getExpiringMedicines(int days) {
         LocalDate thresholdDate = LocalDate.now().plusDays(days);
-        return medicineRepository.findMedicinesExpiringBefore(thresholdDate);
+        return medicineRepository.findExpiringMedicines(DateUtils.toDate(thresholdDate));
     }
     
     @Transactional
     public Medicine createMedicine(Medicine medicine) {
         Medicine savedMedicine = medicineRepository.save(medicine);
-        // Trigger observers for the newly added medicine
-        inventorySubject.stockUpdated(savedMedicine);
+        lotService.registerInitialLot(savedMedicine);
+        // Observers are notified for the newly added medicine once this commits
+        outboxService.record(savedMedicine, InventoryOutboxService.CREATED);
+        catalogueService.publishChange(savedMedicine);
         return savedMedicine;
     }
     
-    @Transactional
+    /**
+     * Update a medicine, retrying on concurrent modification.
+     * A client that sends the version it read gets a conflict instead of overwriting a newer row.
+     */
     public Optional<Medicine> updateMedicine(Long id, Medicine medicineDetails) {
-        return medicineRepository.findById(id)
+        return retryExecutor.execute(rowKey(id), () -> medicineRepository.findById(id)
             .map(existingMedicine -> {
+                if (medicineDetails.getVersion() != null
+                        && !medicineDetails.getVersion().equals(existingMedicine.getVersion())) {
+                    throw new ConcurrentUpdateException("Medicine " + id + " was modified by another user (expected version "
+                        + medicineDetails.getVersion() + ", found " + existingMedicine.getVersion() + ")");
+                }
+                // Expiry follows the lots in stock; echoing the current value back is fine
+                if (medicineDetails.getExpiryDate() != null && !Objects.equals(
+                        DateUtils.toLocalDate(medicineDetails.getExpiryDate()),
+                        DateUtils.toLocalDate(existingMedicine.getExpiryDate()))) {
+                    throw new IllegalArgumentException("The expiry date of medicine " + id
+                        + " is derived from its lots; receive a lot to change it");
+                }
+                
                 // Update only the non-null properties
                 if (medicineDetails.getName() != null) {
                     existingMedicine.setName(medicineDetails.getName());
@@ -77,57 +140,137 @@ public class MedicineService {
                 if (medicineDetails.getCategory() != null) {
                     existingMedicine.setCategory(medicineDetails.getCategory());
                 }
-                if (medicineDetails.getPrice() != null) {
-                    existingMedicine.setPrice(medicineDetails.getPrice());
-                }
-                if (medicineDetails.getStock() != null) {
-                    existingMedicine.setStock(medicineDetails.getStock());
+                if (medicineDetails.getUnitPrice() != null) {
+                    existingMedicine.setUnitPrice(medicineDetails.getUnitPrice());
                 }
-                if (medicineDetails.getExpiryDate() != null) {
-                    existingMedicine.setExpiryDate(medicineDetails.getExpiryDate());
+                if (medicineDetails.getQuantityInStock() != null) {
+                    // Stock lives in lots, so a new total is applied as an adjustment
+                    int delta = medicineDetails.getQuantityInStock() - existingMedicine.getQuantityInStock();
+                    if (delta < 0) {
+                        reservationService.checkAvailable(existingMedicine, -delta);
+                    }
+                    lotService.adjustStock(existingMedicine, delta);
                 }
                 if (medicineDetails.getReorderLevel() != null) {
                     existingMedicine.setReorderLevel(medicineDetails.getReorderLevel());
                 }
                 
-                Medicine updatedMedicine = medicineRepository.save(existingMedicine);
-                
-                // Notify observers about the stock change
-                inventorySubject.stockUpdated(updatedMedicine);
-                
-                return updatedMedicine;
-            });
+                return saveAndRecord(existingMedicine, InventoryOutboxService.UPDATED);
+            }));
     }
     
     @Transactional
     public boolean deleteMedicine(Long id) {
         return medicineRepository.findById(id)
             .map(medicine -> {
+                outboxService.recordDeleted(medicine);
                 medicineRepository.delete(medicine);
+                catalogueService.publishDelete(id);
                 return true;
             })
             .orElse(false);
     }
     
-    @Transactional
+    /**
+     * Adjust stock by a signed quantity, retrying on concurrent modification
+     * Reductions are taken from the earliest-expiring lots first and may not
+     * touch stock reserved for pending prescription items
+     */
     public Optional<Medicine> updateStock(Long id, Integer quantity) {
         if (quantity == null) {
             throw new IllegalArgumentException("Quantity cannot be null");
         }
         
-        return medicineRepository.findById(id)
+        return retryExecutor.execute(rowKey(id), () -> medicineRepository.findById(id)
             .map(medicine -> {
-                medicine.setStock(medicine.getStock() + quantity);
-                Medicine updatedMedicine = medicineRepository.save(medicine);
-                
-                // Notify observers about the stock change
-                inventorySubject.stockUpdated(updatedMedicine);
-                
-                return updatedMedicine;
-            });
+                if (quantity < 0) {
+                    reservationService.checkAvailable(medicine, -quantity);
+                }
+                lotService.adjustStock(medicine, quantity);
+                return saveAndRecord(medicine, InventoryOutboxService.STOCK_ADJUSTED);
+            }));
     }
     
+    /**
+     * Dispense a quantity first-expiry-first-out from unreserved stock
+     * @return The lots the quantity was taken from, empty if the medicine does not exist
+     */
+    public List<LotAllocation> dispense(Long id, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        
+        List<LotAllocation> allocations = new ArrayList<>();
+        retryExecutor.execute(rowKey(id), () -> medicineRepository.findById(id)
+            .map(medicine -> {
+                allocations.clear();
+                reservationService.checkAvailable(medicine, quantity);
+                allocations.addAll(lotService.adjustStock(medicine, -quantity));
+                return saveAndRecord(medicine, InventoryOutboxService.DISPENSED);
+            }));
+        return allocations;
+    }
+    
+    /**
+     * Quarantine the stock of lots that expired before the given day, and deactivate the
+     * medicine once nothing sellable is left, retrying on concurrent modification
+     * @return What was done, empty if the medicine does not exist
+     */
+    public Optional<ExpiredStock> quarantineExpired(Long id, LocalDate before) {
+        return retryExecutor.execute(rowKey(id), () -> medicineRepository.findById(id)
+            .map(medicine -> {
+                List<LotAllocation> lots = lotService.quarantineExpired(medicine, before);
+                if (lots.isEmpty()) {
+                    return new ExpiredStock(id, lots, false);
+                }
+                // Only stock that expired here deactivates it; a medicine that sold out stays listed
+                boolean deactivate = medicine.getQuantityInStock() == 0 && !Boolean.FALSE.equals(medicine.getIsActive());
+                if (deactivate) {
+                    medicine.setIsActive(false);
+                }
+                saveAndRecord(medicine, InventoryOutboxService.EXPIRED);
+                return new ExpiredStock(id, lots, deactivate);
+            }));
+    }
+    
+    public Optional<MedicineLot> receiveLot(Long id, MedicineLot lot) {
+        if (lot.getQuantity() == null || lot.getQuantity() <= 0 || lot.getExpiryDate() == null) {
+            throw new IllegalArgumentException("A lot needs a positive quantity and an expiry date");
+        }
+        
+        AtomicReference<MedicineLot> savedLot = new AtomicReference<>();
+        Optional<Medicine> result = retryExecutor.execute(rowKey(id), () -> medicineRepository.findById(id)
+            .map(medicine -> {
+                savedLot.set(lotService.receiveLot(medicine, lot));
+                return saveAndRecord(medicine, InventoryOutboxService.LOT_RECEIVED);
+            }));
+        return result.map(medicine -> savedLot.get());
+    }
+    
+    @Transactional(readOnly = true)
+    public List<MedicineLot> getLots(Long id) {
+        return lotService.getLotsInStock(id);
+    }
+    
+    @Coalesced(ttlMillis = "${pdms.coalescing.ttl-ms:1000}")
+    @Transactional(readOnly = true)
     public Double calculateTotalInventoryValue() {
-        return medicineRepository.calculateTotalInventoryValue();
+        return medicineRepository.calculateTotalInventoryValue().doubleValue();
+    }
+    
+    /**
+     * Save the medicine and record the change in the outbox within the current transaction.
+     * Flushing first makes a version conflict surface here rather than at the caller's commit
+     * and puts the new version into the event.
+     */
+    private Medicine saveAndRecord(Medicine medicine, String eventType) {
+        Medicine savedMedicine = medicineRepository.saveAndFlush(medicine);
+        outboxService.record(savedMedicine, eventType);
+        catalogueService.publishChange(savedMedicine);
+        return savedMedicine;
+    }
+    
+    static String rowKey(Long medicineId) {
+        return "Medicine#" + medicineId;
     }
 }
\ No newline at end of file
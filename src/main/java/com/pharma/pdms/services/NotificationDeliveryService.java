@@ -0,0 +1,261 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.models.NotificationDelivery;
+import com.pharma.pdms.repositories.NotificationDeliveryRepository;
+import com.pharma.pdms.utils.notification.ChannelBulkhead;
+import com.pharma.pdms.utils.notification.EmailNotificationService;
+import com.pharma.pdms.utils.notification.NotificationType;
+import com.pharma.pdms.utils.notification.PushNotificationService;
+import com.pharma.pdms.utils.notification.SmsNotificationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delivery engine for notifications. Callers only insert into the notification_deliveries
+ * table, so a slow or failing gateway never holds up the thread raising the alert, and
+ * a notification with a deduplication key already queued is dropped by the unique key.
+ * A poller claims due rows per channel with FOR UPDATE SKIP LOCKED under a lease, taking
+ * no more than the channel's free concurrency slots and rate-limit tokens allow, and sends
+ * them through the channel's bulkhead. Rows refused by an open circuit breaker are put
+ * back, without using an attempt, until the breaker lets probes through. Failures are
+ * retried with exponential backoff and jitter; after max-attempts the row is dead-lettered.
+ * Delivery is at-least-once: a node that dies mid-send leaves a lease that expires and the
+ * row is claimed again.
+ */
+@Service
+public class NotificationDeliveryService {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationDeliveryService.class);
+
+    private static final String ENQUEUE = "INSERT INTO notification_deliveries"
+        + " (channel, recipient, subject, message, dedup_key, status, attempts, next_attempt_at, created_at)"
+        + " VALUES (?, ?, ?, ?, ?, 'PENDING', 0, now(), now()) ON CONFLICT (dedup_key) DO NOTHING";
+
+    private static final String CLAIM = "UPDATE notification_deliveries d"
+        + " SET lease_until = now() + make_interval(secs => ?), attempts = d.attempts + 1"
+        + " WHERE d.id IN (SELECT id FROM notification_deliveries"
+        + " WHERE status = 'PENDING' AND channel = ? AND next_attempt_at <= now()"
+        + " AND (lease_until IS NULL OR lease_until < now())"
+        + " ORDER BY next_attempt_at, id LIMIT ? FOR UPDATE SKIP LOCKED)"
+        + " RETURNING d.id, d.recipient, d.subject, d.message, d.attempts";
+
+    private static final String MARK_SENT = "UPDATE notification_deliveries"
+        + " SET status = 'SENT', sent_at = now(), lease_until = NULL, last_error = NULL WHERE id = ?";
+
+    private static final String MARK_FAILED = "UPDATE notification_deliveries"
+        + " SET status = CASE WHEN attempts >= ? THEN 'DEAD' ELSE 'PENDING' END,"
+        + " next_attempt_at = now() + make_interval(secs => ?), lease_until = NULL, last_error = ? WHERE id = ?";
+
+    private static final String RELEASE = "UPDATE notification_deliveries"
+        + " SET lease_until = NULL, attempts = attempts - 1, next_attempt_at = now() + make_interval(secs => ?)"
+        + " WHERE id = ANY(?)";
+
+    private static final String RETRY_DEAD = "UPDATE notification_deliveries"
+        + " SET status = 'PENDING', attempts = 0, next_attempt_at = now(), lease_until = NULL"
+        + " WHERE id = ? AND status = 'DEAD'";
+
+    private static final String PURGE_SENT = "DELETE FROM notification_deliveries"
+        + " WHERE status = 'SENT' AND sent_at < now() - make_interval(days => ?)";
+
+    private static final String COUNTS = "SELECT channel, status, COUNT(*) FROM notification_deliveries GROUP BY channel, status";
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private static final RowMapper<Claimed> CLAIMED = (resultSet, rowNum) -> new Claimed(
+        resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3), resultSet.getString(4), resultSet.getInt(5));
+
+    private final NotificationDeliveryRepository deliveryRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<NotificationType, ChannelBulkhead> channels = new EnumMap<>(NotificationType.class);
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int leaseSeconds;
+    private final int retentionDays;
+
+    @Autowired
+    public NotificationDeliveryService(
+            NotificationDeliveryRepository deliveryRepository,
+            JdbcTemplate jdbcTemplate,
+            EmailNotificationService emailService,
+            SmsNotificationService smsService,
+            PushNotificationService pushService,
+            Environment environment,
+            @Value("${pdms.notifications.batch-size:50}") int batchSize,
+            @Value("${pdms.notifications.max-attempts:8}") int maxAttempts,
+            @Value("${pdms.notifications.base-backoff-ms:1000}") long baseBackoffMillis,
+            @Value("${pdms.notifications.max-backoff-ms:600000}") long maxBackoffMillis,
+            @Value("${pdms.notifications.lease-seconds:60}") int leaseSeconds,
+            @Value("${pdms.notifications.retention-days:7}") int retentionDays) {
+        this.deliveryRepository = deliveryRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.leaseSeconds = leaseSeconds;
+        this.retentionDays = retentionDays;
+        channels.put(NotificationType.EMAIL, new ChannelBulkhead(NotificationType.EMAIL, emailService, environment));
+        channels.put(NotificationType.SMS, new ChannelBulkhead(NotificationType.SMS, smsService, environment));
+        channels.put(NotificationType.PUSH, new ChannelBulkhead(NotificationType.PUSH, pushService, environment));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Rows still being sent keep their lease, which expires and lets them be claimed again
+        channels.values().forEach(ChannelBulkhead::shutdown);
+    }
+
+    /**
+     * Queue a notification
+     *
+     * @param dedupKey Optional deduplication key
+     * @return true if queued, false if a notification with the same key was already queued
+     */
+    public boolean enqueue(NotificationType channel, String recipient, String subject, String message, String dedupKey) {
+        return jdbcTemplate.update(ENQUEUE, channel.name(), recipient, subject, message, dedupKey) > 0;
+    }
+
+    /**
+     * Claim due notifications for each channel and hand them to the channel's threads
+     */
+    @Scheduled(fixedDelayString = "${pdms.notifications.poll-ms:200}")
+    public void dispatch() {
+        for (ChannelBulkhead channel : channels.values()) {
+            // Only this thread takes slots and tokens, so what is free now can all be used
+            int capacity = channel.capacity(batchSize);
+            if (capacity <= 0) {
+                continue;
+            }
+            List<Claimed> claimed = jdbcTemplate.query(CLAIM, CLAIMED, leaseSeconds, channel.getType().name(), capacity);
+            List<Long> refused = new ArrayList<>();
+            for (Claimed delivery : claimed) {
+                if (!channel.getBreaker().tryAcquire()) {
+                    refused.add(delivery.id);
+                } else if (!channel.submit(() -> send(channel, delivery))) {
+                    channel.getBreaker().onCancelled();
+                    refused.add(delivery.id);
+                }
+            }
+            if (!refused.isEmpty()) {
+                jdbcTemplate.update(RELEASE, channel.getBreaker().getRemainingOpenMillis() / 1000.0,
+                    (Object) refused.toArray(new Long[0]));
+            }
+        }
+    }
+
+    @Scheduled(cron = "${pdms.notifications.purge-cron:0 0 3 * * *}")
+    public void purgeSent() {
+        int purged = jdbcTemplate.update(PURGE_SENT, retentionDays);
+        if (purged > 0) {
+            log.info("notification.purged count={} retention_days={}", purged, retentionDays);
+        }
+    }
+
+    public List<NotificationDelivery> getDeadLetters(int limit) {
+        return deliveryRepository.findByStatusOrderByIdDesc(NotificationDelivery.Status.DEAD, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Put a dead-lettered notification back in the queue with a fresh set of attempts
+     *
+     * @return false if there is no dead-lettered notification with this id
+     */
+    public boolean retryDeadLetter(Long id) {
+        return jdbcTemplate.update(RETRY_DEAD, id) > 0;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Map<String, Object>> byChannel = new LinkedHashMap<>();
+        for (ChannelBulkhead channel : channels.values()) {
+            byChannel.put(channel.getType().name(), channel.getStats());
+        }
+        jdbcTemplate.query(COUNTS, resultSet -> {
+            Map<String, Object> stats = byChannel.get(resultSet.getString(1));
+            if (stats != null) {
+                stats.put("queued" + resultSet.getString(2), resultSet.getLong(3));
+            }
+        });
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("maxAttempts", maxAttempts);
+        result.put("channels", byChannel);
+        return result;
+    }
+
+    private void send(ChannelBulkhead channel, Claimed delivery) {
+        String error;
+        try {
+            error = channel.getGateway().sendNotification(delivery.recipient, delivery.subject, delivery.message)
+                ? null : channel.getType() + " gateway declined the notification";
+        } catch (RuntimeException e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+
+        try {
+            if (error == null) {
+                channel.recordSent();
+                jdbcTemplate.update(MARK_SENT, delivery.id);
+                return;
+            }
+            if (error.length() > MAX_ERROR_LENGTH) {
+                error = error.substring(0, MAX_ERROR_LENGTH);
+            }
+            boolean deadLetter = delivery.attempts >= maxAttempts;
+            channel.recordFailure(deadLetter);
+            jdbcTemplate.update(MARK_FAILED, maxAttempts, backoffMillis(delivery.attempts) / 1000.0, error, delivery.id);
+            if (deadLetter) {
+                log.warn("notification.dead_lettered id={} channel={} attempts={} error=\"{}\"",
+                    delivery.id, channel.getType(), delivery.attempts, error);
+            }
+        } catch (RuntimeException e) {
+            // The lease expires and the notification is claimed again
+            log.error("notification.state_update_failed id={} channel={}", delivery.id, channel.getType(), e);
+        }
+    }
+
+    /**
+     * Exponential backoff capped at max-backoff-ms, with jitter over the upper half so
+     * that notifications failing together do not retry together
+     */
+    private long backoffMillis(int attempts) {
+        long backoff = baseBackoffMillis << Math.min(attempts - 1, 30);
+        if (backoff <= 0 || backoff > maxBackoffMillis) {
+            backoff = maxBackoffMillis;
+        }
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private static final class Claimed {
+        private final long id;
+        private final String recipient;
+        private final String subject;
+        private final String message;
+        private final int attempts;
+
+        private Claimed(long id, String recipient, String subject, String message, int attempts) {
+            this.id = id;
+            this.recipient = recipient;
+            this.subject = subject;
+            this.message = message;
+            this.attempts = attempts;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.pharma.pdms.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Service maintaining monthly partitions of the prescription and transaction history tables,
+ * which the V4 migration partitions. Creates partitions ahead of time so inserts never fall
+ * into the default partition, and expires old months by detaching (and optionally dropping)
+ * whole partitions instead of deleting rows.
+ * Item tables are partitioned by created_at, which can fall in a later month than the parent's
+ * date, so items expire with their parent: when a parent month expires, its items in retained
+ * months are deleted in the same transaction, and an old item partition is kept until none of
+ * its items belong to a retained parent.
+ */
+@Service
+public class PartitionMaintenanceService {
+
+    /** Partitioned history tables, parents before children */
+    static final List<String> PARTITIONED_TABLES = Arrays.asList(
+        "prescriptions", "prescription_items", "transactions", "transaction_items");
+
+    /** Parent table, its partition key, child table and the child's reference to the parent */
+    private static final String[][] PARENT_CHILD = {
+        {"prescriptions", "prescription_date", "prescription_items", "prescription_id"},
+        {"transactions", "transaction_date", "transaction_items", "transaction_id"}
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionMaintenanceService.class);
+
+    private static final Pattern PARTITION_SUFFIX = Pattern.compile("_p(\\d{4})_(\\d{2})$");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final boolean dropDetached;
+
+    private volatile long lastRunAt;
+    private volatile List<String> lastDetached = new ArrayList<>();
+
+    @Autowired
+    public PartitionMaintenanceService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${pdms.partitioning.months-ahead:3}") int monthsAhead,
+            @Value("${pdms.partitioning.retention-months:0}") int retentionMonths,
+            @Value("${pdms.partitioning.drop-detached:true}") boolean dropDetached) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.dropDetached = dropDetached;
+    }
+
+    /**
+     * Catch up on partitions that came due while the application was down
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialise() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${pdms.partitioning.cron:0 15 2 * * *}")
+    public void maintain() {
+        for (String table : PARTITIONED_TABLES) {
+            if (isPartitioned(table)) {
+                jdbcTemplate.queryForList("SELECT pdms_ensure_month_partitions(?, date_trunc('month', now())::date, ?)",
+                    table, monthsAhead);
+            }
+        }
+        if (retentionMonths > 0) {
+            lastDetached = expire(YearMonth.now().minusMonths(retentionMonths));
+        }
+        lastRunAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Detach every monthly partition older than the cutoff month, dropping it unless
+     * detached partitions are kept for archiving. A parent partition goes together with its
+     * items in retained months; an item partition still holding items of a retained parent
+     * is kept until a later run.
+     *
+     * @return Names of the partitions detached
+     */
+    public List<String> expire(YearMonth cutoff) {
+        Date cutoffDate = Date.valueOf(cutoff.atDay(1));
+        List<String> detached = new ArrayList<>();
+        for (String[] relation : PARENT_CHILD) {
+            String parent = relation[0];
+            String parentKey = relation[1];
+            String child = relation[2];
+            String reference = relation[3];
+
+            for (String partition : expiredPartitions(parent, cutoff)) {
+                Integer itemsDeleted = transactionTemplate.execute(status -> {
+                    // Only retained item months need row deletes; older ones are detached whole below
+                    int deleted = jdbcTemplate.update("DELETE FROM " + child + " c USING " + partition + " p"
+                        + " WHERE c." + reference + " = p.id AND c.created_at >= ?", cutoffDate);
+                    detach(parent, partition);
+                    return deleted;
+                });
+                log.info("partition.expired table={} partition={} items_deleted={} dropped={}",
+                    parent, partition, itemsDeleted, dropDetached);
+                detached.add(partition);
+            }
+
+            for (String partition : expiredPartitions(child, cutoff)) {
+                Boolean retainedParent = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + partition + " c"
+                    + " JOIN " + parent + " p ON p.id = c." + reference + " WHERE p." + parentKey + " >= ?)",
+                    Boolean.class, cutoffDate);
+                if (Boolean.TRUE.equals(retainedParent)) {
+                    log.info("partition.expiry_deferred table={} partition={} reason=retained_parent", child, partition);
+                    continue;
+                }
+                transactionTemplate.executeWithoutResult(status -> detach(child, partition));
+                log.info("partition.expired table={} partition={} dropped={}", child, partition, dropDetached);
+                detached.add(partition);
+            }
+        }
+        return detached;
+    }
+
+    private List<String> expiredPartitions(String table, YearMonth cutoff) {
+        List<String> expired = new ArrayList<>();
+        for (String partition : getPartitions(table)) {
+            YearMonth month = monthOf(partition);
+            if (month != null && month.isBefore(cutoff)) {
+                expired.add(partition);
+            }
+        }
+        return expired;
+    }
+
+    private void detach(String table, String partition) {
+        jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION " + partition);
+        if (dropDetached) {
+            jdbcTemplate.execute("DROP TABLE " + partition);
+        }
+    }
+
+    public List<String> getPartitions(String table) {
+        return jdbcTemplate.queryForList(
+            "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                + "WHERE i.inhparent = to_regclass(?) ORDER BY c.relname", String.class, table);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> tables = new HashMap<>();
+        for (String table : PARTITIONED_TABLES) {
+            List<String> partitions = getPartitions(table);
+            Map<String, Object> tableStats = new HashMap<>();
+            tableStats.put("partitioned", isPartitioned(table));
+            tableStats.put("partitions", partitions.size());
+            tableStats.put("oldest", partitions.stream().filter(p -> monthOf(p) != null).findFirst().orElse(null));
+            tableStats.put("newest", partitions.stream().filter(p -> monthOf(p) != null)
+                .reduce((first, second) -> second).orElse(null));
+            tableStats.put("defaultPartitionRows", countDefaultRows(table));
+            tables.put(table, tableStats);
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("monthsAhead", monthsAhead);
+        stats.put("retentionMonths", retentionMonths);
+        stats.put("lastRunAgeMillis", lastRunAt == 0 ? null : System.currentTimeMillis() - lastRunAt);
+        stats.put("lastDetached", lastDetached);
+        stats.put("tables", tables);
+        return stats;
+    }
+
+    private boolean isPartitioned(String table) {
+        Boolean partitioned = jdbcTemplate.queryForObject(
+            "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(?))", Boolean.class, table);
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    private Long countDefaultRows(String table) {
+        String defaultPartition = table + "_default";
+        Boolean exists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, defaultPartition);
+        // Rows here mean a month had no partition when they were written
+        return Boolean.TRUE.equals(exists)
+            ? jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + defaultPartition, Long.class)
+            : null;
+    }
+
+    private static YearMonth monthOf(String partition) {
+        Matcher matcher = PARTITION_SUFFIX.matcher(partition);
+        return matcher.find()
+            ? YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)))
+            : null;
+    }
+}
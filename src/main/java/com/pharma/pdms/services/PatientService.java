@@ -1,8 +1,13 @@
 package com.pharma.pdms.services;
 
+import com.pharma.pdms.exceptions.ConcurrentUpdateException;
 import com.pharma.pdms.models.Patient;
+import com.pharma.pdms.repositories.EntityVersion;
 import com.pharma.pdms.repositories.PatientRepository;
+import com.pharma.pdms.repositories.TableFingerprint;
+import com.pharma.pdms.utils.concurrency.OptimisticRetryExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -11,59 +16,98 @@ import java.util.Optional;
 
 @Service
 public class PatientService {
+    private static final int TOP_PATIENTS = 10;
+    private static final int RECENT_PATIENTS = 10;
+    
     private final PatientRepository patientRepository;
+    private final ScreeningService screeningService;
+    private final OptimisticRetryExecutor retryExecutor;
     
     @Autowired
-    public PatientService(PatientRepository patientRepository) {
+    public PatientService(PatientRepository patientRepository, ScreeningService screeningService,
+                          OptimisticRetryExecutor retryExecutor) {
         this.patientRepository = patientRepository;
+        this.screeningService = screeningService;
+        this.retryExecutor = retryExecutor;
     }
     
+    @Transactional(readOnly = true)
     public List<Patient> getAllPatients() {
         return patientRepository.findAll();
     }
     
+    @Transactional(readOnly = true)
+    public Optional<EntityVersion> getPatientVersion(Long id) {
+        return patientRepository.findVersionById(id);
+    }
+    
+    @Transactional(readOnly = true)
+    public TableFingerprint getPatientFingerprint() {
+        return patientRepository.findFingerprint();
+    }
+    
+    @Transactional(readOnly = true)
     public Optional<Patient> getPatientById(Long id) {
         return patientRepository.findById(id);
     }
     
+    @Transactional(readOnly = true)
     public List<Patient> searchPatientsByName(String name) {
         return patientRepository.findByNameContainingIgnoreCase(name);
     }
     
+    @Transactional(readOnly = true)
     public Optional<Patient> getPatientByEmail(String email) {
         return patientRepository.findByEmail(email);
     }
     
+    @Transactional(readOnly = true)
     public Optional<Patient> getPatientByPhoneNumber(String phoneNumber) {
         return patientRepository.findByPhoneNumber(phoneNumber);
     }
     
+    @Transactional(readOnly = true)
     public List<Patient> getTopPatientsByPrescriptionCount() {
-        return patientRepository.findTopPatientsByPrescriptionCount();
+        return patientRepository.findTopPatientsByPrescriptionCount(PageRequest.of(0, TOP_PATIENTS));
     }
     
+    @Transactional(readOnly = true)
     public List<Patient> getRecentPatients() {
-        return patientRepository.findRecentPatients();
+        return patientRepository.findRecentPatients(PageRequest.of(0, RECENT_PATIENTS));
     }
     
     @Transactional
     public Patient createPatient(Patient patient) {
-        return patientRepository.save(patient);
+        Patient savedPatient = patientRepository.save(patient);
+        screeningService.patientAllergiesChanged(savedPatient.getId(), savedPatient.getAllergies());
+        return savedPatient;
     }
     
-    @Transactional
+    /**
+     * Update a patient, retrying on concurrent modification.
+     * A client that sends the version it read gets a conflict instead of overwriting a newer row.
+     */
     public Optional<Patient> updatePatient(Long id, Patient patientDetails) {
-        return patientRepository.findById(id)
+        return retryExecutor.execute("Patient#" + id, () -> patientRepository.findById(id)
             .map(existingPatient -> {
+                if (patientDetails.getVersion() != null
+                        && !patientDetails.getVersion().equals(existingPatient.getVersion())) {
+                    throw new ConcurrentUpdateException("Patient " + id + " was modified by another user (expected version "
+                        + patientDetails.getVersion() + ", found " + existingPatient.getVersion() + ")");
+                }
+                
                 // Update only the non-null properties
-                if (patientDetails.getName() != null) {
-                    existingPatient.setName(patientDetails.getName());
+                if (patientDetails.getFirstName() != null) {
+                    existingPatient.setFirstName(patientDetails.getFirstName());
+                }
+                if (patientDetails.getLastName() != null) {
+                    existingPatient.setLastName(patientDetails.getLastName());
                 }
                 if (patientDetails.getAddress() != null) {
                     existingPatient.setAddress(patientDetails.getAddress());
                 }
-                if (patientDetails.getPhoneNumber() != null) {
-                    existingPatient.setPhoneNumber(patientDetails.getPhoneNumber());
+                if (patientDetails.getPhone() != null) {
+                    existingPatient.setPhone(patientDetails.getPhone());
                 }
                 if (patientDetails.getEmail() != null) {
                     existingPatient.setEmail(patientDetails.getEmail());
@@ -71,11 +115,14 @@ public class PatientService {
                 if (patientDetails.getDateOfBirth() != null) {
                     existingPatient.setDateOfBirth(patientDetails.getDateOfBirth());
                 }
-                if (patientDetails.getGender() != null) {
-                    existingPatient.setGender(patientDetails.getGender());
+                if (patientDetails.getAllergies() != null) {
+                    existingPatient.setAllergies(patientDetails.getAllergies());
                 }
-                return patientRepository.save(existingPatient);
-            });
+                // Flush so a version conflict surfaces inside the retried transaction
+                Patient savedPatient = patientRepository.saveAndFlush(existingPatient);
+                screeningService.patientAllergiesChanged(savedPatient.getId(), savedPatient.getAllergies());
+                return savedPatient;
+            }));
     }
     
     @Transactional
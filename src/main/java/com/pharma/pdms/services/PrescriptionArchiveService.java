@@ -0,0 +1,384 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.models.Doctor;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.models.Patient;
+import com.pharma.pdms.models.Prescription;
+import com.pharma.pdms.models.PrescriptionItem;
+import com.pharma.pdms.repositories.DoctorRepository;
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.repositories.PatientRepository;
+import com.pharma.pdms.utils.DateUtils;
+import com.pharma.pdms.utils.archive.ArchiveFile;
+import com.pharma.pdms.utils.archive.ArchiveTable;
+import com.pharma.pdms.utils.archive.ColumnType;
+import com.pharma.pdms.utils.archive.PrescriptionArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service moving closed prescription history out of the database into monthly
+ * compressed columnar archive files, and reading it back for prescription lookups.
+ * A prescription is closed once all its items are dispensed and none of its
+ * transactions is pending; it is archived together with its items, transactions
+ * and transaction items once older than pdms.archive.after-months.
+ *
+ * Each month is archived in one database transaction under an advisory lock, so only
+ * one node archives at a time: the month's file is written to shared storage, and its
+ * index row is updated and the archived rows deleted in the same transaction, so they
+ * are either moved together or not at all. Every node reads archived months from its
+ * local copies, which are refreshed from shared storage before each lookup.
+ */
+@Service
+public class PrescriptionArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(PrescriptionArchiveService.class);
+
+    private static final String[] PRESCRIPTION_COLUMNS = {"id", "patient_id", "doctor_id", "prescription_date",
+        "created_at", "updated_at", "version", "is_filled", "notes"};
+    private static final ColumnType[] PRESCRIPTION_TYPES = {ColumnType.LONG, ColumnType.LONG, ColumnType.LONG,
+        ColumnType.TIMESTAMP, ColumnType.TIMESTAMP, ColumnType.TIMESTAMP, ColumnType.LONG, ColumnType.BOOLEAN,
+        ColumnType.STRING};
+
+    private static final String[] ITEM_COLUMNS = {"id", "prescription_id", "medicine_id", "quantity",
+        "dosage_instructions", "created_at", "updated_at", "version", "is_dispensed"};
+    private static final ColumnType[] ITEM_TYPES = {ColumnType.LONG, ColumnType.LONG, ColumnType.LONG,
+        ColumnType.LONG, ColumnType.STRING, ColumnType.TIMESTAMP, ColumnType.TIMESTAMP, ColumnType.LONG,
+        ColumnType.BOOLEAN};
+
+    private static final String[] TRANSACTION_COLUMNS = {"id", "patient_id", "prescription_id", "transaction_date",
+        "total_amount", "discount_amount", "tax_amount", "payment_method", "payment_status", "receipt_number",
+        "created_at", "updated_at", "version"};
+    private static final ColumnType[] TRANSACTION_TYPES = {ColumnType.LONG, ColumnType.LONG, ColumnType.LONG,
+        ColumnType.TIMESTAMP, ColumnType.DECIMAL, ColumnType.DECIMAL, ColumnType.DECIMAL, ColumnType.STRING,
+        ColumnType.STRING, ColumnType.STRING, ColumnType.TIMESTAMP, ColumnType.TIMESTAMP, ColumnType.LONG};
+
+    private static final String[] TRANSACTION_ITEM_COLUMNS = {"id", "transaction_id", "medicine_id", "quantity",
+        "unit_price", "subtotal", "discount", "created_at", "updated_at", "version"};
+    private static final ColumnType[] TRANSACTION_ITEM_TYPES = {ColumnType.LONG, ColumnType.LONG, ColumnType.LONG,
+        ColumnType.LONG, ColumnType.DECIMAL, ColumnType.DECIMAL, ColumnType.DECIMAL, ColumnType.TIMESTAMP,
+        ColumnType.TIMESTAMP, ColumnType.LONG};
+
+    private static final String CLOSED = "NOT EXISTS (SELECT 1 FROM prescription_items i"
+        + " WHERE i.prescription_id = p.id AND i.is_dispensed IS NOT TRUE)"
+        + " AND NOT EXISTS (SELECT 1 FROM transactions t"
+        + " WHERE t.prescription_id = p.id AND t.payment_status = 'PENDING')";
+
+    private final PrescriptionArchive archive;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PatientRepository patientRepository;
+    private final DoctorRepository doctorRepository;
+    private final MedicineRepository medicineRepository;
+    private final boolean enabled;
+    private final int afterMonths;
+
+    private volatile long lastRunAt;
+    private volatile long lastRunMillis;
+    private volatile int lastRunPrescriptions;
+
+    @Autowired
+    public PrescriptionArchiveService(
+            PrescriptionArchive archive,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            PatientRepository patientRepository,
+            DoctorRepository doctorRepository,
+            MedicineRepository medicineRepository,
+            @Value("${pdms.archive.enabled:false}") boolean enabled,
+            @Value("${pdms.archive.after-months:18}") int afterMonths) {
+        this.archive = archive;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.patientRepository = patientRepository;
+        this.doctorRepository = doctorRepository;
+        this.medicineRepository = medicineRepository;
+        this.enabled = enabled;
+        this.afterMonths = afterMonths;
+    }
+
+    @Scheduled(cron = "${pdms.archive.cron:0 45 2 * * *}")
+    public void archiveOldPrescriptions() {
+        if (enabled) {
+            archiveBefore(YearMonth.now().minusMonths(afterMonths));
+        }
+    }
+
+    /**
+     * Archive closed prescriptions from every month before the cutoff
+     *
+     * @return Number of prescriptions archived
+     */
+    public synchronized int archiveBefore(YearMonth cutoff) {
+        long start = System.currentTimeMillis();
+        List<Date> months = jdbcTemplate.queryForList(
+            "SELECT DISTINCT date_trunc('month', p.prescription_date)::date FROM prescriptions p"
+                + " WHERE p.prescription_date < ? AND " + CLOSED, Date.class, DateUtils.toDate(cutoff.atDay(1)));
+
+        int archived = 0;
+        for (Date month : months) {
+            archived += archiveMonth(YearMonth.from(DateUtils.toLocalDate(month)));
+        }
+        lastRunAt = System.currentTimeMillis();
+        lastRunMillis = lastRunAt - start;
+        lastRunPrescriptions = archived;
+        if (archived > 0) {
+            log.info("archive.run_completed prescriptions={} months={} took_ms={}", archived, months.size(), lastRunMillis);
+        }
+        return archived;
+    }
+
+    /**
+     * Archived prescriptions of a patient, with their items
+     */
+    public List<Prescription> findByPatient(Long patientId) {
+        archive.refresh();
+        if (archive.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return lookup("patient_id", patientId, patientId);
+    }
+
+    /**
+     * Archived prescriptions dated within [startDate, endDate], with their items
+     */
+    public List<Prescription> findByDateRange(LocalDate startDate, LocalDate endDate) {
+        archive.refresh();
+        if (archive.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long from = DateUtils.toDate(startDate).getTime();
+        long to = DateUtils.toDate(endDate.plusDays(1)).getTime() - 1;
+        return lookup("prescription_date", from, to);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>(archive.getStats());
+        stats.put("enabled", enabled);
+        stats.put("afterMonths", afterMonths);
+        stats.put("lastRunAgeMillis", lastRunAt == 0 ? null : System.currentTimeMillis() - lastRunAt);
+        stats.put("lastRunMillis", lastRunMillis);
+        stats.put("lastRunPrescriptions", lastRunPrescriptions);
+        return stats;
+    }
+
+    private int archiveMonth(YearMonth month) {
+        Integer archived = transactionTemplate.execute(status -> {
+            // One archiver across all nodes; a second one waits and then finds the month already moved
+            jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(hashtext('pdms_prescription_archive'))");
+            List<Long> ids = jdbcTemplate.queryForList("SELECT p.id FROM prescriptions p"
+                    + " WHERE p.prescription_date >= ? AND p.prescription_date < ? AND " + CLOSED + " FOR UPDATE",
+                Long.class, DateUtils.toDate(month.atDay(1)), DateUtils.toDate(month.plusMonths(1).atDay(1)));
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            Long[] prescriptionIds = ids.toArray(new Long[0]);
+            List<Object[]> prescriptions = select(PRESCRIPTION_COLUMNS, PrescriptionArchive.PRESCRIPTIONS, "id", prescriptionIds);
+            List<Object[]> items = select(ITEM_COLUMNS, PrescriptionArchive.PRESCRIPTION_ITEMS, "prescription_id", prescriptionIds);
+            List<Object[]> transactions = select(TRANSACTION_COLUMNS, PrescriptionArchive.TRANSACTIONS, "prescription_id", prescriptionIds);
+            Long[] transactionIds = transactions.stream().map(row -> ((Number) row[0]).longValue()).toArray(Long[]::new);
+            List<Object[]> transactionItems = select(TRANSACTION_ITEM_COLUMNS, PrescriptionArchive.TRANSACTION_ITEMS,
+                "transaction_id", transactionIds);
+
+            // Merge onto the month as last committed, whichever node wrote it
+            archive.refresh();
+            ArchiveFile existing = archive.get(month).orElse(null);
+            List<ArchiveTable> tables = Arrays.asList(
+                merge(existing, PrescriptionArchive.PRESCRIPTIONS, PRESCRIPTION_COLUMNS, PRESCRIPTION_TYPES, prescriptions, "patient_id"),
+                merge(existing, PrescriptionArchive.PRESCRIPTION_ITEMS, ITEM_COLUMNS, ITEM_TYPES, items, "prescription_id"),
+                merge(existing, PrescriptionArchive.TRANSACTIONS, TRANSACTION_COLUMNS, TRANSACTION_TYPES, transactions, "prescription_id"),
+                merge(existing, PrescriptionArchive.TRANSACTION_ITEMS, TRANSACTION_ITEM_COLUMNS, TRANSACTION_ITEM_TYPES,
+                    transactionItems, "transaction_id"));
+            try {
+                archive.write(month, tables);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write archive file for " + month, e);
+            }
+
+            // Children first; references to partitioned parents are not enforced by the database
+            jdbcTemplate.update("DELETE FROM transaction_items WHERE transaction_id = ANY(?)", (Object) transactionIds);
+            jdbcTemplate.update("DELETE FROM transactions WHERE id = ANY(?)", (Object) transactionIds);
+            jdbcTemplate.update("DELETE FROM prescription_items WHERE prescription_id = ANY(?)", (Object) prescriptionIds);
+            jdbcTemplate.update("DELETE FROM prescriptions WHERE id = ANY(?)", (Object) prescriptionIds);
+            return ids.size();
+        });
+        return archived == null ? 0 : archived;
+    }
+
+    private List<Object[]> select(String[] columns, String table, String keyColumn, Long[] keys) {
+        if (keys.length == 0) {
+            return new ArrayList<>();
+        }
+        return jdbcTemplate.query("SELECT " + String.join(", ", columns) + " FROM " + table
+                + " WHERE " + keyColumn + " = ANY(?)",
+            (resultSet, rowNum) -> {
+                Object[] row = new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    row[i] = resultSet.getObject(i + 1);
+                }
+                return row;
+            }, (Object) keys);
+    }
+
+    /**
+     * Combine rows already archived for the month with newly archived ones,
+     * the new copy of a row replacing the old
+     */
+    private static ArchiveTable merge(ArchiveFile existing, String name, String[] columns, ColumnType[] types,
+                                      List<Object[]> rows, String sortColumn) {
+        ArchiveTable table = new ArchiveTable(name, columns, types);
+        table.addAll(rows);
+        if (existing != null) {
+            Set<Long> ids = rows.stream().map(row -> ((Number) row[0]).longValue()).collect(Collectors.toSet());
+            try {
+                for (Object[] row : existing.selectAll(name)) {
+                    if (!ids.contains((Long) row[0])) {
+                        table.add(row);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read archive file " + existing.getPath(), e);
+            }
+        }
+        // Rows sharing a lookup key end up in the same row group
+        table.sortBy(sortColumn);
+        return table;
+    }
+
+    private List<Prescription> lookup(String column, long min, long max) {
+        List<Prescription> prescriptions = new ArrayList<>();
+        try {
+            for (ArchiveFile file : archive.candidates(PrescriptionArchive.PRESCRIPTIONS, column, min, max)) {
+                List<Object[]> rows = file.select(PrescriptionArchive.PRESCRIPTIONS, column, min, max);
+                if (rows.isEmpty()) {
+                    continue;
+                }
+                Set<Long> ids = rows.stream().map(row -> (Long) row[0]).collect(Collectors.toSet());
+                List<Object[]> items = file.selectIn(PrescriptionArchive.PRESCRIPTION_ITEMS, "prescription_id", ids);
+                prescriptions.addAll(toPrescriptions(rows, items));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read prescription archive", e);
+        }
+        hydrate(prescriptions);
+        return prescriptions;
+    }
+
+    private static List<Prescription> toPrescriptions(List<Object[]> rows, List<Object[]> itemRows) {
+        Map<Long, Prescription> prescriptions = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            Prescription prescription = new Prescription();
+            prescription.setId((Long) row[0]);
+            prescription.setPatient(patientRef((Long) row[1]));
+            prescription.setDoctor(doctorRef((Long) row[2]));
+            prescription.setPrescriptionDate((Date) row[3]);
+            prescription.setCreatedAt((Date) row[4]);
+            prescription.setUpdatedAt((Date) row[5]);
+            prescription.setVersion((Long) row[6]);
+            prescription.setIsFilled((Boolean) row[7]);
+            prescription.setNotes((String) row[8]);
+            prescriptions.put(prescription.getId(), prescription);
+        }
+        for (Object[] row : itemRows) {
+            Prescription prescription = prescriptions.get((Long) row[1]);
+            if (prescription == null) {
+                continue;
+            }
+            PrescriptionItem item = new PrescriptionItem();
+            item.setId((Long) row[0]);
+            item.setMedicine(medicineRef((Long) row[2]));
+            item.setQuantity(row[3] == null ? null : ((Long) row[3]).intValue());
+            item.setDosageInstructions((String) row[4]);
+            item.setCreatedAt((Date) row[5]);
+            item.setUpdatedAt((Date) row[6]);
+            item.setVersion((Long) row[7]);
+            item.setIsDispensed((Boolean) row[8]);
+            // Added before the back reference is set, as the generated hashCode follows it
+            prescription.getPrescriptionItems().add(item);
+            item.setPrescription(prescription);
+        }
+        return new ArrayList<>(prescriptions.values());
+    }
+
+    /**
+     * Replace the id-only patient, doctor and medicine references with the live rows
+     */
+    private void hydrate(List<Prescription> prescriptions) {
+        if (prescriptions.isEmpty()) {
+            return;
+        }
+        Map<Long, Patient> patients = byId(patientRepository.findAllById(
+            ids(prescriptions, prescription -> prescription.getPatient().getId())), Patient::getId);
+        Map<Long, Doctor> doctors = byId(doctorRepository.findAllById(
+            ids(prescriptions, prescription -> prescription.getDoctor().getId())), Doctor::getId);
+        Set<Long> medicineIds = new HashSet<>();
+        for (Prescription prescription : prescriptions) {
+            for (PrescriptionItem item : prescription.getPrescriptionItems()) {
+                medicineIds.add(item.getMedicine().getId());
+            }
+        }
+        Map<Long, Medicine> medicines = byId(medicineRepository.findAllById(medicineIds), Medicine::getId);
+
+        for (Prescription prescription : prescriptions) {
+            prescription.setPatient(patients.getOrDefault(prescription.getPatient().getId(), prescription.getPatient()));
+            prescription.setDoctor(doctors.getOrDefault(prescription.getDoctor().getId(), prescription.getDoctor()));
+            for (PrescriptionItem item : prescription.getPrescriptionItems()) {
+                item.setMedicine(medicines.getOrDefault(item.getMedicine().getId(), item.getMedicine()));
+            }
+        }
+    }
+
+    private static Set<Long> ids(List<Prescription> prescriptions, Function<Prescription, Long> id) {
+        return prescriptions.stream().map(id).filter(value -> value != null).collect(Collectors.toSet());
+    }
+
+    private static <T> Map<Long, T> byId(Collection<T> entities, Function<T, Long> id) {
+        Map<Long, T> map = new HashMap<>();
+        for (T entity : entities) {
+            map.put(id.apply(entity), entity);
+        }
+        return map;
+    }
+
+    private static Patient patientRef(Long id) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        return patient;
+    }
+
+    private static Doctor doctorRef(Long id) {
+        Doctor doctor = new Doctor();
+        doctor.setId(id);
+        return doctor;
+    }
+
+    private static Medicine medicineRef(Long id) {
+        Medicine medicine = new Medicine();
+        medicine.setId(id);
+        return medicine;
+    }
+}
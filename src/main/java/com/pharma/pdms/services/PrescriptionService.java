@@ -4,72 +4,166 @@ import com.pharma.pdms.models.Prescription;
 import com.pharma.pdms.models.PrescriptionItem;
 import com.pharma.pdms.repositories.PrescriptionItemRepository;
 import com.pharma.pdms.repositories.PrescriptionRepository;
+import com.pharma.pdms.utils.DateUtils;
+import com.pharma.pdms.utils.coalescing.Coalesced;
+import com.pharma.pdms.utils.concurrency.OptimisticRetryExecutor;
+import com.pharma.pdms.utils.screening.ScreeningWarning;
+import com.pharma.pdms.utils.sse.DashboardEventBroadcaster;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class PrescriptionService {
     private final PrescriptionRepository prescriptionRepository;
     private final PrescriptionItemRepository prescriptionItemRepository;
     private final MedicineService medicineService;
+    private final OptimisticRetryExecutor retryExecutor;
+    private final ReservationService reservationService;
+    private final DashboardEventBroadcaster dashboardBroadcaster;
+    private final ScreeningService screeningService;
+    private final PrescriptionArchiveService archiveService;
     
     @Autowired
     public PrescriptionService(
             PrescriptionRepository prescriptionRepository,
             PrescriptionItemRepository prescriptionItemRepository,
-            MedicineService medicineService) {
+            MedicineService medicineService,
+            OptimisticRetryExecutor retryExecutor,
+            ReservationService reservationService,
+            DashboardEventBroadcaster dashboardBroadcaster,
+            ScreeningService screeningService,
+            PrescriptionArchiveService archiveService) {
         this.prescriptionRepository = prescriptionRepository;
         this.prescriptionItemRepository = prescriptionItemRepository;
         this.medicineService = medicineService;
+        this.retryExecutor = retryExecutor;
+        this.reservationService = reservationService;
+        this.dashboardBroadcaster = dashboardBroadcaster;
+        this.screeningService = screeningService;
+        this.archiveService = archiveService;
     }
     
+    @Transactional(readOnly = true)
     public List<Prescription> getAllPrescriptions() {
         return prescriptionRepository.findAll();
     }
     
+    @Transactional(readOnly = true)
     public Optional<Prescription> getPrescriptionById(Long id) {
         return prescriptionRepository.findById(id);
     }
     
+    /**
+     * Get a patient's prescriptions, including those moved to the cold archive
+     */
+    @Transactional(readOnly = true)
     public List<Prescription> getPrescriptionsByPatient(Long patientId) {
-        return prescriptionRepository.findByPatientId(patientId);
+        return withArchived(prescriptionRepository.findByPatientId(patientId),
+            archiveService.findByPatient(patientId));
     }
     
+    @Transactional(readOnly = true)
     public List<Prescription> getPrescriptionsByDoctor(Long doctorId) {
         return prescriptionRepository.findByDoctorId(doctorId);
     }
     
+    /**
+     * Get prescriptions dated within the range, including those moved to the cold archive
+     */
+    @Transactional(readOnly = true)
     public List<Prescription> getPrescriptionsByDateRange(LocalDate startDate, LocalDate endDate) {
-        return prescriptionRepository.findByPrescriptionDateBetween(startDate, endDate);
+        return withArchived(prescriptionRepository.findByPrescriptionDateBetween(
+                DateUtils.toDate(startDate), DateUtils.toDate(endDate)),
+            archiveService.findByDateRange(startDate, endDate));
     }
     
+    @Transactional(readOnly = true)
     public List<Prescription> getRecentPrescriptions(int limit) {
-        return prescriptionRepository.findRecentPrescriptions(limit);
+        return prescriptionRepository.findRecentPrescriptions(PageRequest.of(0, limit));
     }
     
+    @Coalesced(ttlMillis = "${pdms.coalescing.ttl-ms:1000}")
+    @Transactional(readOnly = true)
     public int getCountForToday() {
-        return prescriptionRepository.countPrescriptionsForToday();
+        return prescriptionRepository.countPrescriptionsAfterDate(DateUtils.toDate(LocalDate.now())).intValue();
     }
     
     @Transactional
     public Prescription createPrescription(Prescription prescription) {
-        return prescriptionRepository.save(prescription);
+        Prescription savedPrescription = prescriptionRepository.save(prescription);
+        if (savedPrescription.getPatient() != null) {
+            screeningService.prescriptionCreated(savedPrescription.getId(), savedPrescription.getPatient().getId());
+        }
+        // Dashboards on every node add the delta to their prescriptions-today counter
+        dashboardBroadcaster.publishAfterCommit("prescriptions", Map.of("id", savedPrescription.getId(), "delta", 1));
+        return savedPrescription;
     }
     
-    @Transactional
+    /**
+     * Add an item, screen it and reserve its stock.
+     * Screening against the patient's allergies and active medications is done in memory;
+     * its warnings are returned on the item and do not block it.
+     * Stock is only taken when the item is dispensed; until then the reservation
+     * holds it and lapses automatically if the prescription is never picked up.
+     * Retried when the medicine is concurrently modified, as the reservation was
+     * checked against its version.
+     */
     public PrescriptionItem addPrescriptionItem(PrescriptionItem item) {
-        // Reduce medicine stock
-        if (item.getQuantity() != null && item.getMedicineId() != null) {
-            medicineService.updateStock(item.getMedicineId(), -item.getQuantity());
-        }
-        return prescriptionItemRepository.save(item);
+        Long medicineId = item.getMedicine() != null ? item.getMedicine().getId() : null;
+        return retryExecutor.execute(MedicineService.rowKey(medicineId), () -> {
+            Long patientId = item.getPrescription() == null || item.getPrescription().getId() == null ? null
+                : screeningService.getPatientForPrescription(item.getPrescription().getId());
+            List<ScreeningWarning> warnings = screeningService.screen(patientId, medicineId);
+            
+            // Reserved before the item is saved, so a conflict is retried before anything was written
+            if (item.getQuantity() != null && medicineId != null) {
+                reservationService.reserve(item);
+            }
+            PrescriptionItem savedItem = prescriptionItemRepository.save(item);
+            if (patientId != null && medicineId != null) {
+                screeningService.itemAdded(patientId, savedItem.getId(), medicineId, savedItem.getCreatedAt());
+            }
+            savedItem.setWarnings(new ArrayList<>(warnings));
+            return savedItem;
+        });
+    }
+    
+    /**
+     * Dispense an item: take its stock first-expiry-first-out and consume its reservation.
+     * The whole unit is retried here when the medicine row is concurrently modified,
+     * since the nested stock update joins this transaction and cannot retry by itself.
+     */
+    public Optional<PrescriptionItem> dispensePrescriptionItem(Long itemId) {
+        return retryExecutor.execute("PrescriptionItem#" + itemId, () -> prescriptionItemRepository.findById(itemId)
+            .map(item -> {
+                if (Boolean.TRUE.equals(item.getIsDispensed())) {
+                    return item;
+                }
+                
+                // Release the item's own hold first so the stock check only counts other items'
+                // reservations; an item whose reservation lapsed competes with all of them
+                reservationService.consume(item);
+                item.setIsDispensed(true);
+                item.setDispensedAt(new Date());
+                PrescriptionItem savedItem = prescriptionItemRepository.saveAndFlush(item);
+                
+                medicineService.updateStock(item.getMedicine().getId(), -item.getQuantity());
+                return savedItem;
+            }));
     }
     
+    @Transactional(readOnly = true)
     public List<PrescriptionItem> getPrescriptionItems(Long prescriptionId) {
         return prescriptionItemRepository.findByPrescriptionId(prescriptionId);
     }
@@ -79,11 +173,11 @@ public class PrescriptionService {
         return prescriptionRepository.findById(id)
             .map(existingPrescription -> {
                 // Update only the non-null properties
-                if (prescriptionDetails.getPatientId() != null) {
-                    existingPrescription.setPatientId(prescriptionDetails.getPatientId());
+                if (prescriptionDetails.getPatient() != null) {
+                    existingPrescription.setPatient(prescriptionDetails.getPatient());
                 }
-                if (prescriptionDetails.getDoctorId() != null) {
-                    existingPrescription.setDoctorId(prescriptionDetails.getDoctorId());
+                if (prescriptionDetails.getDoctor() != null) {
+                    existingPrescription.setDoctor(prescriptionDetails.getDoctor());
                 }
                 if (prescriptionDetails.getPrescriptionDate() != null) {
                     existingPrescription.setPrescriptionDate(prescriptionDetails.getPrescriptionDate());
@@ -91,8 +185,8 @@ public class PrescriptionService {
                 if (prescriptionDetails.getNotes() != null) {
                     existingPrescription.setNotes(prescriptionDetails.getNotes());
                 }
-                if (prescriptionDetails.getStatus() != null) {
-                    existingPrescription.setStatus(prescriptionDetails.getStatus());
+                if (prescriptionDetails.getIsFilled() != null) {
+                    existingPrescription.setIsFilled(prescriptionDetails.getIsFilled());
                 }
                 return prescriptionRepository.save(existingPrescription);
             });
@@ -107,4 +201,25 @@ public class PrescriptionService {
             })
             .orElse(false);
     }
+    
+    /**
+     * Append archived prescriptions to live ones. A prescription caught mid-archive
+     * can be in both; the live row wins.
+     */
+    private static List<Prescription> withArchived(List<Prescription> live, List<Prescription> archived) {
+        if (archived.isEmpty()) {
+            return live;
+        }
+        Set<Long> liveIds = new HashSet<>();
+        for (Prescription prescription : live) {
+            liveIds.add(prescription.getId());
+        }
+        List<Prescription> merged = new ArrayList<>(live);
+        for (Prescription prescription : archived) {
+            if (!liveIds.contains(prescription.getId())) {
+                merged.add(prescription);
+            }
+        }
+        return merged;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,197 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.exceptions.InvalidStatusTransitionException;
+import com.pharma.pdms.models.PurchaseOrder;
+import com.pharma.pdms.repositories.PurchaseOrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Service generating purchase orders for low-stock medicines, one draft per supplier per cycle.
+ * The whole catalogue is evaluated with a few set-based statements: a medicine needs
+ * ordering when stock plus quantity already on open orders is at or below its reorder
+ * level, and is ordered up to its reorder level plus forecast demand over the cover
+ * period. Headers and lines are inserted with ON CONFLICT DO NOTHING against the
+ * supplier's open draft for the cycle and (order, medicine), so running a cycle again only
+ * adds what is newly low and never duplicates an order. Once a draft has been sent, what
+ * runs low later in the cycle goes on a follow-up draft; medicines on an order cancelled
+ * this cycle are not ordered again until the next one.
+ */
+@Service
+public class PurchaseOrderService {
+
+    private static final Logger log = LoggerFactory.getLogger(PurchaseOrderService.class);
+
+    private static final String NEEDS = "WITH on_order AS ("
+        + " SELECT l.medicine_id, SUM(l.quantity) AS quantity"
+        + " FROM purchase_order_lines l JOIN purchase_orders o ON o.id = l.purchase_order_id"
+        + " WHERE o.status IN ('DRAFT', 'SENT') GROUP BY l.medicine_id"
+        + "), needs AS ("
+        + " SELECT m.id AS medicine_id, m.supplier_id, m.unit_price,"
+        + " GREATEST(1, CEIL(m.reorder_level + COALESCE(f.lead_time_demand / ? * ?, m.reorder_level)"
+        + " - COALESCE(m.quantity_in_stock, 0) - COALESCE(oo.quantity, 0)))::int AS quantity"
+        + " FROM medicines m"
+        + " LEFT JOIN on_order oo ON oo.medicine_id = m.id"
+        + " LEFT JOIN demand_forecasts f ON f.medicine_id = m.id"
+        + " WHERE m.is_active IS NOT FALSE AND m.reorder_level IS NOT NULL"
+        + " AND COALESCE(m.quantity_in_stock, 0) + COALESCE(oo.quantity, 0) <= m.reorder_level"
+        + ") ";
+
+    private static final String NOT_CANCELLED_THIS_CYCLE = "NOT EXISTS (SELECT 1"
+        + " FROM purchase_order_lines cl JOIN purchase_orders c ON c.id = cl.purchase_order_id"
+        + " WHERE c.cycle_key = ? AND c.status = 'CANCELLED' AND cl.medicine_id = n.medicine_id)";
+
+    private static final String INSERT_ORDERS = NEEDS
+        + "INSERT INTO purchase_orders (supplier_id, cycle_key, status, line_count, total_amount, created_at, updated_at, version)"
+        + " SELECT DISTINCT n.supplier_id, ?, 'DRAFT', 0, 0, now(), now(), 0"
+        + " FROM needs n JOIN suppliers s ON s.id = n.supplier_id WHERE s.is_active IS NOT FALSE AND "
+        + NOT_CANCELLED_THIS_CYCLE
+        + " ON CONFLICT (supplier_id, cycle_key) WHERE status = 'DRAFT' DO NOTHING";
+
+    private static final String INSERT_LINES = NEEDS
+        + "INSERT INTO purchase_order_lines (purchase_order_id, medicine_id, quantity, unit_price, line_total, created_at)"
+        + " SELECT o.id, n.medicine_id, n.quantity, n.unit_price, n.unit_price * n.quantity, now()"
+        + " FROM needs n JOIN purchase_orders o ON o.supplier_id = n.supplier_id"
+        + " AND o.cycle_key = ? AND o.status = 'DRAFT'"
+        + " WHERE " + NOT_CANCELLED_THIS_CYCLE
+        + " ON CONFLICT (purchase_order_id, medicine_id) DO NOTHING";
+
+    private static final String COUNT_UNASSIGNED = NEEDS
+        + "SELECT COUNT(*) FROM needs WHERE supplier_id IS NULL";
+
+    private static final String UPDATE_TOTALS = "UPDATE purchase_orders o"
+        + " SET line_count = t.line_count, total_amount = t.total_amount, updated_at = now(), version = o.version + 1"
+        + " FROM (SELECT l.purchase_order_id, COUNT(*) AS line_count, COALESCE(SUM(l.line_total), 0) AS total_amount"
+        + " FROM purchase_order_lines l JOIN purchase_orders p ON p.id = l.purchase_order_id"
+        + " WHERE p.cycle_key = ? GROUP BY l.purchase_order_id) t"
+        + " WHERE o.id = t.purchase_order_id AND o.cycle_key = ? AND o.status = 'DRAFT'"
+        + " AND (o.line_count IS DISTINCT FROM t.line_count OR o.total_amount IS DISTINCT FROM t.total_amount)";
+
+    private static final String DELETE_EMPTY = "DELETE FROM purchase_orders o WHERE o.cycle_key = ? AND o.status = 'DRAFT'"
+        + " AND NOT EXISTS (SELECT 1 FROM purchase_order_lines l WHERE l.purchase_order_id = o.id)";
+
+    private final PurchaseOrderRepository purchaseOrderRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final String cycle;
+    private final int leadTimeDays;
+    private final int coverDays;
+
+    @Autowired
+    public PurchaseOrderService(
+            PurchaseOrderRepository purchaseOrderRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${pdms.purchasing.cycle:daily}") String cycle,
+            @Value("${pdms.forecast.lead-time-days:7}") int leadTimeDays,
+            @Value("${pdms.purchasing.cover-days:14}") int coverDays) {
+        this.purchaseOrderRepository = purchaseOrderRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cycle = cycle;
+        this.leadTimeDays = Math.max(1, leadTimeDays);
+        this.coverDays = coverDays;
+    }
+
+    @Scheduled(cron = "${pdms.purchasing.cron:0 0 6 * * *}")
+    public void generateScheduled() {
+        Map<String, Object> summary = generate();
+        log.info("purchasing.cycle_generated cycle={} orders_created={} lines_added={}",
+            summary.get("cycle"), summary.get("ordersCreated"), summary.get("linesAdded"));
+    }
+
+    /**
+     * Generate or top up the current cycle's purchase orders, all in one transaction
+     *
+     * @return Summary of what was created
+     */
+    public Map<String, Object> generate() {
+        long start = System.currentTimeMillis();
+        String cycleKey = currentCycleKey();
+        return transactionTemplate.execute(status -> {
+            // One generator at a time across the cluster; a second one waits and then finds nothing new
+            jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(hashtext('pdms_purchase_orders'))");
+
+            int ordersCreated = jdbcTemplate.update(INSERT_ORDERS, leadTimeDays, coverDays, cycleKey, cycleKey);
+            int linesAdded = jdbcTemplate.update(INSERT_LINES, leadTimeDays, coverDays, cycleKey, cycleKey);
+            Long unassigned = jdbcTemplate.queryForObject(COUNT_UNASSIGNED, Long.class, leadTimeDays, coverDays);
+            jdbcTemplate.update(UPDATE_TOTALS, cycleKey, cycleKey);
+            jdbcTemplate.update(DELETE_EMPTY, cycleKey);
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("cycle", cycleKey);
+            summary.put("ordersCreated", ordersCreated);
+            summary.put("linesAdded", linesAdded);
+            summary.put("lowStockWithoutSupplier", unassigned);
+            summary.put("tookMillis", System.currentTimeMillis() - start);
+            return summary;
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public List<PurchaseOrder> getOrdersForCycle(String cycleKey) {
+        return purchaseOrderRepository.findByCycleKeyOrderBySupplierNameAsc(cycleKey != null ? cycleKey : currentCycleKey());
+    }
+
+    @Transactional(readOnly = true)
+    public List<PurchaseOrder> getOrdersByStatus(PurchaseOrder.Status status) {
+        return purchaseOrderRepository.findByStatusOrderByCreatedAtDesc(status);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<PurchaseOrder> getOrderById(Long id) {
+        return purchaseOrderRepository.findById(id);
+    }
+
+    /**
+     * Move an order along DRAFT -> SENT -> RECEIVED; drafts and sent orders may be cancelled.
+     * Only DRAFT and SENT orders count as stock on order.
+     */
+    @Transactional
+    public Optional<PurchaseOrder> updateStatus(Long id, PurchaseOrder.Status status) {
+        return purchaseOrderRepository.findById(id).map(order -> {
+            if (!allowedTransitions(order.getStatus()).contains(status)) {
+                throw new InvalidStatusTransitionException("Purchase order " + id + " cannot move from "
+                    + order.getStatus() + " to " + status);
+            }
+            order.setStatus(status);
+            return purchaseOrderRepository.save(order);
+        });
+    }
+
+    public String currentCycleKey() {
+        LocalDate today = LocalDate.now();
+        if ("weekly".equals(cycle)) {
+            return today.get(IsoFields.WEEK_BASED_YEAR) + "-W" + String.format("%02d", today.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+        }
+        return today.toString();
+    }
+
+    private static Set<PurchaseOrder.Status> allowedTransitions(PurchaseOrder.Status from) {
+        switch (from) {
+            case DRAFT:
+                return EnumSet.of(PurchaseOrder.Status.SENT, PurchaseOrder.Status.CANCELLED);
+            case SENT:
+                return EnumSet.of(PurchaseOrder.Status.RECEIVED, PurchaseOrder.Status.CANCELLED);
+            default:
+                return EnumSet.noneOf(PurchaseOrder.Status.class);
+        }
+    }
+}
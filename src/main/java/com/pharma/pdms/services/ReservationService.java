@@ -0,0 +1,329 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.exceptions.InsufficientStockException;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.models.PrescriptionItem;
+import com.pharma.pdms.utils.catalogue.CatalogueEntry;
+import com.pharma.pdms.utils.cluster.PgChannelListener;
+import com.pharma.pdms.utils.datasource.ReplicaRoutingDataSource;
+import com.pharma.pdms.utils.inventory.ReservationLedger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Service for stock reservations held by undispensed prescription items.
+ * A reservation is stored on the item row (reserved_quantity, reserved_until), so it is
+ * shared by every node and commits or rolls back with the item. It lapses by date once the
+ * TTL elapses and is cleared when the item is dispensed.
+ * Reserving and every stock reduction are serialised per medicine through its @Version:
+ * reductions save the medicine anyway, and a reservation bumps its version, so a check
+ * raced by another commit fails with an optimistic lock conflict and is retried.
+ * Available-to-promise is read from memory: each node indexes the live reservations in a
+ * ReservationLedger, loaded on (re)connect and kept current from database notifications.
+ */
+@Service
+public class ReservationService {
+
+    static final String CHANNEL = "reservations";
+
+    private static final Logger log = LoggerFactory.getLogger(ReservationService.class);
+
+    private static final String READ_STOCK = "SELECT quantity_in_stock, version FROM medicines WHERE id = ?";
+
+    // Only succeeds if nothing committed a change to the medicine since its stock was read
+    private static final String BUMP_VERSION = "UPDATE medicines SET version = version + 1 WHERE id = ? AND version = ?";
+
+    private static final String SUM_RESERVED = "SELECT COALESCE(SUM(reserved_quantity), 0) FROM prescription_items"
+        + " WHERE medicine_id = ? AND reserved_quantity > 0 AND reserved_until > ?";
+
+    private static final String LIVE_RESERVATIONS = "SELECT id, medicine_id, reserved_quantity, reserved_until"
+        + " FROM prescription_items WHERE reserved_quantity > 0 AND reserved_until > ?";
+
+    private static final String LIVE_RESERVATIONS_BY_ID = LIVE_RESERVATIONS + " AND id = ANY(?)";
+
+    private static final String ACTIVE_TOTALS = "SELECT COUNT(*), COALESCE(SUM(reserved_quantity), 0) FROM prescription_items"
+        + " WHERE reserved_quantity > 0 AND reserved_until > ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate primaryJdbc;
+    private final ReservationLedger ledger;
+    private final MedicineCatalogueService catalogueService;
+    private final PgChannelListener listener;
+    private final long ttlMillis;
+
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+
+    @Autowired
+    public ReservationService(
+            JdbcTemplate jdbcTemplate,
+            ReservationLedger ledger,
+            MedicineCatalogueService catalogueService,
+            ReplicaRoutingDataSource routingDataSource,
+            @Value("${pdms.reservations.ttl-minutes:2880}") long ttlMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        // The index is read outside any transaction, so pin it to the primary rather than a lagging replica
+        this.primaryJdbc = new JdbcTemplate(routingDataSource.getPrimary());
+        this.ledger = ledger;
+        this.catalogueService = catalogueService;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        this.listener = new PgChannelListener(CHANNEL, routingDataSource.getPrimary(), new PgChannelListener.Handler() {
+            @Override
+            public void connected() {
+                // Subscribed before reading, so nothing committed from here on can be missed
+                load();
+            }
+
+            @Override
+            public void received(List<String> payloads) {
+                apply(payloads);
+            }
+        });
+    }
+
+    /**
+     * Start listening; the listener loads the live reservations once it is subscribed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        listener.stop();
+    }
+
+    /**
+     * Replace the index with the live reservations in the database
+     */
+    public void load() {
+        List<long[]> rows = primaryJdbc.query(LIVE_RESERVATIONS, (rs, rowNum) -> toRow(rs.getLong(1), rs.getLong(2),
+            rs.getInt(3), rs.getTimestamp(4)), new Timestamp(System.currentTimeMillis()));
+        ledger.replaceAll(rows);
+        reloads.increment();
+        log.info("reservations.loaded live={}", rows.size());
+    }
+
+    /**
+     * Reserve stock for a prescription item about to be saved.
+     * Sets the reservation on the item; it is persisted when the item is. The caller is
+     * expected to retry on an optimistic lock conflict, as for any other medicine write.
+     *
+     * @throws InsufficientStockException if less than the quantity is available to promise
+     * @throws ObjectOptimisticLockingFailureException if the medicine changed while checking
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reserve(PrescriptionItem item) {
+        Long medicineId = item.getMedicine().getId();
+        int quantity = item.getQuantity();
+        List<long[]> stock = jdbcTemplate.query(READ_STOCK,
+            (rs, rowNum) -> new long[] {rs.getLong(1), rs.getLong(2)}, medicineId);
+        long onHand = stock.isEmpty() ? 0 : stock.get(0)[0];
+        try {
+            checkAvailable(medicineId, onHand, quantity);
+        } catch (InsufficientStockException e) {
+            rejected.increment();
+            log.info("reservation.rejected medicine={} quantity={}", medicineId, quantity);
+            throw e;
+        }
+        if (stock.isEmpty() || jdbcTemplate.update(BUMP_VERSION, medicineId, stock.get(0)[1]) == 0) {
+            throw new ObjectOptimisticLockingFailureException(Medicine.class, medicineId);
+        }
+        catalogueService.publishReload(medicineId);
+
+        item.setReservedQuantity(quantity);
+        item.setReservedUntil(new Date(System.currentTimeMillis() + ttlMillis));
+        reserved.increment();
+        // The item has its id by the time this commits; other nodes hear of it by notification
+        afterCommit(() -> ledger.put(item.getId(), medicineId, quantity, item.getReservedUntil().getTime()));
+    }
+
+    /**
+     * Drop an item's reservation because its stock is being taken. The caller must flush
+     * the item before reducing stock, so that the check no longer counts it.
+     */
+    public void consume(PrescriptionItem item) {
+        if (item.getReservedQuantity() != null && item.getReservedQuantity() > 0) {
+            consumed.increment();
+        }
+        item.setReservedQuantity(0);
+        item.setReservedUntil(null);
+        Long itemId = item.getId();
+        if (itemId != null) {
+            afterCommit(() -> ledger.remove(itemId));
+        }
+    }
+
+    /**
+     * Check that a quantity can be taken from a medicine loaded in the current transaction
+     * without eating into stock reserved for pending prescription items. The caller saves
+     * the medicine afterwards, which fails on its version if anything committed meanwhile.
+     *
+     * @throws InsufficientStockException if stock on hand minus live reservations is below the quantity
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void checkAvailable(Medicine medicine, int quantity) {
+        int onHand = medicine.getQuantityInStock() == null ? 0 : medicine.getQuantityInStock();
+        checkAvailable(medicine.getId(), onHand, quantity);
+    }
+
+    /**
+     * Stock that can still be promised to new prescriptions, from memory
+     */
+    public long getAvailableToPromise(Long medicineId) {
+        return readOnHand(medicineId) - ledger.getReserved(medicineId);
+    }
+
+    public Map<String, Object> getAvailability(Long medicineId) {
+        long onHand = readOnHand(medicineId);
+        long reservedUnits = ledger.getReserved(medicineId);
+
+        Map<String, Object> availability = new HashMap<>();
+        availability.put("medicineId", medicineId);
+        availability.put("onHand", onHand);
+        availability.put("reserved", reservedUnits);
+        availability.put("available", onHand - reservedUnits);
+        return availability;
+    }
+
+    @Scheduled(fixedDelayString = "${pdms.reservations.tick-ms:60000}")
+    public void expireReservations() {
+        ledger.expireDue();
+    }
+
+    /**
+     * Reload the index if it no longer matches the live reservations in the table.
+     * Catches changes whose notification was lost, for example while the primary failed over.
+     */
+    @Scheduled(fixedDelayString = "${pdms.reservations.reconcile-ms:300000}", initialDelayString = "${pdms.reservations.reconcile-ms:300000}")
+    public void reconcile() {
+        if (!listener.isListening()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long[] table = readActiveTotals(now);
+        long[] memory = ledger.getLiveTotals(now);
+        if (table[0] != memory[0] || table[1] != memory[1]) {
+            log.warn("reservations.index_drifted table_count={} memory_count={} table_units={} memory_units={}",
+                table[0], memory[0], table[1], memory[1]);
+            load();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long[] live = ledger.getLiveTotals(System.currentTimeMillis());
+        Map<String, Object> stats = new HashMap<>(ledger.getStats());
+        stats.put("active", live[0]);
+        stats.put("reservedUnits", live[1]);
+        // Counters are for this node since it started
+        stats.put("reserved", reserved.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("consumed", consumed.sum());
+        stats.put("notifications", notifications.sum());
+        stats.put("reloads", reloads.sum());
+        stats.put("listening", listener.isListening());
+        stats.put("ttlMinutes", TimeUnit.MILLISECONDS.toMinutes(ttlMillis));
+        return stats;
+    }
+
+    /**
+     * Re-read the announced items and mirror their reservations, or their removal if gone
+     */
+    void apply(List<String> payloads) {
+        Set<Long> itemIds = new HashSet<>();
+        for (String payload : payloads) {
+            notifications.increment();
+            try {
+                itemIds.add(Long.valueOf(payload));
+            } catch (NumberFormatException e) {
+                log.warn("reservations.notification_ignored payload={}", payload);
+            }
+        }
+        if (itemIds.isEmpty()) {
+            return;
+        }
+        List<long[]> rows = primaryJdbc.query(LIVE_RESERVATIONS_BY_ID, (rs, rowNum) -> toRow(rs.getLong(1),
+            rs.getLong(2), rs.getInt(3), rs.getTimestamp(4)),
+            new Timestamp(System.currentTimeMillis()), itemIds.toArray(new Long[0]));
+        List<Long> found = new ArrayList<>(rows.size());
+        for (long[] row : rows) {
+            ledger.put(row[0], row[1], (int) row[2], row[3]);
+            found.add(row[0]);
+        }
+        itemIds.stream().filter(id -> !found.contains(id)).forEach(ledger::remove);
+    }
+
+    /**
+     * The write path reads reservations from the table rather than the index: another
+     * node's hold may have committed before its notification reached this one
+     */
+    private void checkAvailable(Long medicineId, long onHand, int quantity) {
+        Long sum = jdbcTemplate.queryForObject(SUM_RESERVED, Long.class,
+            medicineId, new Timestamp(System.currentTimeMillis()));
+        long reservedUnits = sum != null ? sum : 0;
+        if (onHand - reservedUnits < quantity) {
+            throw new InsufficientStockException("Cannot take " + quantity + " units of medicine " + medicineId
+                + ": " + onHand + " in stock, " + reservedUnits + " reserved for pending prescriptions");
+        }
+    }
+
+    private long readOnHand(Long medicineId) {
+        Optional<Integer> cached = catalogueService.get(medicineId).map(CatalogueEntry::getQuantityInStock);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        List<Long> stock = jdbcTemplate.query(READ_STOCK, (rs, rowNum) -> rs.getLong(1), medicineId);
+        return stock.isEmpty() ? 0 : stock.get(0);
+    }
+
+    private long[] readActiveTotals(long at) {
+        return primaryJdbc.queryForObject(ACTIVE_TOTALS, (rs, rowNum) -> new long[] {rs.getLong(1), rs.getLong(2)},
+            new Timestamp(at));
+    }
+
+    private static long[] toRow(long itemId, long medicineId, int quantity, Timestamp reservedUntil) {
+        return new long[] {itemId, medicineId, quantity, reservedUntil.getTime()};
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.utils.DateUtils;
+import com.pharma.pdms.utils.reporting.SalesAccumulator;
+import com.pharma.pdms.utils.reporting.SalesReport;
+import com.pharma.pdms.utils.reporting.SalesReportRow;
+import com.pharma.pdms.utils.reporting.SalesScanTask;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service producing sales reports from completed transactions.
+ * Transactions in the date range are split into id-range chunks that a dedicated
+ * fork-join pool scans in parallel, each chunk streaming its items into a primitive
+ * per-medicine, per-period accumulator. Accumulators are merged, then rolled up to
+ * the requested dimension using the medicine attributes, so memory is bounded by the
+ * number of groups rather than the number of rows.
+ */
+@Service
+public class SalesReportService {
+
+    public static final List<String> GROUPS = Arrays.asList("medicine", "category", "manufacturer", "supplier");
+    public static final List<String> PERIODS = Arrays.asList("day", "week", "month", "quarter", "year", "total");
+
+    private static final String TOTAL = "total";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final MedicineRepository medicineRepository;
+    private final ForkJoinPool pool;
+    private final long chunkSize;
+
+    @Autowired
+    public SalesReportService(
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            MedicineRepository medicineRepository,
+            @Value("${pdms.reports.parallelism:4}") int parallelism,
+            @Value("${pdms.reports.chunk-size:20000}") long chunkSize,
+            @Value("${pdms.reports.fetch-size:2000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // Rows are streamed rather than materialised per chunk
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        // Read-only transactions route to a replica when one is configured, and let the driver honour the fetch size
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.medicineRepository = medicineRepository;
+        this.pool = new ForkJoinPool(parallelism);
+        this.chunkSize = chunkSize;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Build a sales report
+     *
+     * @param from First day included
+     * @param to Last day included
+     * @param groupBy One of GROUPS
+     * @param period One of PERIODS
+     */
+    public SalesReport getSalesReport(LocalDate from, LocalDate to, String groupBy, String period) {
+        long start = System.currentTimeMillis();
+        Date fromDate = DateUtils.toDate(from);
+        Date toDate = DateUtils.toDate(to.plusDays(1));
+
+        long[] bounds = readOnlyTransaction.execute(status -> jdbcTemplate.queryForObject(
+            "SELECT MIN(t.id), MAX(t.id) FROM transactions t WHERE t.transaction_date >= ? AND t.transaction_date < ?",
+            (resultSet, rowNum) -> resultSet.getObject(1) == null ? null
+                : new long[] {resultSet.getLong(1), resultSet.getLong(2)},
+            fromDate, toDate));
+
+        AtomicInteger chunks = new AtomicInteger();
+        SalesAccumulator sales = new SalesAccumulator();
+        if (bounds != null) {
+            String sql = scanQuery(period);
+            SalesScanTask.ChunkScanner scanner = (fromId, toId, accumulator) -> {
+                chunks.incrementAndGet();
+                readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(sql, resultSet -> {
+                    Timestamp bucket = resultSet.getTimestamp(2);
+                    accumulator.add(resultSet.getLong(1), bucket == null ? 0 : bucket.getTime(),
+                        resultSet.getLong(3), resultSet.getLong(4));
+                }, fromId, toId, fromDate, toDate));
+            };
+            sales = pool.invoke(new SalesScanTask(scanner, bounds[0], bounds[1], chunkSize));
+        }
+
+        List<SalesReportRow> rows = rollUp(sales, groupBy, !TOTAL.equals(period));
+        long quantity = 0;
+        BigDecimal revenue = BigDecimal.ZERO;
+        long lines = 0;
+        for (SalesReportRow row : rows) {
+            quantity += row.getQuantity();
+            revenue = revenue.add(row.getRevenue());
+            lines += row.getLines();
+        }
+        return new SalesReport(from, to, groupBy, period, quantity, revenue, lines, chunks.get(),
+            System.currentTimeMillis() - start, rows);
+    }
+
+    private static String scanQuery(String period) {
+        String bucket = TOTAL.equals(period) ? "CAST(NULL AS timestamp)" : "date_trunc('" + period + "', t.transaction_date)";
+        return "SELECT ti.medicine_id, " + bucket + ", ti.quantity, ROUND(COALESCE(ti.subtotal, 0) * 100)"
+            + " FROM transactions t JOIN transaction_items ti ON ti.transaction_id = t.id"
+            + " WHERE t.id BETWEEN ? AND ? AND t.transaction_date >= ? AND t.transaction_date < ?"
+            + " AND t.payment_status = 'COMPLETED'";
+    }
+
+    /**
+     * Roll per-medicine totals up to the requested dimension, ordered by period then revenue
+     */
+    private List<SalesReportRow> rollUp(SalesAccumulator sales, String groupBy, boolean byPeriod) {
+        Map<Long, Object[]> medicines = new HashMap<>();
+        for (Object[] row : medicineRepository.findReportAttributes()) {
+            medicines.put((Long) row[0], row);
+        }
+
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        Map<String, SalesReportRow> rows = new LinkedHashMap<>();
+        sales.forEach((medicineId, period, quantity, cents, lines) -> {
+            Object[] medicine = medicines.get(medicineId);
+            String[] group = group(groupBy, medicineId, medicine);
+            String key = group[0] + "|" + period;
+            long[] total = totals.computeIfAbsent(key, k -> new long[3]);
+            total[0] += quantity;
+            total[1] += cents;
+            total[2] += lines;
+            rows.computeIfAbsent(key, k -> new SalesReportRow(group[0], group[1],
+                byPeriod ? DateUtils.toLocalDate(new Date(period)) : null, 0, BigDecimal.ZERO, 0));
+        });
+
+        List<SalesReportRow> result = new ArrayList<>(rows.size());
+        rows.forEach((key, row) -> {
+            long[] total = totals.get(key);
+            row.setQuantity(total[0]);
+            row.setRevenue(BigDecimal.valueOf(total[1], 2));
+            row.setLines(total[2]);
+            result.add(row);
+        });
+        result.sort(Comparator.comparing(SalesReportRow::getPeriodStart, Comparator.nullsFirst(Comparator.<LocalDate>naturalOrder()))
+            .thenComparing(SalesReportRow::getRevenue, Comparator.reverseOrder()));
+        return result;
+    }
+
+    /**
+     * @return {key, label} of the group a medicine falls into
+     */
+    private static String[] group(String groupBy, long medicineId, Object[] medicine) {
+        switch (groupBy) {
+            case "category":
+                return named(medicine == null ? null : (String) medicine[2], "Uncategorised");
+            case "manufacturer":
+                return named(medicine == null ? null : (String) medicine[3], "Unknown manufacturer");
+            case "supplier":
+                return medicine == null || medicine[4] == null
+                    ? new String[] {"none", "No supplier"}
+                    : new String[] {String.valueOf(medicine[4]), (String) medicine[5]};
+            default:
+                return new String[] {String.valueOf(medicineId),
+                    medicine == null ? "Medicine #" + medicineId : (String) medicine[1]};
+        }
+    }
+
+    private static String[] named(String value, String fallback) {
+        return value == null || value.isEmpty() ? new String[] {"none", fallback} : new String[] {value, value};
+    }
+}
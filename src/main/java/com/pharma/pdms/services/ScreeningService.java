@@ -0,0 +1,323 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.models.DrugInteraction;
+import com.pharma.pdms.repositories.DrugInteractionRepository;
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.repositories.PatientRepository;
+import com.pharma.pdms.repositories.PrescriptionItemRepository;
+import com.pharma.pdms.repositories.PrescriptionRepository;
+import com.pharma.pdms.utils.cluster.PgChannelListener;
+import com.pharma.pdms.utils.datasource.ReplicaRoutingDataSource;
+import com.pharma.pdms.utils.screening.InteractionGraph;
+import com.pharma.pdms.utils.screening.ScreeningEngine;
+import com.pharma.pdms.utils.screening.ScreeningWarning;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Service for allergy and drug-interaction screening on the prescription path.
+ * Each node screens from memory. A patient's active medications are the items prescribed
+ * to them within the active window, dispensed or not; they age out by date.
+ * Database triggers announce every committed change to allergies, prescription items,
+ * medicine terms and interactions on the screening channel, and each node re-reads the
+ * announced rows from the primary. Everything is reloaded whenever the node (re)connects,
+ * and a periodic count check reloads if active items drifted.
+ */
+@Service
+public class ScreeningService {
+
+    static final String CHANNEL = "screening";
+
+    private static final Logger log = LoggerFactory.getLogger(ScreeningService.class);
+
+    private final ScreeningEngine engine;
+    private final DrugInteractionRepository interactionRepository;
+    private final MedicineRepository medicineRepository;
+    private final PatientRepository patientRepository;
+    private final PrescriptionRepository prescriptionRepository;
+    private final PrescriptionItemRepository prescriptionItemRepository;
+    private final TransactionTemplate primaryReads;
+    private final PgChannelListener listener;
+    private final long activeWindowMillis;
+
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder expiredItems = new LongAdder();
+
+    @Autowired
+    public ScreeningService(
+            ScreeningEngine engine,
+            DrugInteractionRepository interactionRepository,
+            MedicineRepository medicineRepository,
+            PatientRepository patientRepository,
+            PrescriptionRepository prescriptionRepository,
+            PrescriptionItemRepository prescriptionItemRepository,
+            ReplicaRoutingDataSource routingDataSource,
+            PlatformTransactionManager transactionManager,
+            @Value("${pdms.screening.active-days:30}") long activeDays) {
+        this.engine = engine;
+        this.interactionRepository = interactionRepository;
+        this.medicineRepository = medicineRepository;
+        this.patientRepository = patientRepository;
+        this.prescriptionRepository = prescriptionRepository;
+        this.prescriptionItemRepository = prescriptionItemRepository;
+        // A read-write transaction keeps screening reads on the primary rather than a lagging replica
+        this.primaryReads = new TransactionTemplate(transactionManager);
+        this.activeWindowMillis = TimeUnit.DAYS.toMillis(activeDays);
+        this.listener = new PgChannelListener(CHANNEL, routingDataSource.getPrimary(), new PgChannelListener.Handler() {
+            @Override
+            public void connected() {
+                // Subscribed before reading, so nothing committed from here on can be missed
+                primaryReads.executeWithoutResult(status -> load());
+            }
+
+            @Override
+            public void received(List<String> payloads) {
+                apply(payloads);
+            }
+        });
+    }
+
+    /**
+     * Start listening; the listener loads the screening data once it is subscribed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        listener.stop();
+    }
+
+    /**
+     * Load interactions, medicine terms, allergies and active items, replacing what is held
+     */
+    @Transactional(readOnly = true)
+    public synchronized void load() {
+        reloadInteractions();
+
+        for (Object[] row : medicineRepository.findScreeningTerms()) {
+            engine.updateMedicine((Long) row[0], (String) row[1], (String) row[2]);
+        }
+        Map<Long, String> allergies = new HashMap<>();
+        for (Object[] row : patientRepository.findAllergies()) {
+            allergies.put((Long) row[0], (String) row[1]);
+        }
+        engine.replaceAllergies(allergies);
+
+        List<Object[]> rows = prescriptionItemRepository.findActiveMedicationsSince(new Date(activeSince()));
+        List<long[]> activeItems = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            engine.registerPrescription((Long) row[1], (Long) row[2]);
+            activeItems.add(new long[] {(Long) row[0], (Long) row[2], (Long) row[3], ((Date) row[4]).getTime()});
+        }
+        engine.replaceActiveItems(activeItems);
+        reloads.increment();
+        log.info("screening.loaded patients_with_allergies={} active_items={}", allergies.size(), activeItems.size());
+    }
+
+    /**
+     * Rebuild the interaction graph from the drug_interactions table
+     */
+    @Transactional(readOnly = true)
+    public void reloadInteractions() {
+        List<Object[]> pairs = interactionRepository.findAllPairs();
+        InteractionGraph.Builder builder = new InteractionGraph.Builder(pairs.size());
+        for (Object[] row : pairs) {
+            builder.add((Long) row[0], (Long) row[1], ((DrugInteraction.Severity) row[2]).ordinal(), (String) row[3]);
+        }
+        engine.replaceGraph(builder.build());
+        log.info("screening.interactions_loaded pairs={}", pairs.size());
+    }
+
+    @Transactional
+    public DrugInteraction addInteraction(DrugInteraction interaction) {
+        DrugInteraction savedInteraction = interactionRepository.save(interaction);
+        afterCommit(this::reloadInteractions);
+        return savedInteraction;
+    }
+
+    /**
+     * Drop items that aged out of the active window, then reload everything if the number
+     * of active items no longer matches the table. Catches changes whose notification was
+     * lost, for example while the primary failed over.
+     */
+    @Scheduled(fixedDelayString = "${pdms.screening.reconcile-ms:300000}", initialDelayString = "${pdms.screening.reconcile-ms:300000}")
+    public void reconcile() {
+        if (!listener.isListening()) {
+            return;
+        }
+        long activeSince = activeSince();
+        expiredItems.add(engine.expireActiveItems(activeSince));
+        Long rows = primaryReads.execute(status -> prescriptionItemRepository.countCreatedSince(new Date(activeSince)));
+        if (rows != null && rows != engine.getActiveItemCount()) {
+            log.warn("screening.active_items_drifted table={} memory={}", rows, engine.getActiveItemCount());
+            primaryReads.executeWithoutResult(status -> load());
+        }
+    }
+
+    /**
+     * Screen a medicine for a patient
+     *
+     * @return Warnings, most severe first
+     */
+    public List<ScreeningWarning> screen(Long patientId, Long medicineId) {
+        if (patientId == null || medicineId == null) {
+            return Collections.emptyList();
+        }
+        return engine.screen(patientId, medicineId, activeSince());
+    }
+
+    /**
+     * Resolve a prescription's patient from memory, loading only the patient id on a miss
+     */
+    public Long getPatientForPrescription(Long prescriptionId) {
+        Long patientId = engine.getPatientForPrescription(prescriptionId);
+        if (patientId == null) {
+            patientId = prescriptionRepository.findPatientIdById(prescriptionId).orElse(null);
+            if (patientId != null) {
+                engine.registerPrescription(prescriptionId, patientId);
+            }
+        }
+        return patientId;
+    }
+
+    public void prescriptionCreated(Long prescriptionId, Long patientId) {
+        engine.registerPrescription(prescriptionId, patientId);
+    }
+
+    /**
+     * Apply a new item on this node as soon as it commits; other nodes hear of it by notification
+     */
+    public void itemAdded(Long patientId, Long itemId, Long medicineId, Date createdAt) {
+        long created = createdAt != null ? createdAt.getTime() : System.currentTimeMillis();
+        afterCommit(() -> engine.addActiveItem(patientId, itemId, medicineId, created));
+    }
+
+    public void patientAllergiesChanged(Long patientId, String allergies) {
+        afterCommit(() -> engine.updatePatientAllergies(patientId, allergies));
+    }
+
+    public void medicineChanged(Long medicineId, String name, String category) {
+        engine.updateMedicine(medicineId, name, category);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>(engine.getStats());
+        stats.put("activeDays", TimeUnit.MILLISECONDS.toDays(activeWindowMillis));
+        stats.put("listening", listener.isListening());
+        stats.put("disconnectedForMillis", listener.getDisconnectedForMillis());
+        stats.put("notifications", notifications.sum());
+        stats.put("reloads", reloads.sum());
+        stats.put("expiredItems", expiredItems.sum());
+        return stats;
+    }
+
+    private long activeSince() {
+        return System.currentTimeMillis() - activeWindowMillis;
+    }
+
+    /**
+     * Re-read the announced rows from the primary and apply them, or their removal if gone
+     */
+    private synchronized void apply(List<String> payloads) {
+        Set<Long> patientIds = new HashSet<>();
+        Set<Long> itemIds = new HashSet<>();
+        Set<Long> medicineIds = new HashSet<>();
+        boolean interactions = false;
+        for (String payload : payloads) {
+            notifications.increment();
+            if ("interactions".equals(payload)) {
+                interactions = true;
+                continue;
+            }
+            int separator = payload.indexOf(':');
+            String kind = separator < 0 ? "" : payload.substring(0, separator);
+            try {
+                Long id = Long.valueOf(payload.substring(separator + 1));
+                switch (kind) {
+                    case "patient":
+                        patientIds.add(id);
+                        break;
+                    case "item":
+                        itemIds.add(id);
+                        break;
+                    case "medicine":
+                        medicineIds.add(id);
+                        break;
+                    default:
+                        log.warn("screening.notification_ignored payload={}", payload);
+                }
+            } catch (NumberFormatException e) {
+                log.warn("screening.notification_ignored payload={}", payload);
+            }
+        }
+
+        boolean reloadInteractions = interactions;
+        primaryReads.executeWithoutResult(status -> {
+            if (reloadInteractions) {
+                reloadInteractions();
+            }
+            if (!medicineIds.isEmpty()) {
+                for (Object[] row : medicineRepository.findScreeningTermsByIdIn(medicineIds)) {
+                    engine.updateMedicine((Long) row[0], (String) row[1], (String) row[2]);
+                }
+            }
+            if (!patientIds.isEmpty()) {
+                Map<Long, String> allergies = new HashMap<>();
+                for (Object[] row : patientRepository.findAllergiesByIdIn(patientIds)) {
+                    allergies.put((Long) row[0], (String) row[1]);
+                }
+                // A deleted patient has no row and so no allergies left
+                patientIds.forEach(id -> engine.updatePatientAllergies(id, allergies.get(id)));
+            }
+            if (!itemIds.isEmpty()) {
+                Set<Long> found = new HashSet<>();
+                for (Object[] row : prescriptionItemRepository.findActiveMedicationsByIdIn(itemIds, new Date(activeSince()))) {
+                    engine.registerPrescription((Long) row[1], (Long) row[2]);
+                    engine.addActiveItem((Long) row[2], (Long) row[0], (Long) row[3], ((Date) row[4]).getTime());
+                    found.add((Long) row[0]);
+                }
+                itemIds.stream().filter(id -> !found.contains(id)).forEach(engine::removeActiveItem);
+            }
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.models.Doctor;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.models.Patient;
+import com.pharma.pdms.models.Supplier;
+import com.pharma.pdms.repositories.DoctorRepository;
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.repositories.PatientRepository;
+import com.pharma.pdms.repositories.SupplierRepository;
+import com.pharma.pdms.utils.cluster.PgChannelListener;
+import com.pharma.pdms.utils.datasource.ReplicaRoutingDataSource;
+import com.pharma.pdms.utils.search.SearchDocument;
+import com.pharma.pdms.utils.search.SearchIndex;
+import com.pharma.pdms.utils.search.SearchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Service for unified full-text search across medicines, patients, doctors and suppliers.
+ * Each node keeps its own index. Database triggers announce every committed change to an
+ * indexed row on the search_index channel, whichever node or tool wrote it, and this node
+ * re-reads the announced rows from the primary and re-indexes them. The index is rebuilt
+ * from the database, one entity type per thread, once the node first listens; after a
+ * reconnect every type is resynced, and a periodic count check resyncs any type that
+ * drifted.
+ */
+@Service
+public class SearchService {
+
+    static final String CHANNEL = "search_index";
+
+    private static final Logger log = LoggerFactory.getLogger(SearchService.class);
+
+    private final SearchIndex searchIndex;
+    private final Map<String, Source<?>> sources = new LinkedHashMap<>();
+    private final TransactionTemplate primaryReads;
+    private final PgChannelListener listener;
+    private final int pageSize;
+    private final int maxLimit;
+
+    private volatile boolean rebuilt;
+    private final AtomicLong lastRebuildMillis = new AtomicLong(-1);
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final LongAdder reconcileMismatches = new LongAdder();
+
+    @Autowired
+    public SearchService(
+            SearchIndex searchIndex,
+            MedicineRepository medicineRepository,
+            PatientRepository patientRepository,
+            DoctorRepository doctorRepository,
+            SupplierRepository supplierRepository,
+            ReplicaRoutingDataSource routingDataSource,
+            PlatformTransactionManager transactionManager,
+            @Value("${pdms.search.rebuild-page-size:1000}") int pageSize,
+            @Value("${pdms.search.max-limit:100}") int maxLimit) {
+        this.searchIndex = searchIndex;
+        sources.put(SearchDocument.MEDICINE, new Source<Medicine>(medicineRepository, SearchDocument::of));
+        sources.put(SearchDocument.PATIENT, new Source<Patient>(patientRepository, SearchDocument::of));
+        sources.put(SearchDocument.DOCTOR, new Source<Doctor>(doctorRepository, SearchDocument::of));
+        sources.put(SearchDocument.SUPPLIER, new Source<Supplier>(supplierRepository, SearchDocument::of));
+        // A read-write transaction keeps index reads on the primary rather than a lagging replica
+        this.primaryReads = new TransactionTemplate(transactionManager);
+        this.pageSize = pageSize;
+        this.maxLimit = maxLimit;
+        this.listener = new PgChannelListener(CHANNEL, routingDataSource.getPrimary(), new PgChannelListener.Handler() {
+            @Override
+            public void connected() {
+                // Subscribed before reading, so nothing committed from here on can be missed
+                if (!rebuilt) {
+                    rebuildIndex();
+                } else {
+                    SearchIndex.TYPES.forEach(SearchService.this::resync);
+                }
+            }
+
+            @Override
+            public void received(List<String> payloads) {
+                apply(payloads);
+            }
+        });
+    }
+
+    /**
+     * Start listening; the listener builds the index once it is subscribed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        listener.stop();
+    }
+
+    /**
+     * Rebuild the index from the database, reading each entity type on its own thread
+     */
+    private synchronized void rebuildIndex() {
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(SearchIndex.TYPES.size());
+        try {
+            CompletableFuture.allOf(sources.values().stream()
+                .map(source -> CompletableFuture.runAsync(
+                    () -> source.forEach(primaryReads, pageSize, searchIndex::put), executor))
+                .toArray(CompletableFuture[]::new)
+            ).join();
+        } finally {
+            executor.shutdown();
+            searchIndex.markRebuilt();
+            rebuilt = true;
+        }
+        lastRebuildMillis.set(System.currentTimeMillis() - start);
+        log.info("search.index_rebuilt documents={} took_ms={}", searchIndex.getStats().get("documents"),
+            lastRebuildMillis.get());
+    }
+
+    /**
+     * Compare each type's document count with its table and resync the types that differ.
+     * Catches rows whose notification was lost, for example while the primary failed over.
+     */
+    @Scheduled(fixedDelayString = "${pdms.search.reconcile-ms:60000}", initialDelayString = "${pdms.search.reconcile-ms:60000}")
+    public void reconcile() {
+        if (!rebuilt || !listener.isListening() || searchIndex.hasPendingOperations()) {
+            return;
+        }
+        for (Map.Entry<String, Source<?>> entry : sources.entrySet()) {
+            Long rows = primaryReads.execute(status -> entry.getValue().repository.count());
+            if (rows != null && rows != searchIndex.count(entry.getKey())) {
+                reconcileMismatches.increment();
+                resync(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Ranked search across all entity types
+     *
+     * @param query Search text
+     * @param type One of medicine, patient, doctor, supplier, or null for all
+     * @param limit Maximum number of hits
+     */
+    public SearchResult search(String query, String type, int limit) {
+        if (type != null && !SearchIndex.TYPES.contains(type)) {
+            throw new IllegalArgumentException("Unknown search type '" + type + "', expected one of " + SearchIndex.TYPES);
+        }
+        return searchIndex.search(query, type, Math.min(Math.max(limit, 1), maxLimit));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>(searchIndex.getStats());
+        stats.put("lastRebuildMillis", lastRebuildMillis.get());
+        stats.put("listening", listener.isListening());
+        stats.put("disconnectedForMillis", listener.getDisconnectedForMillis());
+        stats.put("notifications", notifications.sum());
+        stats.put("resyncs", resyncs.sum());
+        stats.put("reconcileMismatches", reconcileMismatches.sum());
+        return stats;
+    }
+
+    /**
+     * Re-read the announced rows and queue their documents, or their removal if the row is gone
+     */
+    private synchronized void apply(List<String> payloads) {
+        Map<String, Set<Long>> idsByType = new HashMap<>();
+        for (String payload : payloads) {
+            notifications.increment();
+            int separator = payload.indexOf(':');
+            String type = separator < 0 ? null : payload.substring(0, separator);
+            if (!sources.containsKey(type)) {
+                log.warn("search.notification_ignored payload={}", payload);
+                continue;
+            }
+            try {
+                idsByType.computeIfAbsent(type, key -> new HashSet<>()).add(Long.valueOf(payload.substring(separator + 1)));
+            } catch (NumberFormatException e) {
+                log.warn("search.notification_ignored payload={}", payload);
+            }
+        }
+
+        for (Map.Entry<String, Set<Long>> entry : idsByType.entrySet()) {
+            Source<?> source = sources.get(entry.getKey());
+            Map<Long, SearchDocument> documents = primaryReads.execute(status -> source.load(entry.getValue()));
+            for (Long id : entry.getValue()) {
+                SearchDocument document = documents.get(id);
+                if (document != null) {
+                    searchIndex.index(document);
+                } else {
+                    searchIndex.delete(entry.getKey(), id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue every row of a type and the removal of documents whose row no longer exists
+     */
+    private synchronized void resync(String type) {
+        Source<?> source = sources.get(type);
+        Set<Long> ids = new HashSet<>();
+        source.forEach(primaryReads, pageSize, document -> {
+            searchIndex.index(document);
+            ids.add(document.getId());
+        });
+        int removed = 0;
+        for (Long id : searchIndex.ids(type)) {
+            if (!ids.contains(id)) {
+                searchIndex.delete(type, id);
+                removed++;
+            }
+        }
+        resyncs.increment();
+        log.info("search.index_resynced type={} documents={} removed={}", type, ids.size(), removed);
+    }
+
+    /**
+     * Table of one indexed entity type and how its rows become documents
+     */
+    private static final class Source<T> {
+        private final JpaRepository<T, Long> repository;
+        private final Function<T, SearchDocument> mapper;
+
+        private Source(JpaRepository<T, Long> repository, Function<T, SearchDocument> mapper) {
+            this.repository = repository;
+            this.mapper = mapper;
+        }
+
+        /**
+         * Read the whole table in id order, one page per transaction
+         */
+        private void forEach(TransactionTemplate transactionTemplate, int pageSize, Consumer<SearchDocument> consumer) {
+            Pageable pageable = PageRequest.of(0, pageSize, Sort.by("id"));
+            Page<T> page;
+            do {
+                Pageable current = pageable;
+                page = transactionTemplate.execute(status -> repository.findAll(current));
+                page.forEach(entity -> consumer.accept(mapper.apply(entity)));
+                pageable = page.nextPageable();
+            } while (page.hasNext());
+        }
+
+        private Map<Long, SearchDocument> load(Set<Long> ids) {
+            Map<Long, SearchDocument> documents = new HashMap<>();
+            for (T entity : repository.findAllById(ids)) {
+                SearchDocument document = mapper.apply(entity);
+                documents.put(document.getId(), document);
+            }
+            return documents;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.pharma.pdms.utils;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * Conversions between the java.util.Date values used by the entities and java.time
+ */
+public final class DateUtils {
+
+    private DateUtils() {
+    }
+
+    /**
+     * Convert an entity date to a LocalDate.
+     * Handles java.sql.Date, which does not support toInstant()
+     */
+    public static LocalDate toLocalDate(Date date) {
+        if (date == null) {
+            return null;
+        }
+        if (date instanceof java.sql.Date) {
+            return ((java.sql.Date) date).toLocalDate();
+        }
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    public static Date toDate(LocalDate localDate) {
+        return localDate == null ? null : java.sql.Date.valueOf(localDate);
+    }
+}
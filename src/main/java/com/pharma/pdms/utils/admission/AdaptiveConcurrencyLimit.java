@@ -0,0 +1,196 @@
+package com.pharma.pdms.utils.admission;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit for one request class that follows measured latency. Each completed
+ * request updates a short-term and a long-term average of its duration; while the short
+ * one stays within tolerance times the long one the limit grows by about the square root
+ * of itself, and as it rises past that the limit shrinks in proportion, down to half per
+ * update. The limit only grows while at least half of it is in use. Requests over the
+ * limit wait in a bounded queue for up to max-wait-ms.
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 1.0 / 600;
+    private static final double SMOOTHING = 0.2;
+
+    private final RequestClass requestClass;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final long maxWaitNanos;
+    private final double tolerance;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder admittedAfterQueue = new LongAdder();
+    private final LongAdder shedQueueFull = new LongAdder();
+    private final LongAdder shedTimedOut = new LongAdder();
+    private final LongAdder shedForPriority = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private double shortRttNanos;
+    private double longRttNanos;
+
+    public AdaptiveConcurrencyLimit(RequestClass requestClass, int initialLimit, int minLimit, int maxLimit,
+                                    int queueSize, long maxWaitMillis, double tolerance) {
+        this.requestClass = requestClass;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.queueSize = Math.max(0, queueSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.tolerance = Math.max(1.0, tolerance);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Take a slot, waiting for one if the class is at its limit and queueing is allowed
+     *
+     * @param mayQueue false to refuse at once rather than wait
+     * @return false if the request should be shed
+     */
+    public boolean acquire(boolean mayQueue) {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                admitted.increment();
+                return true;
+            }
+            if (!mayQueue || waiting >= queueSize || maxWaitNanos == 0) {
+                shedQueueFull.increment();
+                return false;
+            }
+            queued.increment();
+            waiting++;
+            long start = System.nanoTime();
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        shedTimedOut.increment();
+                        return false;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                inFlight++;
+                admittedAfterQueue.increment();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                shedTimedOut.increment();
+                return false;
+            } finally {
+                waiting--;
+                queueWaitNanos.add(System.nanoTime() - start);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Count a request refused because higher-priority work is under pressure
+     */
+    public void shedForPriority() {
+        shedForPriority.increment();
+    }
+
+    /**
+     * Give back a slot and adjust the limit to the request's duration
+     */
+    public void release(long durationNanos) {
+        lock.lock();
+        try {
+            int inUse = inFlight;
+            inFlight--;
+            update(durationNanos, inUse);
+            if (waiting > 0) {
+                // The limit may have grown by more than the one slot just freed
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * At the limit, or with requests waiting
+     */
+    public boolean isSaturated() {
+        lock.lock();
+        try {
+            return waiting > 0 || inFlight >= (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasWaiting() {
+        lock.lock();
+        try {
+            return waiting > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public RequestClass getRequestClass() {
+        return requestClass;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("limit", (int) limit);
+            stats.put("inFlight", inFlight);
+            stats.put("waiting", waiting);
+            stats.put("shortRttMillis", shortRttNanos / 1_000_000.0);
+            stats.put("longRttMillis", longRttNanos / 1_000_000.0);
+        } finally {
+            lock.unlock();
+        }
+        long queuedCount = queued.sum();
+        stats.put("admitted", admitted.sum() + admittedAfterQueue.sum());
+        stats.put("queued", queuedCount);
+        stats.put("admittedAfterQueue", admittedAfterQueue.sum());
+        stats.put("shedQueueFull", shedQueueFull.sum());
+        stats.put("shedTimedOut", shedTimedOut.sum());
+        stats.put("shedForPriority", shedForPriority.sum());
+        stats.put("averageQueueWaitMillis", queuedCount == 0 ? 0.0 : queueWaitNanos.sum() / 1_000_000.0 / queuedCount);
+        return stats;
+    }
+
+    private void update(long durationNanos, int inUse) {
+        if (longRttNanos == 0) {
+            shortRttNanos = durationNanos;
+            longRttNanos = durationNanos;
+            return;
+        }
+        shortRttNanos += (durationNanos - shortRttNanos) * SHORT_WEIGHT;
+        longRttNanos += (durationNanos - longRttNanos) * LONG_WEIGHT;
+        if (longRttNanos > shortRttNanos * 2) {
+            // Latency has recovered well below the baseline; let the baseline catch up
+            longRttNanos = longRttNanos * 0.95 + shortRttNanos * 0.05;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRttNanos));
+        if (gradient >= 1.0 && inUse < limit / 2) {
+            // Too little traffic to tell whether more concurrency would hurt
+            return;
+        }
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+}
@@ -0,0 +1,114 @@
+package com.pharma.pdms.utils.admission;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Admission control for the API. Each RequestClass has an adaptive concurrency limit;
+ * a request over its class's limit waits in the class's queue or is refused with 503 and
+ * Retry-After (pdms.admission.reject-status switches to 429). Lower-priority classes give
+ * way first: while a higher-priority class is at its limit they are refused instead of
+ * queued, and while one has requests waiting they are refused outright. Runs after
+ * authentication, so unauthenticated requests never take a slot. Disabled with
+ * pdms.admission.enabled=false.
+ */
+@Component
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private final boolean enabled;
+    private final int rejectStatus;
+    private final Map<RequestClass, AdaptiveConcurrencyLimit> limits = new EnumMap<>(RequestClass.class);
+    private final Map<RequestClass, Integer> retryAfterSeconds = new EnumMap<>(RequestClass.class);
+
+    public AdmissionControlFilter(
+            Environment environment,
+            @Value("${pdms.admission.enabled:true}") boolean enabled,
+            @Value("${pdms.admission.latency-tolerance:2.0}") double tolerance) {
+        this.enabled = enabled;
+        this.rejectStatus = environment.getProperty("pdms.admission.reject-status", Integer.class, SERVICE_UNAVAILABLE);
+        for (RequestClass requestClass : RequestClass.values()) {
+            String prefix = "pdms.admission." + requestClass.name().toLowerCase() + ".";
+            limits.put(requestClass, new AdaptiveConcurrencyLimit(requestClass,
+                environment.getProperty(prefix + "initial-limit", Integer.class, requestClass.getInitialLimit()),
+                environment.getProperty(prefix + "min-limit", Integer.class, requestClass.getMinLimit()),
+                environment.getProperty(prefix + "max-limit", Integer.class, requestClass.getMaxLimit()),
+                environment.getProperty(prefix + "queue-size", Integer.class, requestClass.getQueueSize()),
+                environment.getProperty(prefix + "max-wait-ms", Long.class, requestClass.getMaxWaitMillis()),
+                tolerance));
+            retryAfterSeconds.put(requestClass,
+                environment.getProperty(prefix + "retry-after-seconds", Integer.class, requestClass.getRetryAfterSeconds()));
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || RequestClass.of(request.getMethod(), request.getRequestURI()) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestClass requestClass = RequestClass.of(request.getMethod(), request.getRequestURI());
+        AdaptiveConcurrencyLimit limit = limits.get(requestClass);
+
+        boolean higherWaiting = false;
+        boolean higherSaturated = false;
+        for (RequestClass higher : RequestClass.values()) {
+            if (higher == requestClass) {
+                break;
+            }
+            AdaptiveConcurrencyLimit higherLimit = limits.get(higher);
+            higherWaiting |= higherLimit.hasWaiting();
+            higherSaturated |= higherLimit.isSaturated();
+        }
+
+        if (higherWaiting) {
+            limit.shedForPriority();
+            reject(request, response, requestClass);
+            return;
+        }
+        if (!limit.acquire(!higherSaturated)) {
+            reject(request, response, requestClass);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            limit.release(System.nanoTime() - start);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> byClass = new LinkedHashMap<>();
+        limits.forEach((requestClass, limit) -> byClass.put(requestClass.name(), limit.getStats()));
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("classes", byClass);
+        return stats;
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, RequestClass requestClass)
+            throws IOException {
+        log.debug("admission.shed class={} method={} uri={}", requestClass, request.getMethod(), request.getRequestURI());
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds.get(requestClass)));
+        response.sendError(rejectStatus, "Server busy, retry later");
+    }
+}
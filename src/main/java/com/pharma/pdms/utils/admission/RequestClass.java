@@ -0,0 +1,98 @@
+package com.pharma.pdms.utils.admission;
+
+/**
+ * Endpoint classes for admission control, highest priority first. Each has defaults for
+ * its concurrency limit and queue, overridable under pdms.admission.{class}.
+ */
+public enum RequestClass {
+    /**
+     * Counter work: prescriptions, screening, stock updates, dispensing and availability checks
+     */
+    DISPENSING(20, 4, 100, 50, 2000, 1),
+    /**
+     * Medicine catalogue and search
+     */
+    CATALOGUE(20, 2, 100, 20, 500, 1),
+    /**
+     * Dashboard widgets; the event stream is long-lived and not limited
+     */
+    DASHBOARD(8, 1, 40, 10, 250, 2),
+    /**
+     * Sales reports, forecasts, inventory valuation and purchase order generation
+     */
+    REPORTING(2, 1, 8, 2, 1000, 15);
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final long maxWaitMillis;
+    private final int retryAfterSeconds;
+
+    RequestClass(int initialLimit, int minLimit, int maxLimit, int queueSize, long maxWaitMillis, int retryAfterSeconds) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueSize = queueSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Class of a request, or null for requests that are not limited (login, monitoring,
+     * patient and doctor records, the dashboard stream)
+     */
+    public static RequestClass of(String method, String uri) {
+        if (uri.startsWith("/api/prescriptions") || uri.startsWith("/api/screening")) {
+            return DISPENSING;
+        }
+        if (uri.startsWith("/api/medicines")) {
+            String action = uri.substring(uri.lastIndexOf('/') + 1);
+            switch (action) {
+                case "stock":
+                case "dispense":
+                case "available":
+                    return DISPENSING;
+                case "forecast":
+                case "inventory-value":
+                    return REPORTING;
+                default:
+                    return CATALOGUE;
+            }
+        }
+        if (uri.startsWith("/api/search")) {
+            return CATALOGUE;
+        }
+        if (uri.startsWith("/api/dashboard")) {
+            return uri.equals("/api/dashboard/stream") ? null : DASHBOARD;
+        }
+        if (uri.startsWith("/api/reports") || ("POST".equals(method) && uri.equals("/api/purchase-orders/generate"))) {
+            return REPORTING;
+        }
+        return null;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,540 @@
+package com.pharma.pdms.utils.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable, compressed, columnar file of archived rows from one or more tables.
+ * Each table is split into row groups and every column of a group is encoded on its
+ * own (null bitmap, then zig-zag varint deltas for numbers or length-prefixed UTF-8
+ * for text) and deflated, so a lookup only inflates the columns it needs. The footer
+ * holds each block's offset and the min/max of every numeric column per group; it is
+ * read once on open, letting lookups skip groups, and whole files, that cannot match.
+ *
+ * Layout: MAGIC, column blocks, footer, footer offset (long), MAGIC.
+ */
+public final class ArchiveFile {
+
+    private static final byte[] MAGIC = "PDMSARC1".getBytes(StandardCharsets.US_ASCII);
+    private static final int TAIL_BYTES = Long.BYTES + MAGIC.length;
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path path;
+    private final long sizeBytes;
+    private final Map<String, TableMeta> tables;
+
+    private ArchiveFile(Path path, long sizeBytes, Map<String, TableMeta> tables) {
+        this.path = path;
+        this.sizeBytes = sizeBytes;
+        this.tables = tables;
+    }
+
+    /**
+     * Write tables to a new file, replacing any existing file only once the new one is complete
+     */
+    public static ArchiveFile write(Path path, List<ArchiveTable> tables, int rowGroupSize) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Map<String, TableMeta> metas = new LinkedHashMap<>();
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+            out.write(MAGIC);
+            long position = MAGIC.length;
+
+            for (ArchiveTable table : tables) {
+                ColumnType[] types = table.getTypes();
+                List<Object[]> rows = table.getRows();
+                List<GroupMeta> groups = new ArrayList<>();
+                for (int from = 0; from < rows.size(); from += rowGroupSize) {
+                    List<Object[]> groupRows = rows.subList(from, Math.min(rows.size(), from + rowGroupSize));
+                    GroupMeta group = new GroupMeta(groupRows.size(), types.length);
+                    for (int column = 0; column < types.length; column++) {
+                        byte[] raw = encode(types[column], groupRows, column);
+                        byte[] block = deflate(raw);
+                        out.write(block);
+                        group.offsets[column] = position;
+                        group.lengths[column] = block.length;
+                        group.rawLengths[column] = raw.length;
+                        position += block.length;
+                        if (types[column].isNumeric()) {
+                            group.collectStats(column, groupRows);
+                        }
+                    }
+                    groups.add(group);
+                }
+                metas.put(table.getName(), new TableMeta(table.getColumns(), types, groups));
+            }
+
+            writeFooter(out, metas);
+            out.writeLong(position);
+            out.write(MAGIC);
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new ArchiveFile(path, Files.size(path), metas);
+    }
+
+    /**
+     * Open a file, reading only its footer
+     */
+    public static ArchiveFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAGIC.length + TAIL_BYTES) {
+                throw new IOException("Not an archive file: " + path);
+            }
+            ByteBuffer tail = readAt(channel, size - TAIL_BYTES, TAIL_BYTES);
+            long footerOffset = tail.getLong();
+            byte[] magic = new byte[MAGIC.length];
+            tail.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || footerOffset < MAGIC.length || footerOffset > size - TAIL_BYTES) {
+                throw new IOException("Corrupt or incomplete archive file: " + path);
+            }
+            ByteBuffer footer = readAt(channel, footerOffset, (int) (size - TAIL_BYTES - footerOffset));
+            return new ArchiveFile(path, size, readFooter(new DataInputStream(new ByteArrayInputStream(footer.array()))));
+        }
+    }
+
+    /**
+     * Rows of a table whose numeric column lies within [min, max].
+     * Groups whose statistics rule out a match are skipped unread, and the remaining
+     * columns of a group are only inflated when its filter column has a match.
+     */
+    public List<Object[]> select(String table, String column, long min, long max) throws IOException {
+        TableMeta meta = tables.get(table);
+        if (meta == null) {
+            return Collections.emptyList();
+        }
+        int filterColumn = meta.indexOf(column);
+        List<Object[]> result = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (GroupMeta group : meta.groups) {
+                if (!group.overlaps(filterColumn, min, max)) {
+                    continue;
+                }
+                Object[] filterValues = readColumn(channel, meta, group, filterColumn);
+                List<Integer> matches = new ArrayList<>();
+                for (int row = 0; row < group.rowCount; row++) {
+                    Object value = filterValues[row];
+                    if (value != null) {
+                        long number = ColumnType.toLong(value);
+                        if (number >= min && number <= max) {
+                            matches.add(row);
+                        }
+                    }
+                }
+                if (!matches.isEmpty()) {
+                    Object[][] values = new Object[meta.columns.length][];
+                    for (int c = 0; c < values.length; c++) {
+                        values[c] = c == filterColumn ? filterValues : readColumn(channel, meta, group, c);
+                    }
+                    for (int row : matches) {
+                        result.add(row(values, row));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rows of a table whose numeric column holds one of the given values
+     */
+    public List<Object[]> selectIn(String table, String column, Set<Long> keys) throws IOException {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Object[]> rows = select(table, column, Collections.min(keys), Collections.max(keys));
+        int index = tables.get(table).indexOf(column);
+        rows.removeIf(row -> !keys.contains(ColumnType.toLong(row[index])));
+        return rows;
+    }
+
+    public List<Object[]> selectAll(String table) throws IOException {
+        TableMeta meta = tables.get(table);
+        if (meta == null) {
+            return Collections.emptyList();
+        }
+        List<Object[]> result = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (GroupMeta group : meta.groups) {
+                Object[][] values = new Object[meta.columns.length][];
+                for (int c = 0; c < values.length; c++) {
+                    values[c] = readColumn(channel, meta, group, c);
+                }
+                for (int row = 0; row < group.rowCount; row++) {
+                    result.add(row(values, row));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether any group of the table may hold a value of the column within [min, max]
+     */
+    public boolean mayContain(String table, String column, long min, long max) {
+        TableMeta meta = tables.get(table);
+        if (meta == null) {
+            return false;
+        }
+        int index = meta.indexOf(column);
+        return meta.groups.stream().anyMatch(group -> group.overlaps(index, min, max));
+    }
+
+    /**
+     * @return {min, max} of a numeric column over the whole table, or null if it holds no values
+     */
+    public long[] getRange(String table, String column) {
+        TableMeta meta = tables.get(table);
+        if (meta == null) {
+            return null;
+        }
+        int index = meta.indexOf(column);
+        long[] range = null;
+        for (GroupMeta group : meta.groups) {
+            if (group.hasStats[index]) {
+                range = range == null
+                    ? new long[] {group.mins[index], group.maxs[index]}
+                    : new long[] {Math.min(range[0], group.mins[index]), Math.max(range[1], group.maxs[index])};
+            }
+        }
+        return range;
+    }
+
+    public int getRowCount(String table) {
+        TableMeta meta = tables.get(table);
+        return meta == null ? 0 : meta.groups.stream().mapToInt(group -> group.rowCount).sum();
+    }
+
+    /**
+     * Uncompressed size of the encoded columns, for reporting the compression ratio
+     */
+    public long getRawBytes() {
+        long raw = 0;
+        for (TableMeta meta : tables.values()) {
+            for (GroupMeta group : meta.groups) {
+                for (int length : group.rawLengths) {
+                    raw += length;
+                }
+            }
+        }
+        return raw;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    private Object[] readColumn(FileChannel channel, TableMeta meta, GroupMeta group, int column) throws IOException {
+        ByteBuffer block = readAt(channel, group.offsets[column], group.lengths[column]);
+        byte[] raw = inflate(block.array(), group.rawLengths[column]);
+        return decode(meta.types[column], raw, group.rowCount);
+    }
+
+    private static Object[] row(Object[][] values, int row) {
+        Object[] result = new Object[values.length];
+        for (int c = 0; c < values.length; c++) {
+            result[c] = values[c][row];
+        }
+        return result;
+    }
+
+    private static byte[] encode(ColumnType type, List<Object[]> rows, int column) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] nulls = new byte[(rows.size() + 7) / 8];
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i)[column] == null) {
+                nulls[i >>> 3] |= 1 << (i & 7);
+            }
+        }
+        out.write(nulls, 0, nulls.length);
+
+        long previous = 0;
+        for (Object[] row : rows) {
+            Object value = row[column];
+            if (value == null) {
+                continue;
+            }
+            switch (type) {
+                case LONG:
+                case TIMESTAMP:
+                    long number = ColumnType.toLong(value);
+                    writeVarLong(out, zigZag(number - previous));
+                    previous = number;
+                    break;
+                case BOOLEAN:
+                    out.write((Boolean) value ? 1 : 0);
+                    break;
+                default:
+                    String text = type == ColumnType.DECIMAL ? ((BigDecimal) value).toPlainString() : (String) value;
+                    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                    writeVarLong(out, bytes.length);
+                    out.write(bytes, 0, bytes.length);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static Object[] decode(ColumnType type, byte[] raw, int rowCount) {
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        byte[] nulls = new byte[(rowCount + 7) / 8];
+        in.get(nulls);
+
+        Object[] values = new Object[rowCount];
+        long previous = 0;
+        for (int i = 0; i < rowCount; i++) {
+            if ((nulls[i >>> 3] & (1 << (i & 7))) != 0) {
+                continue;
+            }
+            switch (type) {
+                case LONG:
+                case TIMESTAMP:
+                    previous += unZigZag(readVarLong(in));
+                    values[i] = type == ColumnType.LONG ? (Object) previous : new Date(previous);
+                    break;
+                case BOOLEAN:
+                    values[i] = in.get() != 0;
+                    break;
+                default:
+                    byte[] bytes = new byte[(int) readVarLong(in)];
+                    in.get(bytes);
+                    String text = new String(bytes, StandardCharsets.UTF_8);
+                    values[i] = type == ColumnType.DECIMAL ? new BigDecimal(text) : text;
+            }
+        }
+        return values;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] block, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IOException("Truncated column block: expected " + rawLength + " bytes, got " + length);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt column block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFooter(DataOutputStream out, Map<String, TableMeta> metas) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(metas.size());
+        for (Map.Entry<String, TableMeta> entry : metas.entrySet()) {
+            TableMeta meta = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeInt(meta.columns.length);
+            for (int c = 0; c < meta.columns.length; c++) {
+                out.writeUTF(meta.columns[c]);
+                out.writeByte(meta.types[c].ordinal());
+            }
+            out.writeInt(meta.groups.size());
+            for (GroupMeta group : meta.groups) {
+                out.writeInt(group.rowCount);
+                for (int c = 0; c < meta.columns.length; c++) {
+                    out.writeLong(group.offsets[c]);
+                    out.writeInt(group.lengths[c]);
+                    out.writeInt(group.rawLengths[c]);
+                    out.writeBoolean(group.hasStats[c]);
+                    if (group.hasStats[c]) {
+                        out.writeLong(group.mins[c]);
+                        out.writeLong(group.maxs[c]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Map<String, TableMeta> readFooter(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported archive format version " + version);
+        }
+        ColumnType[] allTypes = ColumnType.values();
+        Map<String, TableMeta> metas = new LinkedHashMap<>();
+        int tableCount = in.readInt();
+        for (int t = 0; t < tableCount; t++) {
+            String name = in.readUTF();
+            int columnCount = in.readInt();
+            String[] columns = new String[columnCount];
+            ColumnType[] types = new ColumnType[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                columns[c] = in.readUTF();
+                types[c] = allTypes[in.readByte()];
+            }
+            int groupCount = in.readInt();
+            List<GroupMeta> groups = new ArrayList<>(groupCount);
+            for (int g = 0; g < groupCount; g++) {
+                GroupMeta group = new GroupMeta(in.readInt(), columnCount);
+                for (int c = 0; c < columnCount; c++) {
+                    group.offsets[c] = in.readLong();
+                    group.lengths[c] = in.readInt();
+                    group.rawLengths[c] = in.readInt();
+                    group.hasStats[c] = in.readBoolean();
+                    if (group.hasStats[c]) {
+                        group.mins[c] = in.readLong();
+                        group.maxs[c] = in.readLong();
+                    }
+                }
+                groups.add(group);
+            }
+            metas.put(name, new TableMeta(columns, types, groups));
+        }
+        return metas;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class TableMeta {
+        private final String[] columns;
+        private final ColumnType[] types;
+        private final List<GroupMeta> groups;
+
+        private TableMeta(String[] columns, ColumnType[] types, List<GroupMeta> groups) {
+            this.columns = columns;
+            this.types = types;
+            this.groups = groups;
+        }
+
+        private int indexOf(String column) {
+            int index = Arrays.asList(columns).indexOf(column);
+            if (index < 0 || !types[index].isNumeric()) {
+                throw new IllegalArgumentException("No numeric column " + column + " in archived table");
+            }
+            return index;
+        }
+    }
+
+    private static final class GroupMeta {
+        private final int rowCount;
+        private final long[] offsets;
+        private final int[] lengths;
+        private final int[] rawLengths;
+        private final boolean[] hasStats;
+        private final long[] mins;
+        private final long[] maxs;
+
+        private GroupMeta(int rowCount, int columnCount) {
+            this.rowCount = rowCount;
+            this.offsets = new long[columnCount];
+            this.lengths = new int[columnCount];
+            this.rawLengths = new int[columnCount];
+            this.hasStats = new boolean[columnCount];
+            this.mins = new long[columnCount];
+            this.maxs = new long[columnCount];
+        }
+
+        private void collectStats(int column, List<Object[]> rows) {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (Object[] row : rows) {
+                if (row[column] != null) {
+                    long value = ColumnType.toLong(row[column]);
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    hasStats[column] = true;
+                }
+            }
+            mins[column] = min;
+            maxs[column] = max;
+        }
+
+        private boolean overlaps(int column, long min, long max) {
+            return hasStats[column] && mins[column] <= max && maxs[column] >= min;
+        }
+    }
+}
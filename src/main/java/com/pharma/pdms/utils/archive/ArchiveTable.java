@@ -0,0 +1,84 @@
+package com.pharma.pdms.utils.archive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Rows of one table on their way into or out of an archive file.
+ * Row values are held in column order and normalised to the column types.
+ */
+public class ArchiveTable {
+
+    private final String name;
+    private final String[] columns;
+    private final ColumnType[] types;
+    private final List<Object[]> rows = new ArrayList<>();
+
+    public ArchiveTable(String name, String[] columns, ColumnType[] types) {
+        if (columns.length != types.length) {
+            throw new IllegalArgumentException("Table " + name + " has " + columns.length
+                + " columns but " + types.length + " types");
+        }
+        this.name = name;
+        this.columns = columns.clone();
+        this.types = types.clone();
+    }
+
+    public void add(Object[] row) {
+        if (row.length != columns.length) {
+            throw new IllegalArgumentException("Row for " + name + " has " + row.length
+                + " values, expected " + columns.length);
+        }
+        Object[] normalised = new Object[row.length];
+        for (int i = 0; i < row.length; i++) {
+            normalised[i] = types[i].normalise(row[i]);
+        }
+        rows.add(normalised);
+    }
+
+    public void addAll(List<Object[]> newRows) {
+        for (Object[] row : newRows) {
+            add(row);
+        }
+    }
+
+    /**
+     * Sort rows by a numeric column, so row groups cover narrow ranges of it
+     */
+    public void sortBy(String column) {
+        int index = indexOf(column);
+        rows.sort(Comparator.comparing(row -> row[index] == null ? null : ColumnType.toLong(row[index]),
+            Comparator.nullsLast(Comparator.<Long>naturalOrder())));
+    }
+
+    public int indexOf(String column) {
+        int index = Arrays.asList(columns).indexOf(column);
+        if (index < 0) {
+            throw new IllegalArgumentException("Table " + name + " has no column " + column);
+        }
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    public ColumnType[] getTypes() {
+        return types.clone();
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public List<Object[]> getRows() {
+        return Collections.unmodifiableList(rows);
+    }
+}
@@ -0,0 +1,52 @@
+package com.pharma.pdms.utils.archive;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Value types an archive column can hold, with the normalised Java type of each
+ */
+public enum ColumnType {
+    /** Long; any Number is accepted */
+    LONG,
+    /** java.util.Date, stored as epoch milliseconds */
+    TIMESTAMP,
+    /** String */
+    STRING,
+    /** BigDecimal, stored as its plain string form */
+    DECIMAL,
+    /** Boolean */
+    BOOLEAN;
+
+    /**
+     * Whether values are stored as numbers and get min/max statistics
+     */
+    public boolean isNumeric() {
+        return this == LONG || this == TIMESTAMP;
+    }
+
+    Object normalise(Object value) {
+        if (value == null) {
+            return null;
+        }
+        switch (this) {
+            case LONG:
+                return value instanceof Long ? value : toLong(value);
+            case TIMESTAMP:
+                return new Date(toLong(value));
+            case STRING:
+                return value.toString();
+            case DECIMAL:
+                return value instanceof BigDecimal ? value : new BigDecimal(value.toString());
+            default:
+                return value instanceof Boolean ? value : Boolean.valueOf(value.toString());
+        }
+    }
+
+    static long toLong(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        return ((Number) value).longValue();
+    }
+}
@@ -0,0 +1,372 @@
+package com.pharma.pdms.utils.archive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Archive files holding closed prescription history, one file per month. The files live
+ * in the shared directory, visible to every node, and the prescription_archive_files table
+ * indexes them: one row per month naming its current file and version. Each node keeps
+ * local copies in the archive directory (prescriptions-2023-04.v17.pdca) and refreshes
+ * them from the shared directory by version. Footers are loaded once and kept in memory
+ * as the index, so a lookup only opens files whose ranges can match.
+ *
+ * A file is never rewritten in place: every write goes to a new versioned name, so a
+ * rolled-back write leaves only an unreferenced file behind. Files the index no longer
+ * names are deleted from the shared directory once they are older than an hour, leaving
+ * time for uncommitted writes to commit and for other nodes to finish copying them.
+ */
+@Component
+public class PrescriptionArchive {
+
+    public static final String PRESCRIPTIONS = "prescriptions";
+    public static final String PRESCRIPTION_ITEMS = "prescription_items";
+    public static final String TRANSACTIONS = "transactions";
+    public static final String TRANSACTION_ITEMS = "transaction_items";
+
+    private static final Logger log = LoggerFactory.getLogger(PrescriptionArchive.class);
+
+    private static final String PREFIX = "prescriptions-";
+    private static final String SUFFIX = ".pdca";
+    // Files written before the archive table existed carry no version
+    private static final Pattern FILE_NAME = Pattern.compile("prescriptions-(\\d{4}-\\d{2})(?:\\.v(\\d+))?\\.pdca");
+
+    private static final Duration ORPHAN_AGE = Duration.ofHours(1);
+
+    private static final String UPSERT = "INSERT INTO prescription_archive_files (month, version, size_bytes, file_name, updated_at)"
+        + " VALUES (?, ?, ?, ?, now()) ON CONFLICT (month) DO UPDATE SET version = EXCLUDED.version,"
+        + " size_bytes = EXCLUDED.size_bytes, file_name = EXCLUDED.file_name, content = NULL,"
+        + " updated_at = EXCLUDED.updated_at";
+
+    private static final String IMPORT = "INSERT INTO prescription_archive_files (month, version, size_bytes, file_name)"
+        + " VALUES (?, ?, ?, ?) ON CONFLICT (month) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Path directory;
+    private final Path sharedDirectory;
+    private final int rowGroupSize;
+    private final NavigableMap<YearMonth, ArchiveFile> files = new ConcurrentSkipListMap<>();
+    private final Map<YearMonth, Long> versions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PrescriptionArchive(
+            JdbcTemplate jdbcTemplate,
+            @Value("${pdms.archive.directory:archive}") String directory,
+            @Value("${pdms.archive.shared-directory:archive-shared}") String sharedDirectory,
+            @Value("${pdms.archive.row-group-size:4096}") int rowGroupSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.directory = Paths.get(directory);
+        this.sharedDirectory = Paths.get(sharedDirectory);
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    /**
+     * Export content still stored in the archive table, reuse local copies that are still
+     * current, publish files written before the archive table existed, then fetch whatever
+     * else the index names
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() throws IOException {
+        exportStoredContent();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+                for (Path path : paths) {
+                    Matcher matcher = FILE_NAME.matcher(path.getFileName().toString());
+                    if (!matcher.matches()) {
+                        continue;
+                    }
+                    YearMonth month = YearMonth.parse(matcher.group(1));
+                    try {
+                        ArchiveFile file = ArchiveFile.open(path);
+                        if (matcher.group(2) == null) {
+                            importLegacy(month, path);
+                            Files.delete(path);
+                            log.info("archive.file_imported month={} path={}", month, path);
+                        } else {
+                            install(month, Long.parseLong(matcher.group(2)), file);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("archive.file_skipped path={} error={}", path, e.getMessage());
+                    }
+                }
+            }
+        }
+        refresh();
+        log.info("archive.loaded files={} directory={} shared_directory={}", files.size(), directory.toAbsolutePath(),
+            sharedDirectory.toAbsolutePath());
+    }
+
+    /**
+     * Bring the local copies in line with the archive index: fetch months that are new or
+     * were rewritten by another node, and drop copies the index no longer has
+     */
+    public synchronized void refresh() {
+        Map<YearMonth, Long> shared = new HashMap<>();
+        Map<YearMonth, String> fileNames = new HashMap<>();
+        Map<YearMonth, Long> sizes = new HashMap<>();
+        jdbcTemplate.query("SELECT month, version, file_name, size_bytes FROM prescription_archive_files", resultSet -> {
+            YearMonth month = YearMonth.from(resultSet.getDate(1).toLocalDate());
+            shared.put(month, resultSet.getLong(2));
+            fileNames.put(month, resultSet.getString(3));
+            sizes.put(month, resultSet.getLong(4));
+        });
+        try {
+            for (Map.Entry<YearMonth, Long> entry : shared.entrySet()) {
+                YearMonth month = entry.getKey();
+                // A row without a file name is still awaiting export by a starting node
+                if (fileNames.get(month) != null && !entry.getValue().equals(versions.get(month))) {
+                    download(month, entry.getValue(), fileNames.get(month), sizes.get(month));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not copy archive files to " + directory, e);
+        }
+        for (YearMonth month : new ArrayList<>(versions.keySet())) {
+            if (!shared.containsKey(month)) {
+                remove(month);
+            }
+        }
+    }
+
+    public Optional<ArchiveFile> get(YearMonth month) {
+        return Optional.ofNullable(files.get(month));
+    }
+
+    /**
+     * Files that may hold rows of a table with the numeric column in [min, max]
+     */
+    public List<ArchiveFile> candidates(String table, String column, long min, long max) {
+        List<ArchiveFile> candidates = new ArrayList<>();
+        for (ArchiveFile file : files.values()) {
+            if (file.mayContain(table, column, min, max)) {
+                candidates.add(file);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Write (or rewrite) the file for a month: the file goes to the shared directory under a
+     * new version and the index row points at it as part of the caller's transaction. Readers
+     * keep using the previous file until the new one has replaced it; if the transaction
+     * rolls back, the next refresh restores the committed copy.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public synchronized ArchiveFile write(YearMonth month, List<ArchiveTable> tables) throws IOException {
+        deleteOrphans();
+        Files.createDirectories(directory);
+        Long version = nextVersion();
+        String fileName = fileName(month, version);
+        ArchiveFile file = ArchiveFile.write(directory.resolve(fileName), tables, rowGroupSize);
+        publish(file.getPath(), fileName);
+        jdbcTemplate.update(UPSERT, Date.valueOf(month.atDay(1)), version, file.getSizeBytes(), fileName);
+        install(month, version, file);
+        return file;
+    }
+
+    /**
+     * Delete shared files the index does not name once they are old enough that no
+     * transaction can still be about to commit them and no node still copying them
+     */
+    public synchronized int deleteOrphans() throws IOException {
+        if (!Files.isDirectory(sharedDirectory)) {
+            return 0;
+        }
+        List<String> indexed = jdbcTemplate.queryForList(
+            "SELECT file_name FROM prescription_archive_files WHERE file_name IS NOT NULL", String.class);
+        FileTime cutoff = FileTime.fromMillis(System.currentTimeMillis() - ORPHAN_AGE.toMillis());
+        int deleted = 0;
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(sharedDirectory, PREFIX + "*")) {
+            for (Path path : paths) {
+                if (!indexed.contains(path.getFileName().toString())
+                        && Files.getLastModifiedTime(path).compareTo(cutoff) < 0) {
+                    deleteQuietly(path);
+                    deleted++;
+                }
+            }
+        }
+        if (deleted > 0) {
+            log.info("archive.orphans_deleted files={} shared_directory={}", deleted, sharedDirectory);
+        }
+        return deleted;
+    }
+
+    public boolean isEmpty() {
+        return files.isEmpty();
+    }
+
+    public Map<String, Object> getStats() {
+        long sizeBytes = 0;
+        long rawBytes = 0;
+        Map<String, Long> rows = new HashMap<>();
+        for (ArchiveFile file : files.values()) {
+            sizeBytes += file.getSizeBytes();
+            rawBytes += file.getRawBytes();
+            for (String table : new String[] {PRESCRIPTIONS, PRESCRIPTION_ITEMS, TRANSACTIONS, TRANSACTION_ITEMS}) {
+                rows.merge(table, (long) file.getRowCount(table), Long::sum);
+            }
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("directory", directory.toAbsolutePath().toString());
+        stats.put("sharedDirectory", sharedDirectory.toAbsolutePath().toString());
+        stats.put("files", files.size());
+        stats.put("oldestMonth", files.isEmpty() ? null : files.firstKey().toString());
+        stats.put("newestMonth", files.isEmpty() ? null : files.lastKey().toString());
+        stats.put("rows", rows);
+        stats.put("sizeBytes", sizeBytes);
+        stats.put("compressionRatio", sizeBytes == 0 ? null : (double) rawBytes / sizeBytes);
+        return stats;
+    }
+
+    /**
+     * Move content stored in the archive table before the shared directory existed out to
+     * it, leaving the index row behind. Nodes starting together export the same bytes to
+     * the same name, so either copy will do.
+     */
+    private void exportStoredContent() throws IOException {
+        List<Map<String, Object>> stored = jdbcTemplate.queryForList(
+            "SELECT month, version FROM prescription_archive_files WHERE file_name IS NULL AND content IS NOT NULL");
+        for (Map<String, Object> row : stored) {
+            YearMonth month = YearMonth.from(((Date) row.get("month")).toLocalDate());
+            long version = ((Number) row.get("version")).longValue();
+            String fileName = fileName(month, version);
+            Path target = sharedDirectory.resolve(fileName);
+            Boolean exported = jdbcTemplate.query(
+                "SELECT content FROM prescription_archive_files WHERE month = ? AND version = ?",
+                resultSet -> {
+                    if (!resultSet.next()) {
+                        return false;
+                    }
+                    try (InputStream content = resultSet.getBinaryStream(1)) {
+                        copyDurably(content, target);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return true;
+                }, Date.valueOf(month.atDay(1)), version);
+            if (Boolean.TRUE.equals(exported)) {
+                jdbcTemplate.update("UPDATE prescription_archive_files SET file_name = ?, content = NULL"
+                    + " WHERE month = ? AND version = ?", fileName, Date.valueOf(month.atDay(1)), version);
+                log.info("archive.content_exported month={} version={} path={}", month, version, target);
+            }
+        }
+    }
+
+    /**
+     * Publish a file written before the archive table existed, unless another node has
+     * already indexed the month
+     */
+    private void importLegacy(YearMonth month, Path path) throws IOException {
+        long version = nextVersion();
+        String fileName = fileName(month, version);
+        publish(path, fileName);
+        int inserted = jdbcTemplate.update(IMPORT, Date.valueOf(month.atDay(1)), version, Files.size(path), fileName);
+        if (inserted == 0) {
+            deleteQuietly(sharedDirectory.resolve(fileName));
+        }
+    }
+
+    private long nextVersion() {
+        return jdbcTemplate.queryForObject("SELECT nextval('prescription_archive_files_version_seq')", Long.class);
+    }
+
+    /**
+     * Copy a local file into the shared directory, durable before the index can name it
+     */
+    private void publish(Path source, String fileName) throws IOException {
+        try (InputStream content = Files.newInputStream(source)) {
+            copyDurably(content, sharedDirectory.resolve(fileName));
+        }
+    }
+
+    private static void copyDurably(InputStream content, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            content.transferTo(out);
+            out.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void download(YearMonth month, long version, String fileName, long sizeBytes) throws IOException {
+        Path source = sharedDirectory.resolve(fileName);
+        if (!Files.exists(source)) {
+            // Rewritten again and cleaned up since the index was read; the next refresh fetches it
+            log.warn("archive.file_missing month={} version={} path={}", month, version, source);
+            return;
+        }
+        Files.createDirectories(directory);
+        Path path = directory.resolve(fileName(month, version));
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+        if (Files.size(temp) != sizeBytes) {
+            Files.delete(temp);
+            throw new IOException("Archive file " + source + " is " + Files.size(source) + " bytes, index says " + sizeBytes);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        install(month, version, ArchiveFile.open(path));
+        log.info("archive.file_fetched month={} version={} size_bytes={}", month, version, sizeBytes);
+    }
+
+    private void install(YearMonth month, long version, ArchiveFile file) {
+        ArchiveFile previous = files.put(month, file);
+        versions.put(month, version);
+        if (previous != null && !previous.getPath().equals(file.getPath())) {
+            deleteQuietly(previous.getPath());
+        }
+    }
+
+    private void remove(YearMonth month) {
+        ArchiveFile previous = files.remove(month);
+        versions.remove(month);
+        if (previous != null) {
+            deleteQuietly(previous.getPath());
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("archive.file_not_deleted path={} error={}", path, e.getMessage());
+        }
+    }
+
+    private static String fileName(YearMonth month, long version) {
+        return PREFIX + month + ".v" + version + SUFFIX;
+    }
+}
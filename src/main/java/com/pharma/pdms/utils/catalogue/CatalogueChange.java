@@ -0,0 +1,26 @@
+package com.pharma.pdms.utils.catalogue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Payload of a catalogue change notification.
+ * An upsert carries the entry; a delete or an oversized change carries only the id.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogueChange {
+
+    public static final String UPSERT = "U";
+    public static final String DELETE = "D";
+    /** Entry too large for a NOTIFY payload; receivers reload the row */
+    public static final String RELOAD = "R";
+
+    private String op;
+    private Long id;
+    private CatalogueEntry entry;
+    private String node;
+    private long sentAt;
+}
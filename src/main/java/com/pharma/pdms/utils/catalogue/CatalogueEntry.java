@@ -0,0 +1,32 @@
+package com.pharma.pdms.utils.catalogue;
+
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.utils.DateUtils;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Compact, immutable-by-convention snapshot of a medicine held in the node-local catalogue
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogueEntry {
+    private Long id;
+    private String name;
+    private BigDecimal unitPrice;
+    private Integer quantityInStock;
+    private LocalDate expiryDate;
+    private String category;
+    private Long version;
+
+    public static CatalogueEntry of(Medicine medicine) {
+        return new CatalogueEntry(medicine.getId(), medicine.getName(), medicine.getUnitPrice(),
+            medicine.getQuantityInStock(), DateUtils.toLocalDate(medicine.getExpiryDate()),
+            medicine.getCategory(), medicine.getVersion());
+    }
+}
@@ -0,0 +1,86 @@
+package com.pharma.pdms.utils.catalogue;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node-local map of catalogue entries.
+ * Changes may arrive out of order (notifications, reloads and local writes race),
+ * so an entry is only replaced by one with an equal or higher version, and deleted
+ * ids are remembered for a while so a late upsert cannot bring them back.
+ */
+@Component
+public class MedicineCatalogue {
+
+    private static final long TOMBSTONE_MILLIS = 10 * 60 * 1000L;
+
+    private final Map<Long, CatalogueEntry> entries = new ConcurrentHashMap<>();
+    private final Map<Long, Long> tombstones = new ConcurrentHashMap<>();
+
+    /**
+     * @return true if the entry was newer than what was held and has been applied
+     */
+    public boolean apply(CatalogueEntry entry) {
+        if (tombstones.containsKey(entry.getId())) {
+            return false;
+        }
+        boolean[] applied = new boolean[1];
+        entries.compute(entry.getId(), (id, current) -> {
+            if (current == null || version(current) <= version(entry)) {
+                applied[0] = true;
+                return entry;
+            }
+            return current;
+        });
+        return applied[0];
+    }
+
+    public void remove(Long id) {
+        tombstones.put(id, System.currentTimeMillis());
+        entries.remove(id);
+    }
+
+    /**
+     * Replace the whole catalogue with a fresh load, keeping any entry that a
+     * concurrent notification made newer than the loaded row
+     */
+    public void replaceAll(List<CatalogueEntry> loaded) {
+        Set<Long> seen = new HashSet<>();
+        for (CatalogueEntry entry : loaded) {
+            seen.add(entry.getId());
+            apply(entry);
+        }
+        entries.keySet().removeIf(id -> !seen.contains(id));
+    }
+
+    public Optional<CatalogueEntry> get(Long id) {
+        return Optional.ofNullable(entries.get(id));
+    }
+
+    public List<CatalogueEntry> getAll() {
+        List<CatalogueEntry> all = new ArrayList<>(entries.values());
+        all.sort(Comparator.comparing(CatalogueEntry::getName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)));
+        return all;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void purgeTombstones() {
+        long cutoff = System.currentTimeMillis() - TOMBSTONE_MILLIS;
+        tombstones.values().removeIf(deletedAt -> deletedAt < cutoff);
+    }
+
+    private static long version(CatalogueEntry entry) {
+        return entry.getVersion() == null ? -1 : entry.getVersion();
+    }
+}
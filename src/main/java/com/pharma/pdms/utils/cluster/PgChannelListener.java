@@ -0,0 +1,131 @@
+package com.pharma.pdms.utils.cluster;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listens on a PostgreSQL NOTIFY channel over a dedicated connection and hands the
+ * payloads to a handler on its own thread. Notifications are only delivered while a
+ * session listens, so the handler is told every time the listener (re)connects and
+ * must then catch up from the database. The connection is retried with backoff.
+ */
+public class PgChannelListener {
+
+    private static final Logger log = LoggerFactory.getLogger(PgChannelListener.class);
+
+    private static final int POLL_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    /**
+     * Callbacks, always invoked on the listener thread
+     */
+    public interface Handler {
+
+        /**
+         * Subscribed; anything sent while not listening was missed
+         */
+        void connected();
+
+        /**
+         * Payloads received in one poll, in the order they were sent
+         */
+        void received(List<String> payloads);
+    }
+
+    private final String channel;
+    private final DataSource dataSource;
+    private final Handler handler;
+
+    private volatile Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean listening;
+    private volatile long disconnectedSince = System.currentTimeMillis();
+    private final LongAdder disconnects = new LongAdder();
+
+    public PgChannelListener(String channel, DataSource dataSource, Handler handler) {
+        this.channel = channel;
+        this.dataSource = dataSource;
+        this.handler = handler;
+    }
+
+    public void start() {
+        Thread listenerThread = new Thread(this::listen, channel + "-listener");
+        listenerThread.setDaemon(true);
+        thread = listenerThread;
+        listenerThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        Thread listenerThread = thread;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    public boolean isListening() {
+        return listening;
+    }
+
+    public long getDisconnectedForMillis() {
+        return listening ? 0 : System.currentTimeMillis() - disconnectedSince;
+    }
+
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    private void listen() {
+        long backoff = 1000;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                // Channel names are constants, never user input
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                listening = true;
+                handler.connected();
+                backoff = 1000;
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_MILLIS);
+                    if (notifications != null && notifications.length > 0) {
+                        List<String> payloads = new ArrayList<>(notifications.length);
+                        for (PGNotification notification : notifications) {
+                            payloads.add(notification.getParameter());
+                        }
+                        handler.received(payloads);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (listening) {
+                    listening = false;
+                    disconnectedSince = System.currentTimeMillis();
+                    disconnects.increment();
+                }
+                if (!running) {
+                    return;
+                }
+                log.warn("cluster.listener_disconnected channel={} retry_ms={} error={}", channel, backoff, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.pharma.pdms.utils.coalescing;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read method whose concurrent calls with equal arguments share one execution.
+ * The result is handed to every waiting caller, so it must not be modified and must not
+ * need lazy loading. Arguments are compared with equals.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Coalesced {
+
+    /**
+     * How long a completed result keeps being served to new callers, in milliseconds;
+     * 0 shares in-flight executions only. Placeholders such as ${pdms...} are resolved.
+     */
+    String ttlMillis() default "0";
+}
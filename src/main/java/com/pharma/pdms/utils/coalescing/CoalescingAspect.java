@@ -0,0 +1,86 @@
+package com.pharma.pdms.utils.coalescing;
+
+import com.pharma.pdms.utils.datasource.RoutingContext;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies @Coalesced. Runs outside the transaction advice, so callers sharing an
+ * execution also share its transaction and connection. Calls are not coalesced when the
+ * caller is already in a transaction, where it may need to see its own uncommitted
+ * changes, or when the client is pinned to the primary after a write, where a result
+ * started before the write would be stale. Disabled with pdms.coalescing.enabled=false.
+ */
+@Aspect
+@Component
+// Still outside the transaction advice, but after ExposeInvocationInterceptor (HIGHEST_PRECEDENCE + 1),
+// which has to run first for the @Coalesced argument to be bound
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class CoalescingAspect {
+
+    private final boolean enabled;
+    private final ConfigurableBeanFactory beanFactory;
+    private final Map<Method, CoalescedMethod> methods = new ConcurrentHashMap<>();
+
+    public CoalescingAspect(
+            ConfigurableBeanFactory beanFactory,
+            @Value("${pdms.coalescing.enabled:true}") boolean enabled) {
+        this.beanFactory = beanFactory;
+        this.enabled = enabled;
+    }
+
+    @Around("@annotation(coalesced)")
+    public Object coalesce(ProceedingJoinPoint joinPoint, Coalesced coalesced) throws Throwable {
+        if (!enabled || TransactionSynchronizationManager.isActualTransactionActive()
+                || RoutingContext.isPinnedToPrimary()) {
+            return joinPoint.proceed();
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        CoalescedMethod coalescedMethod = methods.computeIfAbsent(method, key -> new CoalescedMethod(
+            Long.parseLong(beanFactory.resolveEmbeddedValue(coalesced.ttlMillis()))));
+        return coalescedMethod.flights.execute(Arrays.asList(joinPoint.getArgs()), coalescedMethod.ttlMillis,
+            joinPoint::proceed);
+    }
+
+    @Scheduled(fixedDelayString = "${pdms.coalescing.purge-ms:60000}")
+    public void purgeExpired() {
+        methods.values().forEach(method -> method.flights.purgeExpired());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> byMethod = new LinkedHashMap<>();
+        methods.forEach((method, coalescedMethod) -> {
+            Map<String, Object> stats = coalescedMethod.flights.getStats();
+            stats.put("ttlMillis", coalescedMethod.ttlMillis);
+            byMethod.put(method.getDeclaringClass().getSimpleName() + "." + method.getName(), stats);
+        });
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("methods", byMethod);
+        return stats;
+    }
+
+    private static final class CoalescedMethod {
+        private final long ttlMillis;
+        private final SingleFlight flights = new SingleFlight();
+
+        private CoalescedMethod(long ttlMillis) {
+            this.ttlMillis = ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.pharma.pdms.utils.coalescing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares one execution per key among concurrent callers. The first caller runs the
+ * computation on its own thread; callers arriving while it runs wait for its result or
+ * exception. A successful result may be kept for a short time to live; failures are
+ * never kept.
+ */
+public final class SingleFlight {
+
+    /**
+     * Computation run by the first caller
+     */
+    @FunctionalInterface
+    public interface Computation {
+        Object compute() throws Throwable;
+    }
+
+    private final ConcurrentHashMap<Object, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder cached = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Run the computation for this key, or share the result of one already running
+     *
+     * @param ttlMillis How long a result keeps being served after completing; 0 for none
+     */
+    public Object execute(Object key, long ttlMillis, Computation computation) throws Throwable {
+        Flight candidate = new Flight();
+        Flight flight;
+        while (true) {
+            flight = flights.putIfAbsent(key, candidate);
+            if (flight == null || !flight.isExpired()) {
+                break;
+            }
+            flights.remove(key, flight);
+        }
+
+        if (flight != null) {
+            (flight.result.isDone() ? cached : joined).increment();
+            return await(flight);
+        }
+
+        executions.increment();
+        try {
+            Object result = computation.compute();
+            candidate.expiresAt = System.currentTimeMillis() + ttlMillis;
+            candidate.result.complete(result);
+            if (ttlMillis <= 0) {
+                flights.remove(key, candidate);
+            }
+            return result;
+        } catch (Throwable e) {
+            failures.increment();
+            flights.remove(key, candidate);
+            candidate.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Drop completed results whose time to live has passed
+     */
+    public void purgeExpired() {
+        flights.values().removeIf(Flight::isExpired);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("executions", executions.sum());
+        stats.put("joinedInFlight", joined.sum());
+        stats.put("servedFromTtl", cached.sum());
+        stats.put("failures", failures.sum());
+        stats.put("keys", flights.size());
+        return stats;
+    }
+
+    private static Object await(Flight flight) throws Throwable {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return flight.result.get();
+                } catch (InterruptedException e) {
+                    // Keep waiting: the leader is running on the caller's behalf anyway
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw e.getCause();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        private boolean isExpired() {
+            return result.isDone() && System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
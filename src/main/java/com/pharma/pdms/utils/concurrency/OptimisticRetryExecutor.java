@@ -0,0 +1,143 @@
+package com.pharma.pdms.utils.concurrency;
+
+import com.pharma.pdms.exceptions.ConcurrentUpdateException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs a unit of work in its own transaction and retries it when an optimistic lock
+ * conflict (@Version mismatch) is detected, backing off with full jitter between attempts.
+ * Keeps conflict counters per row so hot rows can be spotted.
+ */
+@Component
+public class OptimisticRetryExecutor {
+
+    private static final int MAX_TRACKED_ROWS = 10_000;
+
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final Map<String, LongAdder> conflictsByRow = new ConcurrentHashMap<>();
+
+    @Autowired
+    public OptimisticRetryExecutor(
+            PlatformTransactionManager transactionManager,
+            @Value("${pdms.concurrency.max-attempts:5}") int maxAttempts,
+            @Value("${pdms.concurrency.base-backoff-ms:10}") long baseBackoffMillis,
+            @Value("${pdms.concurrency.max-backoff-ms:200}") long maxBackoffMillis) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Execute the work, retrying on optimistic lock conflicts.
+     * When a transaction is already active the work joins it and is run only once,
+     * since a conflicting persistence context cannot be retried from inside; the
+     * outermost caller is expected to retry instead.
+     *
+     * @param rowKey Identifies the contended row for metrics, e.g. "Medicine#42"
+     * @param work The unit of work; it must re-read the entities it modifies
+     * @return The result of the work
+     * @throws ConcurrentUpdateException if all attempts conflicted
+     */
+    public <T> T execute(String rowKey, Supplier<T> work) {
+        executions.increment();
+
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            try {
+                return work.get();
+            } catch (OptimisticLockingFailureException e) {
+                recordConflict(rowKey);
+                throw e;
+            }
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> work.get());
+            } catch (OptimisticLockingFailureException e) {
+                recordConflict(rowKey);
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    throw new ConcurrentUpdateException(
+                        "Concurrent update on " + rowKey + " could not be resolved after " + attempt + " attempts", e);
+                }
+                retries.increment();
+                backOff(attempt);
+            }
+        }
+    }
+
+    private void recordConflict(String rowKey) {
+        conflicts.increment();
+        LongAdder counter = conflictsByRow.get(rowKey);
+        if (counter == null && conflictsByRow.size() < MAX_TRACKED_ROWS) {
+            counter = conflictsByRow.computeIfAbsent(rowKey, key -> new LongAdder());
+        }
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private void backOff(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        long sleepMillis = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(sleepMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrentUpdateException("Interrupted while waiting to retry a concurrent update", e);
+        }
+    }
+
+    /**
+     * Snapshot of conflict and retry counters together with the most contended rows
+     *
+     * @param topRows Number of hot rows to include
+     * @return Map of metric name to value
+     */
+    public Map<String, Object> getStats(int topRows) {
+        long executionCount = executions.sum();
+        long retryCount = retries.sum();
+
+        List<Map.Entry<String, LongAdder>> rows = new ArrayList<>(conflictsByRow.entrySet());
+        rows.sort(Comparator.comparingLong((Map.Entry<String, LongAdder> e) -> e.getValue().sum()).reversed());
+        Map<String, Long> hotRows = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> row : rows.subList(0, Math.min(topRows, rows.size()))) {
+            hotRows.put(row.getKey(), row.getValue().sum());
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("executions", executionCount);
+        stats.put("conflicts", conflicts.sum());
+        stats.put("retries", retryCount);
+        stats.put("exhausted", exhausted.sum());
+        stats.put("retryRate", executionCount == 0 ? 0.0 : (double) retryCount / executionCount);
+        stats.put("hotRows", hotRows);
+        return stats;
+    }
+}
@@ -0,0 +1,29 @@
+package com.pharma.pdms.utils.datasource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically measures replica lag for routing and clears expired read-your-writes pins
+ */
+@Component
+public class ReplicaLagMonitor {
+
+    private final ReplicaRoutingDataSource routingDataSource;
+    private final ReplicaRoutingFilter routingFilter;
+
+    @Autowired
+    public ReplicaLagMonitor(ReplicaRoutingDataSource routingDataSource, ReplicaRoutingFilter routingFilter) {
+        this.routingDataSource = routingDataSource;
+        this.routingFilter = routingFilter;
+    }
+
+    @Scheduled(fixedDelayString = "${pdms.datasource.lag-check-ms:1000}")
+    public void checkLag() {
+        if (routingDataSource.hasReplicas()) {
+            routingDataSource.refreshLag();
+        }
+        routingFilter.purgeExpiredPins();
+    }
+}
@@ -0,0 +1,209 @@
+package com.pharma.pdms.utils.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes connections between the primary and read replicas.
+ * Read-only transactions, and reads outside a transaction during a GET request,
+ * go to a replica whose last measured lag is within the threshold; everything
+ * else, and any read from a client pinned after its own write, goes to the primary.
+ * Must be wrapped in a LazyConnectionDataSourceProxy so the route is chosen at the
+ * first statement, once the transaction's read-only flag is known.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+
+    private static final String LAG_QUERY = "SELECT CASE"
+        + " WHEN NOT pg_is_in_recovery() THEN 0"
+        + " WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+        + " ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final long maxCheckAgeMillis;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final Map<String, LongAdder> connectionsByRoute = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> statementsByRoute = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> fallbacksByReason = new ConcurrentHashMap<>();
+
+    /**
+     * @param primary The primary data source, used for all writes
+     * @param replicas Replica data sources by name
+     * @param maxLagMillis Replicas lagging further behind than this are skipped
+     * @param maxCheckAgeMillis Replicas whose last successful lag check is older than this are skipped
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                    long maxLagMillis, long maxCheckAgeMillis) {
+        this.primary = primary;
+        this.maxLagMillis = maxLagMillis;
+        this.maxCheckAgeMillis = maxCheckAgeMillis;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicas.forEach((name, dataSource) -> {
+            targets.put(name, dataSource);
+            this.replicas.add(new Replica(name, dataSource));
+        });
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    /**
+     * The primary data source, for work that must bypass routing such as LISTEN
+     */
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        boolean read = TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+            || (!TransactionSynchronizationManager.isActualTransactionActive() && RoutingContext.isReadRequest());
+        if (!read || replicas.isEmpty()) {
+            return PRIMARY;
+        }
+        if (RoutingContext.isPinnedToPrimary()) {
+            countFallback("read-your-writes");
+            return PRIMARY;
+        }
+
+        long now = System.currentTimeMillis();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.isUsable(now, maxLagMillis, maxCheckAgeMillis)) {
+                return replica.name;
+            }
+        }
+        countFallback("replica-lag");
+        return PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        String route = (String) determineCurrentLookupKey();
+        return countingConnection(route, target(route).getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        String route = (String) determineCurrentLookupKey();
+        return countingConnection(route, target(route).getConnection(username, password));
+    }
+
+    /**
+     * Measure replication lag on every replica. A replica that cannot be reached
+     * keeps its last reading, which ages out after maxCheckAgeMillis.
+     */
+    public void refreshLag() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(LAG_QUERY)) {
+                resultSet.next();
+                replica.lagMillis = resultSet.getLong(1);
+                replica.checkedAt = System.currentTimeMillis();
+                replica.lastError = null;
+            } catch (SQLException e) {
+                replica.lastError = e.getMessage();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> replicaStats = new LinkedHashMap<>();
+        for (Replica replica : replicas) {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("lagMillis", replica.lagMillis);
+            stats.put("lastCheckAgeMillis", replica.checkedAt == 0 ? null : now - replica.checkedAt);
+            stats.put("usable", replica.isUsable(now, maxLagMillis, maxCheckAgeMillis));
+            stats.put("lastError", replica.lastError);
+            replicaStats.put(replica.name, stats);
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxLagMillis", maxLagMillis);
+        stats.put("replicas", replicaStats);
+        stats.put("connectionsByRoute", sums(connectionsByRoute));
+        stats.put("statementsByRoute", sums(statementsByRoute));
+        stats.put("fallbacksToPrimary", sums(fallbacksByReason));
+        return stats;
+    }
+
+    private DataSource target(String route) {
+        if (PRIMARY.equals(route)) {
+            return primary;
+        }
+        return getResolvedDataSources().get(route);
+    }
+
+    private Connection countingConnection(String route, Connection connection) {
+        connectionsByRoute.computeIfAbsent(route, key -> new LongAdder()).increment();
+        LongAdder statements = statementsByRoute.computeIfAbsent(route, key -> new LongAdder());
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+            (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.equals("prepareStatement") || name.equals("createStatement") || name.equals("prepareCall")) {
+                    statements.increment();
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+            });
+    }
+
+    private void countFallback(String reason) {
+        fallbacksByReason.computeIfAbsent(reason, key -> new LongAdder()).increment();
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> counters) {
+        Map<String, Long> sums = new HashMap<>();
+        counters.forEach((key, counter) -> sums.put(key, counter.sum()));
+        return sums;
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile long lagMillis;
+        private volatile long checkedAt;
+        private volatile String lastError;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private boolean isUsable(long now, long maxLagMillis, long maxCheckAgeMillis) {
+            return checkedAt != 0 && now - checkedAt <= maxCheckAgeMillis && lagMillis <= maxLagMillis;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.pharma.pdms.utils.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sets the routing hints for each request: GET/HEAD requests may read from a replica,
+ * and a client that sent a write is pinned to the primary for a short window
+ * afterwards so it always sees its own changes. Clients are identified by user
+ * name when authenticated, otherwise by address. Pins are held per node.
+ */
+@Component
+public class ReplicaRoutingFilter extends OncePerRequestFilter {
+
+    private final long pinMillis;
+    private final Map<String, Long> pinnedUntil = new ConcurrentHashMap<>();
+
+    public ReplicaRoutingFilter(@Value("${pdms.datasource.read-your-writes-ms:5000}") long pinMillis) {
+        this.pinMillis = pinMillis;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String method = request.getMethod();
+        boolean readRequest = "GET".equals(method) || "HEAD".equals(method);
+        String client = clientKey(request);
+        Long until = pinnedUntil.get(client);
+        boolean pinned = until != null && until > System.currentTimeMillis();
+
+        RoutingContext.set(readRequest, pinned);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            RoutingContext.clear();
+            if (!readRequest && !"OPTIONS".equals(method)) {
+                pinnedUntil.put(client, System.currentTimeMillis() + pinMillis);
+            }
+        }
+    }
+
+    /**
+     * Drop expired pins
+     */
+    public void purgeExpiredPins() {
+        long now = System.currentTimeMillis();
+        pinnedUntil.values().removeIf(until -> until <= now);
+    }
+
+    public int getPinnedClients() {
+        return pinnedUntil.size();
+    }
+
+    private static String clientKey(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "user:" + principal.getName() : "addr:" + request.getRemoteAddr();
+    }
+}
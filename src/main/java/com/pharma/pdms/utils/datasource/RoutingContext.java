@@ -0,0 +1,37 @@
+package com.pharma.pdms.utils.datasource;
+
+/**
+ * Per-thread routing hints set by ReplicaRoutingFilter for the duration of a request.
+ * Read requests may use a replica outside a transaction; a client that has just
+ * written is pinned to the primary so it reads its own writes.
+ */
+public final class RoutingContext {
+
+    private static final ThreadLocal<RoutingContext> CURRENT = new ThreadLocal<>();
+
+    private final boolean readRequest;
+    private final boolean pinnedToPrimary;
+
+    private RoutingContext(boolean readRequest, boolean pinnedToPrimary) {
+        this.readRequest = readRequest;
+        this.pinnedToPrimary = pinnedToPrimary;
+    }
+
+    public static void set(boolean readRequest, boolean pinnedToPrimary) {
+        CURRENT.set(new RoutingContext(readRequest, pinnedToPrimary));
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public static boolean isReadRequest() {
+        RoutingContext context = CURRENT.get();
+        return context != null && context.readRequest;
+    }
+
+    public static boolean isPinnedToPrimary() {
+        RoutingContext context = CURRENT.get();
+        return context != null && context.pinnedToPrimary;
+    }
+}
@@ -0,0 +1,153 @@
+package com.pharma.pdms.utils.forecast;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+/**
+ * Holt-Winters model of one medicine's daily demand: level, damped trend and additive
+ * day-of-week seasonality. Additive factors cope with the zero-demand days common for
+ * slow movers, where multiplicative ones degenerate. The one-step forecast error is
+ * tracked as an exponentially weighted variance for safety stock. The model is updated
+ * one day at a time, so each night only folds in the days since its last update.
+ */
+public final class DemandModel {
+
+    public static final int SEASON = 7;
+
+    private double level;
+    private double trend;
+    private final double[] seasonal = new double[SEASON];
+    private double errorVariance;
+    private int observations;
+    private LocalDate lastDay;
+
+    public DemandModel(LocalDate lastDay) {
+        this.lastDay = lastDay;
+    }
+
+    public DemandModel(double level, double trend, double[] seasonal, double errorVariance,
+                       int observations, LocalDate lastDay) {
+        this.level = level;
+        this.trend = trend;
+        System.arraycopy(seasonal, 0, this.seasonal, 0, SEASON);
+        this.errorVariance = errorVariance;
+        this.observations = observations;
+        this.lastDay = lastDay;
+    }
+
+    /**
+     * Fold in the demand of the day after the last one seen
+     */
+    public void update(LocalDate day, double demand, Parameters parameters) {
+        int season = seasonOf(day);
+        if (observations == 0) {
+            level = demand;
+        } else {
+            double error = demand - (level + parameters.phi * trend + seasonal[season]);
+            errorVariance = observations == 1 ? error * error
+                : (1 - parameters.varianceWeight) * errorVariance + parameters.varianceWeight * error * error;
+
+            double previousLevel = level;
+            level = parameters.alpha * (demand - seasonal[season]) + (1 - parameters.alpha) * (level + parameters.phi * trend);
+            trend = parameters.beta * (level - previousLevel) + (1 - parameters.beta) * parameters.phi * trend;
+            seasonal[season] = parameters.gamma * (demand - level) + (1 - parameters.gamma) * seasonal[season];
+        }
+        observations++;
+        lastDay = day;
+    }
+
+    /**
+     * Expected demand for a day after the last one seen, never negative
+     */
+    public double forecast(int daysAhead, Parameters parameters) {
+        double dampedTrend = 0;
+        double phiPower = 1;
+        for (int h = 1; h <= daysAhead; h++) {
+            phiPower *= parameters.phi;
+            dampedTrend += phiPower;
+        }
+        return Math.max(0, level + dampedTrend * trend + seasonal[seasonOf(lastDay.plusDays(daysAhead))]);
+    }
+
+    /**
+     * Expected total demand over the next days
+     */
+    public double forecastTotal(int days, Parameters parameters) {
+        double total = 0;
+        for (int h = 1; h <= days; h++) {
+            total += forecast(h, parameters);
+        }
+        return total;
+    }
+
+    public double getLevel() {
+        return level;
+    }
+
+    public double getTrend() {
+        return trend;
+    }
+
+    public double[] getSeasonal() {
+        return seasonal.clone();
+    }
+
+    public double getErrorVariance() {
+        return errorVariance;
+    }
+
+    public int getObservations() {
+        return observations;
+    }
+
+    public LocalDate getLastDay() {
+        return lastDay;
+    }
+
+    public String formatSeasonal() {
+        StringJoiner joiner = new StringJoiner(",");
+        for (double factor : seasonal) {
+            joiner.add(Double.toString(factor));
+        }
+        return joiner.toString();
+    }
+
+    public static double[] parseSeasonal(String factors) {
+        if (factors == null || factors.isEmpty()) {
+            return new double[SEASON];
+        }
+        double[] seasonal = Arrays.stream(factors.split(",")).mapToDouble(Double::parseDouble).toArray();
+        return seasonal.length == SEASON ? seasonal : new double[SEASON];
+    }
+
+    private static int seasonOf(LocalDate day) {
+        return day.getDayOfWeek().getValue() - 1;
+    }
+
+    /**
+     * Smoothing weights shared by every medicine
+     */
+    public static final class Parameters {
+        private final double alpha;
+        private final double beta;
+        private final double gamma;
+        private final double phi;
+        private final double varianceWeight;
+
+        /**
+         * @param alpha Level weight
+         * @param beta Trend weight
+         * @param gamma Seasonal weight
+         * @param phi Trend damping per day, below 1 so long-range forecasts flatten out
+         * @param varianceWeight Weight of the latest squared error in the error variance
+         */
+        public Parameters(double alpha, double beta, double gamma, double phi, double varianceWeight) {
+            this.alpha = alpha;
+            this.beta = beta;
+            this.gamma = gamma;
+            this.phi = phi;
+            this.varianceWeight = varianceWeight;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.pharma.pdms.utils.forecast;
+
+/**
+ * Reorder level from forecast demand: expected demand over the supplier lead time
+ * plus safety stock sized for a cycle service level, i.e. the probability of not
+ * running out before a replenishment arrives.
+ */
+public final class ReorderPolicy {
+
+    private final int leadTimeDays;
+    private final double serviceLevel;
+    private final double z;
+    private final int minimumLevel;
+
+    public ReorderPolicy(int leadTimeDays, double serviceLevel, int minimumLevel) {
+        if (serviceLevel <= 0 || serviceLevel >= 1) {
+            throw new IllegalArgumentException("Service level must be between 0 and 1, got " + serviceLevel);
+        }
+        this.leadTimeDays = Math.max(1, leadTimeDays);
+        this.serviceLevel = serviceLevel;
+        this.z = inverseNormal(serviceLevel);
+        this.minimumLevel = minimumLevel;
+    }
+
+    /**
+     * @param leadTimeDemand Expected demand over the lead time
+     * @param errorVariance Variance of the one-step forecast error
+     */
+    public int reorderLevel(double leadTimeDemand, double errorVariance) {
+        // One-step errors are treated as independent, so their variance adds up over the lead time
+        double safetyStock = z * Math.sqrt(Math.max(0, errorVariance) * leadTimeDays);
+        return Math.max(minimumLevel, (int) Math.ceil(leadTimeDemand + safetyStock));
+    }
+
+    public int getLeadTimeDays() {
+        return leadTimeDays;
+    }
+
+    public double getServiceLevel() {
+        return serviceLevel;
+    }
+
+    /**
+     * Standard normal quantile (Acklam's rational approximation, relative error below 1.2e-9)
+     */
+    static double inverseNormal(double p) {
+        double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+            1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+            6.680131188771972e+01, -1.328068155288572e+01};
+        double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+            -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+            3.754408661907416e+00};
+        double low = 0.02425;
+
+        if (p < low) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - low) {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+            / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+}
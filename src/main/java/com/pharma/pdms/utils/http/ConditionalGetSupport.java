@@ -0,0 +1,70 @@
+package com.pharma.pdms.utils.http;
+
+import com.pharma.pdms.repositories.EntityVersion;
+import com.pharma.pdms.repositories.TableFingerprint;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds strong validators from entity versions and table fingerprints and answers
+ * conditional GETs before any entity is loaded.
+ * Counts full and 304 responses per resource so the savings can be observed.
+ */
+@Component
+public class ConditionalGetSupport {
+    
+    private final Map<String, LongAdder> fullResponses = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> notModifiedResponses = new ConcurrentHashMap<>();
+    
+    /**
+     * Validator for a single entity, e.g. "medicine-42-v7"
+     */
+    public String entityTag(String resource, Long id, EntityVersion version) {
+        return "\"" + resource + "-" + id + "-v" + version.getVersion() + "\"";
+    }
+    
+    /**
+     * Validator for a whole collection, e.g. "medicines-1250-1697712000000"
+     */
+    public String collectionTag(String resource, TableFingerprint fingerprint) {
+        return "\"" + resource + "-" + fingerprint.getRowCount() + "-" + lastModified(fingerprint) + "\"";
+    }
+    
+    public long lastModified(EntityVersion version) {
+        return version.getUpdatedAt() == null ? -1 : version.getUpdatedAt().getTime();
+    }
+    
+    public long lastModified(TableFingerprint fingerprint) {
+        return fingerprint.getMaxUpdatedAt() == null ? -1 : fingerprint.getMaxUpdatedAt().getTime();
+    }
+    
+    /**
+     * Check the request's If-None-Match / If-Modified-Since headers.
+     * Sets the validators on the response; when they match the response becomes a 304.
+     *
+     * @return true if the client's copy is current and no body should be produced
+     */
+    public boolean isNotModified(WebRequest request, String resource, String etag, long lastModifiedMillis) {
+        boolean notModified = request.checkNotModified(etag, lastModifiedMillis);
+        (notModified ? notModifiedResponses : fullResponses)
+            .computeIfAbsent(resource, key -> new LongAdder())
+            .increment();
+        return notModified;
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : fullResponses.entrySet()) {
+            stats.put(entry.getKey() + ".full", entry.getValue().sum());
+        }
+        for (Map.Entry<String, LongAdder> entry : notModifiedResponses.entrySet()) {
+            stats.put(entry.getKey() + ".notModified", entry.getValue().sum());
+        }
+        return stats;
+    }
+}
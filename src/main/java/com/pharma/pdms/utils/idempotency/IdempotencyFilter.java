@@ -0,0 +1,229 @@
+package com.pharma.pdms.utils.idempotency;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+
+/**
+ * Honours the Idempotency-Key header on POST, PUT, PATCH and DELETE requests, such as
+ * creating prescriptions and items or changing stock. The first request with a key runs
+ * and its response is stored; a retry with the same key gets the stored response with
+ * Idempotent-Replayed: true, without reaching the controllers. A duplicate sent while
+ * the first is running waits for it. Keys are per user; reusing one for a different
+ * request gets 422. Server errors, 408, 409 and 429 are not stored, so those can be
+ * retried. The body is buffered to fingerprint it, so keyed requests larger than
+ * max-request-bytes are refused with 413. Runs after authentication and before admission
+ * control, so replays never take a slot.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    private static final String HEADER = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int UNPROCESSABLE_ENTITY = 422;
+
+    private final IdempotencyStore store;
+    private final boolean enabled;
+    private final int maxResponseBytes;
+    private final int maxRequestBytes;
+
+    public IdempotencyFilter(
+            IdempotencyStore store,
+            @Value("${pdms.idempotency.enabled:true}") boolean enabled,
+            @Value("${pdms.idempotency.max-response-bytes:65536}") int maxResponseBytes,
+            @Value("${pdms.idempotency.max-request-bytes:1048576}") int maxRequestBytes) {
+        this.store = store;
+        this.enabled = enabled;
+        this.maxResponseBytes = maxResponseBytes;
+        this.maxRequestBytes = maxRequestBytes;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !enabled || request.getHeader(HEADER) == null
+            || !("POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method) || "DELETE".equals(method));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String idempotencyKey = request.getHeader(HEADER).trim();
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+        byte[] body = request.getContentLengthLong() > maxRequestBytes ? null : readBody(request.getInputStream());
+        if (body == null) {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                "Requests with an " + HEADER + " are limited to " + maxRequestBytes + " bytes");
+            return;
+        }
+        String key = clientKey(request) + "|" + idempotencyKey;
+        byte[] fingerprint = fingerprint(request, body);
+
+        IdempotencyStore.Claim claim = store.begin(key, fingerprint);
+        switch (claim.getOutcome()) {
+            case REPLAY:
+                replay(claim.getResponse(), response);
+                return;
+            case MISMATCH:
+                response.sendError(UNPROCESSABLE_ENTITY, HEADER + " was already used for a different request");
+                return;
+            case IN_PROGRESS:
+                response.setHeader("Retry-After", "1");
+                response.sendError(HttpServletResponse.SC_CONFLICT, "A request with this " + HEADER + " is still in progress");
+                return;
+            default:
+                break;
+        }
+
+        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            filterChain.doFilter(new CachedBodyRequest(request, body), responseWrapper);
+            int status = responseWrapper.getStatus();
+            if (isReplayable(status) && responseWrapper.getContentSize() <= maxResponseBytes) {
+                store.complete(key, fingerprint, status, responseWrapper.getContentType(),
+                    responseWrapper.getContentAsByteArray());
+                stored = true;
+            }
+        } finally {
+            if (!stored) {
+                store.abandon(key);
+            }
+            responseWrapper.copyBodyToResponse();
+        }
+    }
+
+    /**
+     * Read the whole body, or give up with null as soon as it is larger than allowed.
+     * Covers chunked requests, which declare no length.
+     */
+    private byte[] readBody(InputStream input) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[StreamUtils.BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            if (body.size() + read > maxRequestBytes) {
+                return null;
+            }
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    private static boolean isReplayable(int status) {
+        return status < 500 && status != 408 && status != 409 && status != 429;
+    }
+
+    private static void replay(StoredResponse stored, HttpServletResponse response) throws IOException {
+        response.setStatus(stored.getStatus());
+        response.setHeader("Idempotent-Replayed", "true");
+        if (stored.getContentType() != null) {
+            response.setContentType(stored.getContentType());
+        }
+        byte[] body = stored.getBody();
+        if (body != null && body.length > 0) {
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    private static String clientKey(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "user:" + principal.getName() : "addr:" + request.getRemoteAddr();
+    }
+
+    private static byte[] fingerprint(HttpServletRequest request, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(request.getMethod().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ' ');
+            digest.update(request.getRequestURI().getBytes(StandardCharsets.UTF_8));
+            if (request.getQueryString() != null) {
+                digest.update((byte) '?');
+                digest.update(request.getQueryString().getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) '\n');
+            return digest.digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Request whose body was read up front for the fingerprint
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new IllegalStateException("Non-blocking reads are not supported on a request with an "
+                        + HEADER + "; its body was already read");
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return input.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.pharma.pdms.utils.idempotency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Responses stored per Idempotency-Key. Recent responses are held in a bounded LRU map,
+ * so a retry served by the same node is answered from memory; the idempotency_keys table
+ * makes a key hold across nodes and restarts. The first request for a key claims its row
+ * under a lease, which its node renews for as long as the request runs. Duplicates
+ * arriving while it runs wait for it: on this node through its future, on other nodes by
+ * polling the row. A claim is only taken over once its lease expires, i.e. once its node
+ * stopped renewing it because it died.
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    private static final String CLAIM = "INSERT INTO idempotency_keys"
+        + " (idempotency_key, fingerprint, lease_until, created_at, expires_at)"
+        + " VALUES (?, ?, now() + make_interval(secs => ?), now(), now() + make_interval(secs => ?))"
+        + " ON CONFLICT (idempotency_key) DO NOTHING";
+
+    private static final String SELECT = "SELECT fingerprint, status, content_type, body,"
+        + " expires_at < now(), lease_until IS NOT NULL AND lease_until < now(),"
+        + " CAST(EXTRACT(EPOCH FROM (expires_at - localtimestamp)) * 1000 AS bigint)"
+        + " FROM idempotency_keys WHERE idempotency_key = ?";
+
+    private static final String TAKE_OVER = "UPDATE idempotency_keys"
+        + " SET fingerprint = ?, status = NULL, content_type = NULL, body = NULL,"
+        + " lease_until = now() + make_interval(secs => ?), created_at = now(), expires_at = now() + make_interval(secs => ?)"
+        + " WHERE idempotency_key = ? AND (expires_at < now() OR (status IS NULL AND lease_until < now()))";
+
+    private static final String COMPLETE = "UPDATE idempotency_keys"
+        + " SET status = ?, content_type = ?, body = ?, lease_until = NULL WHERE idempotency_key = ?";
+
+    private static final String RENEW = "UPDATE idempotency_keys SET lease_until = now() + make_interval(secs => ?)"
+        + " WHERE idempotency_key = ANY(CAST(? AS varchar[])) AND status IS NULL";
+
+    private static final String ABANDON = "DELETE FROM idempotency_keys WHERE idempotency_key = ? AND status IS NULL";
+
+    private static final String PURGE = "DELETE FROM idempotency_keys WHERE expires_at < now()";
+
+    private static final RowMapper<Row> ROW = (resultSet, rowNum) -> new Row(
+        resultSet.getBytes(1), (Integer) resultSet.getObject(2), resultSet.getString(3), resultSet.getBytes(4),
+        resultSet.getBoolean(5), resultSet.getBoolean(6), resultSet.getLong(7));
+
+    /**
+     * Outcome of starting a request with a key
+     */
+    public enum Outcome {
+        /**
+         * First request for the key: run it and complete or abandon the key
+         */
+        PROCEED,
+        /**
+         * Answer with the stored response
+         */
+        REPLAY,
+        /**
+         * The key was used for a different request
+         */
+        MISMATCH,
+        /**
+         * The first request is still running after the wait
+         */
+        IN_PROGRESS
+    }
+
+    /**
+     * Outcome and, for REPLAY, the response to send
+     */
+    public static final class Claim {
+        private static final Claim PROCEED = new Claim(Outcome.PROCEED, null);
+        private static final Claim MISMATCH = new Claim(Outcome.MISMATCH, null);
+        private static final Claim IN_PROGRESS = new Claim(Outcome.IN_PROGRESS, null);
+
+        private final Outcome outcome;
+        private final StoredResponse response;
+
+        private Claim(Outcome outcome, StoredResponse response) {
+            this.outcome = outcome;
+            this.response = response;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public StoredResponse getResponse() {
+            return response;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long ttlMillis;
+    private final int leaseSeconds;
+    private final long maxWaitMillis;
+    private final long pollMillis;
+    private final Map<String, StoredResponse> recent;
+    private final ConcurrentHashMap<String, CompletableFuture<StoredResponse>> running = new ConcurrentHashMap<>();
+    private final Set<String> owned = ConcurrentHashMap.newKeySet();
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder replayedFromMemory = new LongAdder();
+    private final LongAdder replayedFromDatabase = new LongAdder();
+    private final LongAdder waitedForDuplicate = new LongAdder();
+    private final LongAdder mismatched = new LongAdder();
+    private final LongAdder stillInProgress = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder leasesRenewed = new LongAdder();
+
+    public IdempotencyStore(
+            JdbcTemplate jdbcTemplate,
+            @Value("${pdms.idempotency.ttl-hours:24}") long ttlHours,
+            @Value("${pdms.idempotency.memory-entries:10000}") int memoryEntries,
+            @Value("${pdms.idempotency.lease-seconds:60}") int leaseSeconds,
+            @Value("${pdms.idempotency.max-wait-ms:5000}") long maxWaitMillis,
+            @Value("${pdms.idempotency.poll-ms:100}") long pollMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttlMillis = TimeUnit.HOURS.toMillis(ttlHours);
+        this.leaseSeconds = leaseSeconds;
+        this.maxWaitMillis = maxWaitMillis;
+        this.pollMillis = Math.max(10, pollMillis);
+        this.recent = Collections.synchronizedMap(new LinkedHashMap<String, StoredResponse>(memoryEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredResponse> eldest) {
+                return size() > memoryEntries;
+            }
+        });
+    }
+
+    /**
+     * Start a request with this key. PROCEED must be followed by complete or abandon.
+     */
+    public Claim begin(String key, byte[] fingerprint) {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        while (true) {
+            StoredResponse stored = recent.get(key);
+            if (stored != null && !stored.isExpired(System.currentTimeMillis())) {
+                replayedFromMemory.increment();
+                return replayOrMismatch(stored, fingerprint);
+            }
+
+            CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+            CompletableFuture<StoredResponse> first = running.putIfAbsent(key, mine);
+            if (first != null) {
+                waitedForDuplicate.increment();
+                try {
+                    stored = first.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    stillInProgress.increment();
+                    return Claim.IN_PROGRESS;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stillInProgress.increment();
+                    return Claim.IN_PROGRESS;
+                } catch (ExecutionException e) {
+                    stored = null;
+                }
+                if (stored != null) {
+                    replayedFromMemory.increment();
+                    return replayOrMismatch(stored, fingerprint);
+                }
+                // The first request was abandoned; try to claim the key
+                continue;
+            }
+
+            Claim claim = claimInDatabase(key, fingerprint, mine, deadline);
+            if (claim != null) {
+                return claim;
+            }
+        }
+    }
+
+    /**
+     * Store the response of a request that proceeded, and hand it to waiting duplicates
+     */
+    public void complete(String key, byte[] fingerprint, int status, String contentType, byte[] body) {
+        owned.remove(key);
+        StoredResponse stored = new StoredResponse(fingerprint, status, contentType, body,
+            System.currentTimeMillis() + ttlMillis);
+        try {
+            jdbcTemplate.update(COMPLETE, status, contentType, body, key);
+        } catch (RuntimeException e) {
+            // Still replayed from memory on this node; other nodes take over once the lease expires
+            log.warn("idempotency.store_failed key={}", key, e);
+        }
+        recent.put(key, stored);
+        finish(key, stored);
+    }
+
+    /**
+     * Release the key of a request whose response should not be replayed, so a retry runs again
+     */
+    public void abandon(String key) {
+        owned.remove(key);
+        abandoned.increment();
+        try {
+            jdbcTemplate.update(ABANDON, key);
+        } catch (RuntimeException e) {
+            log.warn("idempotency.release_failed key={}", key, e);
+        }
+        finish(key, null);
+    }
+
+    /**
+     * Extend the leases of the requests still running on this node, so no other node takes them over
+     */
+    @Scheduled(fixedDelayString = "${pdms.idempotency.renew-ms:20000}")
+    public void renewLeases() {
+        if (owned.isEmpty()) {
+            return;
+        }
+        try {
+            leasesRenewed.add(jdbcTemplate.update(RENEW, leaseSeconds, (Object) owned.toArray(new String[0])));
+        } catch (RuntimeException e) {
+            log.warn("idempotency.renew_failed keys={}", owned.size(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pdms.idempotency.purge-ms:600000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (recent) {
+            recent.values().removeIf(stored -> stored.isExpired(now));
+        }
+        int purged = jdbcTemplate.update(PURGE);
+        if (purged > 0) {
+            log.info("idempotency.purged count={}", purged);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("keysInMemory", recent.size());
+        stats.put("running", running.size());
+        stats.put("claimed", claimed.sum());
+        stats.put("replayedFromMemory", replayedFromMemory.sum());
+        stats.put("replayedFromDatabase", replayedFromDatabase.sum());
+        stats.put("waitedForDuplicate", waitedForDuplicate.sum());
+        stats.put("mismatched", mismatched.sum());
+        stats.put("stillInProgress", stillInProgress.sum());
+        stats.put("abandoned", abandoned.sum());
+        stats.put("leasesRenewed", leasesRenewed.sum());
+        return stats;
+    }
+
+    /**
+     * Claim the key in the table, or wait for the node that holds it
+     *
+     * @return null to start over
+     */
+    private Claim claimInDatabase(String key, byte[] fingerprint, CompletableFuture<StoredResponse> mine, long deadline) {
+        int ttlSeconds = (int) (ttlMillis / 1000);
+        try {
+            while (true) {
+                if (jdbcTemplate.update(CLAIM, key, fingerprint, leaseSeconds, ttlSeconds) > 0) {
+                    return proceed(key);
+                }
+                List<Row> rows = jdbcTemplate.query(SELECT, ROW, key);
+                if (rows.isEmpty()) {
+                    // Abandoned or purged since the insert; claim it again
+                    continue;
+                }
+                Row row = rows.get(0);
+                if (row.expired || (row.status == null && row.leaseExpired)) {
+                    if (jdbcTemplate.update(TAKE_OVER, fingerprint, leaseSeconds, ttlSeconds, key) > 0) {
+                        return proceed(key);
+                    }
+                    continue;
+                }
+                if (row.status != null) {
+                    StoredResponse stored = new StoredResponse(row.fingerprint, row.status, row.contentType,
+                        row.body, System.currentTimeMillis() + row.remainingMillis);
+                    recent.put(key, stored);
+                    finish(key, stored);
+                    replayedFromDatabase.increment();
+                    return replayOrMismatch(stored, fingerprint);
+                }
+                // Running on another node
+                if (!MessageDigest.isEqual(row.fingerprint, fingerprint)) {
+                    mismatched.increment();
+                    finish(key, null);
+                    return Claim.MISMATCH;
+                }
+                if (System.currentTimeMillis() + pollMillis > deadline) {
+                    stillInProgress.increment();
+                    finish(key, null);
+                    return Claim.IN_PROGRESS;
+                }
+                Thread.sleep(pollMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stillInProgress.increment();
+            finish(key, null);
+            return Claim.IN_PROGRESS;
+        } catch (RuntimeException e) {
+            running.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Claim proceed(String key) {
+        owned.add(key);
+        claimed.increment();
+        return Claim.PROCEED;
+    }
+
+    private Claim replayOrMismatch(StoredResponse stored, byte[] fingerprint) {
+        if (!stored.matches(fingerprint)) {
+            mismatched.increment();
+            return Claim.MISMATCH;
+        }
+        return new Claim(Outcome.REPLAY, stored);
+    }
+
+    private void finish(String key, StoredResponse stored) {
+        CompletableFuture<StoredResponse> future = running.remove(key);
+        if (future != null) {
+            future.complete(stored);
+        }
+    }
+
+    private static final class Row {
+        private final byte[] fingerprint;
+        private final Integer status;
+        private final String contentType;
+        private final byte[] body;
+        private final boolean expired;
+        private final boolean leaseExpired;
+        private final long remainingMillis;
+
+        private Row(byte[] fingerprint, Integer status, String contentType, byte[] body,
+                    boolean expired, boolean leaseExpired, long remainingMillis) {
+            this.fingerprint = fingerprint;
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+            this.expired = expired;
+            this.leaseExpired = leaseExpired;
+            this.remainingMillis = remainingMillis;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.pharma.pdms.utils.idempotency;
+
+import java.security.MessageDigest;
+
+/**
+ * Response kept for an Idempotency-Key, with the fingerprint of the request that produced it
+ */
+public final class StoredResponse {
+
+    private final byte[] fingerprint;
+    private final int status;
+    private final String contentType;
+    private final byte[] body;
+    private final long expiresAt;
+
+    public StoredResponse(byte[] fingerprint, int status, String contentType, byte[] body, long expiresAt) {
+        this.fingerprint = fingerprint;
+        this.status = status;
+        this.contentType = contentType;
+        this.body = body;
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean matches(byte[] requestFingerprint) {
+        return MessageDigest.isEqual(fingerprint, requestFingerprint);
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    public byte[] getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
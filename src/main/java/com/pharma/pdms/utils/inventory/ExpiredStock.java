@@ -0,0 +1,22 @@
+package com.pharma.pdms.utils.inventory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * What the expiry sweep did to one medicine: the lots it quarantined and whether the
+ * medicine was deactivated for having no sellable stock left
+ */
+@Data
+@AllArgsConstructor
+public class ExpiredStock {
+    private Long medicineId;
+    private List<LotAllocation> quarantinedLots;
+    private boolean deactivated;
+    
+    public int getQuarantinedUnits() {
+        return quarantinedLots.stream().mapToInt(LotAllocation::getQuantity).sum();
+    }
+}
@@ -0,0 +1,147 @@
+package com.pharma.pdms.utils.inventory;
+
+import com.pharma.pdms.exceptions.InsufficientStockException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The lots of a single medicine kept in a min-heap ordered by expiry (first-expiry-first-out).
+ * Allocating a quantity touches only the lots it consumes: each exhausted lot costs one
+ * O(log n) removal and the partially consumed head lot is updated in place.
+ * Mutations are not thread safe and must happen under the lock from LotAllocationIndex;
+ * the on-hand total can be read without it.
+ */
+public class FefoLotQueue {
+    
+    private static final Comparator<Entry> FEFO_ORDER =
+        Comparator.comparingLong((Entry e) -> e.expiryEpochDay).thenComparingLong(e -> e.lotId);
+    
+    private final PriorityQueue<Entry> heap = new PriorityQueue<>(FEFO_ORDER);
+    private final Map<Long, Entry> entriesByLotId = new HashMap<>();
+    private volatile long onHand;
+    private volatile Long medicineVersion;
+    
+    /**
+     * Add quantity to a lot, inserting it into the heap if it is not present
+     */
+    public void add(long lotId, String batchNumber, LocalDate expiryDate, int quantity) {
+        if (quantity <= 0) {
+            return;
+        }
+        Entry entry = entriesByLotId.get(lotId);
+        if (entry == null) {
+            entry = new Entry(lotId, batchNumber, expiryDate.toEpochDay(), quantity);
+            entriesByLotId.put(lotId, entry);
+            heap.add(entry);
+        } else {
+            entry.quantity += quantity;
+        }
+        onHand += quantity;
+    }
+    
+    /**
+     * Take a quantity from the earliest-expiring lots
+     *
+     * @param quantity The quantity to allocate
+     * @return The lots consumed, in FEFO order
+     * @throws InsufficientStockException if the lots do not hold enough stock
+     */
+    public List<LotAllocation> allocate(int quantity) {
+        if (quantity > onHand) {
+            throw new InsufficientStockException(
+                "Requested " + quantity + " units but only " + onHand + " are in stock");
+        }
+        
+        List<LotAllocation> allocations = new ArrayList<>();
+        int remaining = quantity;
+        while (remaining > 0) {
+            Entry head = heap.peek();
+            int taken = Math.min(remaining, head.quantity);
+            allocations.add(new LotAllocation(head.lotId, head.batchNumber,
+                LocalDate.ofEpochDay(head.expiryEpochDay), taken, head.quantity));
+            
+            head.quantity -= taken;
+            remaining -= taken;
+            if (head.quantity == 0) {
+                heap.poll();
+                entriesByLotId.remove(head.lotId);
+            }
+        }
+        onHand -= quantity;
+        return allocations;
+    }
+    
+    /**
+     * Remove every lot that expired before the given day. Expired lots sit at the head
+     * of the heap, so this touches only them.
+     *
+     * @return The lots removed with their whole remaining quantity, in FEFO order
+     */
+    public List<LotAllocation> removeExpiredBefore(LocalDate date) {
+        List<LotAllocation> removed = new ArrayList<>();
+        long epochDay = date.toEpochDay();
+        while (!heap.isEmpty() && heap.peek().expiryEpochDay < epochDay) {
+            Entry head = heap.poll();
+            entriesByLotId.remove(head.lotId);
+            removed.add(new LotAllocation(head.lotId, head.batchNumber,
+                LocalDate.ofEpochDay(head.expiryEpochDay), head.quantity, head.quantity));
+            onHand -= head.quantity;
+        }
+        return removed;
+    }
+    
+    public long getOnHand() {
+        return onHand;
+    }
+    
+    /**
+     * @return Expiry date of the first lot to be dispensed, or null when empty
+     */
+    public LocalDate getEarliestExpiry() {
+        Entry head = heap.peek();
+        return head == null ? null : LocalDate.ofEpochDay(head.expiryEpochDay);
+    }
+    
+    /**
+     * @return Batch number of the first lot to be dispensed, or null when empty
+     */
+    public String getEarliestBatchNumber() {
+        Entry head = heap.peek();
+        return head == null ? null : head.batchNumber;
+    }
+    
+    public int getLotCount() {
+        return heap.size();
+    }
+    
+    /**
+     * @return Version of the medicine row this queue matches, or null if not known yet
+     */
+    public Long getMedicineVersion() {
+        return medicineVersion;
+    }
+    
+    public void setMedicineVersion(Long medicineVersion) {
+        this.medicineVersion = medicineVersion;
+    }
+    
+    private static final class Entry {
+        private final long lotId;
+        private final String batchNumber;
+        private final long expiryEpochDay;
+        private int quantity;
+        
+        private Entry(long lotId, String batchNumber, long expiryEpochDay, int quantity) {
+            this.lotId = lotId;
+            this.batchNumber = batchNumber;
+            this.expiryEpochDay = expiryEpochDay;
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.pharma.pdms.utils.inventory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timing wheel for expiring entries.
+ * Scheduling and cancelling are O(1): an entry is linked into the bucket of its deadline tick
+ * and unlinked on cancel. Advancing the wheel visits only the buckets of elapsed ticks, so as long
+ * as delays fit within one rotation (ticks x buckets) each entry is touched once when it expires.
+ *
+ * @param <T> The payload handed back on expiry
+ */
+public class HashedTimingWheel<T> {
+    
+    private final long tickMillis;
+    private final Node<T>[] buckets;
+    private final int mask;
+    private final LongSupplier clock;
+    private final long startMillis;
+    private long processedTick;
+    private int size;
+    
+    /**
+     * @param tickMillis Resolution of the wheel
+     * @param bucketCount Number of buckets, rounded up to a power of two
+     * @param clock Source of the current time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(long tickMillis, int bucketCount, LongSupplier clock) {
+        if (tickMillis <= 0 || bucketCount <= 0) {
+            throw new IllegalArgumentException("Tick duration and bucket count must be positive");
+        }
+        int normalized = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.buckets = (Node<T>[]) new Node[normalized];
+        this.mask = normalized - 1;
+        this.clock = clock;
+        this.startMillis = clock.getAsLong();
+    }
+    
+    /**
+     * Schedule a payload to expire after the given delay
+     *
+     * @return Handle used to cancel the entry
+     */
+    public synchronized Timeout<T> schedule(T payload, long delayMillis) {
+        long deadlineTick = Math.max(processedTick + 1,
+            (clock.getAsLong() + Math.max(0, delayMillis) - startMillis + tickMillis - 1) / tickMillis);
+        Node<T> node = new Node<>(payload, deadlineTick);
+        int index = (int) (deadlineTick & mask);
+        node.next = buckets[index];
+        if (node.next != null) {
+            node.next.prev = node;
+        }
+        buckets[index] = node;
+        size++;
+        return node;
+    }
+    
+    /**
+     * Cancel a scheduled entry
+     *
+     * @return true if the entry was still pending
+     */
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        Node<T> node = (Node<T>) timeout;
+        if (node.done) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+    
+    /**
+     * Expire every entry whose deadline has passed
+     *
+     * @return Payloads of the expired entries, to be processed outside the wheel's lock
+     */
+    public synchronized List<T> advance() {
+        long currentTick = (clock.getAsLong() - startMillis) / tickMillis;
+        List<T> expired = new ArrayList<>();
+        // After a long pause one full rotation is enough to see every bucket
+        long fromTick = Math.max(processedTick + 1, currentTick - mask);
+        for (long tick = fromTick; tick <= currentTick; tick++) {
+            Node<T> node = buckets[(int) (tick & mask)];
+            while (node != null) {
+                Node<T> next = node.next;
+                if (node.deadlineTick <= currentTick) {
+                    unlink(node);
+                    expired.add(node.payload);
+                }
+                node = next;
+            }
+        }
+        processedTick = Math.max(processedTick, currentTick);
+        return expired;
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    private void unlink(Node<T> node) {
+        int index = (int) (node.deadlineTick & mask);
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            buckets[index] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.done = true;
+        size--;
+    }
+    
+    /**
+     * Handle to a scheduled entry
+     */
+    public interface Timeout<T> {
+        T getPayload();
+    }
+    
+    private static final class Node<T> implements Timeout<T> {
+        private final T payload;
+        private final long deadlineTick;
+        private Node<T> prev;
+        private Node<T> next;
+        private boolean done;
+        
+        private Node(T payload, long deadlineTick) {
+            this.payload = payload;
+            this.deadlineTick = deadlineTick;
+        }
+        
+        @Override
+        public T getPayload() {
+            return payload;
+        }
+    }
+}
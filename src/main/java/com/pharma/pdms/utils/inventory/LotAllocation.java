@@ -0,0 +1,19 @@
+package com.pharma.pdms.utils.inventory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * Quantity taken from a single lot by a FEFO allocation
+ */
+@Data
+@AllArgsConstructor
+public class LotAllocation {
+    private Long lotId;
+    private String batchNumber;
+    private LocalDate expiryDate;
+    private int quantity;
+    private int quantityBefore;
+}
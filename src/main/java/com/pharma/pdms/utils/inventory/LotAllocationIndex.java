@@ -0,0 +1,56 @@
+package com.pharma.pdms.utils.inventory;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory registry of per-medicine FEFO lot queues.
+ * A medicine absent from the index has not been loaded yet (or was evicted after
+ * a rolled-back change) and must be reloaded from the database before use.
+ */
+@Component
+public class LotAllocationIndex {
+    
+    private final Map<Long, FefoLotQueue> queues = new ConcurrentHashMap<>();
+    private final Map<Long, ReentrantLock> locks = new ConcurrentHashMap<>();
+    
+    public FefoLotQueue get(Long medicineId) {
+        return queues.get(medicineId);
+    }
+    
+    public void put(Long medicineId, FefoLotQueue queue) {
+        queues.put(medicineId, queue);
+    }
+    
+    public void evict(Long medicineId) {
+        queues.remove(medicineId);
+    }
+    
+    public void clear() {
+        queues.clear();
+    }
+    
+    /**
+     * Lock guarding mutations of a medicine's queue
+     */
+    public ReentrantLock lockFor(Long medicineId) {
+        return locks.computeIfAbsent(medicineId, id -> new ReentrantLock());
+    }
+    
+    /**
+     * Stock on hand for a medicine without touching the database
+     *
+     * @return The total across lots, or -1 if the medicine is not loaded
+     */
+    public long getOnHand(Long medicineId) {
+        FefoLotQueue queue = queues.get(medicineId);
+        return queue == null ? -1 : queue.getOnHand();
+    }
+    
+    public int size() {
+        return queues.size();
+    }
+}
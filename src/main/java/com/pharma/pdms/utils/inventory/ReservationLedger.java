@@ -0,0 +1,155 @@
+package com.pharma.pdms.utils.inventory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory index of the stock reservations persisted on prescription items.
+ * The database is the source of truth; this node mirrors the live rows keyed by item id,
+ * with reserved totals per medicine that can be read without a lock or a database round
+ * trip. Each entry expires through a hashed timing wheel at its reserved_until, so keeping
+ * the index current costs O(1) per change. Totals may count a lapsed hold for up to one
+ * tick, which only ever errs on the side of promising less.
+ */
+@Component
+public class ReservationLedger {
+
+    private final HashedTimingWheel<Long> wheel;
+    private final LongSupplier clock;
+    private final Map<Long, Reservation> reservations = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicLong> reservedByMedicine = new ConcurrentHashMap<>();
+
+    private final LongAdder expiredCount = new LongAdder();
+
+    @Autowired
+    public ReservationLedger(
+            @Value("${pdms.reservations.tick-ms:60000}") long tickMillis,
+            @Value("${pdms.reservations.wheel-size:4096}") int wheelSize) {
+        this(tickMillis, wheelSize, System::currentTimeMillis);
+    }
+
+    public ReservationLedger(long tickMillis, int wheelSize, LongSupplier clock) {
+        this.wheel = new HashedTimingWheel<>(tickMillis, wheelSize, clock);
+        this.clock = clock;
+    }
+
+    /**
+     * Mirror an item's reservation; a hold that already lapsed removes the item instead
+     */
+    public synchronized void put(long itemId, long medicineId, int quantity, long reservedUntil) {
+        remove(itemId);
+        long remaining = reservedUntil - clock.getAsLong();
+        if (quantity <= 0 || remaining <= 0) {
+            return;
+        }
+        Reservation reservation = new Reservation(medicineId, quantity, reservedUntil);
+        reservation.timeout = wheel.schedule(itemId, remaining);
+        reservations.put(itemId, reservation);
+        reservedByMedicine.computeIfAbsent(medicineId, id -> new AtomicLong()).addAndGet(quantity);
+    }
+
+    /**
+     * Forget an item's reservation because it was dispensed, deleted or lapsed
+     */
+    public synchronized void remove(long itemId) {
+        Reservation reservation = reservations.remove(itemId);
+        if (reservation != null) {
+            wheel.cancel(reservation.timeout);
+            subtract(reservation);
+        }
+    }
+
+    /**
+     * Replace everything held with the live reservations read from the database
+     *
+     * @param rows item id, medicine id, quantity, reserved until (epoch millis)
+     */
+    public synchronized void replaceAll(List<long[]> rows) {
+        for (Long itemId : List.copyOf(reservations.keySet())) {
+            remove(itemId);
+        }
+        reservedByMedicine.clear();
+        for (long[] row : rows) {
+            put(row[0], row[1], (int) row[2], row[3]);
+        }
+    }
+
+    /**
+     * Drop every reservation whose hold has lapsed
+     *
+     * @return Number of reservations expired
+     */
+    public synchronized int expireDue() {
+        int expired = 0;
+        for (Long itemId : wheel.advance()) {
+            Reservation reservation = reservations.remove(itemId);
+            if (reservation != null) {
+                subtract(reservation);
+                expired++;
+            }
+        }
+        expiredCount.add(expired);
+        return expired;
+    }
+
+    public long getReserved(long medicineId) {
+        AtomicLong reserved = reservedByMedicine.get(medicineId);
+        return reserved == null ? 0 : reserved.get();
+    }
+
+    /**
+     * Number and total units of the reservations still live at a time, exact to the millisecond
+     */
+    public long[] getLiveTotals(long at) {
+        long count = 0;
+        long units = 0;
+        for (Reservation reservation : reservations.values()) {
+            if (reservation.reservedUntil > at) {
+                count++;
+                units += reservation.quantity;
+            }
+        }
+        return new long[] {count, units};
+    }
+
+    public int size() {
+        return reservations.size();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("indexed", reservations.size());
+        stats.put("medicines", reservedByMedicine.size());
+        stats.put("expired", expiredCount.sum());
+        return stats;
+    }
+
+    private void subtract(Reservation reservation) {
+        AtomicLong reserved = reservedByMedicine.get(reservation.medicineId);
+        if (reserved != null && reserved.addAndGet(-reservation.quantity) == 0) {
+            reservedByMedicine.remove(reservation.medicineId, reserved);
+        }
+    }
+
+    private static final class Reservation {
+        private final long medicineId;
+        private final int quantity;
+        private final long reservedUntil;
+        private HashedTimingWheel.Timeout<Long> timeout;
+
+        private Reservation(long medicineId, int quantity, long reservedUntil) {
+            this.medicineId = medicineId;
+            this.quantity = quantity;
+            this.reservedUntil = reservedUntil;
+        }
+    }
+}
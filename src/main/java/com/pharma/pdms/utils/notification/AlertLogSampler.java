@@ -0,0 +1,81 @@
+package com.pharma.pdms.utils.notification;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sampling for repetitive alert log lines. The first alert for a key in each window is
+ * logged, and repeats within the window are only counted; the next line logged for the key
+ * carries the number suppressed. A medicine that stays below its reorder level therefore
+ * logs once per window instead of on every stock movement. Only logging is sampled,
+ * notifications are still sent for every alert.
+ */
+@Component
+public class AlertLogSampler {
+
+    /**
+     * Returned by admit when the alert should not be logged
+     */
+    public static final long SUPPRESS = -1;
+
+    private final long windowMillis;
+    private final int maxKeys;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final AtomicLong logged = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public AlertLogSampler(
+            @Value("${pdms.alerts.log-sample-window-ms:300000}") long windowMillis,
+            @Value("${pdms.alerts.log-sample-max-keys:10000}") int maxKeys) {
+        this.windowMillis = windowMillis;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * @param key Alert kind and subject, e.g. "low-stock:42"
+     * @return SUPPRESS, or the number of alerts for the key suppressed since the last one logged
+     */
+    public long admit(String key) {
+        if (windowMillis <= 0) {
+            logged.incrementAndGet();
+            return 0;
+        }
+        if (windows.size() >= maxKeys && !windows.containsKey(key)) {
+            // Bounded memory: forget every window rather than track an unbounded key set
+            windows.clear();
+        }
+        long now = System.currentTimeMillis();
+        Window window = windows.computeIfAbsent(key, k -> new Window());
+        synchronized (window) {
+            if (window.startedAt != 0 && now - window.startedAt < windowMillis) {
+                window.suppressed++;
+                suppressed.incrementAndGet();
+                return SUPPRESS;
+            }
+            long previouslySuppressed = window.suppressed;
+            window.startedAt = now;
+            window.suppressed = 0;
+            logged.incrementAndGet();
+            return previouslySuppressed;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windowMillis", windowMillis);
+        stats.put("trackedKeys", windows.size());
+        stats.put("logged", logged.get());
+        stats.put("suppressed", suppressed.get());
+        return stats;
+    }
+
+    private static final class Window {
+        private long startedAt;
+        private long suppressed;
+    }
+}
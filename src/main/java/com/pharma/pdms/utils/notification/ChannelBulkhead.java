@@ -0,0 +1,133 @@
+package com.pharma.pdms.utils.notification;
+
+import org.springframework.core.env.Environment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Everything one notification channel sends through: its gateway, a bounded executor of
+ * its own, concurrency slots, a token-bucket rate limit and a circuit breaker. A slow or
+ * failing channel can only use up its own threads and slots.
+ * Configured by pdms.notifications.{channel}.concurrency, rate-per-second, burst,
+ * breaker-failure-threshold, breaker-open-ms and breaker-half-open-probes.
+ */
+public final class ChannelBulkhead {
+
+    private final NotificationType type;
+    private final NotificationService gateway;
+    private final int concurrency;
+    private final double ratePerSecond;
+    private final Semaphore slots;
+    private final TokenBucket bucket;
+    private final CircuitBreaker breaker;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder bulkheadRejected = new LongAdder();
+
+    public ChannelBulkhead(NotificationType type, NotificationService gateway, Environment environment) {
+        String prefix = "pdms.notifications." + type.name().toLowerCase() + ".";
+        this.type = type;
+        this.gateway = gateway;
+        this.concurrency = Math.max(1, environment.getProperty(prefix + "concurrency", Integer.class, 2));
+        this.ratePerSecond = environment.getProperty(prefix + "rate-per-second", Double.class, 10.0);
+        this.slots = new Semaphore(concurrency);
+        this.bucket = new TokenBucket(ratePerSecond, environment.getProperty(prefix + "burst", Integer.class, 10));
+        this.breaker = new CircuitBreaker(
+            environment.getProperty(prefix + "breaker-failure-threshold", Integer.class, 5),
+            environment.getProperty(prefix + "breaker-open-ms", Long.class, 30000L),
+            environment.getProperty(prefix + "breaker-half-open-probes", Integer.class, 1));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        String threadPrefix = "notify-" + type.name().toLowerCase() + "-";
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(concurrency), runnable -> {
+                Thread thread = new Thread(runnable, threadPrefix + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * Sends that may start now: free concurrency slots and rate-limit tokens, up to max
+     */
+    public int capacity(int max) {
+        return Math.min(max, Math.min(slots.availablePermits(), bucket.available()));
+    }
+
+    /**
+     * Run a send in a concurrency slot, taking a rate-limit token
+     *
+     * @return false if the executor is full and the send was not started
+     */
+    public boolean submit(Runnable send) {
+        if (!slots.tryAcquire()) {
+            bulkheadRejected.increment();
+            return false;
+        }
+        bucket.tryAcquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    send.run();
+                } finally {
+                    slots.release();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            bulkheadRejected.increment();
+            return false;
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public NotificationType getType() {
+        return type;
+    }
+
+    public NotificationService getGateway() {
+        return gateway;
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    public void recordSent() {
+        sent.increment();
+        breaker.onSuccess();
+    }
+
+    public void recordFailure(boolean deadLetter) {
+        (deadLetter ? deadLettered : failed).increment();
+        breaker.onFailure();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("concurrency", concurrency);
+        stats.put("inFlight", concurrency - slots.availablePermits());
+        stats.put("ratePerSecond", ratePerSecond);
+        stats.put("tokensAvailable", bucket.available());
+        stats.put("sent", sent.sum());
+        stats.put("failedAttempts", failed.sum());
+        stats.put("deadLettered", deadLettered.sum());
+        stats.put("bulkheadRejected", bulkheadRejected.sum());
+        stats.put("breaker", breaker.getStats());
+        return stats;
+    }
+}
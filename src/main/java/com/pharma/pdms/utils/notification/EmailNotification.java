@@ -1,5 +1,7 @@
 package com.pharma.pdms.utils.notification;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 /**
@@ -8,13 +10,11 @@ import org.springframework.stereotype.Component;
  */
 @Component
 public class EmailNotification implements Notification {
+    private static final Logger log = LoggerFactory.getLogger(EmailNotification.class);
+
     @Override
     public void send(String recipient, String subject, String message) {
         // In a real implementation, this would use JavaMail API or a service like SendGrid
-        System.out.println("Sending EMAIL notification:");
-        System.out.println("To: " + recipient);
-        System.out.println("Subject: " + subject);
-        System.out.println("Message: " + message);
-        System.out.println("----------------------------------");
+        log.info("notification.sent channel=email recipient={} subject=\"{}\" message=\"{}\"", recipient, subject, message);
     }
 }
\ No newline at end of file
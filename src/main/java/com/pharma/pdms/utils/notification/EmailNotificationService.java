@@ -1,5 +1,8 @@
 package com.pharma.pdms.utils.notification;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 /**
@@ -9,15 +12,23 @@ import org.springframework.stereotype.Service;
 @Service
 public class EmailNotificationService implements NotificationService {
     
+    private static final Logger log = LoggerFactory.getLogger(EmailNotificationService.class);
+    
+    private final StubNotificationGateway gateway;
+    
+    @Autowired
+    public EmailNotificationService(StubNotificationGateway gateway) {
+        this.gateway = gateway;
+    }
+    
     @Override
     public boolean sendNotification(String recipient, String subject, String message) {
         // In a real implementation, this would send an actual email
         // using a service like JavaMail, Amazon SES, SendGrid, etc.
         
-        System.out.printf("SENDING EMAIL to %s with subject '%s': %s%n", 
-                         recipient, subject, message);
+        gateway.deliver(NotificationType.EMAIL, recipient);
+        log.info("notification.sent channel=email recipient={} subject=\"{}\" message=\"{}\"", recipient, subject, message);
         
-        // Simulate successful sending
         return true;
     }
 }
\ No newline at end of file
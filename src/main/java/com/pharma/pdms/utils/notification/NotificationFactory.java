@@ -1,46 +1,52 @@
 package com.pharma.pdms.utils.notification;
 
+import com.pharma.pdms.services.NotificationDeliveryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 /**
  * Factory for creating notification services
  * This is the Factory class in the Factory design pattern
+ * The services it creates queue notifications for the delivery engine, which sends them
+ * through the channel services with retries, rate limits and dead-lettering
  */
 @Component
 public class NotificationFactory {
     
-    private final EmailNotificationService emailService;
-    private final SmsNotificationService smsService;
-    private final PushNotificationService pushService;
+    private final Map<NotificationType, NotificationService> services = new EnumMap<>(NotificationType.class);
     
     @Autowired
-    public NotificationFactory(
-            EmailNotificationService emailService,
-            SmsNotificationService smsService,
-            PushNotificationService pushService) {
-        this.emailService = emailService;
-        this.smsService = smsService;
-        this.pushService = pushService;
+    public NotificationFactory(NotificationDeliveryService deliveryService) {
+        for (NotificationType type : NotificationType.values()) {
+            services.put(type, new QueuedNotificationService(type, deliveryService));
+        }
+    }
+    
+    /**
+     * Create a notification service for a channel
+     * 
+     * @param type The notification channel
+     * @return The NotificationService queueing notifications for that channel
+     */
+    public NotificationService createNotificationService(NotificationType type) {
+        return services.get(type);
     }
     
     /**
-     * Create a notification service based on the type
+     * Create a notification service based on the type name
      * 
      * @param type The type of notification service to create ("email", "sms", "push")
      * @return The appropriate NotificationService implementation
      * @throws IllegalArgumentException if the type is not supported
      */
     public NotificationService createNotificationService(String type) {
-        switch (type.toLowerCase()) {
-            case "email":
-                return emailService;
-            case "sms":
-                return smsService;
-            case "push":
-                return pushService;
-            default:
-                throw new IllegalArgumentException("Unsupported notification type: " + type);
+        try {
+            return createNotificationService(NotificationType.valueOf(type.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported notification type: " + type);
         }
     }
-}
\ No newline at end of file
+}
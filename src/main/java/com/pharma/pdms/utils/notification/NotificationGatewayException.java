@@ -0,0 +1,11 @@
+package com.pharma.pdms.utils.notification;
+
+/**
+ * Thrown when a channel gateway fails to accept a notification
+ */
+public class NotificationGatewayException extends RuntimeException {
+
+    public NotificationGatewayException(String message) {
+        super(message);
+    }
+}
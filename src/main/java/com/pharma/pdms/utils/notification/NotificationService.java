@@ -15,4 +15,14 @@ public interface NotificationService {
      * @return boolean indicating whether the notification was sent successfully
      */
     boolean sendNotification(String recipient, String subject, String message);
+    
+    /**
+     * Send a notification at most once per deduplication key
+     * 
+     * @param dedupKey Key identifying the notification, e.g. "low-stock:42:2024-03-18"; null never deduplicates
+     * @return boolean indicating whether the notification was sent, or queued for sending
+     */
+    default boolean sendNotification(String recipient, String subject, String message, String dedupKey) {
+        return sendNotification(recipient, subject, message);
+    }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.pharma.pdms.utils.notification;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 /**
@@ -8,13 +10,11 @@ import org.springframework.stereotype.Component;
  */
 @Component
 public class PushNotification implements Notification {
+    private static final Logger log = LoggerFactory.getLogger(PushNotification.class);
+
     @Override
     public void send(String recipient, String subject, String message) {
         // In a real implementation, this would use Firebase Cloud Messaging or similar service
-        System.out.println("Sending PUSH notification:");
-        System.out.println("To: " + recipient);
-        System.out.println("Title: " + subject);
-        System.out.println("Body: " + message);
-        System.out.println("----------------------------------");
+        log.info("notification.sent channel=push recipient={} title=\"{}\" body=\"{}\"", recipient, subject, message);
     }
 }
\ No newline at end of file
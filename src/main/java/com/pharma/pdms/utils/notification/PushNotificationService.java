@@ -1,5 +1,8 @@
 package com.pharma.pdms.utils.notification;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 /**
@@ -9,15 +12,23 @@ import org.springframework.stereotype.Service;
 @Service
 public class PushNotificationService implements NotificationService {
     
+    private static final Logger log = LoggerFactory.getLogger(PushNotificationService.class);
+    
+    private final StubNotificationGateway gateway;
+    
+    @Autowired
+    public PushNotificationService(StubNotificationGateway gateway) {
+        this.gateway = gateway;
+    }
+    
     @Override
     public boolean sendNotification(String recipient, String subject, String message) {
         // In a real implementation, this would send an actual push notification
         // using a service like Firebase Cloud Messaging, OneSignal, etc.
         
-        System.out.printf("SENDING PUSH NOTIFICATION to device %s with title '%s': %s%n", 
-                         recipient, subject, message);
+        gateway.deliver(NotificationType.PUSH, recipient);
+        log.info("notification.sent channel=push device={} title=\"{}\" body=\"{}\"", recipient, subject, message);
         
-        // Simulate successful sending
         return true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.pharma.pdms.utils.notification;
+
+import com.pharma.pdms.services.NotificationDeliveryService;
+
+/**
+ * NotificationService handed out by NotificationFactory: queues the notification for the
+ * delivery engine instead of calling the channel's gateway on the caller's thread.
+ * Returns whether the notification was queued; false means a duplicate key.
+ */
+public class QueuedNotificationService implements NotificationService {
+    
+    private final NotificationType channel;
+    private final NotificationDeliveryService deliveryService;
+    
+    public QueuedNotificationService(NotificationType channel, NotificationDeliveryService deliveryService) {
+        this.channel = channel;
+        this.deliveryService = deliveryService;
+    }
+    
+    @Override
+    public boolean sendNotification(String recipient, String subject, String message) {
+        return deliveryService.enqueue(channel, recipient, subject, message, null);
+    }
+    
+    @Override
+    public boolean sendNotification(String recipient, String subject, String message, String dedupKey) {
+        return deliveryService.enqueue(channel, recipient, subject, message, dedupKey);
+    }
+}
@@ -1,5 +1,7 @@
 package com.pharma.pdms.utils.notification;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 /**
@@ -7,11 +9,12 @@ import org.springframework.stereotype.Component;
  */
 @Component
 public class SMSNotification implements Notification {
+    private static final Logger log = LoggerFactory.getLogger(SMSNotification.class);
+
     @Override
     public void send(String recipient, String subject, String content) {
         // Implementation for sending SMS
-        System.out.println("Sending SMS notification to: " + recipient);
-        System.out.println("Message: " + subject + " - " + content);
+        log.info("notification.sent channel=sms recipient={} message=\"{} - {}\"", recipient, subject, content);
         // In a real implementation, this would use an SMS service provider API
     }
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package com.pharma.pdms.utils.notification;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 /**
@@ -9,15 +12,23 @@ import org.springframework.stereotype.Service;
 @Service
 public class SmsNotificationService implements NotificationService {
     
+    private static final Logger log = LoggerFactory.getLogger(SmsNotificationService.class);
+    
+    private final StubNotificationGateway gateway;
+    
+    @Autowired
+    public SmsNotificationService(StubNotificationGateway gateway) {
+        this.gateway = gateway;
+    }
+    
     @Override
     public boolean sendNotification(String recipient, String subject, String message) {
         // In a real implementation, this would send an actual SMS
         // using a service like Twilio, Amazon SNS, etc.
         
-        System.out.printf("SENDING SMS to %s: %s%n", 
-                         recipient, message);
+        gateway.deliver(NotificationType.SMS, recipient);
+        log.info("notification.sent channel=sms recipient={} message=\"{}\"", recipient, message);
         
-        // Simulate successful sending
         return true;
     }
 }
\ No newline at end of file
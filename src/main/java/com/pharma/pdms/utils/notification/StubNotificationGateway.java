@@ -0,0 +1,51 @@
+package com.pharma.pdms.utils.notification;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Local stand-in for the email, SMS and push providers. Each channel has a configurable
+ * latency, with jitter, and failure rate (pdms.notifications.stub.{channel}.*), so the
+ * delivery engine's retries, limits and dead-lettering can be exercised without a provider.
+ */
+@Component
+public class StubNotificationGateway {
+
+    private final Map<NotificationType, long[]> latencyMillis = new EnumMap<>(NotificationType.class);
+    private final Map<NotificationType, Double> failureRate = new EnumMap<>(NotificationType.class);
+
+    public StubNotificationGateway(Environment environment) {
+        for (NotificationType channel : NotificationType.values()) {
+            String prefix = "pdms.notifications.stub." + channel.name().toLowerCase() + ".";
+            latencyMillis.put(channel, new long[] {
+                environment.getProperty(prefix + "latency-ms", Long.class, 0L),
+                environment.getProperty(prefix + "jitter-ms", Long.class, 0L)});
+            failureRate.put(channel, environment.getProperty(prefix + "failure-rate", Double.class, 0.0));
+        }
+    }
+
+    /**
+     * Hand a notification to the channel's provider
+     *
+     * @throws NotificationGatewayException if the provider rejects it
+     */
+    public void deliver(NotificationType channel, String recipient) {
+        long[] latency = latencyMillis.get(channel);
+        long delay = latency[0] + (latency[1] > 0 ? ThreadLocalRandom.current().nextLong(latency[1] + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NotificationGatewayException(channel + " gateway interrupted");
+            }
+        }
+        if (ThreadLocalRandom.current().nextDouble() < failureRate.get(channel)) {
+            throw new NotificationGatewayException(channel + " gateway rejected notification to " + recipient);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.pharma.pdms.utils.notification;
+
+/**
+ * Token bucket rate limiter: refills at a steady rate up to a burst capacity,
+ * and each operation takes one token.
+ */
+public final class TokenBucket {
+
+    private final double ratePerNano;
+    private final double capacity;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param ratePerSecond Sustained sends per second
+     * @param burst Sends allowed at once after an idle period
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.ratePerNano = ratePerSecond / 1_000_000_000.0;
+        this.capacity = Math.max(1, burst);
+        this.tokens = this.capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Wait until a token is available and take it
+     */
+    public void acquire() throws InterruptedException {
+        long millisPerToken = Math.max(1, (long) (1 / (ratePerNano * 1_000_000)));
+        while (!tryAcquire()) {
+            Thread.sleep(millisPerToken);
+        }
+    }
+
+    /**
+     * Whole tokens available now
+     */
+    public synchronized int available() {
+        refill();
+        return (int) tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+        refilledAt = now;
+    }
+}
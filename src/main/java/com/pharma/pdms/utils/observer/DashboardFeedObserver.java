@@ -0,0 +1,82 @@
+package com.pharma.pdms.utils.observer;
+
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.utils.DateUtils;
+import com.pharma.pdms.utils.sse.DashboardEventBroadcaster;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concrete observer turning inventory changes into dashboard push events
+ * Implements the InventoryObserver interface as part of the Observer pattern
+ * Only the node relaying a change sees it, so it publishes the stock delta to every node;
+ * each node tracks the low-stock and expiring transitions for its own subscribers.
+ */
+@Component
+public class DashboardFeedObserver implements InventoryObserver {
+    
+    private static final int EXPIRY_WARNING_DAYS = 30;
+    
+    private final DashboardEventBroadcaster broadcaster;
+    private final Set<Long> lowStockIds = ConcurrentHashMap.newKeySet();
+    private final Set<Long> expiringIds = ConcurrentHashMap.newKeySet();
+    
+    @Autowired
+    public DashboardFeedObserver(DashboardEventBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+        broadcaster.addReceiver("stock", this::stockReceived);
+    }
+    
+    @Override
+    public void update(Medicine medicine) {
+        Map<String, Object> data = compact(medicine);
+        data.put("lowStock", medicine.getQuantityInStock() != null && medicine.getReorderLevel() != null
+                && medicine.getQuantityInStock() <= medicine.getReorderLevel());
+        LocalDate expiryDate = DateUtils.toLocalDate(medicine.getExpiryDate());
+        data.put("expiring", expiryDate != null
+                && ChronoUnit.DAYS.between(LocalDate.now(), expiryDate) <= EXPIRY_WARNING_DAYS);
+        broadcaster.publish("stock", data);
+    }
+    
+    /**
+     * Push the transitions a stock delta causes to this node's subscribers
+     */
+    void stockReceived(Map<String, Object> data) {
+        if (!(data.get("id") instanceof Number)) {
+            return;
+        }
+        Long id = ((Number) data.get("id")).longValue();
+        
+        // Only transitions are pushed; clients upsert or remove entries by id
+        boolean lowStock = Boolean.TRUE.equals(data.get("lowStock"));
+        if (lowStock && lowStockIds.add(id)) {
+            broadcaster.publishLocal("low-stock", data);
+        } else if (!lowStock && lowStockIds.remove(id)) {
+            broadcaster.publishLocal("low-stock-cleared", data);
+        }
+        
+        boolean expiring = Boolean.TRUE.equals(data.get("expiring"));
+        if (expiring && expiringIds.add(id)) {
+            broadcaster.publishLocal("expiring", data);
+        } else if (!expiring && expiringIds.remove(id)) {
+            broadcaster.publishLocal("expiring-cleared", data);
+        }
+    }
+    
+    private Map<String, Object> compact(Medicine medicine) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", medicine.getId());
+        data.put("name", medicine.getName());
+        data.put("stock", medicine.getQuantityInStock());
+        data.put("reorderLevel", medicine.getReorderLevel());
+        data.put("expiryDate", DateUtils.toLocalDate(medicine.getExpiryDate()));
+        return data;
+    }
+}
@@ -1,8 +1,13 @@
 package com.pharma.pdms.utils.observer;
 
 import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.utils.DateUtils;
+import com.pharma.pdms.utils.notification.AlertLogSampler;
 import com.pharma.pdms.utils.notification.NotificationFactory;
 import com.pharma.pdms.utils.notification.NotificationService;
+import com.pharma.pdms.utils.notification.NotificationType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -16,12 +21,16 @@ import java.time.temporal.ChronoUnit;
 @Component
 public class ExpiryDateObserver implements InventoryObserver {
     
+    private static final Logger log = LoggerFactory.getLogger(ExpiryDateObserver.class);
+    
     private final NotificationFactory notificationFactory;
+    private final AlertLogSampler logSampler;
     private static final int EXPIRY_WARNING_DAYS = 30;
     
     @Autowired
-    public ExpiryDateObserver(NotificationFactory notificationFactory) {
+    public ExpiryDateObserver(NotificationFactory notificationFactory, AlertLogSampler logSampler) {
         this.notificationFactory = notificationFactory;
+        this.logSampler = logSampler;
     }
     
     @Override
@@ -32,7 +41,7 @@ public class ExpiryDateObserver implements InventoryObserver {
         }
         
         LocalDate today = LocalDate.now();
-        LocalDate expiryDate = medicine.getExpiryDate();
+        LocalDate expiryDate = DateUtils.toLocalDate(medicine.getExpiryDate());
         
         // Calculate days until expiry
         long daysUntilExpiry = ChronoUnit.DAYS.between(today, expiryDate);
@@ -56,14 +65,20 @@ public class ExpiryDateObserver implements InventoryObserver {
             status.toLowerCase(),
             timeFrame,
             medicine.getExpiryDate(),
-            medicine.getStock()
+            medicine.getQuantityInStock()
         );
         
         // Get SMS notification service from the factory
-        NotificationService smsService = notificationFactory.createNotificationService("sms");
-        smsService.sendNotification("+1234567890", "Medicine Expiry Alert", message);
+        NotificationService smsService = notificationFactory.createNotificationService(NotificationType.SMS);
+        // Queued for delivery; one alert per medicine per day however often its stock moves
+        smsService.sendNotification("+1234567890", "Medicine Expiry Alert", message,
+            "expiry:" + medicine.getId() + ":" + LocalDate.now());
         
-        // Log the alert
-        System.out.println(message);
+        // Log the alert, sampled as it repeats on every stock movement of the medicine
+        long suppressed = logSampler.admit("expiry:" + medicine.getId());
+        if (suppressed != AlertLogSampler.SUPPRESS) {
+            log.warn("alert.expiry medicine_id={} medicine=\"{}\" status={} days_until_expiry={} expiry_date={} stock={} suppressed={}",
+                medicine.getId(), medicine.getName(), status, daysUntilExpiry, medicine.getExpiryDate(), medicine.getQuantityInStock(), suppressed);
+        }
     }
 }
\ No newline at end of file
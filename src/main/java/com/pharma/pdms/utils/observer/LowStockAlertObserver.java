@@ -1,11 +1,17 @@
 package com.pharma.pdms.utils.observer;
 
 import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.utils.notification.AlertLogSampler;
 import com.pharma.pdms.utils.notification.NotificationFactory;
 import com.pharma.pdms.utils.notification.NotificationService;
+import com.pharma.pdms.utils.notification.NotificationType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
+
 /**
  * Concrete observer implementation for monitoring low stock levels
  * Implements the InventoryObserver interface as part of the Observer pattern
@@ -13,18 +19,22 @@ import org.springframework.stereotype.Component;
 @Component
 public class LowStockAlertObserver implements InventoryObserver {
     
+    private static final Logger log = LoggerFactory.getLogger(LowStockAlertObserver.class);
+    
     private final NotificationFactory notificationFactory;
+    private final AlertLogSampler logSampler;
     
     @Autowired
-    public LowStockAlertObserver(NotificationFactory notificationFactory) {
+    public LowStockAlertObserver(NotificationFactory notificationFactory, AlertLogSampler logSampler) {
         this.notificationFactory = notificationFactory;
+        this.logSampler = logSampler;
     }
     
     @Override
     public void update(Medicine medicine) {
         // Check if the medicine stock is below the reorder level
-        if (medicine.getStock() != null && medicine.getReorderLevel() != null
-                && medicine.getStock() <= medicine.getReorderLevel()) {
+        if (medicine.getQuantityInStock() != null && medicine.getReorderLevel() != null
+                && medicine.getQuantityInStock() <= medicine.getReorderLevel()) {
             
             generateLowStockAlert(medicine);
         }
@@ -34,15 +44,21 @@ public class LowStockAlertObserver implements InventoryObserver {
         String message = String.format(
             "LOW STOCK ALERT: %s is running low! Current stock: %d, Reorder Level: %d",
             medicine.getName(),
-            medicine.getStock(),
+            medicine.getQuantityInStock(),
             medicine.getReorderLevel()
         );
         
         // Get email notification service from the factory
-        NotificationService emailService = notificationFactory.createNotificationService("email");
-        emailService.sendNotification("admin@pharmacy.com", "Low Stock Alert", message);
+        NotificationService emailService = notificationFactory.createNotificationService(NotificationType.EMAIL);
+        // Queued for delivery; one alert per medicine per day however often its stock moves
+        emailService.sendNotification("admin@pharmacy.com", "Low Stock Alert", message,
+            "low-stock:" + medicine.getId() + ":" + LocalDate.now());
         
-        // Log the alert
-        System.out.println(message);
+        // Log the alert, sampled as it repeats on every stock movement until the medicine is restocked
+        long suppressed = logSampler.admit("low-stock:" + medicine.getId());
+        if (suppressed != AlertLogSampler.SUPPRESS) {
+            log.warn("alert.low_stock medicine_id={} medicine=\"{}\" stock={} reorder_level={} suppressed={}",
+                medicine.getId(), medicine.getName(), medicine.getQuantityInStock(), medicine.getReorderLevel(), suppressed);
+        }
     }
 }
\ No newline at end of file
@@ -3,8 +3,8 @@ package com.pharma.pdms.utils.observer;
 import com.pharma.pdms.models.Medicine;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Subject class in the Observer design pattern.
@@ -13,7 +13,8 @@ import java.util.List;
 @Component
 public class MedicineInventorySubject {
     
-    private final List<InventoryObserver> observers = new ArrayList<>();
+    // Notified concurrently by the outbox relay lanes
+    private final List<InventoryObserver> observers = new CopyOnWriteArrayList<>();
     
     /**
      * Register an observer to receive notifications
@@ -0,0 +1,26 @@
+package com.pharma.pdms.utils.observer;
+
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.services.ScreeningService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Concrete observer keeping the screening engine's medicine names and allergy terms current
+ * Implements the InventoryObserver interface as part of the Observer pattern
+ */
+@Component
+public class ScreeningCatalogueObserver implements InventoryObserver {
+    
+    private final ScreeningService screeningService;
+    
+    @Autowired
+    public ScreeningCatalogueObserver(ScreeningService screeningService) {
+        this.screeningService = screeningService;
+    }
+    
+    @Override
+    public void update(Medicine medicine) {
+        screeningService.medicineChanged(medicine.getId(), medicine.getName(), medicine.getCategory());
+    }
+}
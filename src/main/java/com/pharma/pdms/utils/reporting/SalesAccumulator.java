@@ -0,0 +1,126 @@
+package com.pharma.pdms.utils.reporting;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from (medicine id, period start) to quantity, revenue in cents
+ * and line count, held in parallel primitive arrays so aggregating a row allocates
+ * nothing. Each scan task fills its own instance without synchronisation, and
+ * instances are merged as tasks join; size is bounded by the number of groups.
+ */
+public final class SalesAccumulator {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] medicineIds;
+    private long[] periods;
+    private long[] quantities;
+    private long[] revenueCents;
+    private long[] lines;
+    private int mask;
+    private int size;
+
+    public SalesAccumulator() {
+        this(64);
+    }
+
+    public SalesAccumulator(int expectedGroups) {
+        allocate(Integer.highestOneBit(Math.max(16, expectedGroups * 2 - 1)) << 1);
+    }
+
+    /**
+     * Add one sold line
+     */
+    public void add(long medicineId, long period, long quantity, long cents) {
+        add(medicineId, period, quantity, cents, 1);
+    }
+
+    /**
+     * Fold another accumulator into whichever of the two is larger
+     *
+     * @return The accumulator holding the combined totals
+     */
+    public SalesAccumulator merge(SalesAccumulator other) {
+        SalesAccumulator target = size >= other.size ? this : other;
+        SalesAccumulator source = target == this ? other : this;
+        source.forEach(target::add);
+        return target;
+    }
+
+    public void forEach(Consumer consumer) {
+        for (int slot = 0; slot < medicineIds.length; slot++) {
+            if (medicineIds[slot] != EMPTY) {
+                consumer.accept(medicineIds[slot], periods[slot], quantities[slot], revenueCents[slot], lines[slot]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void add(long medicineId, long period, long quantity, long cents, long lineCount) {
+        int slot = slot(medicineId, period);
+        if (medicineIds[slot] == EMPTY) {
+            medicineIds[slot] = medicineId;
+            periods[slot] = period;
+            size++;
+        }
+        quantities[slot] += quantity;
+        revenueCents[slot] += cents;
+        lines[slot] += lineCount;
+        if (size * 2 > medicineIds.length) {
+            grow();
+        }
+    }
+
+    private int slot(long medicineId, long period) {
+        int slot = hash(medicineId, period) & mask;
+        while (medicineIds[slot] != EMPTY && (medicineIds[slot] != medicineId || periods[slot] != period)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldMedicineIds = medicineIds;
+        long[] oldPeriods = periods;
+        long[] oldQuantities = quantities;
+        long[] oldRevenueCents = revenueCents;
+        long[] oldLines = lines;
+        allocate(oldMedicineIds.length * 2);
+        for (int i = 0; i < oldMedicineIds.length; i++) {
+            if (oldMedicineIds[i] != EMPTY) {
+                int slot = slot(oldMedicineIds[i], oldPeriods[i]);
+                medicineIds[slot] = oldMedicineIds[i];
+                periods[slot] = oldPeriods[i];
+                quantities[slot] = oldQuantities[i];
+                revenueCents[slot] = oldRevenueCents[i];
+                lines[slot] = oldLines[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        medicineIds = new long[capacity];
+        Arrays.fill(medicineIds, EMPTY);
+        periods = new long[capacity];
+        quantities = new long[capacity];
+        revenueCents = new long[capacity];
+        lines = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(long medicineId, long period) {
+        long h = medicineId * 0x9E3779B97F4A7C15L + period;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long medicineId, long period, long quantity, long revenueCents, long lines);
+    }
+}
@@ -0,0 +1,26 @@
+package com.pharma.pdms.utils.reporting;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Sales over a date range grouped by one dimension and period, with overall totals
+ */
+@Data
+@AllArgsConstructor
+public class SalesReport {
+    private LocalDate from;
+    private LocalDate to;
+    private String groupBy;
+    private String period;
+    private long quantity;
+    private BigDecimal revenue;
+    private long lines;
+    private int chunks;
+    private long tookMillis;
+    private List<SalesReportRow> rows;
+}
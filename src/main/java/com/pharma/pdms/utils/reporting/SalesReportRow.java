@@ -0,0 +1,22 @@
+package com.pharma.pdms.utils.reporting;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Sales of one group (medicine, category, manufacturer or supplier) in one period
+ */
+@Data
+@AllArgsConstructor
+public class SalesReportRow {
+    private String key;
+    private String label;
+    /** First day of the period, or null for a report over the whole range */
+    private LocalDate periodStart;
+    private long quantity;
+    private BigDecimal revenue;
+    private long lines;
+}
@@ -0,0 +1,46 @@
+package com.pharma.pdms.utils.reporting;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join task aggregating the sales of an inclusive range of transaction ids.
+ * Ranges wider than the chunk size are split in half; each leaf streams its chunk
+ * into an accumulator of its own, and results are merged as the halves join.
+ */
+public class SalesScanTask extends RecursiveTask<SalesAccumulator> {
+
+    private final ChunkScanner scanner;
+    private final long fromId;
+    private final long toId;
+    private final long chunkSize;
+
+    public SalesScanTask(ChunkScanner scanner, long fromId, long toId, long chunkSize) {
+        this.scanner = scanner;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    @Override
+    protected SalesAccumulator compute() {
+        if (toId - fromId < chunkSize) {
+            SalesAccumulator accumulator = new SalesAccumulator();
+            scanner.scan(fromId, toId, accumulator);
+            return accumulator;
+        }
+        long middle = fromId + (toId - fromId) / 2;
+        SalesScanTask left = new SalesScanTask(scanner, fromId, middle, chunkSize);
+        SalesScanTask right = new SalesScanTask(scanner, middle + 1, toId, chunkSize);
+        left.fork();
+        SalesAccumulator rightResult = right.compute();
+        return left.join().merge(rightResult);
+    }
+
+    /**
+     * Streams the sold lines of one chunk into an accumulator
+     */
+    @FunctionalInterface
+    public interface ChunkScanner {
+        void scan(long fromId, long toId, SalesAccumulator accumulator);
+    }
+}
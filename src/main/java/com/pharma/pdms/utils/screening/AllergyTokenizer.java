@@ -0,0 +1,80 @@
+package com.pharma.pdms.utils.screening;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Turns free-text allergy notes and medicine names into normalised tokens
+ * (lower case, accents and punctuation stripped, filler words dropped) that
+ * can be compared without any further parsing on the prescription path.
+ */
+public final class AllergyTokenizer {
+
+    private static final String[] NO_TOKENS = new String[0];
+    private static final int MIN_TOKEN_LENGTH = 3;
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9]+");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+        "allergy", "allergies", "allergic", "and", "the", "with", "to", "none", "nil", "nka", "nkda",
+        "known", "drug", "drugs", "mild", "moderate", "severe", "reaction", "reactions", "rash",
+        "hives", "intolerance", "intolerant", "sensitivity", "sensitive", "tablet", "tablets",
+        "capsule", "capsules", "oral", "injection", "syrup", "cream", "mg", "ml"));
+
+    private AllergyTokenizer() {
+    }
+
+    /**
+     * Tokenize a free-text field such as Patient.allergies or a medicine name
+     *
+     * @return Distinct tokens in order of appearance, or an empty array
+     */
+    public static String[] tokenize(String... texts) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String text : texts) {
+            if (text == null || text.isEmpty()) {
+                continue;
+            }
+            String normalised = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+            for (String token : NON_ALPHANUMERIC.split(normalised)) {
+                if (token.length() >= MIN_TOKEN_LENGTH && !STOP_WORDS.contains(token) && !isNumeric(token)) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens.isEmpty() ? NO_TOKENS : tokens.toArray(NO_TOKENS);
+    }
+
+    /**
+     * Find the first allergy token matched by a medicine token.
+     * A match is an exact token or a medicine token starting with the allergen,
+     * so "penicillin" matches "penicillins" and "sulfa" matches "sulfamethoxazole".
+     *
+     * @return The matching allergy token, or null
+     */
+    public static String match(String[] allergyTokens, String[] medicineTokens) {
+        for (String allergen : allergyTokens) {
+            for (String term : medicineTokens) {
+                if (term.startsWith(allergen)) {
+                    return allergen;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isNumeric(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
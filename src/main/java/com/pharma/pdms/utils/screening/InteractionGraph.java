@@ -0,0 +1,213 @@
+package com.pharma.pdms.utils.screening;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable drug-interaction graph in compressed sparse row form.
+ * Medicine ids are kept in a sorted long[]; the neighbours of the i-th medicine
+ * occupy neighbours[offsets[i] .. offsets[i + 1]), also sorted, with the severity
+ * and description index of each edge in parallel arrays. A lookup is a hash probe
+ * for the medicine's node and a binary search over its few neighbours, over
+ * primitive arrays only, and allocates nothing.
+ */
+public final class InteractionGraph {
+
+    /** Returned by {@link #find} when the pair does not interact */
+    public static final int NONE = -1;
+
+    private final long[] nodeIds;
+    private final int[] offsets;
+    private final long[] neighbours;
+    private final byte[] severities;
+    private final int[] descriptionIndexes;
+    private final String[] descriptions;
+    // Open-addressing index from medicine id to node, so a lookup is not a binary search over every node
+    private final long[] slotIds;
+    private final int[] slotNodes;
+    private final int slotMask;
+
+    private InteractionGraph(long[] nodeIds, int[] offsets, long[] neighbours,
+                             byte[] severities, int[] descriptionIndexes, String[] descriptions) {
+        this.nodeIds = nodeIds;
+        this.offsets = offsets;
+        this.neighbours = neighbours;
+        this.severities = severities;
+        this.descriptionIndexes = descriptionIndexes;
+        this.descriptions = descriptions;
+
+        int slots = Integer.highestOneBit(Math.max(2, nodeIds.length) * 2 - 1) << 1;
+        this.slotIds = new long[slots];
+        this.slotNodes = new int[slots];
+        this.slotMask = slots - 1;
+        Arrays.fill(slotNodes, NONE);
+        for (int node = 0; node < nodeIds.length; node++) {
+            int slot = slotOf(nodeIds[node]);
+            while (slotNodes[slot] != NONE) {
+                slot = (slot + 1) & slotMask;
+            }
+            slotIds[slot] = nodeIds[node];
+            slotNodes[slot] = node;
+        }
+    }
+
+    public static InteractionGraph empty() {
+        return new Builder(0).build();
+    }
+
+    /**
+     * Find the edge between two medicines
+     *
+     * @return Edge position for {@link #severityAt} and {@link #descriptionAt}, or {@link #NONE}
+     */
+    public int find(long medicineId, long otherMedicineId) {
+        int node = nodeOf(medicineId);
+        if (node == NONE) {
+            return NONE;
+        }
+        int edge = Arrays.binarySearch(neighbours, offsets[node], offsets[node + 1], otherMedicineId);
+        return edge < 0 ? NONE : edge;
+    }
+
+    public int severityAt(int edge) {
+        return severities[edge];
+    }
+
+    public String descriptionAt(int edge) {
+        int index = descriptionIndexes[edge];
+        return index < 0 ? null : descriptions[index];
+    }
+
+    public int getMedicineCount() {
+        return nodeIds.length;
+    }
+
+    /** Number of unordered interaction pairs */
+    public int getPairCount() {
+        return neighbours.length / 2;
+    }
+
+    /** Approximate heap footprint of the arrays, excluding description strings */
+    public long getSizeBytes() {
+        return nodeIds.length * 8L + offsets.length * 4L + neighbours.length * 8L
+            + severities.length + descriptionIndexes.length * 4L + slotIds.length * 12L;
+    }
+
+    private int nodeOf(long medicineId) {
+        int slot = slotOf(medicineId);
+        int node;
+        while ((node = slotNodes[slot]) != NONE) {
+            if (slotIds[slot] == medicineId) {
+                return node;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return NONE;
+    }
+
+    private int slotOf(long medicineId) {
+        return (int) ((medicineId * 0x9E3779B97F4A7C15L) >>> 32) & slotMask;
+    }
+
+    /**
+     * Collects unordered pairs and packs them into a graph.
+     * A pair added twice keeps its highest severity.
+     */
+    public static final class Builder {
+        private long[] from;
+        private long[] to;
+        private byte[] severity;
+        private int[] description;
+        private int size;
+        private final Map<String, Integer> descriptionIds = new HashMap<>();
+        private final List<String> descriptionList = new ArrayList<>();
+
+        public Builder(int expectedPairs) {
+            int capacity = Math.max(16, expectedPairs * 2);
+            from = new long[capacity];
+            to = new long[capacity];
+            severity = new byte[capacity];
+            description = new int[capacity];
+        }
+
+        public Builder add(long medicineA, long medicineB, int severityLevel, String text) {
+            if (medicineA == medicineB) {
+                return this;
+            }
+            int descriptionId = text == null ? -1
+                : descriptionIds.computeIfAbsent(text, key -> {
+                    descriptionList.add(key);
+                    return descriptionList.size() - 1;
+                });
+            append(medicineA, medicineB, severityLevel, descriptionId);
+            append(medicineB, medicineA, severityLevel, descriptionId);
+            return this;
+        }
+
+        private void append(long a, long b, int severityLevel, int descriptionId) {
+            if (size == from.length) {
+                int capacity = size * 2;
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                severity = Arrays.copyOf(severity, capacity);
+                description = Arrays.copyOf(description, capacity);
+            }
+            from[size] = a;
+            to[size] = b;
+            severity[size] = (byte) severityLevel;
+            description[size] = descriptionId;
+            size++;
+        }
+
+        public InteractionGraph build() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> from[x] != from[y] ? Long.compare(from[x], from[y]) : Long.compare(to[x], to[y]));
+
+            long[] nodeIds = new long[size];
+            int[] offsets = new int[size + 1];
+            long[] neighbours = new long[size];
+            byte[] severities = new byte[size];
+            int[] descriptionIndexes = new int[size];
+            int nodes = 0;
+            int edges = 0;
+
+            for (Integer index : order) {
+                long a = from[index];
+                long b = to[index];
+                boolean newNode = nodes == 0 || nodeIds[nodes - 1] != a;
+                if (!newNode && neighbours[edges - 1] == b) {
+                    // Duplicate pair: keep the most severe entry
+                    if (severity[index] > severities[edges - 1]) {
+                        severities[edges - 1] = severity[index];
+                        descriptionIndexes[edges - 1] = description[index];
+                    }
+                    continue;
+                }
+                if (newNode) {
+                    nodeIds[nodes] = a;
+                    offsets[nodes] = edges;
+                    nodes++;
+                }
+                neighbours[edges] = b;
+                severities[edges] = severity[index];
+                descriptionIndexes[edges] = description[index];
+                edges++;
+            }
+            offsets[nodes] = edges;
+
+            return new InteractionGraph(
+                Arrays.copyOf(nodeIds, nodes),
+                Arrays.copyOf(offsets, nodes + 1),
+                Arrays.copyOf(neighbours, edges),
+                Arrays.copyOf(severities, edges),
+                Arrays.copyOf(descriptionIndexes, edges),
+                descriptionList.toArray(new String[0]));
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.pharma.pdms.utils.screening;
+
+import com.pharma.pdms.models.DrugInteraction;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory screening state: the interaction graph, normalised allergy and
+ * medicine tokens, and each patient's active medications, which are the items
+ * prescribed to them since a cutoff, dispensed or not.
+ * Everything a screen needs is held here so a check never touches the database.
+ */
+@Component
+public class ScreeningEngine {
+
+    private static final DrugInteraction.Severity[] SEVERITIES = DrugInteraction.Severity.values();
+    private static final int MAX_CACHED_PRESCRIPTIONS = 100_000;
+
+    private volatile InteractionGraph graph = InteractionGraph.empty();
+    private final Map<Long, String[]> medicineTokens = new ConcurrentHashMap<>();
+    private final Map<Long, String> medicineNames = new ConcurrentHashMap<>();
+    private volatile Map<Long, String[]> patientAllergies = new ConcurrentHashMap<>();
+    // Recently used prescriptions only; a miss falls back to the database
+    private final Map<Long, Long> patientByPrescription = Collections.synchronizedMap(
+        new LinkedHashMap<Long, Long>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > MAX_CACHED_PRESCRIPTIONS;
+            }
+        });
+    // patient id -> (prescription item id -> active item)
+    private volatile Map<Long, Map<Long, ActiveItem>> activeMedications = new ConcurrentHashMap<>();
+    private volatile Map<Long, Long> patientByItem = new ConcurrentHashMap<>();
+
+    private final LongAdder screens = new LongAdder();
+    private final LongAdder warnings = new LongAdder();
+    private final LongAdder screenNanos = new LongAdder();
+
+    public void replaceGraph(InteractionGraph graph) {
+        this.graph = graph;
+    }
+
+    public void updateMedicine(Long medicineId, String name, String category) {
+        medicineNames.put(medicineId, name == null ? "medicine " + medicineId : name);
+        medicineTokens.put(medicineId, AllergyTokenizer.tokenize(name, category));
+    }
+
+    public void updatePatientAllergies(Long patientId, String allergies) {
+        String[] tokens = AllergyTokenizer.tokenize(allergies);
+        if (tokens.length == 0) {
+            patientAllergies.remove(patientId);
+        } else {
+            patientAllergies.put(patientId, tokens);
+        }
+    }
+
+    /**
+     * Replace every patient's allergies, for a full reload
+     *
+     * @param allergies Patient id to recorded allergies
+     */
+    public void replaceAllergies(Map<Long, String> allergies) {
+        Map<Long, String[]> replacement = new ConcurrentHashMap<>();
+        allergies.forEach((patientId, text) -> {
+            String[] tokens = AllergyTokenizer.tokenize(text);
+            if (tokens.length > 0) {
+                replacement.put(patientId, tokens);
+            }
+        });
+        patientAllergies = replacement;
+    }
+
+    public void registerPrescription(Long prescriptionId, Long patientId) {
+        patientByPrescription.put(prescriptionId, patientId);
+    }
+
+    /**
+     * @return The patient of a known prescription, or null if it has not been seen
+     */
+    public Long getPatientForPrescription(Long prescriptionId) {
+        return patientByPrescription.get(prescriptionId);
+    }
+
+    public void addActiveItem(Long patientId, Long itemId, Long medicineId, long createdAt) {
+        add(activeMedications, patientByItem, patientId, itemId, new ActiveItem(medicineId, createdAt));
+    }
+
+    public void removeActiveItem(Long itemId) {
+        Long patientId = patientByItem.remove(itemId);
+        if (patientId == null) {
+            return;
+        }
+        activeMedications.computeIfPresent(patientId, (id, items) -> {
+            items.remove(itemId);
+            return items.isEmpty() ? null : items;
+        });
+    }
+
+    /**
+     * Replace every patient's active medications, for a full reload
+     *
+     * @param items Rows of item id, patient id, medicine id, created at (epoch millis)
+     */
+    public void replaceActiveItems(List<long[]> items) {
+        Map<Long, Map<Long, ActiveItem>> medications = new ConcurrentHashMap<>();
+        Map<Long, Long> patients = new ConcurrentHashMap<>();
+        for (long[] item : items) {
+            add(medications, patients, item[1], item[0], new ActiveItem(item[2], item[3]));
+        }
+        activeMedications = medications;
+        patientByItem = patients;
+    }
+
+    /**
+     * Drop items created before the cutoff; screening already ignores them
+     *
+     * @return Number of items dropped
+     */
+    public int expireActiveItems(long activeSince) {
+        int expired = 0;
+        for (Map<Long, ActiveItem> items : activeMedications.values()) {
+            for (Map.Entry<Long, ActiveItem> entry : items.entrySet()) {
+                if (entry.getValue().createdAt < activeSince) {
+                    removeActiveItem(entry.getKey());
+                    expired++;
+                }
+            }
+        }
+        return expired;
+    }
+
+    public int getActiveItemCount() {
+        return patientByItem.size();
+    }
+
+    /**
+     * Screen a medicine for a patient against their allergies and active medications
+     *
+     * @param activeSince Items created before this time (epoch millis) are no longer active
+     * @return Warnings, most severe first; empty if nothing was found
+     */
+    public List<ScreeningWarning> screen(Long patientId, Long medicineId, long activeSince) {
+        long start = System.nanoTime();
+        List<ScreeningWarning> found = Collections.emptyList();
+
+        String[] allergies = patientAllergies.get(patientId);
+        String[] terms = medicineTokens.get(medicineId);
+        if (allergies != null && terms != null) {
+            String allergen = AllergyTokenizer.match(allergies, terms);
+            if (allergen != null) {
+                found = add(found, new ScreeningWarning(ScreeningWarning.ALLERGY,
+                    DrugInteraction.Severity.CONTRAINDICATED.name(), medicineId, null,
+                    nameOf(medicineId) + " matches recorded allergy '" + allergen + "'"));
+            }
+        }
+
+        Map<Long, ActiveItem> active = activeMedications.get(patientId);
+        if (active != null) {
+            InteractionGraph current = graph;
+            for (ActiveItem item : active.values()) {
+                if (item.createdAt < activeSince) {
+                    continue;
+                }
+                Long activeMedicineId = item.medicineId;
+                if (activeMedicineId.equals(medicineId)) {
+                    found = add(found, new ScreeningWarning(ScreeningWarning.DUPLICATE_THERAPY,
+                        DrugInteraction.Severity.MODERATE.name(), medicineId, activeMedicineId,
+                        nameOf(medicineId) + " was already prescribed to this patient recently"));
+                    continue;
+                }
+                int edge = current.find(medicineId, activeMedicineId);
+                if (edge != InteractionGraph.NONE) {
+                    String description = current.descriptionAt(edge);
+                    found = add(found, new ScreeningWarning(ScreeningWarning.INTERACTION,
+                        SEVERITIES[current.severityAt(edge)].name(), medicineId, activeMedicineId,
+                        nameOf(medicineId) + " interacts with " + nameOf(activeMedicineId)
+                            + (description == null ? "" : ": " + description)));
+                }
+            }
+        }
+
+        if (found.size() > 1) {
+            found.sort((a, b) -> DrugInteraction.Severity.valueOf(b.getSeverity())
+                .compareTo(DrugInteraction.Severity.valueOf(a.getSeverity())));
+        }
+        screens.increment();
+        warnings.add(found.size());
+        screenNanos.add(System.nanoTime() - start);
+        return found;
+    }
+
+    public Map<String, Object> getStats() {
+        InteractionGraph current = graph;
+        long screenCount = screens.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("interactionPairs", current.getPairCount());
+        stats.put("interactingMedicines", current.getMedicineCount());
+        stats.put("graphSizeBytes", current.getSizeBytes());
+        stats.put("medicines", medicineTokens.size());
+        stats.put("patientsWithAllergies", patientAllergies.size());
+        stats.put("patientsWithActiveMedications", activeMedications.size());
+        stats.put("activeItems", patientByItem.size());
+        stats.put("screens", screenCount);
+        stats.put("warnings", warnings.sum());
+        stats.put("avgScreenMicros", screenCount == 0 ? 0.0 : screenNanos.sum() / 1000.0 / screenCount);
+        return stats;
+    }
+
+    private String nameOf(Long medicineId) {
+        return medicineNames.getOrDefault(medicineId, "medicine " + medicineId);
+    }
+
+    private static void add(Map<Long, Map<Long, ActiveItem>> medications, Map<Long, Long> patients,
+                            Long patientId, Long itemId, ActiveItem item) {
+        Long previousPatient = patients.put(itemId, patientId);
+        if (previousPatient != null && !previousPatient.equals(patientId)) {
+            medications.computeIfPresent(previousPatient, (id, items) -> {
+                items.remove(itemId);
+                return items.isEmpty() ? null : items;
+            });
+        }
+        medications.computeIfAbsent(patientId, id -> new ConcurrentHashMap<>()).put(itemId, item);
+    }
+
+    private static List<ScreeningWarning> add(List<ScreeningWarning> list, ScreeningWarning warning) {
+        List<ScreeningWarning> result = list.isEmpty() ? new ArrayList<>(2) : list;
+        result.add(warning);
+        return result;
+    }
+
+    private static final class ActiveItem {
+        private final Long medicineId;
+        private final long createdAt;
+
+        private ActiveItem(Long medicineId, long createdAt) {
+            this.medicineId = medicineId;
+            this.createdAt = createdAt;
+        }
+    }
+}
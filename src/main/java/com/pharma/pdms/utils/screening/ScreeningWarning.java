@@ -0,0 +1,24 @@
+package com.pharma.pdms.utils.screening;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A problem found when screening a medicine against a patient's allergies and active medications
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScreeningWarning {
+    
+    public static final String INTERACTION = "INTERACTION";
+    public static final String ALLERGY = "ALLERGY";
+    public static final String DUPLICATE_THERAPY = "DUPLICATE_THERAPY";
+    
+    private String type;
+    private String severity;
+    private Long medicineId;
+    private Long conflictingMedicineId;
+    private String message;
+}
@@ -0,0 +1,74 @@
+package com.pharma.pdms.utils.search;
+
+import com.pharma.pdms.models.Doctor;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.models.Patient;
+import com.pharma.pdms.models.Supplier;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Searchable view of an entity: a title shown in results and the text matched against
+ */
+@Data
+@AllArgsConstructor
+public class SearchDocument {
+
+    public static final String MEDICINE = "medicine";
+    public static final String PATIENT = "patient";
+    public static final String DOCTOR = "doctor";
+    public static final String SUPPLIER = "supplier";
+
+    private String type;
+    private Long id;
+    private String title;
+    private String subtitle;
+    private String body;
+
+    public String getKey() {
+        return key(type, id);
+    }
+
+    public static String key(String type, Long id) {
+        return type + ":" + id;
+    }
+
+    public static SearchDocument of(Medicine medicine) {
+        return new SearchDocument(MEDICINE, medicine.getId(), medicine.getName(),
+            join(" / ", medicine.getCategory(), medicine.getManufacturer()),
+            join(" ", medicine.getName(), medicine.getDescription(), medicine.getCategory(),
+                medicine.getManufacturer(), medicine.getBatchNumber()));
+    }
+
+    public static SearchDocument of(Patient patient) {
+        return new SearchDocument(PATIENT, patient.getId(),
+            join(" ", patient.getFirstName(), patient.getLastName()),
+            join(" / ", patient.getPhone(), patient.getEmail()),
+            join(" ", patient.getFirstName(), patient.getLastName(), patient.getPhone(),
+                patient.getEmail(), patient.getAddress()));
+    }
+
+    public static SearchDocument of(Doctor doctor) {
+        return new SearchDocument(DOCTOR, doctor.getId(),
+            join(" ", doctor.getFirstName(), doctor.getLastName()),
+            doctor.getSpecialization(),
+            join(" ", doctor.getFirstName(), doctor.getLastName(), doctor.getSpecialization(),
+                doctor.getLicenseNumber(), doctor.getEmail(), doctor.getAddress()));
+    }
+
+    public static SearchDocument of(Supplier supplier) {
+        return new SearchDocument(SUPPLIER, supplier.getId(), supplier.getName(),
+            supplier.getContactPerson(),
+            join(" ", supplier.getName(), supplier.getContactPerson(), supplier.getAddress(),
+                supplier.getEmail(), supplier.getPhone()));
+    }
+
+    private static String join(String separator, String... parts) {
+        return Stream.of(parts).filter(Objects::nonNull).filter(part -> !part.isEmpty())
+            .collect(Collectors.joining(separator));
+    }
+}
@@ -0,0 +1,17 @@
+package com.pharma.pdms.utils.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A single ranked match returned by the search index
+ */
+@Data
+@AllArgsConstructor
+public class SearchHit {
+    private String type;
+    private Long id;
+    private String title;
+    private String subtitle;
+    private float score;
+}
@@ -0,0 +1,383 @@
+package com.pharma.pdms.utils.search;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.Bits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory Lucene index over medicines, patients, doctors and suppliers.
+ * SearchService queues index operations as it learns of committed changes; a single
+ * indexer thread applies them in batches and reopens the searcher, so changes become
+ * searchable within one batch. Lag is measured from queueing to searcher visibility.
+ * Queued operations are held back until the startup rebuild finishes, so a rebuild
+ * that read a row before it changed cannot overwrite the newer document.
+ */
+@Component
+public class SearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndex.class);
+
+    public static final List<String> TYPES = Arrays.asList(
+        SearchDocument.MEDICINE, SearchDocument.PATIENT, SearchDocument.DOCTOR, SearchDocument.SUPPLIER);
+
+    private static final String KEY = "key";
+    private static final String TYPE = "type";
+    private static final String ID = "id";
+    private static final String TITLE = "title";
+    private static final String SUBTITLE = "subtitle";
+    private static final String BODY = "body";
+    private static final int MAX_BATCH = 500;
+
+    private final ByteBuffersDirectory directory = new ByteBuffersDirectory();
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final BlockingQueue<PendingOperation> queue = new LinkedBlockingQueue<>();
+    private final Thread indexerThread;
+    private final CountDownLatch rebuilt = new CountDownLatch(1);
+    private volatile boolean running = true;
+
+    private final LongAdder indexed = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+    private volatile long oldestPendingSince;
+
+    public SearchIndex() throws IOException {
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+        this.searcherManager = new SearcherManager(writer, null);
+        this.indexerThread = new Thread(this::runIndexer, "search-indexer");
+        this.indexerThread.setDaemon(true);
+        this.indexerThread.start();
+    }
+
+    /**
+     * Queue a document to be indexed (or re-indexed)
+     */
+    public void index(SearchDocument document) {
+        enqueue(new PendingOperation(document.getKey(), document));
+    }
+
+    /**
+     * Queue a document's removal
+     */
+    public void delete(String type, Long id) {
+        enqueue(new PendingOperation(SearchDocument.key(type, id), null));
+    }
+
+    /**
+     * Write a document directly, bypassing the queue. Used by the startup rebuild,
+     * which may call this from several threads at once.
+     */
+    public void put(SearchDocument document) {
+        try {
+            writer.updateDocument(new Term(KEY, document.getKey()), toLuceneDocument(document));
+            indexed.increment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Make everything written so far searchable
+     */
+    public void refresh() {
+        try {
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Mark the startup rebuild as finished and let queued operations through
+     */
+    public void markRebuilt() {
+        refresh();
+        rebuilt.countDown();
+    }
+
+    /**
+     * Ranked search with per-type facet counts
+     *
+     * @param text The query; supports quoted phrases, +/-/| operators and trailing * for prefixes
+     * @param type Restricts hits to one entity type, or null for all; facets are always computed over all types
+     * @param limit Maximum number of hits to return
+     */
+    public SearchResult search(String text, String type, int limit) {
+        long start = System.nanoTime();
+        Map<String, Float> weights = new HashMap<>();
+        weights.put(TITLE, 3.0f);
+        weights.put(BODY, 1.0f);
+        SimpleQueryParser parser = new SimpleQueryParser(analyzer, weights);
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        // Prefix terms are not analyzed, so normalise case up front
+        Query query = parser.parse(text.toLowerCase(Locale.ROOT));
+
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+
+            Map<String, Integer> facets = new LinkedHashMap<>();
+            for (String facetType : TYPES) {
+                facets.put(facetType, searcher.count(filterByType(query, facetType)));
+            }
+
+            Query hitsQuery = type == null ? query : filterByType(query, type);
+            TopDocs topDocs = searcher.search(hitsQuery, Math.max(1, limit));
+            List<SearchHit> hits = new ArrayList<>();
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                Document doc = searcher.doc(scoreDoc.doc);
+                hits.add(new SearchHit(doc.get(TYPE), doc.getField(ID).numericValue().longValue(),
+                    doc.get(TITLE), doc.get(SUBTITLE), scoreDoc.score));
+            }
+
+            long total = type == null ? facets.values().stream().mapToLong(Integer::longValue).sum() : facets.getOrDefault(type, 0);
+            return new SearchResult(text, total, facets, hits,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(searcher);
+        }
+    }
+
+    /**
+     * Whether queued operations are still waiting for the indexer
+     */
+    public boolean hasPendingOperations() {
+        return !queue.isEmpty();
+    }
+
+    /**
+     * Searchable documents of one type
+     */
+    public int count(String type) {
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            return searcher.count(new TermQuery(new Term(TYPE, type)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(searcher);
+        }
+    }
+
+    /**
+     * Ids of the searchable documents of one type, read from doc values
+     */
+    public Set<Long> ids(String type) {
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            Set<Long> ids = new HashSet<>();
+            Weight weight = searcher.createWeight(searcher.rewrite(new TermQuery(new Term(TYPE, type))),
+                ScoreMode.COMPLETE_NO_SCORES, 1f);
+            for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                Scorer scorer = weight.scorer(leaf);
+                NumericDocValues values = leaf.reader().getNumericDocValues(ID);
+                if (scorer == null || values == null) {
+                    continue;
+                }
+                // Scorers still return deleted documents until their segment is merged
+                Bits liveDocs = leaf.reader().getLiveDocs();
+                DocIdSetIterator docs = scorer.iterator();
+                for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+                    if ((liveDocs == null || liveDocs.get(doc)) && values.advanceExact(doc)) {
+                        ids.add(values.longValue());
+                    }
+                }
+            }
+            return ids;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(searcher);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long pendingSince = oldestPendingSince;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("rebuilt", rebuilt.getCount() == 0);
+        stats.put("documents", writer.getDocStats().numDocs);
+        stats.put("pendingOperations", queue.size());
+        stats.put("currentLagMillis", pendingSince == 0 ? 0 : System.currentTimeMillis() - pendingSince);
+        stats.put("lastLagMillis", lastLagMillis.get());
+        stats.put("maxLagMillis", maxLagMillis.get());
+        stats.put("indexed", indexed.sum());
+        stats.put("deleted", deleted.sum());
+        stats.put("failures", failures.sum());
+        stats.put("sizeBytes", sizeBytes());
+        return stats;
+    }
+
+    private long sizeBytes() {
+        long size = 0;
+        try {
+            for (String file : directory.listAll()) {
+                try {
+                    size += directory.fileLength(file);
+                } catch (NoSuchFileException e) {
+                    // Merged away since listAll
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return size;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        running = false;
+        indexerThread.interrupt();
+        searcherManager.close();
+        writer.close();
+    }
+
+    private void release(IndexSearcher searcher) {
+        if (searcher != null) {
+            try {
+                searcherManager.release(searcher);
+            } catch (IOException ignored) {
+                // The searcher is released on a best-effort basis
+            }
+        }
+    }
+
+    private void enqueue(PendingOperation operation) {
+        if (oldestPendingSince == 0) {
+            oldestPendingSince = operation.enqueuedAt;
+        }
+        queue.add(operation);
+    }
+
+    private void runIndexer() {
+        List<PendingOperation> batch = new ArrayList<>(MAX_BATCH);
+        while (running) {
+            try {
+                rebuilt.await();
+                PendingOperation first = queue.take();
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                apply(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void apply(List<PendingOperation> batch) {
+        try {
+            for (PendingOperation operation : batch) {
+                Term key = new Term(KEY, operation.key);
+                if (operation.document == null) {
+                    writer.deleteDocuments(key);
+                    deleted.increment();
+                } else {
+                    writer.updateDocument(key, toLuceneDocument(operation.document));
+                    indexed.increment();
+                }
+            }
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException | RuntimeException e) {
+            failures.add(batch.size());
+            log.error("search.index_batch_failed operations={} error={}", batch.size(), e.getMessage(), e);
+        }
+
+        long now = System.currentTimeMillis();
+        long lag = now - batch.get(0).enqueuedAt;
+        lastLagMillis.set(lag);
+        maxLagMillis.accumulateAndGet(lag, Math::max);
+        PendingOperation next = queue.peek();
+        oldestPendingSince = next == null ? 0 : next.enqueuedAt;
+    }
+
+    private Document toLuceneDocument(SearchDocument document) {
+        Document doc = new Document();
+        doc.add(new StringField(KEY, document.getKey(), Field.Store.NO));
+        doc.add(new StringField(TYPE, document.getType(), Field.Store.YES));
+        doc.add(new StoredField(ID, document.getId()));
+        doc.add(new NumericDocValuesField(ID, document.getId()));
+        doc.add(new TextField(TITLE, nullToEmpty(document.getTitle()), Field.Store.YES));
+        doc.add(new StoredField(SUBTITLE, nullToEmpty(document.getSubtitle())));
+        doc.add(new TextField(BODY, nullToEmpty(document.getBody()), Field.Store.NO));
+        return doc;
+    }
+
+    private static Query filterByType(Query query, String type) {
+        return new BooleanQuery.Builder()
+            .add(query, BooleanClause.Occur.MUST)
+            .add(new TermQuery(new Term(TYPE, type)), BooleanClause.Occur.FILTER)
+            .build();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static final class PendingOperation {
+        private final String key;
+        private final SearchDocument document;
+        private final long enqueuedAt = System.currentTimeMillis();
+
+        private PendingOperation(String key, SearchDocument document) {
+            this.key = key;
+            this.document = document;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.pharma.pdms.utils.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranked hits for a query together with the number of matches per entity type
+ */
+@Data
+@AllArgsConstructor
+public class SearchResult {
+    private String query;
+    private long total;
+    private Map<String, Integer> facets;
+    private List<SearchHit> hits;
+    private long tookMillis;
+}
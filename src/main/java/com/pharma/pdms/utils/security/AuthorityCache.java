@@ -0,0 +1,93 @@
+package com.pharma.pdms.utils.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-user authorities, keyed by user id and tagged with the roles version they belong to.
+ * A token is accepted only if its roles version matches the user's entry; a role change
+ * or deactivation stores a newer version, which retires every token issued before it.
+ * With no entry, no role change is known since the token was issued, so its role claims
+ * are current and become the entry. Either way no database access is needed per request.
+ */
+@Component
+public class AuthorityCache {
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder fromClaims = new LongAdder();
+    private final LongAdder staleTokens = new LongAdder();
+
+    /**
+     * @return The authorities for the token, or null if it predates a role change or the user is inactive
+     */
+    public List<GrantedAuthority> resolve(TokenClaims claims) {
+        Entry entry = entries.get(claims.getUserId());
+        if (entry == null || entry.rolesVersion < claims.getRolesVersion()) {
+            // A newer entry stored concurrently by a role change wins
+            entry = entries.merge(claims.getUserId(), new Entry(claims.getRolesVersion(), true, claims.getRoles()),
+                (current, fromToken) -> current.rolesVersion >= fromToken.rolesVersion ? current : fromToken);
+            fromClaims.increment();
+        } else {
+            hits.increment();
+        }
+        if (entry.rolesVersion != claims.getRolesVersion() || !entry.active) {
+            staleTokens.increment();
+            return null;
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        return entry.authorities;
+    }
+
+    /**
+     * Record a user's current roles after a change, on this node or another
+     */
+    public void update(long userId, long rolesVersion, boolean active, Collection<String> roles) {
+        entries.merge(userId, new Entry(rolesVersion, active, roles),
+            (current, changed) -> current.rolesVersion > changed.rolesVersion ? current : changed);
+    }
+
+    /**
+     * Drop entries unused for longer than a token lives; any token they could reject has expired
+     */
+    public void purgeIdle(long idleMillis) {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        entries.values().removeIf(entry -> entry.lastUsed < cutoff);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("users", entries.size());
+        stats.put("hits", hits.sum());
+        stats.put("fromClaims", fromClaims.sum());
+        stats.put("staleTokensRejected", staleTokens.sum());
+        return stats;
+    }
+
+    private static final class Entry {
+        private final long rolesVersion;
+        private final boolean active;
+        private final List<GrantedAuthority> authorities;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private Entry(long rolesVersion, boolean active, Collection<String> roles) {
+            List<GrantedAuthority> granted = new ArrayList<>(roles.size());
+            for (String role : roles) {
+                granted.add(new SimpleGrantedAuthority(role));
+            }
+            this.rolesVersion = rolesVersion;
+            this.active = active;
+            this.authorities = Collections.unmodifiableList(granted);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.pharma.pdms.utils.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Authenticates requests carrying a bearer token, from the verified-token and authority
+ * caches only. Requests without a valid token continue unauthenticated and are turned
+ * away by the security rules. Registered in the security filter chain only, not as a
+ * servlet filter. EventSource cannot send headers, so the dashboard stream may pass the
+ * token as an access_token parameter instead.
+ */
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER = "Bearer ";
+    private static final String STREAM_PATH = "/api/dashboard/stream";
+
+    private final JwtTokenService tokenService;
+    private final AuthorityCache authorityCache;
+
+    public JwtAuthenticationFilter(JwtTokenService tokenService, AuthorityCache authorityCache) {
+        this.tokenService = tokenService;
+        this.authorityCache = authorityCache;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String token = token(request);
+        if (token != null) {
+            TokenClaims claims = tokenService.verify(token);
+            List<GrantedAuthority> authorities = claims == null ? null : authorityCache.resolve(claims);
+            if (authorities != null) {
+                SecurityContextHolder.getContext().setAuthentication(
+                    new UsernamePasswordAuthenticationToken(claims.getUsername(), null, authorities));
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static String token(HttpServletRequest request) {
+        String header = request.getHeader("Authorization");
+        if (header != null && header.startsWith(BEARER)) {
+            return header.substring(BEARER.length()).trim();
+        }
+        if (STREAM_PATH.equals(request.getRequestURI())) {
+            return request.getParameter("access_token");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,130 @@
+package com.pharma.pdms.utils.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Issues and verifies HS256 access tokens carrying the user id, roles and roles version.
+ * Verified tokens are kept in a small LRU cache keyed by the whole token, so a client
+ * reusing its token skips the signature check and claims parsing on every later request
+ * until the token expires. Invalid tokens are never cached.
+ */
+@Component
+public class JwtTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtTokenService.class);
+
+    private static final String USER_ID = "uid";
+    private static final String ROLES = "roles";
+    private static final String ROLES_VERSION = "rv";
+
+    private final SecretKey key;
+    private final long expirationMillis;
+    private final Map<String, TokenClaims> verified;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public JwtTokenService(
+            @Value("${pdms.security.jwt.secret:}") String secret,
+            @Value("${pdms.security.jwt.expiration-ms:3600000}") long expirationMillis,
+            @Value("${pdms.security.jwt.verified-cache-size:4096}") int cacheSize) {
+        if (secret.isEmpty()) {
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            this.key = Keys.hmacShaKeyFor(random);
+            log.warn("security.jwt_secret_missing using a random key; tokens are only valid on this node until it restarts");
+        } else {
+            // Rejects secrets shorter than 256 bits
+            this.key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        }
+        this.expirationMillis = expirationMillis;
+        this.verified = Collections.synchronizedMap(new LinkedHashMap<String, TokenClaims>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenClaims> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public String issue(long userId, String username, Collection<String> roles, long rolesVersion) {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+            .setSubject(username)
+            .claim(USER_ID, userId)
+            .claim(ROLES, new ArrayList<>(roles))
+            .claim(ROLES_VERSION, rolesVersion)
+            .setIssuedAt(new Date(now))
+            .setExpiration(new Date(now + expirationMillis))
+            .signWith(key, SignatureAlgorithm.HS256)
+            .compact();
+    }
+
+    /**
+     * @return The token's claims, or null if it is malformed, forged or expired
+     */
+    public TokenClaims verify(String token) {
+        TokenClaims claims = verified.get(token);
+        if (claims != null) {
+            if (claims.getExpiresAt() > System.currentTimeMillis()) {
+                hits.increment();
+                return claims;
+            }
+            verified.remove(token);
+            rejected.increment();
+            return null;
+        }
+
+        misses.increment();
+        try {
+            Claims body = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+            List<String> roles = new ArrayList<>();
+            Object roleClaim = body.get(ROLES);
+            if (roleClaim instanceof Collection) {
+                for (Object role : (Collection<?>) roleClaim) {
+                    roles.add(String.valueOf(role));
+                }
+            }
+            claims = new TokenClaims(((Number) body.get(USER_ID)).longValue(), body.getSubject(),
+                Collections.unmodifiableList(roles), ((Number) body.get(ROLES_VERSION)).longValue(),
+                body.getExpiration().getTime());
+        } catch (JwtException | IllegalArgumentException | ClassCastException | NullPointerException e) {
+            rejected.increment();
+            return null;
+        }
+        verified.put(token, claims);
+        return claims;
+    }
+
+    public long getExpirationMillis() {
+        return expirationMillis;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cachedTokens", verified.size());
+        stats.put("cacheHits", hits.sum());
+        stats.put("cacheMisses", misses.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+}
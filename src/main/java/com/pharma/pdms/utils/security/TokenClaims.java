@@ -0,0 +1,43 @@
+package com.pharma.pdms.utils.security;
+
+import java.util.List;
+
+/**
+ * Verified contents of an access token
+ */
+public final class TokenClaims {
+
+    private final long userId;
+    private final String username;
+    private final List<String> roles;
+    private final long rolesVersion;
+    private final long expiresAt;
+
+    public TokenClaims(long userId, String username, List<String> roles, long rolesVersion, long expiresAt) {
+        this.userId = userId;
+        this.username = username;
+        this.roles = roles;
+        this.rolesVersion = rolesVersion;
+        this.expiresAt = expiresAt;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    public long getRolesVersion() {
+        return rolesVersion;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
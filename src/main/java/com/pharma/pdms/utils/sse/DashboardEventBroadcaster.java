@@ -0,0 +1,349 @@
+package com.pharma.pdms.utils.sse;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.utils.cluster.PgChannelListener;
+import com.pharma.pdms.utils.datasource.ReplicaRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Pushes dashboard deltas to Server-Sent Events subscribers on every node.
+ * A delta is published with pg_notify and each node listens on the channel and hands it
+ * to its own subscribers, so a client sees every change whichever node made it. After the
+ * listener reconnects the deltas sent meanwhile are lost, so local clients are told to
+ * resynchronise. Connections are servlet async requests, so an idle subscriber holds no thread.
+ * Every subscriber has a bounded buffer drained by a small shared writer pool; when a
+ * slow client's buffer overflows the oldest events are dropped and the client is told
+ * to resynchronise from the REST endpoints.
+ */
+@Component
+public class DashboardEventBroadcaster {
+    
+    private static final Logger log = LoggerFactory.getLogger(DashboardEventBroadcaster.class);
+    
+    static final String CHANNEL = "dashboard_events";
+    
+    private static final String RESYNC_EVENT = "resync";
+    
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+    
+    private final JdbcTemplate primaryJdbc;
+    private final ObjectMapper objectMapper;
+    private final PgChannelListener listener;
+    private final Map<String, List<Consumer<Map<String, Object>>>> receivers = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService writerPool;
+    private final int bufferSize;
+    private final long timeoutMillis;
+    private final AtomicLong sequence = new AtomicLong();
+    
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    
+    @Autowired
+    public DashboardEventBroadcaster(
+            ReplicaRoutingDataSource routingDataSource,
+            ObjectMapper objectMapper,
+            @Value("${pdms.sse.writer-threads:4}") int writerThreads,
+            @Value("${pdms.sse.buffer-size:256}") int bufferSize,
+            @Value("${pdms.sse.timeout-ms:1800000}") long timeoutMillis) {
+        this.primaryJdbc = new JdbcTemplate(routingDataSource.getPrimary());
+        this.objectMapper = objectMapper;
+        this.writerPool = Executors.newFixedThreadPool(Math.max(1, writerThreads));
+        this.bufferSize = Math.max(1, bufferSize);
+        this.timeoutMillis = timeoutMillis;
+        this.listener = new PgChannelListener(CHANNEL, routingDataSource.getPrimary(), new PgChannelListener.Handler() {
+            @Override
+            public void connected() {
+                // Deltas sent while this node was not listening are only recovered from the snapshot endpoints
+                requestResync();
+            }
+            
+            @Override
+            public void received(List<String> payloads) {
+                payloads.forEach(DashboardEventBroadcaster.this::handle);
+            }
+        });
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listener.start();
+    }
+    
+    /**
+     * Register a new subscriber
+     *
+     * @return The emitter to return from the controller
+     */
+    public SseEmitter subscribe() {
+        return subscribe(new SseEmitter(timeoutMillis));
+    }
+    
+    SseEmitter subscribe(SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(error -> remove(subscriber));
+        subscribers.add(subscriber);
+        
+        // Tell the client where the stream starts so it can fetch a snapshot first
+        subscriber.offer(new Event(sequence.get(), "hello", Collections.singletonMap("sequence", sequence.get())));
+        schedule(subscriber);
+        return emitter;
+    }
+    
+    /**
+     * Send an event to the subscribers of every node
+     *
+     * @param name Event name, e.g. "stock" or "low-stock"
+     * @param data Compact payload, serialised as JSON
+     */
+    public void publish(String name, Object data) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("name", name);
+        message.put("data", data);
+        String payload = toPayload(message);
+        if (payload.length() > MAX_PAYLOAD_BYTES) {
+            log.warn("sse.event_too_large name={} bytes={}", name, payload.length());
+            payload = toPayload(Collections.singletonMap("name", RESYNC_EVENT));
+        }
+        // pg_notify returns void, so wrap it in a query that returns a row
+        primaryJdbc.queryForList("SELECT COUNT(*) FROM (SELECT pg_notify(?, ?)) AS n", CHANNEL, payload);
+        published.increment();
+    }
+    
+    /**
+     * Run a receiver on this node for every event of a name, whichever node published it.
+     * Receivers run on the listener thread and publish derived events with {@link #publishLocal}.
+     */
+    public void addReceiver(String name, Consumer<Map<String, Object>> receiver) {
+        receivers.computeIfAbsent(name, key -> new CopyOnWriteArrayList<>()).add(receiver);
+    }
+    
+    /**
+     * Queue an event for this node's subscribers only
+     */
+    public void publishLocal(String name, Object data) {
+        Event event = new Event(sequence.incrementAndGet(), name, data);
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.offer(event)) {
+                dropped.increment();
+            }
+            schedule(subscriber);
+        }
+    }
+    
+    /**
+     * Publish once the current transaction commits, or immediately outside a transaction
+     */
+    public void publishAfterCommit(String name, Object data) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(name, data);
+                }
+            });
+        } else {
+            publish(name, data);
+        }
+    }
+    
+    /**
+     * Keep idle connections open through proxies
+     */
+    @Scheduled(fixedDelayString = "${pdms.sse.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeatDue = true;
+            schedule(subscriber);
+        }
+    }
+    
+    private void handle(String payload) {
+        received.increment();
+        Map<String, Object> message;
+        try {
+            message = objectMapper.readValue(payload, new TypeReference<Map<String, Object>>() { });
+        } catch (JsonProcessingException e) {
+            log.warn("sse.notification_malformed error={}", e.getMessage());
+            return;
+        }
+        String name = (String) message.get("name");
+        if (RESYNC_EVENT.equals(name)) {
+            requestResync();
+            return;
+        }
+        publishLocal(name, message.get("data"));
+        
+        @SuppressWarnings("unchecked")
+        Map<String, Object> data = message.get("data") instanceof Map
+            ? (Map<String, Object>) message.get("data") : Collections.emptyMap();
+        for (Consumer<Map<String, Object>> receiver : receivers.getOrDefault(name, Collections.emptyList())) {
+            receiver.accept(data);
+        }
+    }
+    
+    private void requestResync() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.overflowed.set(true);
+            schedule(subscriber);
+        }
+    }
+    
+    private String toPayload(Map<String, Object> message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialise dashboard event " + message.get("name"), e);
+        }
+    }
+    
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            writerPool.execute(() -> drain(subscriber));
+        }
+    }
+    
+    private void drain(Subscriber subscriber) {
+        try {
+            if (subscriber.heartbeatDue) {
+                subscriber.heartbeatDue = false;
+                subscriber.emitter.send(SseEmitter.event().comment("keepalive"));
+            }
+            while (true) {
+                // Checked before every event, so the resync precedes the deltas that survived the overflow
+                if (subscriber.overflowed.getAndSet(false)) {
+                    subscriber.emitter.send(SseEmitter.event().name(RESYNC_EVENT).data(Collections.emptyMap()));
+                }
+                Event event = subscriber.poll();
+                if (event == null) {
+                    break;
+                }
+                subscriber.emitter.send(SseEmitter.event()
+                    .id(Long.toString(event.sequence))
+                    .name(event.name)
+                    .data(event.data));
+                delivered.increment();
+            }
+        } catch (IOException | IllegalStateException e) {
+            subscriber.emitter.completeWithError(e);
+            remove(subscriber);
+            return;
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // An event may have arrived after the last poll but before draining was cleared
+        if (subscriber.hasPending()) {
+            schedule(subscriber);
+        }
+    }
+    
+    private void remove(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            disconnected.increment();
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("subscribers", subscribers.size());
+        stats.put("published", published.sum());
+        stats.put("received", received.sum());
+        stats.put("listening", listener.isListening());
+        stats.put("disconnects", listener.getDisconnects());
+        stats.put("delivered", delivered.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("disconnected", disconnected.sum());
+        return stats;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        listener.stop();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        writerPool.shutdown();
+    }
+    
+    private static final class Event {
+        private final long sequence;
+        private final String name;
+        private final Object data;
+        
+        private Event(long sequence, String name, Object data) {
+            this.sequence = sequence;
+            this.name = name;
+            this.data = data;
+        }
+    }
+    
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final ArrayDeque<Event> buffer = new ArrayDeque<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean overflowed = new AtomicBoolean();
+        private volatile boolean heartbeatDue;
+        
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+        
+        /**
+         * @return false if the buffer was full and the oldest event had to be dropped
+         */
+        private synchronized boolean offer(Event event) {
+            boolean accepted = true;
+            if (buffer.size() >= bufferSize) {
+                buffer.pollFirst();
+                overflowed.set(true);
+                accepted = false;
+            }
+            buffer.addLast(event);
+            return accepted;
+        }
+        
+        private synchronized Event poll() {
+            return buffer.pollFirst();
+        }
+        
+        private synchronized boolean hasPending() {
+            return !buffer.isEmpty() || overflowed.get() || heartbeatDue;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.pharma.pdms.utils.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Startup timings of this node: per-phase and per-bean durations from the startup steps
+ * buffered since launch, plus wall-clock milestones from JVM start to ready, accepting
+ * traffic and the first response served. Bean times are self times, i.e. excluding the
+ * beans created as their dependencies. Built once traffic is accepted, after which the
+ * step buffer is released.
+ */
+@Component
+public class StartupReport {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupReport.class);
+
+    private static final String BEAN_STEP = "spring.beans.instantiate";
+    private static final int TOP_BEANS = 25;
+    private static final int LOGGED_BEANS = 10;
+
+    private final ConfigurableApplicationContext context;
+    private final StartupWarmUp warmUp;
+    private final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final AtomicBoolean firstRequestSeen = new AtomicBoolean();
+    private volatile long readyAt;
+    private volatile long acceptingTrafficAt;
+    private volatile Map<String, Object> firstRequest = Collections.emptyMap();
+    private volatile Map<String, Object> report = Collections.emptyMap();
+
+    public StartupReport(ConfigurableApplicationContext context, StartupWarmUp warmUp) {
+        this.context = context;
+        this.warmUp = warmUp;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onReady() {
+        readyAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Readiness follows every ApplicationReadyEvent listener, so this includes startup work done in them
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC || acceptingTrafficAt != 0) {
+            return;
+        }
+        acceptingTrafficAt = System.currentTimeMillis();
+        report = build();
+
+        log.info("startup.accepting_traffic jvm_start_ms={} ready_listeners_ms={} deferred_beans={}",
+            report.get("jvmStartToAcceptingTrafficMillis"), report.get("readyListenersMillis"),
+            report.get("deferredBeans"));
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> beans = (List<Map<String, Object>>) report.get("slowestBeans");
+        beans.stream().limit(LOGGED_BEANS).forEach(bean ->
+            log.info("startup.slow_bean bean={} self_ms={}", bean.get("bean"), bean.get("selfMillis")));
+    }
+
+    /**
+     * Called by StartupTimingFilter when a response has been served
+     */
+    void recordRequest(String method, String uri, long startedAt) {
+        if (firstRequestSeen.compareAndSet(false, true)) {
+            long now = System.currentTimeMillis();
+            Map<String, Object> first = new LinkedHashMap<>();
+            first.put("request", method + " " + uri);
+            first.put("jvmStartToFirstResponseMillis", now - jvmStart);
+            first.put("durationMillis", now - startedAt);
+            firstRequest = first;
+            warmUp.onFirstResponse();
+        }
+    }
+
+    public Map<String, Object> getReport() {
+        Map<String, Object> result = new LinkedHashMap<>(report);
+        result.put("firstRequest", firstRequest);
+        result.put("warmUp", warmUp.getStats());
+        return result;
+    }
+
+    private Map<String, Object> build() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("jvmStartToReadyMillis", readyAt == 0 ? null : readyAt - jvmStart);
+        result.put("jvmStartToAcceptingTrafficMillis", acceptingTrafficAt - jvmStart);
+        result.put("readyListenersMillis", readyAt == 0 ? null : acceptingTrafficAt - readyAt);
+        result.put("lazyInitialization", context.getEnvironment().getProperty("spring.main.lazy-initialization", Boolean.class, false));
+        result.put("beanDefinitions", context.getBeanFactory().getBeanDefinitionCount());
+        result.put("deferredBeans", countDeferred(context.getBeanFactory()));
+
+        if (!(context.getApplicationStartup() instanceof BufferingApplicationStartup)) {
+            result.put("phases", Collections.emptyList());
+            result.put("slowestBeans", Collections.emptyList());
+            return result;
+        }
+        List<StartupTimeline.TimelineEvent> events =
+            ((BufferingApplicationStartup) context.getApplicationStartup()).drainBufferedTimeline().getEvents();
+
+        // Child time per step id, so that nested bean creation is not counted twice
+        Map<Long, Long> childNanos = new HashMap<>();
+        for (StartupTimeline.TimelineEvent event : events) {
+            Long parentId = event.getStartupStep().getParentId();
+            if (parentId != null) {
+                childNanos.merge(parentId, event.getDuration().toNanos(), Long::sum);
+            }
+        }
+
+        Map<String, long[]> phases = new LinkedHashMap<>();
+        List<Map<String, Object>> beans = new ArrayList<>();
+        long beanNanos = 0;
+        for (StartupTimeline.TimelineEvent event : events) {
+            StartupStep step = event.getStartupStep();
+            long nanos = event.getDuration().toNanos();
+            if (BEAN_STEP.equals(step.getName())) {
+                long selfNanos = Math.max(0, nanos - childNanos.getOrDefault(step.getId(), 0L));
+                beanNanos += selfNanos;
+                Map<String, Object> bean = new LinkedHashMap<>();
+                bean.put("bean", tag(step, "beanName"));
+                bean.put("selfMillis", selfNanos / 1_000_000.0);
+                bean.put("totalMillis", nanos / 1_000_000.0);
+                beans.add(bean);
+            } else {
+                long[] phase = phases.computeIfAbsent(step.getName(), name -> new long[2]);
+                phase[0]++;
+                phase[1] += nanos;
+            }
+        }
+        beans.sort((a, b) -> Double.compare((Double) b.get("selfMillis"), (Double) a.get("selfMillis")));
+
+        List<Map<String, Object>> phaseList = new ArrayList<>(phases.size());
+        phases.forEach((name, phase) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("phase", name);
+            entry.put("count", phase[0]);
+            entry.put("millis", phase[1] / 1_000_000.0);
+            phaseList.add(entry);
+        });
+        result.put("stepsRecorded", events.size());
+        result.put("beansCreated", beans.size());
+        result.put("beanCreationMillis", beanNanos / 1_000_000.0);
+        result.put("phases", phaseList);
+        result.put("slowestBeans", new ArrayList<>(beans.subList(0, Math.min(TOP_BEANS, beans.size()))));
+        return result;
+    }
+
+    private static long countDeferred(ConfigurableListableBeanFactory beanFactory) {
+        long deferred = 0;
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            if (definition.isSingleton() && !definition.isAbstract() && !beanFactory.containsSingleton(name)) {
+                deferred++;
+            }
+        }
+        return deferred;
+    }
+
+    private static String tag(StartupStep step, String key) {
+        for (StartupStep.Tag tag : step.getTags()) {
+            if (key.equals(tag.getKey())) {
+                return tag.getValue();
+            }
+        }
+        return step.getName();
+    }
+}
@@ -0,0 +1,41 @@
+package com.pharma.pdms.utils.startup;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Records the first response served by this node for the startup report.
+ * Every later request passes straight through.
+ */
+@Component
+public class StartupTimingFilter extends OncePerRequestFilter {
+
+    private final StartupReport startupReport;
+    private volatile boolean recorded;
+
+    public StartupTimingFilter(StartupReport startupReport) {
+        this.startupReport = startupReport;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (recorded) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            recorded = true;
+            startupReport.recordRequest(request.getMethod(), request.getRequestURI(), start);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.pharma.pdms.utils.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the beans left uninitialised by lazy initialisation once the node accepts traffic,
+ * on a background thread, so readiness is not held up and the requests after the first few
+ * do not pay for bean creation. The thread waits for the first response to be served, or
+ * for pdms.startup.warm-up-max-delay-ms, so that the first request does not compete with it
+ * for the CPU. A training run (pdms.startup.training-run) warms up in the
+ * foreground and then exits, so that every class a running node needs has been loaded
+ * before the class list for the class-data sharing archive is written.
+ */
+@Component
+public class StartupWarmUp {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmUp.class);
+
+    private final ConfigurableApplicationContext context;
+    private final boolean enabled;
+    private final boolean trainingRun;
+    private final long maxDelayMillis;
+    private final CountDownLatch firstResponse = new CountDownLatch(1);
+    private volatile int beansCreated;
+    private volatile int failures;
+    private volatile long tookMillis = -1;
+
+    public StartupWarmUp(
+            ConfigurableApplicationContext context,
+            @Value("${pdms.startup.warm-up:true}") boolean enabled,
+            @Value("${pdms.startup.training-run:false}") boolean trainingRun,
+            @Value("${pdms.startup.warm-up-max-delay-ms:10000}") long maxDelayMillis) {
+        this.context = context;
+        this.enabled = enabled;
+        this.trainingRun = trainingRun;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    @EventListener
+    public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC || tookMillis >= 0) {
+            return;
+        }
+        if (trainingRun) {
+            warmUp();
+            log.info("startup.training_run_complete beans_created={}", beansCreated);
+            System.exit(SpringApplication.exit(context));
+        } else if (enabled) {
+            Thread thread = new Thread(this::warmUpAfterFirstResponse, "startup-warm-up");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Called by StartupReport when the first response has been served
+     */
+    void onFirstResponse() {
+        firstResponse.countDown();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("complete", tookMillis >= 0);
+        stats.put("beansCreated", beansCreated);
+        stats.put("failures", failures);
+        stats.put("tookMillis", tookMillis >= 0 ? tookMillis : null);
+        return stats;
+    }
+
+    private void warmUpAfterFirstResponse() {
+        try {
+            firstResponse.await(maxDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        warmUp();
+    }
+
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+        int created = 0;
+        int failed = 0;
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            if (!definition.isSingleton() || definition.isAbstract() || beanFactory.containsSingleton(name)) {
+                continue;
+            }
+            try {
+                beanFactory.getBean(name);
+                created++;
+            } catch (RuntimeException e) {
+                // The bean is still created, and fails, on first use as it would without warm-up
+                failed++;
+                log.warn("startup.warm_up_bean_failed bean={} error={}", name, e.getMessage());
+            }
+        }
+        beansCreated = created;
+        failures = failed;
+        tookMillis = System.currentTimeMillis() - start;
+        log.info("startup.warm_up_complete beans_created={} failures={} took_ms={}", created, failed, tookMillis);
+    }
+}
@@ -0,0 +1,13 @@
+-- Monthly prescription archive files, shared by every node. Each node keeps a local copy of the
+-- files in pdms.archive.directory and refreshes it from here; version comes from a sequence and
+-- changes on every rewrite, so a node can tell which of its copies are stale. A file is written
+-- in the same transaction that deletes the archived rows.
+CREATE SEQUENCE IF NOT EXISTS prescription_archive_files_version_seq;
+
+CREATE TABLE IF NOT EXISTS prescription_archive_files (
+    month date PRIMARY KEY,
+    version bigint NOT NULL,
+    size_bytes bigint NOT NULL,
+    content bytea NOT NULL,
+    updated_at timestamp NOT NULL DEFAULT now()
+);
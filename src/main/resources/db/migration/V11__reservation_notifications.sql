@@ -0,0 +1,24 @@
+-- Every node keeps an in-memory index of the live reservations on prescription items, so
+-- available-to-promise is answered without a query. Any committed change to an item's hold
+-- is announced on the reservations channel with the item id; listeners re-read the row.
+CREATE OR REPLACE FUNCTION pdms_notify_reservation() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('reservations', OLD.id::text);
+    ELSE
+        PERFORM pg_notify('reservations', NEW.id::text);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_prescription_items_reservation_insert AFTER INSERT ON prescription_items
+    FOR EACH ROW WHEN (NEW.reserved_quantity > 0)
+    EXECUTE FUNCTION pdms_notify_reservation();
+CREATE TRIGGER trg_prescription_items_reservation_update AFTER UPDATE ON prescription_items
+    FOR EACH ROW WHEN ((OLD.medicine_id, OLD.reserved_quantity, OLD.reserved_until)
+        IS DISTINCT FROM (NEW.medicine_id, NEW.reserved_quantity, NEW.reserved_until))
+    EXECUTE FUNCTION pdms_notify_reservation();
+CREATE TRIGGER trg_prescription_items_reservation_delete AFTER DELETE ON prescription_items
+    FOR EACH ROW WHEN (OLD.reserved_quantity > 0)
+    EXECUTE FUNCTION pdms_notify_reservation();
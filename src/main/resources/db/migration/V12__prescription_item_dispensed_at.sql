@@ -0,0 +1,11 @@
+-- When an item was dispensed. Demand forecasting dates dispensed quantities by this rather than
+-- by updated_at, which any later edit of the item moves. ADD COLUMN on the partitioned parent
+-- reaches every partition; items dispensed before this version take their last update as the
+-- best available date.
+ALTER TABLE prescription_items ADD COLUMN IF NOT EXISTS dispensed_at timestamp;
+
+UPDATE prescription_items SET dispensed_at = updated_at WHERE is_dispensed = true AND dispensed_at IS NULL;
+
+-- Dispensed quantities by day (dispensed_at >= ? AND dispensed_at < ?)
+CREATE INDEX IF NOT EXISTS idx_prescription_items_dispensed_at ON prescription_items (dispensed_at)
+    WHERE dispensed_at IS NOT NULL;
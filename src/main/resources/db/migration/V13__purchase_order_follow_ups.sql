@@ -0,0 +1,7 @@
+-- A cycle may hold several orders per supplier: once its draft is sent, medicines that run
+-- low later in the cycle go on a follow-up draft instead of being left out. Only the open
+-- draft stays unique, which is what generation upserts against.
+ALTER TABLE purchase_orders DROP CONSTRAINT IF EXISTS uk_purchase_orders_supplier_cycle;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_purchase_orders_supplier_cycle_draft ON purchase_orders (supplier_id, cycle_key)
+    WHERE status = 'DRAFT';
@@ -0,0 +1,7 @@
+-- Archive file content moves out of the database into shared file storage
+-- (pdms.archive.shared-directory); the table keeps only the index row naming each month's
+-- current file. Content stored before this migration is exported to the shared directory by
+-- the first node that starts, which then clears the column.
+ALTER TABLE prescription_archive_files ADD COLUMN IF NOT EXISTS file_name varchar(100);
+
+ALTER TABLE prescription_archive_files ALTER COLUMN content DROP NOT NULL;
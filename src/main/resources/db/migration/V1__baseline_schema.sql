@@ -0,0 +1,142 @@
+-- Baseline schema: the tables ddl-auto=update created from the original entity mapping.
+--
+-- Databases created that way are baselined at this version (spring.flyway.baseline-on-migrate)
+-- and pick up every later version, so this script only runs against an empty schema. It must
+-- stay identical to the pre-migration schema; change the schema in a new version, never here.
+
+CREATE TABLE roles (
+    id serial PRIMARY KEY,
+    name varchar(20)
+);
+
+CREATE TABLE users (
+    id bigserial PRIMARY KEY,
+    username varchar(50) NOT NULL,
+    email varchar(50) NOT NULL,
+    password varchar(120) NOT NULL,
+    first_name varchar(255),
+    last_name varchar(255),
+    phone varchar(255),
+    created_at timestamp,
+    last_login timestamp,
+    is_active boolean,
+    CONSTRAINT uk_users_username UNIQUE (username),
+    CONSTRAINT uk_users_email UNIQUE (email)
+);
+
+CREATE TABLE user_roles (
+    user_id bigint NOT NULL REFERENCES users (id),
+    role_id integer NOT NULL REFERENCES roles (id),
+    PRIMARY KEY (user_id, role_id)
+);
+
+CREATE TABLE suppliers (
+    id bigserial PRIMARY KEY,
+    name varchar(100) NOT NULL,
+    address varchar(255),
+    phone varchar(20) NOT NULL,
+    email varchar(50),
+    contact_person varchar(50),
+    created_at timestamp,
+    updated_at timestamp,
+    is_active boolean
+);
+
+CREATE TABLE medicines (
+    id bigserial PRIMARY KEY,
+    name varchar(100) NOT NULL,
+    description varchar(255),
+    manufacturer varchar(100) NOT NULL,
+    batch_number varchar(255),
+    unit_price numeric(19, 2) NOT NULL CHECK (unit_price >= 0),
+    quantity_in_stock integer NOT NULL CHECK (quantity_in_stock >= 0),
+    reorder_level integer,
+    expiry_date date NOT NULL,
+    created_at timestamp,
+    updated_at timestamp,
+    category varchar(50) NOT NULL,
+    location varchar(50),
+    is_prescription_required boolean,
+    is_active boolean,
+    supplier_id bigint REFERENCES suppliers (id)
+);
+
+CREATE TABLE doctors (
+    id bigserial PRIMARY KEY,
+    first_name varchar(50) NOT NULL,
+    last_name varchar(50) NOT NULL,
+    specialization varchar(50) NOT NULL,
+    license_number varchar(50) NOT NULL,
+    phone varchar(20) NOT NULL,
+    email varchar(50),
+    address varchar(255),
+    created_at timestamp,
+    updated_at timestamp,
+    user_id bigint REFERENCES users (id)
+);
+
+CREATE TABLE patients (
+    id bigserial PRIMARY KEY,
+    first_name varchar(50) NOT NULL,
+    last_name varchar(50) NOT NULL,
+    date_of_birth date,
+    phone varchar(20) NOT NULL,
+    email varchar(50),
+    address varchar(255),
+    medical_history varchar(1000),
+    allergies varchar(255),
+    insurance_info varchar(255),
+    created_at timestamp,
+    updated_at timestamp,
+    user_id bigint REFERENCES users (id)
+);
+
+-- Foreign key names match V4, which re-creates them after partitioning the table
+CREATE TABLE prescriptions (
+    id bigserial PRIMARY KEY,
+    patient_id bigint NOT NULL CONSTRAINT fk_prescriptions_patient REFERENCES patients (id),
+    doctor_id bigint NOT NULL CONSTRAINT fk_prescriptions_doctor REFERENCES doctors (id),
+    prescription_date date,
+    created_at timestamp,
+    updated_at timestamp,
+    is_filled boolean,
+    notes varchar(1000)
+);
+
+CREATE TABLE prescription_items (
+    id bigserial PRIMARY KEY,
+    prescription_id bigint NOT NULL CONSTRAINT fk_prescription_items_prescription REFERENCES prescriptions (id),
+    medicine_id bigint NOT NULL CONSTRAINT fk_prescription_items_medicine REFERENCES medicines (id),
+    quantity integer NOT NULL CHECK (quantity >= 1),
+    dosage_instructions varchar(255),
+    created_at timestamp,
+    updated_at timestamp,
+    is_dispensed boolean
+);
+
+CREATE TABLE transactions (
+    id bigserial PRIMARY KEY,
+    patient_id bigint CONSTRAINT fk_transactions_patient REFERENCES patients (id),
+    transaction_date timestamp,
+    total_amount numeric(19, 2) NOT NULL,
+    payment_method varchar(255),
+    payment_status varchar(255),
+    receipt_number varchar(255),
+    prescription_id bigint CONSTRAINT fk_transactions_prescription REFERENCES prescriptions (id),
+    created_at timestamp,
+    updated_at timestamp,
+    discount_amount numeric(19, 2),
+    tax_amount numeric(19, 2)
+);
+
+CREATE TABLE transaction_items (
+    id bigserial PRIMARY KEY,
+    transaction_id bigint NOT NULL CONSTRAINT fk_transaction_items_transaction REFERENCES transactions (id),
+    medicine_id bigint NOT NULL CONSTRAINT fk_transaction_items_medicine REFERENCES medicines (id),
+    quantity integer NOT NULL CHECK (quantity >= 1),
+    unit_price numeric(19, 2) NOT NULL,
+    subtotal numeric(19, 2) NOT NULL,
+    discount numeric(19, 2),
+    created_at timestamp,
+    updated_at timestamp
+);
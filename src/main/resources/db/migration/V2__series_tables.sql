@@ -0,0 +1,160 @@
+-- Tables and columns added while the schema was still maintained by ddl-auto=update.
+--
+-- Databases baselined at V1 may already hold any subset of these, depending on the build that
+-- last ran against them, so every statement is idempotent.
+
+-- Optimistic locking versions; existing rows start at 0
+ALTER TABLE suppliers ADD COLUMN IF NOT EXISTS version bigint DEFAULT 0 NOT NULL;
+ALTER TABLE medicines ADD COLUMN IF NOT EXISTS version bigint DEFAULT 0 NOT NULL;
+ALTER TABLE doctors ADD COLUMN IF NOT EXISTS version bigint DEFAULT 0 NOT NULL;
+ALTER TABLE patients ADD COLUMN IF NOT EXISTS version bigint DEFAULT 0 NOT NULL;
+ALTER TABLE prescriptions ADD COLUMN IF NOT EXISTS version bigint DEFAULT 0 NOT NULL;
+ALTER TABLE prescription_items ADD COLUMN IF NOT EXISTS version bigint DEFAULT 0 NOT NULL;
+ALTER TABLE transactions ADD COLUMN IF NOT EXISTS version bigint DEFAULT 0 NOT NULL;
+ALTER TABLE transaction_items ADD COLUMN IF NOT EXISTS version bigint DEFAULT 0 NOT NULL;
+
+-- Token revocation on role changes
+ALTER TABLE users ADD COLUMN IF NOT EXISTS roles_version bigint DEFAULT 0 NOT NULL;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS roles_changed_at timestamp;
+
+-- Prescriptions and transactions are partitioned in V4, which rules out foreign keys pointing
+-- at them. Drop those whatever name ddl-auto gave them.
+DO $$
+DECLARE
+    fk record;
+BEGIN
+    FOR fk IN SELECT c.conrelid::regclass::text AS tbl, c.conname
+              FROM pg_constraint c
+              WHERE c.contype = 'f'
+                AND c.confrelid IN (to_regclass('prescriptions'), to_regclass('transactions'))
+    LOOP
+        EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', fk.tbl, fk.conname);
+    END LOOP;
+END;
+$$;
+
+CREATE TABLE IF NOT EXISTS medicine_lots (
+    id bigserial PRIMARY KEY,
+    medicine_id bigint NOT NULL REFERENCES medicines (id),
+    batch_number varchar(50),
+    expiry_date date NOT NULL,
+    quantity integer NOT NULL CHECK (quantity >= 0),
+    quarantined_quantity integer DEFAULT 0 NOT NULL,
+    quarantined_on date,
+    created_at timestamp,
+    updated_at timestamp,
+    version bigint DEFAULT 0 NOT NULL
+);
+-- Lots created before the expiry sweep quarantined stock
+ALTER TABLE medicine_lots ADD COLUMN IF NOT EXISTS quarantined_quantity integer DEFAULT 0 NOT NULL;
+ALTER TABLE medicine_lots ADD COLUMN IF NOT EXISTS quarantined_on date;
+
+CREATE TABLE IF NOT EXISTS drug_interactions (
+    id bigserial PRIMARY KEY,
+    medicine_a_id bigint NOT NULL,
+    medicine_b_id bigint NOT NULL,
+    severity varchar(255) NOT NULL,
+    description varchar(500),
+    created_at timestamp,
+    CONSTRAINT uk_drug_interactions_pair UNIQUE (medicine_a_id, medicine_b_id)
+);
+
+CREATE TABLE IF NOT EXISTS demand_forecasts (
+    medicine_id bigint PRIMARY KEY,
+    level float8 NOT NULL,
+    trend float8 NOT NULL,
+    seasonal_factors varchar(200) NOT NULL,
+    error_variance float8 NOT NULL,
+    observations integer NOT NULL,
+    last_day date,
+    lead_time_demand float8,
+    reorder_level integer,
+    updated_at timestamp
+);
+
+CREATE TABLE IF NOT EXISTS purchase_orders (
+    id bigserial PRIMARY KEY,
+    supplier_id bigint NOT NULL REFERENCES suppliers (id),
+    cycle_key varchar(20) NOT NULL,
+    status varchar(20) NOT NULL,
+    line_count integer,
+    total_amount numeric(19, 2),
+    created_at timestamp,
+    updated_at timestamp,
+    version bigint DEFAULT 0 NOT NULL,
+    CONSTRAINT uk_purchase_orders_supplier_cycle UNIQUE (supplier_id, cycle_key)
+);
+
+CREATE TABLE IF NOT EXISTS purchase_order_lines (
+    id bigserial PRIMARY KEY,
+    purchase_order_id bigint NOT NULL REFERENCES purchase_orders (id),
+    medicine_id bigint NOT NULL REFERENCES medicines (id),
+    quantity integer NOT NULL,
+    unit_price numeric(19, 2),
+    line_total numeric(19, 2),
+    created_at timestamp,
+    CONSTRAINT uk_purchase_order_lines_order_medicine UNIQUE (purchase_order_id, medicine_id)
+);
+
+CREATE TABLE IF NOT EXISTS inventory_outbox (
+    id bigserial PRIMARY KEY,
+    medicine_id bigint NOT NULL,
+    event_type varchar(30) NOT NULL,
+    payload text NOT NULL,
+    created_at timestamp
+);
+
+CREATE TABLE IF NOT EXISTS outbox_offsets (
+    relay_name varchar(50) PRIMARY KEY,
+    last_offset bigint NOT NULL,
+    updated_at timestamp
+);
+
+CREATE TABLE IF NOT EXISTS notification_deliveries (
+    id bigserial PRIMARY KEY,
+    channel varchar(10) NOT NULL,
+    recipient varchar(255) NOT NULL,
+    subject varchar(255),
+    message text,
+    dedup_key varchar(200),
+    status varchar(10) NOT NULL,
+    attempts integer NOT NULL,
+    next_attempt_at timestamp NOT NULL,
+    lease_until timestamp,
+    last_error varchar(500),
+    created_at timestamp,
+    sent_at timestamp,
+    CONSTRAINT uk_notification_deliveries_dedup_key UNIQUE (dedup_key)
+);
+CREATE INDEX IF NOT EXISTS idx_notification_deliveries_due ON notification_deliveries (status, channel, next_attempt_at);
+
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    idempotency_key varchar(320) PRIMARY KEY,
+    fingerprint bytea NOT NULL,
+    status integer,
+    content_type varchar(100),
+    body bytea,
+    lease_until timestamp,
+    created_at timestamp NOT NULL,
+    expires_at timestamp NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_idempotency_keys_expires_at ON idempotency_keys (expires_at);
+
+CREATE TABLE IF NOT EXISTS expiry_sweep_ranges (
+    id bigserial PRIMARY KEY,
+    run_date date NOT NULL,
+    range_index integer NOT NULL,
+    range_start bigint NOT NULL,
+    range_end bigint NOT NULL,
+    last_id bigint NOT NULL,
+    completed boolean NOT NULL,
+    report_sent boolean NOT NULL,
+    claimed_by varchar(64),
+    lease_until timestamp,
+    medicines_checked bigint NOT NULL,
+    medicines_deactivated bigint NOT NULL,
+    lots_quarantined bigint NOT NULL,
+    units_quarantined bigint NOT NULL,
+    updated_at timestamp,
+    CONSTRAINT uk_expiry_sweep_ranges_run_range UNIQUE (run_date, range_index)
+);
@@ -0,0 +1,55 @@
+-- Secondary indexes for the hot predicates. QueryPlanRegressionTest explains the matching
+-- queries against a seeded database and fails on any that fall back to a sequential scan.
+--
+-- Plain CREATE INDEX locks the table against writes while it builds, so on a large database
+-- deploy this version in a quiet period. Partial index predicates are written exactly as the
+-- queries state them; the planner only uses the index when it can prove the query's WHERE
+-- clause implies the predicate.
+
+-- Medicines: dashboard expiry list (expiry_date <= ? AND is_active = true)
+CREATE INDEX IF NOT EXISTS idx_medicines_expiring ON medicines (expiry_date) WHERE is_active;
+-- Nightly expiry sweep candidates (expiry_date < ? AND quantity_in_stock > 0)
+CREATE INDEX IF NOT EXISTS idx_medicines_expired_stock ON medicines (expiry_date) WHERE quantity_in_stock > 0;
+-- Low stock compares two columns, which no B-tree key can serve; index exactly the rows that
+-- match instead. Usually a small set, and stock updates that cross the reorder level move
+-- rows in or out of it.
+CREATE INDEX IF NOT EXISTS idx_medicines_low_stock ON medicines (id) WHERE quantity_in_stock <= reorder_level;
+CREATE INDEX IF NOT EXISTS idx_medicines_category ON medicines (category);
+CREATE INDEX IF NOT EXISTS idx_medicines_supplier_id ON medicines (supplier_id);
+
+-- Lots: FEFO allocation by medicine in expiry order, and the sweep report by quarantine day
+CREATE INDEX IF NOT EXISTS idx_medicine_lots_medicine_expiry ON medicine_lots (medicine_id, expiry_date);
+CREATE INDEX IF NOT EXISTS idx_medicine_lots_quarantined_on ON medicine_lots (quarantined_on)
+    WHERE quarantined_on IS NOT NULL;
+
+-- Prescriptions: date range counts and recent lists, and the patient and doctor foreign keys.
+-- The date and child index names match V4, which re-creates them after partitioning.
+CREATE INDEX IF NOT EXISTS idx_prescriptions_prescription_date ON prescriptions (prescription_date);
+CREATE INDEX IF NOT EXISTS idx_prescriptions_patient_id ON prescriptions (patient_id);
+CREATE INDEX IF NOT EXISTS idx_prescriptions_doctor_id ON prescriptions (doctor_id);
+CREATE INDEX IF NOT EXISTS idx_prescription_items_prescription_id ON prescription_items (prescription_id);
+CREATE INDEX IF NOT EXISTS idx_prescription_items_medicine_id ON prescription_items (medicine_id);
+-- Reservations and screening only read undispensed items (is_dispensed = false AND created_at >= ?)
+CREATE INDEX IF NOT EXISTS idx_prescription_items_undispensed ON prescription_items (created_at)
+    WHERE NOT is_dispensed;
+
+-- Transactions: sales totals and reports by date, patient history
+CREATE INDEX IF NOT EXISTS idx_transactions_transaction_date ON transactions (transaction_date);
+CREATE INDEX IF NOT EXISTS idx_transactions_patient_id ON transactions (patient_id);
+CREATE INDEX IF NOT EXISTS idx_transactions_prescription_id ON transactions (prescription_id);
+CREATE INDEX IF NOT EXISTS idx_transaction_items_transaction_id ON transaction_items (transaction_id);
+CREATE INDEX IF NOT EXISTS idx_transaction_items_medicine_id ON transaction_items (medicine_id);
+
+-- Directory lookups. Emails are matched case-insensitively, so index lower(email).
+-- License numbers are not unique yet because existing data may hold duplicates.
+CREATE INDEX IF NOT EXISTS idx_doctors_license_number ON doctors (license_number);
+CREATE INDEX IF NOT EXISTS idx_doctors_email_lower ON doctors (lower(email));
+CREATE INDEX IF NOT EXISTS idx_patients_email_lower ON patients (lower(email));
+CREATE INDEX IF NOT EXISTS idx_patients_phone ON patients (phone);
+
+-- Role changes polled by every node (roles_changed_at > ?); most users never have one
+CREATE INDEX IF NOT EXISTS idx_users_roles_changed_at ON users (roles_changed_at)
+    WHERE roles_changed_at IS NOT NULL;
+
+-- Purchase order cycles looked up by key
+CREATE INDEX IF NOT EXISTS idx_purchase_orders_cycle_key ON purchase_orders (cycle_key);
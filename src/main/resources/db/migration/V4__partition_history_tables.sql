@@ -0,0 +1,120 @@
+-- Monthly range partitioning for prescriptions, prescription_items, transactions and transaction_items.
+--
+-- Converting a populated table rewrites it and holds an exclusive lock until the migration commits,
+-- so on a large database deploy this version in a maintenance window. PartitionMaintenanceService
+-- keeps creating partitions ahead of time and expires old months afterwards.
+--
+-- Partition keys: prescriptions.prescription_date, transactions.transaction_date and created_at on
+-- the item tables. PostgreSQL requires the partition key in every unique key, so primary keys become
+-- (id, key) and foreign keys pointing at a partitioned parent are dropped; the application maintains
+-- those references. Foreign keys from the partitioned tables to patients, doctors and medicines stay.
+
+CREATE OR REPLACE FUNCTION pdms_create_month_partition(parent text, month_start date)
+RETURNS void LANGUAGE plpgsql AS $$
+DECLARE
+    month_from date := date_trunc('month', month_start)::date;
+    partition_name text := parent || '_p' || to_char(month_start, 'YYYY_MM');
+BEGIN
+    IF to_regclass(partition_name) IS NULL THEN
+        EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                       partition_name, parent, month_from, (month_from + interval '1 month')::date);
+    END IF;
+END;
+$$;
+
+-- Create partitions from the given month through months_ahead months after the current one
+CREATE OR REPLACE FUNCTION pdms_ensure_month_partitions(parent text, from_month date, months_ahead int)
+RETURNS void LANGUAGE plpgsql AS $$
+DECLARE
+    month_cursor date := date_trunc('month', from_month)::date;
+    last_month date := (date_trunc('month', now()) + make_interval(months => months_ahead))::date;
+BEGIN
+    WHILE month_cursor <= last_month LOOP
+        PERFORM pdms_create_month_partition(parent, month_cursor);
+        month_cursor := (month_cursor + interval '1 month')::date;
+    END LOOP;
+END;
+$$;
+
+-- Replace a heap table with a range-partitioned copy holding the same rows
+CREATE OR REPLACE FUNCTION pdms_partition_by_month(tbl text, key_col text, fallback_col text, months_ahead int)
+RETURNS void LANGUAGE plpgsql AS $$
+DECLARE
+    legacy text := tbl || '_unpartitioned';
+    id_sequence text;
+    first_month date;
+BEGIN
+    IF to_regclass(tbl) IS NULL
+       OR EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(tbl)) THEN
+        RETURN;
+    END IF;
+
+    id_sequence := pg_get_serial_sequence(tbl, 'id');
+    EXECUTE format('ALTER TABLE %I RENAME TO %I', tbl, legacy);
+    IF fallback_col IS NOT NULL THEN
+        EXECUTE format('UPDATE %I SET %I = COALESCE(%I, now()) WHERE %I IS NULL', legacy, key_col, fallback_col, key_col);
+    ELSE
+        EXECUTE format('UPDATE %I SET %I = now() WHERE %I IS NULL', legacy, key_col, key_col);
+    END IF;
+
+    EXECUTE format('CREATE TABLE %I (LIKE %I INCLUDING DEFAULTS INCLUDING CONSTRAINTS) PARTITION BY RANGE (%I)',
+                   tbl, legacy, key_col);
+    EXECUTE format('ALTER TABLE %I ALTER COLUMN %I SET NOT NULL', tbl, key_col);
+    -- The legacy table still owns the <table>_pkey name
+    EXECUTE format('ALTER TABLE %I ADD CONSTRAINT %I PRIMARY KEY (id, %I)', tbl, tbl || '_part_pkey', key_col);
+    IF id_sequence IS NOT NULL THEN
+        -- Keep the id sequence alive when the legacy table is dropped
+        EXECUTE format('ALTER SEQUENCE %s OWNED BY %I.id', id_sequence, tbl);
+    END IF;
+
+    EXECUTE format('SELECT date_trunc(''month'', MIN(%I))::date FROM %I', key_col, legacy) INTO first_month;
+    PERFORM pdms_ensure_month_partitions(tbl, COALESCE(first_month, now()::date), months_ahead);
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF %I DEFAULT', tbl || '_default', tbl);
+
+    EXECUTE format('INSERT INTO %I SELECT * FROM %I', tbl, legacy);
+    EXECUTE format('DROP TABLE %I CASCADE', legacy);
+    EXECUTE format('CREATE INDEX IF NOT EXISTS %I ON %I (%I)', 'idx_' || tbl || '_' || key_col, tbl, key_col);
+END;
+$$;
+
+-- Parents before children, so CASCADE only removes foreign keys that can no longer exist
+SELECT pdms_partition_by_month('prescriptions', 'prescription_date', 'created_at', 3);
+SELECT pdms_partition_by_month('prescription_items', 'created_at', NULL, 3);
+SELECT pdms_partition_by_month('transactions', 'transaction_date', 'created_at', 3);
+SELECT pdms_partition_by_month('transaction_items', 'created_at', NULL, 3);
+
+-- Re-create the foreign keys to regular tables that LIKE does not copy
+DO $$
+DECLARE
+    fk record;
+BEGIN
+    FOR fk IN SELECT * FROM (VALUES
+            ('prescriptions', 'patient_id', 'patients', 'fk_prescriptions_patient'),
+            ('prescriptions', 'doctor_id', 'doctors', 'fk_prescriptions_doctor'),
+            ('prescription_items', 'medicine_id', 'medicines', 'fk_prescription_items_medicine'),
+            ('transactions', 'patient_id', 'patients', 'fk_transactions_patient'),
+            ('transaction_items', 'medicine_id', 'medicines', 'fk_transaction_items_medicine')
+        ) AS t(tbl, col, ref, name)
+    LOOP
+        IF to_regclass(fk.tbl) IS NOT NULL AND to_regclass(fk.ref) IS NOT NULL
+           AND NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = fk.name) THEN
+            EXECUTE format('ALTER TABLE %I ADD CONSTRAINT %I FOREIGN KEY (%I) REFERENCES %I (id)',
+                           fk.tbl, fk.name, fk.col, fk.ref);
+        END IF;
+    END LOOP;
+END;
+$$;
+
+-- Child lookups by parent id no longer have a foreign key index to rely on
+CREATE INDEX IF NOT EXISTS idx_prescription_items_prescription_id ON prescription_items (prescription_id);
+CREATE INDEX IF NOT EXISTS idx_transaction_items_transaction_id ON transaction_items (transaction_id);
+CREATE INDEX IF NOT EXISTS idx_transactions_prescription_id ON transactions (prescription_id);
+
+-- Converting a table drops its secondary indexes; re-create those from V3
+CREATE INDEX IF NOT EXISTS idx_prescriptions_patient_id ON prescriptions (patient_id);
+CREATE INDEX IF NOT EXISTS idx_prescriptions_doctor_id ON prescriptions (doctor_id);
+CREATE INDEX IF NOT EXISTS idx_prescription_items_medicine_id ON prescription_items (medicine_id);
+CREATE INDEX IF NOT EXISTS idx_prescription_items_undispensed ON prescription_items (created_at)
+    WHERE NOT is_dispensed;
+CREATE INDEX IF NOT EXISTS idx_transactions_patient_id ON transactions (patient_id);
+CREATE INDEX IF NOT EXISTS idx_transaction_items_medicine_id ON transaction_items (medicine_id);
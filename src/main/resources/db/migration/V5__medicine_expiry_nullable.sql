@@ -0,0 +1,3 @@
+-- Expiry and batch number on medicines are derived from the lots in stock and are
+-- cleared when the last lot runs empty.
+ALTER TABLE medicines ALTER COLUMN expiry_date DROP NOT NULL;
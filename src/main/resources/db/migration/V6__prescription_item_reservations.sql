@@ -0,0 +1,10 @@
+-- Stock reservations are held on the undispensed prescription item itself, so every node sees
+-- them and they commit or roll back with the item. reserved_until is when the hold lapses;
+-- dispensing sets reserved_quantity back to 0. ADD COLUMN on the partitioned parent reaches
+-- every partition.
+ALTER TABLE prescription_items ADD COLUMN IF NOT EXISTS reserved_quantity integer DEFAULT 0 NOT NULL;
+ALTER TABLE prescription_items ADD COLUMN IF NOT EXISTS reserved_until timestamp;
+
+-- Reserved units by medicine (medicine_id = ? AND reserved_quantity > 0 AND reserved_until > ?)
+CREATE INDEX IF NOT EXISTS idx_prescription_items_reserved ON prescription_items (medicine_id, reserved_until)
+    WHERE reserved_quantity > 0;
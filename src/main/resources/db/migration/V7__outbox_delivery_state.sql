@@ -0,0 +1,25 @@
+-- The inventory outbox relay tracks delivery per event instead of a single offset. An offset
+-- moved past ids that were allocated but not yet committed, so events whose transaction
+-- committed late were never delivered. Relays now claim undelivered rows with
+-- FOR UPDATE SKIP LOCKED, so any number of nodes can drain the outbox together.
+ALTER TABLE inventory_outbox ADD COLUMN IF NOT EXISTS attempts integer DEFAULT 0 NOT NULL;
+ALTER TABLE inventory_outbox ADD COLUMN IF NOT EXISTS delivered_at timestamp;
+-- Set once an event has failed pdms.outbox.max-attempts times; it is no longer retried
+ALTER TABLE inventory_outbox ADD COLUMN IF NOT EXISTS failed_at timestamp;
+ALTER TABLE inventory_outbox ADD COLUMN IF NOT EXISTS last_error varchar(500);
+
+-- Everything the offset-based relay had passed was delivered
+UPDATE inventory_outbox e SET delivered_at = COALESCE(o.updated_at, now())
+FROM outbox_offsets o
+WHERE o.relay_name = 'inventory-observers' AND e.id <= o.last_offset;
+
+DROP TABLE IF EXISTS outbox_offsets;
+
+-- Pending events in id order, and the earlier-pending-event check per medicine
+CREATE INDEX IF NOT EXISTS idx_inventory_outbox_pending ON inventory_outbox (medicine_id, id)
+    WHERE delivered_at IS NULL AND failed_at IS NULL;
+CREATE INDEX IF NOT EXISTS idx_inventory_outbox_pending_id ON inventory_outbox (id)
+    WHERE delivered_at IS NULL AND failed_at IS NULL;
+-- Retention purge of delivered events
+CREATE INDEX IF NOT EXISTS idx_inventory_outbox_delivered_at ON inventory_outbox (delivered_at)
+    WHERE delivered_at IS NOT NULL;
@@ -0,0 +1,42 @@
+-- Every node keeps its own search index. Changes to the indexed tables are announced on the
+-- search_index channel as '<type>:<id>', whichever node or tool made them; NOTIFY is
+-- transactional, so listeners only hear about committed rows. Updates only notify when a
+-- column that goes into the search document changed, so stock movements stay quiet.
+CREATE OR REPLACE FUNCTION pdms_notify_search_index() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('search_index', TG_ARGV[0] || ':' || OLD.id);
+    ELSE
+        PERFORM pg_notify('search_index', TG_ARGV[0] || ':' || NEW.id);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_medicines_search AFTER INSERT OR DELETE ON medicines
+    FOR EACH ROW EXECUTE FUNCTION pdms_notify_search_index('medicine');
+CREATE TRIGGER trg_medicines_search_update AFTER UPDATE ON medicines
+    FOR EACH ROW WHEN ((OLD.name, OLD.description, OLD.category, OLD.manufacturer, OLD.batch_number)
+        IS DISTINCT FROM (NEW.name, NEW.description, NEW.category, NEW.manufacturer, NEW.batch_number))
+    EXECUTE FUNCTION pdms_notify_search_index('medicine');
+
+CREATE TRIGGER trg_patients_search AFTER INSERT OR DELETE ON patients
+    FOR EACH ROW EXECUTE FUNCTION pdms_notify_search_index('patient');
+CREATE TRIGGER trg_patients_search_update AFTER UPDATE ON patients
+    FOR EACH ROW WHEN ((OLD.first_name, OLD.last_name, OLD.phone, OLD.email, OLD.address)
+        IS DISTINCT FROM (NEW.first_name, NEW.last_name, NEW.phone, NEW.email, NEW.address))
+    EXECUTE FUNCTION pdms_notify_search_index('patient');
+
+CREATE TRIGGER trg_doctors_search AFTER INSERT OR DELETE ON doctors
+    FOR EACH ROW EXECUTE FUNCTION pdms_notify_search_index('doctor');
+CREATE TRIGGER trg_doctors_search_update AFTER UPDATE ON doctors
+    FOR EACH ROW WHEN ((OLD.first_name, OLD.last_name, OLD.specialization, OLD.license_number, OLD.email, OLD.address)
+        IS DISTINCT FROM (NEW.first_name, NEW.last_name, NEW.specialization, NEW.license_number, NEW.email, NEW.address))
+    EXECUTE FUNCTION pdms_notify_search_index('doctor');
+
+CREATE TRIGGER trg_suppliers_search AFTER INSERT OR DELETE ON suppliers
+    FOR EACH ROW EXECUTE FUNCTION pdms_notify_search_index('supplier');
+CREATE TRIGGER trg_suppliers_search_update AFTER UPDATE ON suppliers
+    FOR EACH ROW WHEN ((OLD.name, OLD.contact_person, OLD.address, OLD.email, OLD.phone)
+        IS DISTINCT FROM (NEW.name, NEW.contact_person, NEW.address, NEW.email, NEW.phone))
+    EXECUTE FUNCTION pdms_notify_search_index('supplier');
@@ -0,0 +1,43 @@
+-- Every node screens prescriptions from its own in-memory copy of allergies, active items,
+-- medicine terms and drug interactions. Changes to them are announced on the screening
+-- channel as '<kind>:<id>', or 'interactions' for any change to the interaction table,
+-- whichever node or tool made them; NOTIFY is transactional, so listeners only hear about
+-- committed rows.
+CREATE OR REPLACE FUNCTION pdms_notify_screening() RETURNS trigger AS $$
+BEGIN
+    IF TG_LEVEL = 'STATEMENT' THEN
+        PERFORM pg_notify('screening', TG_ARGV[0]);
+    ELSIF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('screening', TG_ARGV[0] || ':' || OLD.id);
+    ELSE
+        PERFORM pg_notify('screening', TG_ARGV[0] || ':' || NEW.id);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_patients_screening AFTER INSERT OR DELETE ON patients
+    FOR EACH ROW EXECUTE FUNCTION pdms_notify_screening('patient');
+CREATE TRIGGER trg_patients_screening_update AFTER UPDATE ON patients
+    FOR EACH ROW WHEN (OLD.allergies IS DISTINCT FROM NEW.allergies)
+    EXECUTE FUNCTION pdms_notify_screening('patient');
+
+-- Dispensing does not end an item's active period, so only a changed medicine or prescription matters
+CREATE TRIGGER trg_prescription_items_screening AFTER INSERT OR DELETE ON prescription_items
+    FOR EACH ROW EXECUTE FUNCTION pdms_notify_screening('item');
+CREATE TRIGGER trg_prescription_items_screening_update AFTER UPDATE ON prescription_items
+    FOR EACH ROW WHEN ((OLD.medicine_id, OLD.prescription_id) IS DISTINCT FROM (NEW.medicine_id, NEW.prescription_id))
+    EXECUTE FUNCTION pdms_notify_screening('item');
+
+CREATE TRIGGER trg_medicines_screening AFTER INSERT ON medicines
+    FOR EACH ROW EXECUTE FUNCTION pdms_notify_screening('medicine');
+CREATE TRIGGER trg_medicines_screening_update AFTER UPDATE ON medicines
+    FOR EACH ROW WHEN ((OLD.name, OLD.category) IS DISTINCT FROM (NEW.name, NEW.category))
+    EXECUTE FUNCTION pdms_notify_screening('medicine');
+
+CREATE TRIGGER trg_drug_interactions_screening AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON drug_interactions
+    FOR EACH STATEMENT EXECUTE FUNCTION pdms_notify_screening('interactions');
+
+-- Active medications are every item created in the screening window, dispensed or not
+DROP INDEX IF EXISTS idx_prescription_items_undispensed;
+CREATE INDEX IF NOT EXISTS idx_prescription_items_created_at ON prescription_items (created_at);
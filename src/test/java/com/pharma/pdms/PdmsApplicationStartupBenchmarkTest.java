@@ -0,0 +1,208 @@
+package com.pharma.pdms;
+
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Time-to-first-request of the application started in its own JVM against a migrated
+ * database: from launching the process to the first HTTP response to a login, which goes
+ * through the security filters, the controller and the user repository. Started with the
+ * default profile, with the prod profile (with and without the background warm-up), and
+ * with the prod profile plus a class-data sharing archive written by a training run; the
+ * median of the runs is reported. Every run uses the same class path of jars only, as the
+ * archive requires: the application classes packed into a jar and the test class path
+ * without devtools, which packaged builds leave out. Run with -Pbenchmark.
+ */
+@Tag("benchmark")
+class PdmsApplicationStartupBenchmarkTest {
+
+    private static final int RUNS = 5;
+    private static final long START_TIMEOUT_MILLIS = 180_000;
+    private static final String JWT_SECRET = "benchmark-secret-that-is-at-least-256-bits-long";
+
+    @TempDir
+    Path work;
+
+    private String classPath;
+
+    @Test
+    void timeToFirstRequest() throws Exception {
+        classPath = jarClassPath();
+        try (PostgresTestDatabase database = PostgresTestDatabase.migrated()) {
+            Map<String, List<String>> configurations = new LinkedHashMap<>();
+            configurations.put("default", Collections.emptyList());
+            configurations.put("prod", Collections.singletonList("-Dspring.profiles.active=prod"));
+            configurations.put("prod_no_warm_up", Arrays.asList("-Dspring.profiles.active=prod",
+                "-Dpdms.startup.warm-up=false"));
+            // Dynamic archives (-XX:ArchiveClassesAtExit) need a Java 13 or later runtime
+            if (Runtime.version().feature() >= 13) {
+                Path archive = work.resolve("pdms.jsa");
+                Process training = launch(database, "training", Arrays.asList("-Dspring.profiles.active=prod",
+                    "-Dpdms.startup.training-run=true", "-XX:ArchiveClassesAtExit=" + archive), freePort());
+                assertTrue(training.waitFor(START_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), "training run did not exit");
+                assertTrue(Files.exists(archive), () -> "no class-data sharing archive written:\n" + tail("training"));
+                configurations.put("prod_cds", Arrays.asList("-Dspring.profiles.active=prod", "-Xshare:auto",
+                    "-XX:SharedArchiveFile=" + archive));
+            }
+
+            // Round robin, so that drift in the machine's speed affects every configuration alike
+            Map<String, List<Long>> millis = new LinkedHashMap<>();
+            for (int run = 0; run < RUNS; run++) {
+                for (Map.Entry<String, List<String>> configuration : configurations.entrySet()) {
+                    millis.computeIfAbsent(configuration.getKey(), name -> new ArrayList<>())
+                        .add(firstRequestMillis(database, configuration.getKey() + "-" + run, configuration.getValue()));
+                }
+            }
+
+            StringBuilder line = new StringBuilder("startup.benchmark runs=" + RUNS);
+            millis.forEach((name, runs) -> {
+                Collections.sort(runs);
+                line.append(' ').append(name).append("_first_request_ms=").append(runs.get(RUNS / 2))
+                    .append(' ').append(name).append("_range_ms=").append(runs.get(0)).append('-')
+                    .append(runs.get(RUNS - 1));
+            });
+            System.out.printf("%s java=%s cpus=%d%n", line, Runtime.version(), Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Milliseconds from launching the process to the first response, of any status
+     */
+    private long firstRequestMillis(PostgresTestDatabase database, String name, List<String> jvmArguments)
+            throws Exception {
+        int port = freePort();
+        long started = System.nanoTime();
+        Process process = launch(database, name, jvmArguments, port);
+        try {
+            while (true) {
+                assertTrue(process.isAlive(), () -> name + " exited:\n" + tail(name));
+                assertTrue(System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(START_TIMEOUT_MILLIS),
+                    name + " did not respond");
+                Integer status = login(port);
+                if (status != null) {
+                    assertEquals(401, status.intValue());
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                }
+                Thread.sleep(10);
+            }
+        } finally {
+            process.destroy();
+            process.waitFor(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private Process launch(PostgresTestDatabase database, String name, List<String> jvmArguments, int port)
+            throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArguments);
+        command.add("-cp");
+        command.add(classPath);
+        command.add(PdmsApplication.class.getName());
+        command.add("--server.port=" + port);
+        command.add("--pdms.archive.directory=" + work.resolve("archive"));
+        command.add("--pdms.archive.shared-directory=" + work.resolve("archive-shared"));
+        ProcessBuilder builder = new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(work.resolve(name + ".log").toFile());
+        builder.environment().put("DATABASE_URL", database.getJdbcUrl());
+        builder.environment().put("DATABASE_USERNAME", "postgres");
+        builder.environment().put("JWT_SECRET", JWT_SECRET);
+        return builder.start();
+    }
+
+    /**
+     * The test class path with its directories replaced by one jar of the application classes
+     */
+    private String jarClassPath() throws IOException {
+        Path classes = Paths.get(PdmsApplication.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+        Path jar = work.resolve("pdms-classes.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> files = Files.walk(classes)) {
+            // Directory entries too, which component scanning looks packages up by
+            for (Path file : (Iterable<Path>) files.filter(path -> !path.equals(classes))::iterator) {
+                String name = classes.relativize(file).toString().replace('\\', '/');
+                if (Files.isDirectory(file)) {
+                    out.putNextEntry(new JarEntry(name + "/"));
+                } else {
+                    out.putNextEntry(new JarEntry(name));
+                    Files.copy(file, out);
+                }
+                out.closeEntry();
+            }
+        }
+        List<String> entries = new ArrayList<>();
+        entries.add(jar.toString());
+        String testClassPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        for (String entry : testClassPath.split(File.pathSeparator)) {
+            if (!Files.isDirectory(Paths.get(entry)) && !entry.contains("spring-boot-devtools")) {
+                entries.add(entry);
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    /**
+     * Status of a login with unknown credentials, or null while nothing is listening
+     */
+    private static Integer login(int port) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/api/auth/login")
+                .openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(1000);
+            connection.setReadTimeout((int) START_TIMEOUT_MILLIS);
+            try (OutputStream body = connection.getOutputStream()) {
+                body.write("{\"username\":\"nobody\",\"password\":\"wrong\"}".getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            connection.disconnect();
+            return status;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String tail(String name) {
+        try {
+            List<String> lines = Files.readAllLines(work.resolve(name + ".log"));
+            return String.join("\n", lines.subList(Math.max(0, lines.size() - 40), lines.size()));
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.pharma.pdms.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Each replica entry becomes its own Hikari pool with its own credentials and pool settings
+ */
+class DatabaseConfigTest {
+
+    @Test
+    void replicasArePooledWithTheirOwnCredentials() {
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("pdms.datasource.replicas[0].url", "jdbc:postgresql://replica-1:5432/pdms")
+            .withProperty("pdms.datasource.replicas[0].username", "reader")
+            .withProperty("pdms.datasource.replicas[0].password", "secret")
+            .withProperty("pdms.datasource.replicas[0].hikari.maximum-pool-size", "4")
+            .withProperty("pdms.datasource.replicas[1].url", "jdbc:postgresql://replica-2:5432/pdms")
+            .withProperty("pdms.datasource.replicas[1].username", "reader2");
+
+        Map<String, DataSource> replicas = DatabaseConfig.replicaDataSources(Binder.get(environment));
+
+        assertEquals(List.of("replica-1", "replica-2"), List.copyOf(replicas.keySet()));
+        HikariDataSource first = assertInstanceOf(HikariDataSource.class, replicas.get("replica-1"));
+        assertEquals("jdbc:postgresql://replica-1:5432/pdms", first.getJdbcUrl());
+        assertEquals("reader", first.getUsername());
+        assertEquals("secret", first.getPassword());
+        assertEquals(4, first.getMaximumPoolSize());
+        assertEquals("pdms-replica-1", first.getPoolName());
+        assertEquals("org.postgresql.Driver", first.getDriverClassName());
+
+        HikariDataSource second = assertInstanceOf(HikariDataSource.class, replicas.get("replica-2"));
+        assertEquals("reader2", second.getUsername());
+    }
+
+    @Test
+    void noReplicasWhenNoneAreConfigured() {
+        assertTrue(DatabaseConfig.replicaDataSources(Binder.get(new MockEnvironment())).isEmpty());
+    }
+}
@@ -0,0 +1,125 @@
+package com.pharma.pdms.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.repositories.InventoryOutboxRepository;
+import com.pharma.pdms.repositories.MedicineLotRepository;
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.services.DemandForecastService;
+import com.pharma.pdms.services.InventoryOutboxService;
+import com.pharma.pdms.services.MedicineCatalogueService;
+import com.pharma.pdms.services.MedicineLotService;
+import com.pharma.pdms.services.MedicineService;
+import com.pharma.pdms.services.ReservationService;
+import com.pharma.pdms.support.JpaTestPersistence;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import com.pharma.pdms.utils.concurrency.OptimisticRetryExecutor;
+import com.pharma.pdms.utils.http.ConditionalGetSupport;
+import com.pharma.pdms.utils.inventory.LotAllocationIndex;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Revalidation of medicine reads against real row versions: a current copy gets a 304 with
+ * no body, and a committed write makes the next revalidation a full 200 again
+ */
+class MedicineControllerConditionalGetTest {
+
+    private static PostgresTestDatabase database;
+    private static JpaTestPersistence persistence;
+    private static JdbcTemplate jdbc;
+
+    private MedicineService medicineService;
+    private ConditionalGetSupport conditionalGet;
+    private MockMvc mvc;
+    private long medicineId;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        persistence = new JpaTestPersistence(database.getDataSource());
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        persistence.close();
+        database.close();
+    }
+
+    @BeforeEach
+    void newNode() {
+        jdbc.update("DELETE FROM inventory_outbox");
+        jdbc.update("DELETE FROM medicine_lots");
+        jdbc.update("DELETE FROM medicines");
+        for (int i = 0; i < 20; i++) {
+            medicineId = jdbc.queryForObject("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock,"
+                + " expiry_date, batch_number, category, description) VALUES (?, 'Acme', 1.50, 100, current_date + 365,"
+                + " 'B-1', 'Antibiotics', 'Broad-spectrum penicillin for bacterial infections') RETURNING id",
+                Long.class, "Medicine " + i);
+            jdbc.update("INSERT INTO medicine_lots (medicine_id, batch_number, expiry_date, quantity)"
+                + " VALUES (?, 'B-1', current_date + 365, 100)", medicineId);
+        }
+
+        MedicineRepository medicineRepository = persistence.repository(MedicineRepository.class);
+        medicineService = new MedicineService(medicineRepository,
+            new InventoryOutboxService(persistence.repository(InventoryOutboxRepository.class), new ObjectMapper()),
+            new OptimisticRetryExecutor(persistence.getTransactionManager(), 5, 1, 10),
+            new MedicineLotService(persistence.repository(MedicineLotRepository.class), medicineRepository,
+                new LotAllocationIndex()),
+            mock(MedicineCatalogueService.class), mock(ReservationService.class));
+        conditionalGet = new ConditionalGetSupport();
+        mvc = MockMvcBuilders.standaloneSetup(new MedicineController(medicineService, mock(ReservationService.class),
+            conditionalGet, mock(MedicineCatalogueService.class), mock(DemandForecastService.class))).build();
+    }
+
+    @Test
+    void medicineIsRevalidatedUntilItIsWritten() throws Exception {
+        revalidateWriteAndRevalidate("/api/medicines/" + medicineId, "medicine");
+    }
+
+    @Test
+    void medicineListIsRevalidatedUntilAnyMedicineIsWritten() throws Exception {
+        revalidateWriteAndRevalidate("/api/medicines", "medicines");
+    }
+
+    private void revalidateWriteAndRevalidate(String path, String resource) throws Exception {
+        MvcResult first = mvc.perform(get(path)).andExpect(status().isOk()).andReturn();
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        int fullBytes = first.getResponse().getContentAsByteArray().length;
+        assertTrue(fullBytes > 0);
+
+        MvcResult revalidated = mvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified()).andReturn();
+        assertEquals(etag, revalidated.getResponse().getHeader(HttpHeaders.ETAG));
+        assertEquals(0, revalidated.getResponse().getContentAsByteArray().length);
+
+        medicineService.updateStock(medicineId, -1);
+
+        MvcResult afterWrite = mvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isOk()).andReturn();
+        assertNotEquals(etag, afterWrite.getResponse().getHeader(HttpHeaders.ETAG));
+        assertTrue(afterWrite.getResponse().getContentAsString().contains("\"quantityInStock\":99"));
+
+        Map<String, Object> stats = conditionalGet.getStats();
+        assertEquals(2L, stats.get(resource + ".full"));
+        assertEquals(1L, stats.get(resource + ".notModified"));
+        System.out.printf("conditional_get.revalidation resource=%s full_body_bytes=%d not_modified_body_bytes=0"
+            + " bytes_avoided=%d%n", resource, fullBytes, fullBytes);
+    }
+}
@@ -0,0 +1,131 @@
+package com.pharma.pdms.repositories;
+
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the relay's claim query against a real database. Delivery is tracked per event,
+ * so an event that commits after later ids were relayed is still claimed.
+ */
+class InventoryOutboxClaimTest {
+
+    private static final String INSERT = "INSERT INTO inventory_outbox (medicine_id, event_type, payload, created_at)"
+        + " VALUES (?, 'UPDATED', '{}', now())";
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+    private static String claimSql;
+
+    @BeforeAll
+    static void startDatabase() throws Exception {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        claimSql = InventoryOutboxRepository.class.getMethod("claimPending", int.class)
+            .getAnnotation(Query.class).value()
+            .replace("SELECT * FROM inventory_outbox e", "SELECT e.id FROM inventory_outbox e")
+            .replace(":limit", "?");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.close();
+    }
+
+    @BeforeEach
+    void clearOutbox() {
+        jdbc.update("DELETE FROM inventory_outbox");
+    }
+
+    @Test
+    void eventCommittedLateIsStillClaimed() throws Exception {
+        DataSource dataSource = database.getDataSource();
+        try (Connection late = dataSource.getConnection()) {
+            late.setAutoCommit(false);
+            try (Statement statement = late.createStatement()) {
+                // Takes the lower id but commits after the next event has been relayed
+                statement.executeUpdate("INSERT INTO inventory_outbox (medicine_id, event_type, payload, created_at)"
+                    + " VALUES (1, 'UPDATED', '{}', now())");
+            }
+            jdbc.update(INSERT, 2L);
+
+            List<Long> first = claimAndDeliver();
+            assertEquals(1, first.size());
+
+            late.commit();
+            List<Long> second = claimAndDeliver();
+            assertEquals(1, second.size());
+            assertTrue(second.get(0) < first.get(0));
+        }
+        assertEquals(0, claimAndDeliver().size());
+    }
+
+    @Test
+    void everyPendingEventOfAMedicineIsClaimedInOrder() {
+        for (int i = 0; i < 450; i++) {
+            jdbc.update(INSERT, 1L);
+        }
+        List<Long> ids = jdbc.queryForList("SELECT id FROM inventory_outbox ORDER BY id", Long.class);
+
+        assertEquals(ids.subList(0, 200), claimAndDeliver());
+        assertEquals(ids.subList(200, 400), claimAndDeliver());
+        assertEquals(ids.subList(400, 450), claimAndDeliver());
+        assertEquals(0, claimAndDeliver().size());
+    }
+
+    @Test
+    void medicineHeldByAnotherRelayIsSkipped() throws Exception {
+        jdbc.update(INSERT, 1L);
+        jdbc.update(INSERT, 1L);
+        jdbc.update(INSERT, 2L);
+        List<Long> ids = jdbc.queryForList("SELECT id FROM inventory_outbox ORDER BY id", Long.class);
+
+        try (Connection other = database.getDataSource().getConnection()) {
+            other.setAutoCommit(false);
+            try (PreparedStatement statement = other.prepareStatement(claimSql)) {
+                statement.setInt(1, 1);
+                statement.setInt(2, 1);
+                try (ResultSet claimed = statement.executeQuery()) {
+                    assertTrue(claimed.next());
+                    assertEquals(ids.get(0), claimed.getLong(1));
+                }
+            }
+            // The other relay holds medicine 1's head, so neither of its events can be taken
+            assertEquals(List.of(ids.get(2)), jdbc.queryForList(claimSql, Long.class, 10, 10));
+            other.rollback();
+        }
+        assertEquals(List.of(ids.get(0), ids.get(1), ids.get(2)), jdbc.queryForList(claimSql, Long.class, 10, 10));
+    }
+
+    @Test
+    void abandonedEventNoLongerHoldsBackItsMedicine() {
+        jdbc.update(INSERT, 1L);
+        jdbc.update(INSERT, 1L);
+        List<Long> ids = jdbc.queryForList("SELECT id FROM inventory_outbox ORDER BY id", Long.class);
+
+        jdbc.update("UPDATE inventory_outbox SET failed_at = now() WHERE id = ?", ids.get(0));
+        assertEquals(List.of(ids.get(1)), jdbc.queryForList(claimSql, Long.class, 10, 10));
+    }
+
+    private static List<Long> claimAndDeliver() {
+        List<Long> ids = jdbc.queryForList(claimSql, Long.class, 200, 200);
+        for (Long id : ids) {
+            jdbc.update("UPDATE inventory_outbox SET delivered_at = now(), attempts = attempts + 1 WHERE id = ?", id);
+        }
+        return ids;
+    }
+}
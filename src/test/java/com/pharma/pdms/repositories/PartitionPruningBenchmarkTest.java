@@ -0,0 +1,147 @@
+package com.pharma.pdms.repositories;
+
+import com.pharma.pdms.services.PartitionMaintenanceService;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Date-range lookups and expiry of a month on the history tables, first on the heap tables
+ * and indexes as they were before partitioning (migrated to V3), then on the same rows
+ * after V4 has partitioned them by month. Rows are spread evenly over three years; the row
+ * count per table comes from pdms.benchmark.history-rows (50000000 for the full-size run).
+ * Query times are the median of several warm runs. Run with -Pbenchmark.
+ */
+@Tag("benchmark")
+class PartitionPruningBenchmarkTest {
+
+    private static final long ROWS = Long.getLong("pdms.benchmark.history-rows", 2_000_000L);
+    private static final int MONTHS = 36;
+    private static final int RUNS = 5;
+
+    // What findByPrescriptionDateBetween and findByTransactionDateBetween issue
+    private static final String PRESCRIPTIONS_BETWEEN = "SELECT * FROM prescriptions WHERE prescription_date BETWEEN ? AND ?";
+    private static final String TRANSACTIONS_BETWEEN = "SELECT * FROM transactions WHERE transaction_date BETWEEN ? AND ?";
+    private static final String TRANSACTIONS_MONTH_TOTAL = "SELECT COUNT(*), SUM(total_amount) FROM transactions"
+        + " WHERE transaction_date BETWEEN ? AND ?";
+
+    @Test
+    void heapTablesAgainstMonthlyPartitions() throws Exception {
+        try (PostgresTestDatabase database = PostgresTestDatabase.start()) {
+            JdbcTemplate jdbc = database.getJdbcTemplate();
+            DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(database.getDataSource());
+            database.flyway().target("3").load().migrate();
+            seed(jdbc);
+
+            YearMonth oldest = YearMonth.now().minusMonths(MONTHS - 1);
+            YearMonth middle = YearMonth.now().minusMonths(MONTHS / 2);
+            LocalDate weekFrom = middle.atDay(8);
+            LocalDate weekTo = middle.atDay(14);
+
+            Map<String, Long> before = timings(jdbc, weekFrom, weekTo, middle);
+            // Rolled back, so the partitioned run expires the same rows
+            long deleteMillis = millis(() -> new TransactionTemplate(transactionManager).execute(status -> {
+                jdbc.update("DELETE FROM prescriptions WHERE prescription_date < ?", Date.valueOf(oldest.plusMonths(1).atDay(1)));
+                jdbc.update("DELETE FROM transactions WHERE transaction_date < ?",
+                    Timestamp.valueOf(oldest.plusMonths(1).atDay(1).atStartOfDay()));
+                status.setRollbackOnly();
+                return null;
+            }));
+
+            long migrateMillis = millis(() -> database.flyway().load().migrate());
+            jdbc.execute("VACUUM ANALYZE");
+            Map<String, Long> after = timings(jdbc, weekFrom, weekTo, middle);
+            PartitionMaintenanceService partitions = new PartitionMaintenanceService(jdbc, transactionManager, 3, 0, true);
+            List<String> expired = new ArrayList<>();
+            long expireMillis = millis(() -> expired.addAll(partitions.expire(oldest.plusMonths(1))));
+
+            assertTrue(expired.contains("transactions_p" + oldest.toString().replace('-', '_')), expired.toString());
+            assertEquals(before.get("prescriptions_week_rows"), after.get("prescriptions_week_rows"));
+            assertEquals(before.get("transactions_week_rows"), after.get("transactions_week_rows"));
+
+            StringBuilder line = new StringBuilder("partitioning.benchmark rows_per_table=" + ROWS + " months=" + MONTHS);
+            before.forEach((name, value) -> line.append(" before_").append(name).append('=').append(value));
+            after.forEach((name, value) -> line.append(" after_").append(name).append('=').append(value));
+            System.out.printf("%s before_expire_month_delete_ms=%d after_expire_month_detach_drop_ms=%d"
+                + " partition_migration_ms=%d%n", line, deleteMillis, expireMillis, migrateMillis);
+        }
+    }
+
+    /**
+     * One patient and doctor, and ROWS prescriptions and transactions spread evenly over the last MONTHS months
+     */
+    private static void seed(JdbcTemplate jdbc) {
+        jdbc.execute("INSERT INTO patients (first_name, last_name, phone) VALUES ('Ann', 'Lee', '555-0100')");
+        jdbc.execute("INSERT INTO doctors (first_name, last_name, specialization, license_number, phone) "
+            + "VALUES ('Bo', 'Kim', 'GP', 'LIC-1', '555-0101')");
+        long days = LocalDate.now().toEpochDay() - YearMonth.now().minusMonths(MONTHS - 1).atDay(1).toEpochDay();
+        jdbc.update("INSERT INTO prescriptions (patient_id, doctor_id, prescription_date, created_at)"
+            + " SELECT 1, 1, current_date - (g % ?)::int, now() FROM generate_series(1, ?) g", days, ROWS);
+        jdbc.update("INSERT INTO transactions (patient_id, transaction_date, total_amount, payment_status, created_at)"
+            + " SELECT 1, now() - (g % ?) * interval '1 day' - (g % 24) * interval '1 hour', (g % 5000) / 100.0,"
+            + " 'COMPLETED', now() FROM generate_series(1, ?) g", days, ROWS);
+        jdbc.execute("VACUUM ANALYZE");
+    }
+
+    /**
+     * Median milliseconds of the lookups, and the rows each returned
+     */
+    private static Map<String, Long> timings(JdbcTemplate jdbc, LocalDate weekFrom, LocalDate weekTo, YearMonth month) {
+        Map<String, Long> timings = new LinkedHashMap<>();
+        AtomicLong rows = new AtomicLong();
+        timings.put("prescriptions_week_ms", median(() -> {
+            rows.set(0);
+            jdbc.query(PRESCRIPTIONS_BETWEEN, resultSet -> {
+                rows.incrementAndGet();
+            }, Date.valueOf(weekFrom), Date.valueOf(weekTo));
+            return null;
+        }));
+        timings.put("prescriptions_week_rows", rows.get());
+        timings.put("transactions_week_ms", median(() -> {
+            rows.set(0);
+            jdbc.query(TRANSACTIONS_BETWEEN, resultSet -> {
+                rows.incrementAndGet();
+            }, Timestamp.valueOf(weekFrom.atStartOfDay()), Timestamp.valueOf(weekTo.plusDays(1).atStartOfDay()));
+            return null;
+        }));
+        timings.put("transactions_week_rows", rows.get());
+        timings.put("transactions_month_total_ms", median(() -> jdbc.queryForMap(TRANSACTIONS_MONTH_TOTAL,
+            Timestamp.valueOf(month.atDay(1).atStartOfDay()),
+            Timestamp.valueOf(month.atEndOfMonth().atTime(23, 59, 59)))));
+        return timings;
+    }
+
+    private static long median(Supplier<?> query) {
+        query.get();
+        List<Long> millis = new ArrayList<>();
+        for (int run = 0; run < RUNS; run++) {
+            millis.add(millis(query::get));
+        }
+        Collections.sort(millis);
+        return millis.get(RUNS / 2);
+    }
+
+    private static long millis(Runnable work) {
+        long started = System.nanoTime();
+        work.run();
+        return (System.nanoTime() - started) / 1_000_000;
+    }
+}
@@ -0,0 +1,109 @@
+package com.pharma.pdms.repositories;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Date-range lookups on the partitioned history tables only read the months they ask for,
+ * both when the bound values are planned in (custom plan) and when a cached generic plan
+ * prunes at executor start-up.
+ */
+class PartitionPruningTest {
+
+    // What findByPrescriptionDateBetween and findByTransactionDateBetween issue
+    private static final String PRESCRIPTIONS_BETWEEN = "SELECT * FROM prescriptions WHERE prescription_date BETWEEN ? AND ?";
+    private static final String TRANSACTIONS_BETWEEN = "SELECT * FROM transactions WHERE transaction_date BETWEEN ? AND ?";
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("'_p'yyyy_MM");
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+    private static TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    static void seed() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database.getDataSource()));
+
+        for (String table : new String[] {"prescriptions", "transactions"}) {
+            jdbc.queryForList("SELECT pdms_ensure_month_partitions(?, (current_date - interval '12 months')::date, 3)",
+                table);
+        }
+        jdbc.execute("INSERT INTO patients (first_name, last_name, phone) VALUES ('Ann', 'Lee', '555-0100')");
+        jdbc.execute("INSERT INTO doctors (first_name, last_name, specialization, license_number, phone) "
+            + "VALUES ('Bo', 'Kim', 'GP', 'LIC-1', '555-0101')");
+        jdbc.execute("INSERT INTO prescriptions (patient_id, doctor_id, prescription_date, created_at) "
+            + "SELECT 1, 1, current_date - (g % 365), now() FROM generate_series(1, 5000) g");
+        jdbc.execute("INSERT INTO transactions (patient_id, transaction_date, total_amount, created_at) "
+            + "SELECT 1, now() - (g % 365) * interval '1 day', 10.00, now() FROM generate_series(1, 5000) g");
+        jdbc.execute("ANALYZE");
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        database.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"force_custom_plan", "force_generic_plan"})
+    void prescriptionDateRangeReadsOnlyItsMonth(String planCacheMode) throws Exception {
+        YearMonth month = YearMonth.now().minusMonths(2);
+        Set<String> scanned = scannedRelations(planCacheMode, PRESCRIPTIONS_BETWEEN,
+            Date.valueOf(month.atDay(5)), Date.valueOf(month.atDay(20)));
+
+        assertEquals(Set.of("prescriptions" + month.format(SUFFIX)), scanned);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"force_custom_plan", "force_generic_plan"})
+    void transactionDateRangeReadsOnlyItsMonths(String planCacheMode) throws Exception {
+        YearMonth month = YearMonth.now().minusMonths(3);
+        // Spans a month boundary, so exactly two partitions
+        LocalDate from = month.atDay(20);
+        LocalDate to = month.plusMonths(1).atDay(10);
+        Set<String> scanned = scannedRelations(planCacheMode, TRANSACTIONS_BETWEEN,
+            Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(to.atStartOfDay()));
+
+        assertEquals(Set.of("transactions" + month.format(SUFFIX), "transactions" + month.plusMonths(1).format(SUFFIX)),
+            scanned);
+    }
+
+    private static Set<String> scannedRelations(String planCacheMode, String sql, Object from, Object to) throws Exception {
+        String plan = transactionTemplate.execute(status -> {
+            jdbc.execute("SET LOCAL plan_cache_mode = " + planCacheMode);
+            return jdbc.queryForObject("EXPLAIN (FORMAT JSON) " + sql, String.class, from, to);
+        });
+        Set<String> relations = new TreeSet<>();
+        collectRelations(objectMapper.readTree(plan).path(0).path("Plan"), relations);
+        return relations;
+    }
+
+    private static void collectRelations(JsonNode node, Set<String> relations) {
+        if (node.has("Relation Name")) {
+            relations.add(node.path("Relation Name").asText());
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectRelations(child, relations);
+        }
+    }
+}
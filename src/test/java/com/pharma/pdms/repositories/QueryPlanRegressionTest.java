@@ -0,0 +1,159 @@
+package com.pharma.pdms.repositories;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Guards the indexes in db/migration against plan regressions. Each hot query is explained
+ * against a seeded database with sequential scans disabled, which makes the planner take any
+ * index able to serve it; a Seq Scan left in the plan means no index can.
+ */
+class QueryPlanRegressionTest {
+
+    /**
+     * Hot queries in the form the application issues them, with representative values
+     */
+    static final Map<String, String> HOT_QUERIES = new LinkedHashMap<>();
+
+    static {
+        HOT_QUERIES.put("expiring-medicines",
+            "SELECT * FROM medicines WHERE expiry_date <= current_date + 30 AND is_active = true");
+        HOT_QUERIES.put("low-stock-medicines",
+            "SELECT * FROM medicines WHERE quantity_in_stock <= reorder_level");
+        HOT_QUERIES.put("expiry-sweep-candidates",
+            "SELECT MIN(id), MAX(id), COUNT(*) FROM medicines WHERE expiry_date < current_date AND quantity_in_stock > 0");
+        HOT_QUERIES.put("medicines-by-category",
+            "SELECT * FROM medicines WHERE category = 'Antibiotics'");
+        HOT_QUERIES.put("lots-by-medicine",
+            "SELECT * FROM medicine_lots WHERE medicine_id = 1 AND quantity > 0 ORDER BY expiry_date");
+        HOT_QUERIES.put("lots-quarantined-on",
+            "SELECT medicine_id, SUM(quarantined_quantity) FROM medicine_lots WHERE quarantined_on = current_date GROUP BY medicine_id");
+        HOT_QUERIES.put("prescriptions-since",
+            "SELECT COUNT(*) FROM prescriptions WHERE prescription_date >= current_date");
+        HOT_QUERIES.put("prescriptions-by-patient",
+            "SELECT * FROM prescriptions WHERE patient_id = 1");
+        HOT_QUERIES.put("prescriptions-by-doctor",
+            "SELECT * FROM prescriptions WHERE doctor_id = 1");
+        HOT_QUERIES.put("items-by-prescription",
+            "SELECT * FROM prescription_items WHERE prescription_id = 1");
+        HOT_QUERIES.put("active-medication-items",
+            "SELECT id, prescription_id, medicine_id, created_at FROM prescription_items"
+                + " WHERE created_at >= now() - interval '30 days'");
+        HOT_QUERIES.put("reserved-by-medicine",
+            "SELECT COALESCE(SUM(reserved_quantity), 0) FROM prescription_items WHERE medicine_id = 1"
+                + " AND reserved_quantity > 0 AND reserved_until > now()");
+        HOT_QUERIES.put("transactions-since",
+            "SELECT SUM(total_amount) FROM transactions WHERE transaction_date >= current_date");
+        HOT_QUERIES.put("transactions-by-patient",
+            "SELECT * FROM transactions WHERE patient_id = 1");
+        HOT_QUERIES.put("doctor-by-license",
+            "SELECT * FROM doctors WHERE license_number = 'LIC-0001'");
+        HOT_QUERIES.put("doctor-by-email",
+            "SELECT * FROM doctors WHERE lower(email) = lower('doctor1@pharmacy.com')");
+        HOT_QUERIES.put("patient-by-email",
+            "SELECT * FROM patients WHERE lower(email) = lower('patient1@pharmacy.com')");
+        HOT_QUERIES.put("patient-by-phone",
+            "SELECT * FROM patients WHERE phone = '555-0001'");
+        HOT_QUERIES.put("role-changes",
+            "SELECT * FROM users WHERE roles_changed_at > now() - interval '5 seconds'");
+    }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+    private static TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    static void seed() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database.getDataSource()));
+
+        for (String table : new String[] {"prescriptions", "prescription_items", "transactions", "transaction_items"}) {
+            jdbc.queryForList("SELECT pdms_ensure_month_partitions(?, (current_date - interval '12 months')::date, 3)",
+                table);
+        }
+        jdbc.execute("INSERT INTO suppliers (name, phone, is_active) "
+            + "SELECT 'Supplier ' || g, '555-1' || g, true FROM generate_series(1, 50) g");
+        jdbc.execute("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock, reorder_level, "
+            + "expiry_date, category, is_active, supplier_id) "
+            + "SELECT 'Medicine ' || g, 'Maker', 1.00, g % 200, 10, current_date + (g % 730) - 30, "
+            + "(ARRAY['Antibiotics','Analgesics','Antivirals','Vitamins','Vaccines'])[1 + g % 5], true, 1 + g % 50 "
+            + "FROM generate_series(1, 20000) g");
+        jdbc.execute("INSERT INTO medicine_lots (medicine_id, batch_number, expiry_date, quantity) "
+            + "SELECT 1 + g % 20000, 'B' || g, current_date + (g % 730), g % 50 FROM generate_series(1, 60000) g");
+        jdbc.execute("INSERT INTO users (username, email, password) "
+            + "SELECT 'user' || g, 'user' || g || '@pharmacy.com', 'x' FROM generate_series(1, 5000) g");
+        jdbc.execute("INSERT INTO doctors (first_name, last_name, specialization, license_number, phone, email) "
+            + "SELECT 'Doc', 'Tor' || g, 'GP', 'LIC-' || lpad(g::text, 4, '0'), '555-2' || g, "
+            + "'doctor' || g || '@pharmacy.com' FROM generate_series(1, 500) g");
+        jdbc.execute("INSERT INTO patients (first_name, last_name, phone, email) "
+            + "SELECT 'Pat', 'Ient' || g, '555-' || lpad(g::text, 4, '0'), 'patient' || g || '@pharmacy.com' "
+            + "FROM generate_series(1, 10000) g");
+        jdbc.execute("INSERT INTO prescriptions (patient_id, doctor_id, prescription_date, created_at, is_filled) "
+            + "SELECT 1 + g % 10000, 1 + g % 500, current_date - (g % 365), now() - (g % 365) * interval '1 day', true "
+            + "FROM generate_series(1, 50000) g");
+        jdbc.execute("INSERT INTO prescription_items (prescription_id, medicine_id, quantity, created_at, is_dispensed) "
+            + "SELECT 1 + g % 50000, 1 + g % 20000, 1 + g % 5, now() - (g % 365) * interval '1 day', g % 20 <> 0 "
+            + "FROM generate_series(1, 100000) g");
+        jdbc.execute("INSERT INTO transactions (patient_id, transaction_date, total_amount, prescription_id, created_at) "
+            + "SELECT 1 + g % 10000, now() - (g % 365) * interval '1 day', 10.00, 1 + g % 50000, now() "
+            + "FROM generate_series(1, 50000) g");
+        jdbc.execute("INSERT INTO transaction_items (transaction_id, medicine_id, quantity, unit_price, subtotal, created_at) "
+            + "SELECT 1 + g % 50000, 1 + g % 20000, 1, 10.00, 10.00, now() - (g % 365) * interval '1 day' "
+            + "FROM generate_series(1, 100000) g");
+        jdbc.execute("ANALYZE");
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        database.close();
+    }
+
+    static Stream<String> hotQueries() {
+        return HOT_QUERIES.keySet().stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("hotQueries")
+    void hotQueryUsesAnIndex(String name) throws Exception {
+        Set<String> seqScans = new TreeSet<>();
+        collectSeqScans(explain(HOT_QUERIES.get(name)), seqScans);
+        assertTrue(seqScans.isEmpty(), name + " scans " + seqScans);
+    }
+
+    static JsonNode explain(String sql) throws Exception {
+        String plan = transactionTemplate.execute(status -> {
+            // Leaves a sequential scan only where no index applies
+            jdbc.execute("SET LOCAL enable_seqscan = off");
+            return jdbc.queryForObject("EXPLAIN (FORMAT JSON) " + sql, String.class);
+        });
+        return objectMapper.readTree(plan).path(0).path("Plan");
+    }
+
+    private static void collectSeqScans(JsonNode node, Set<String> seqScans) {
+        if ("Seq Scan".equals(node.path("Node Type").asText())) {
+            seqScans.add(node.path("Relation Name").asText());
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectSeqScans(child, seqScans);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.pharma.pdms.repositories;
+
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a database created by ddl-auto=update before migrations existed ends up with
+ * the same schema as an empty database migrated from scratch.
+ */
+class SchemaMigrationTest {
+
+    private static final String COLUMNS =
+        "SELECT c.table_name || '.' || c.column_name AS name, c.data_type FROM information_schema.columns c "
+            + "JOIN pg_class t ON t.relname = c.table_name AND t.relnamespace = 'public'::regnamespace "
+            + "WHERE c.table_schema = 'public' AND NOT t.relispartition AND c.table_name <> 'flyway_schema_history'";
+
+    @Test
+    void preMigrationDatabaseIsBaselinedAndUpgraded() throws Exception {
+        try (PostgresTestDatabase fresh = PostgresTestDatabase.migrated();
+             PostgresTestDatabase legacy = PostgresTestDatabase.start()) {
+            JdbcTemplate jdbc = legacy.getJdbcTemplate();
+            new ResourceDatabasePopulator(new ClassPathResource("db/migration/V1__baseline_schema.sql"))
+                .execute(legacy.getDataSource());
+            jdbc.update("INSERT INTO patients (first_name, last_name, phone) VALUES ('Ann', 'Lee', '555-0100')");
+            jdbc.update("INSERT INTO doctors (first_name, last_name, specialization, license_number, phone) "
+                + "VALUES ('Bo', 'Kim', 'GP', 'LIC-1', '555-0101')");
+            jdbc.update("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock, expiry_date, category) "
+                + "VALUES ('Amoxicillin', 'Acme', 1.50, 100, current_date + 365, 'Antibiotics')");
+            jdbc.update("INSERT INTO prescriptions (patient_id, doctor_id, prescription_date, created_at) "
+                + "VALUES (1, 1, current_date, now())");
+            jdbc.update("INSERT INTO prescription_items (prescription_id, medicine_id, quantity, created_at, is_dispensed) "
+                + "VALUES (1, 1, 2, now(), false)");
+
+            legacy.flyway().load().migrate();
+            legacy.flyway().load().validate();
+
+            assertEquals(columns(fresh.getJdbcTemplate()), columns(jdbc));
+            assertEquals(0L, jdbc.queryForObject("SELECT version FROM medicines WHERE id = 1", Long.class));
+            assertEquals(1, jdbc.queryForObject("SELECT COUNT(*) FROM prescription_items", Integer.class));
+            assertTrue(jdbc.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = 'prescription_items'::regclass)",
+                Boolean.class));
+        }
+    }
+
+    private static Map<String, String> columns(JdbcTemplate jdbc) {
+        Map<String, String> columns = new TreeMap<>();
+        jdbc.query(COLUMNS, rs -> {
+            columns.put(rs.getString("name"), rs.getString("data_type"));
+        });
+        return columns;
+    }
+}
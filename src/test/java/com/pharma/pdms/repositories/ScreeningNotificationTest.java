@@ -0,0 +1,83 @@
+package com.pharma.pdms.repositories;
+
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The screening triggers announce committed changes to allergies, prescription items,
+ * medicine terms and interactions; dispensing an item stays quiet
+ */
+class ScreeningNotificationTest {
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.close();
+    }
+
+    @Test
+    void screeningChangesAreAnnounced() throws Exception {
+        try (Connection connection = database.getDataSource().getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN screening");
+            }
+            PGConnection pg = connection.unwrap(PGConnection.class);
+
+            jdbc.update("INSERT INTO patients (id, first_name, last_name, phone) VALUES (3, 'Ann', 'Lee', '555-0100')");
+            jdbc.update("UPDATE patients SET phone = '555-0199' WHERE id = 3");
+            jdbc.update("UPDATE patients SET allergies = 'Penicillin' WHERE id = 3");
+            assertEquals(List.of("patient:3", "patient:3"), drain(pg));
+
+            jdbc.update("INSERT INTO doctors (id, first_name, last_name, specialization, license_number, phone)"
+                + " VALUES (1, 'Bo', 'Kim', 'GP', 'LIC-1', '555-0101')");
+            jdbc.update("INSERT INTO medicines (id, name, manufacturer, unit_price, quantity_in_stock, expiry_date, category)"
+                + " VALUES (7, 'Amoxicillin', 'Acme', 1.50, 10, current_date + 365, 'Antibiotics')");
+            jdbc.update("UPDATE medicines SET quantity_in_stock = 4 WHERE id = 7");
+            jdbc.update("UPDATE medicines SET category = 'Penicillins' WHERE id = 7");
+            assertEquals(List.of("medicine:7", "medicine:7"), drain(pg));
+
+            jdbc.update("INSERT INTO prescriptions (id, patient_id, doctor_id, prescription_date, created_at)"
+                + " VALUES (5, 3, 1, current_date, now())");
+            jdbc.update("INSERT INTO prescription_items (id, prescription_id, medicine_id, quantity, created_at, is_dispensed)"
+                + " VALUES (11, 5, 7, 2, now(), false)");
+            jdbc.update("UPDATE prescription_items SET is_dispensed = true WHERE id = 11");
+            assertEquals(List.of("item:11"), drain(pg));
+
+            jdbc.update("INSERT INTO drug_interactions (medicine_a_id, medicine_b_id, severity) VALUES (7, 8, 'MAJOR')");
+            jdbc.update("DELETE FROM prescription_items WHERE id = 11");
+            assertEquals(List.of("interactions", "item:11"), drain(pg));
+        }
+    }
+
+    private static List<String> drain(PGConnection pg) throws Exception {
+        List<String> payloads = new ArrayList<>();
+        PGNotification[] notifications = pg.getNotifications(200);
+        while (notifications != null && notifications.length > 0) {
+            for (PGNotification notification : notifications) {
+                payloads.add(notification.getParameter());
+            }
+            notifications = pg.getNotifications(200);
+        }
+        return payloads;
+    }
+}
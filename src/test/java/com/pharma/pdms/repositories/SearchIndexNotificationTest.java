@@ -0,0 +1,71 @@
+package com.pharma.pdms.repositories;
+
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The search_index triggers announce committed changes to indexed columns, and only those
+ */
+class SearchIndexNotificationTest {
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.close();
+    }
+
+    @Test
+    void indexedChangesAreAnnounced() throws Exception {
+        try (Connection connection = database.getDataSource().getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN search_index");
+            }
+            PGConnection pg = connection.unwrap(PGConnection.class);
+
+            jdbc.update("INSERT INTO suppliers (id, name, phone) VALUES (1, 'Acme', '555-0100')");
+            jdbc.update("UPDATE suppliers SET name = 'Acme Pharma' WHERE id = 1");
+            assertEquals(List.of("supplier:1", "supplier:1"), drain(pg));
+
+            jdbc.update("UPDATE suppliers SET is_active = false, updated_at = now() WHERE id = 1");
+            jdbc.update("INSERT INTO medicines (id, name, manufacturer, unit_price, quantity_in_stock, expiry_date, category)"
+                + " VALUES (7, 'Amoxicillin', 'Acme', 1.50, 10, current_date + 365, 'Antibiotics')");
+            jdbc.update("UPDATE medicines SET quantity_in_stock = 4, version = version + 1 WHERE id = 7");
+            assertEquals(List.of("medicine:7"), drain(pg));
+
+            jdbc.update("DELETE FROM medicines WHERE id = 7");
+            assertEquals(List.of("medicine:7"), drain(pg));
+        }
+    }
+
+    private static List<String> drain(PGConnection pg) throws Exception {
+        List<String> payloads = new ArrayList<>();
+        PGNotification[] notifications = pg.getNotifications(200);
+        while (notifications != null && notifications.length > 0) {
+            for (PGNotification notification : notifications) {
+                payloads.add(notification.getParameter());
+            }
+            notifications = pg.getNotifications(200);
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,114 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.models.ERole;
+import com.pharma.pdms.repositories.RoleRepository;
+import com.pharma.pdms.repositories.UserRepository;
+import com.pharma.pdms.support.JpaTestPersistence;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import com.pharma.pdms.utils.security.AuthorityCache;
+import com.pharma.pdms.utils.security.JwtAuthenticationFilter;
+import com.pharma.pdms.utils.security.JwtTokenService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Role changes against a real users table, seen by two nodes: the node making the change
+ * turns old tokens away at once, the other once it has synced role changes
+ */
+class AuthServiceTest {
+
+    private static final String SECRET = "test-secret-that-is-at-least-256-bits-long!!";
+
+    private static PostgresTestDatabase database;
+    private static JpaTestPersistence persistence;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        persistence = new JpaTestPersistence(database.getDataSource());
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        persistence.close();
+        database.close();
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void roleChangeRetiresOldTokensOnEveryNode() throws Exception {
+        Node first = new Node();
+        Node second = new Node();
+        first.auth.createDefaults();
+        String adminToken = (String) first.auth.login("admin", "admin").get("token");
+        long adminId = persistence.repository(UserRepository.class).findByUsername("admin").get().getId();
+        assertEquals(Set.of("ROLE_ADMIN"), first.roles(adminToken));
+        assertEquals(Set.of("ROLE_ADMIN"), second.roles(adminToken));
+
+        first.auth.updateRoles(adminId, Set.of(ERole.ROLE_PHARMACIST), null);
+        assertNull(first.roles(adminToken));
+        // Until its next sync the other node has no way to know
+        assertEquals(Set.of("ROLE_ADMIN"), second.roles(adminToken));
+        second.auth.syncRoleChanges();
+        assertNull(second.roles(adminToken));
+
+        String pharmacistToken = (String) second.auth.login("admin", "admin").get("token");
+        assertEquals(Set.of("ROLE_PHARMACIST"), first.roles(pharmacistToken));
+        assertEquals(Set.of("ROLE_PHARMACIST"), second.roles(pharmacistToken));
+
+        first.auth.updateRoles(adminId, Set.of(ERole.ROLE_PHARMACIST), false);
+        second.auth.syncRoleChanges();
+        assertNull(first.roles(pharmacistToken));
+        assertNull(second.roles(pharmacistToken));
+    }
+
+    /**
+     * One application node: its own token and authority caches over the shared tables
+     */
+    private static final class Node {
+        private final JwtTokenService tokens = new JwtTokenService(SECRET, 60_000, 16);
+        private final AuthorityCache authorities = new AuthorityCache();
+        private final AuthService auth = new AuthService(persistence.repository(UserRepository.class),
+            persistence.repository(RoleRepository.class), mock(AuthenticationManager.class), new BCryptPasswordEncoder(),
+            tokens, authorities, persistence.getTransactionManager(), "admin", "admin", "admin@pharmacy.com");
+        private final JwtAuthenticationFilter filter = new JwtAuthenticationFilter(tokens, authorities);
+
+        /**
+         * @return The roles a request with this token is granted, or null if it is turned away
+         */
+        private Set<String> roles(String token) throws Exception {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/medicines");
+            request.addHeader("Authorization", "Bearer " + token);
+            SecurityContextHolder.clearContext();
+            AtomicReference<Authentication> seen = new AtomicReference<>();
+            filter.doFilter(request, new MockHttpServletResponse(),
+                (servletRequest, servletResponse) -> seen.set(SecurityContextHolder.getContext().getAuthentication()));
+            if (seen.get() == null) {
+                return null;
+            }
+            return seen.get().getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.repositories.DemandForecastRepository;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Times the forecast over a catalogue of 100,000 medicines: the first run folds in a year
+ * of history, a nightly run one day. Outbox events and catalogue notifications for changed
+ * reorder levels are stubbed out, so their cost is not included. Run with -Pbenchmark.
+ */
+@Tag("benchmark")
+class DemandForecastBenchmarkTest {
+
+    private static final int MEDICINES = 100_000;
+    private static final int HISTORY_DAYS = 364;
+    // Each medicine sells on about one day in SELLING_EVERY
+    private static final int SELLING_EVERY = 14;
+
+    @Test
+    void yearOfHistoryThenOneNight() throws Exception {
+        try (PostgresTestDatabase database = PostgresTestDatabase.migrated()) {
+            JdbcTemplate jdbc = database.getJdbcTemplate();
+            seed(jdbc);
+
+            DemandForecastService service = new DemandForecastService(jdbc,
+                new DataSourceTransactionManager(database.getDataSource()), mock(DemandForecastRepository.class),
+                mock(InventoryOutboxService.class), mock(MedicineCatalogueService.class), true, HISTORY_DAYS,
+                28, 90, 7, 0.95, 1, 0.2, 0.05, 0.1, 0.98, 0);
+            try {
+                LocalDate yesterday = LocalDate.now().minusDays(1);
+                long started = System.nanoTime();
+                int firstChanges = service.updateForecasts(yesterday.minusDays(1));
+                long firstMillis = (System.nanoTime() - started) / 1_000_000;
+
+                started = System.nanoTime();
+                int nightlyChanges = service.updateForecasts(yesterday);
+                long nightlyMillis = (System.nanoTime() - started) / 1_000_000;
+
+                assertEquals((long) MEDICINES, jdbc.queryForObject("SELECT COUNT(*) FROM demand_forecasts", Long.class));
+                System.out.printf("forecast.benchmark medicines=%d demand_rows=%d parallelism=%s"
+                        + " first_run_ms=%d first_run_reorder_changes=%d nightly_run_ms=%d nightly_reorder_changes=%d%n",
+                    MEDICINES, jdbc.queryForObject("SELECT COUNT(*) FROM prescription_items", Long.class),
+                    service.getStats().get("parallelism"), firstMillis, firstChanges, nightlyMillis, nightlyChanges);
+            } finally {
+                service.shutdown();
+            }
+        }
+    }
+
+    private static void seed(JdbcTemplate jdbc) {
+        jdbc.queryForList("SELECT pdms_ensure_month_partitions('prescription_items', (current_date - interval '14 months')::date, 3)");
+        jdbc.update("INSERT INTO patients (first_name, last_name, phone) VALUES ('Ann', 'Lee', '555-0100')");
+        jdbc.update("INSERT INTO doctors (first_name, last_name, specialization, license_number, phone) "
+            + "VALUES ('Bo', 'Kim', 'GP', 'LIC-1', '555-0101')");
+        jdbc.update("INSERT INTO prescriptions (patient_id, doctor_id, prescription_date, created_at) "
+            + "VALUES (1, 1, current_date, now())");
+        jdbc.update("INSERT INTO medicines (id, name, manufacturer, unit_price, quantity_in_stock, expiry_date, category,"
+            + " created_at) SELECT g, 'Medicine ' || g, 'Acme', 1.00, 100, current_date + 365, 'General',"
+            + " now() - interval '400 days' FROM generate_series(1, ?) g", MEDICINES);
+        // Dispensed the day they were written, with a weekly rhythm
+        jdbc.update("INSERT INTO prescription_items (prescription_id, medicine_id, quantity, created_at, updated_at,"
+            + " is_dispensed, dispensed_at, version)"
+            + " SELECT 1, m, 1 + (m + d) % 5 + CASE WHEN extract(isodow FROM current_date - d) < 6 THEN 2 ELSE 0 END,"
+            + " current_date - d + time '10:00', now(), true, current_date - d + time '10:00', 0"
+            + " FROM generate_series(1, ?) m, generate_series(1, ?) d WHERE (m + d) % ? = 0",
+            MEDICINES, HISTORY_DAYS + 1, SELLING_EVERY);
+        jdbc.execute("ANALYZE");
+    }
+}
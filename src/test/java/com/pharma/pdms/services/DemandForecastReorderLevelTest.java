@@ -0,0 +1,51 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The set-based reorder level update only touches, and only returns, medicines whose level changed
+ */
+class DemandForecastReorderLevelTest {
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        jdbc.update("INSERT INTO medicines (id, name, manufacturer, unit_price, quantity_in_stock, reorder_level,"
+            + " expiry_date, category) VALUES"
+            + " (1, 'Amoxicillin', 'Acme', 1.50, 100, 10, current_date + 365, 'Antibiotics'),"
+            + " (2, 'Ibuprofen', 'Acme', 0.80, 40, 20, current_date + 365, 'Analgesics')");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.close();
+    }
+
+    @Test
+    void onlyChangedLevelsAreWrittenAndReturned() {
+        long versionBefore = jdbc.queryForObject("SELECT version FROM medicines WHERE id = 2", Long.class);
+
+        List<Map<String, Object>> changed = jdbc.queryForList(DemandForecastService.UPDATE_REORDER_LEVELS,
+            new Long[] {1L, 2L}, new Integer[] {35, 20});
+
+        assertEquals(1, changed.size());
+        assertEquals(1L, ((Number) changed.get(0).get("id")).longValue());
+        assertEquals(35, changed.get(0).get("reorder_level"));
+        assertEquals(100, changed.get(0).get("quantity_in_stock"));
+        assertEquals(versionBefore, jdbc.queryForObject("SELECT version FROM medicines WHERE id = 2", Long.class));
+        assertEquals(20, jdbc.queryForObject("SELECT reorder_level FROM medicines WHERE id = 2", Integer.class));
+    }
+}
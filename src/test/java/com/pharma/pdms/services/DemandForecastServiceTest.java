@@ -0,0 +1,135 @@
+package com.pharma.pdms.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.repositories.DemandForecastRepository;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The nightly forecast against a real database: demand is dated by when it was dispensed,
+ * only the partitions that can hold a window's items are read, and one node runs at a time.
+ */
+class DemandForecastServiceTest {
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("'prescription_items_p'yyyy_MM");
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+    private static DemandForecastService service;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        jdbc.queryForList("SELECT pdms_ensure_month_partitions('prescription_items', (current_date - interval '12 months')::date, 3)");
+        jdbc.update("INSERT INTO patients (first_name, last_name, phone) VALUES ('Ann', 'Lee', '555-0100')");
+        jdbc.update("INSERT INTO doctors (first_name, last_name, specialization, license_number, phone) "
+            + "VALUES ('Bo', 'Kim', 'GP', 'LIC-1', '555-0101')");
+        jdbc.update("INSERT INTO medicines (id, name, manufacturer, unit_price, quantity_in_stock, expiry_date, category)"
+            + " VALUES (1, 'Amoxicillin', 'Acme', 1.50, 100, current_date + 365, 'Antibiotics'),"
+            + " (2, 'Ibuprofen', 'Acme', 0.80, 40, current_date + 365, 'Analgesics')");
+        jdbc.update("INSERT INTO prescriptions (patient_id, doctor_id, prescription_date, created_at) "
+            + "VALUES (1, 1, current_date, now())");
+
+        service = new DemandForecastService(jdbc, new DataSourceTransactionManager(database.getDataSource()),
+            mock(DemandForecastRepository.class), mock(InventoryOutboxService.class),
+            mock(MedicineCatalogueService.class), true, 364, 28, 90, 7, 0.95, 1, 0.2, 0.05, 0.1, 0.98, 2);
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        service.shutdown();
+        database.close();
+    }
+
+    @Test
+    void demandIsDatedByTheDispenseDate() {
+        jdbc.update("DELETE FROM prescription_items");
+        // Written three weeks ago, dispensed three days ago and edited today
+        addItem(1, 5, "now() - interval '21 days'", "now() - interval '3 days'");
+        addItem(1, 9, "now() - interval '2 days'", null);
+        addItem(2, 4, "now() - interval '2 days'", "now() - interval '1 day'");
+
+        LocalDate today = LocalDate.now();
+        List<Map<String, Object>> demand = jdbc.queryForList(DemandForecastService.DEMAND_QUERY + " ORDER BY medicine_id",
+            Date.valueOf(today.minusDays(7)), Date.valueOf(today), Date.valueOf(today.minusDays(97)), Date.valueOf(today),
+            Date.valueOf(today.minusDays(7)), Date.valueOf(today));
+
+        assertEquals(2, demand.size());
+        assertEquals(Date.valueOf(today.minusDays(3)), demand.get(0).get("day"));
+        assertEquals(5L, ((Number) demand.get(0).get("sum")).longValue());
+        assertEquals(Date.valueOf(today.minusDays(1)), demand.get(1).get("day"));
+    }
+
+    @Test
+    void demandWindowOnlyReadsThePartitionsItsItemsCanBeIn() throws Exception {
+        LocalDate to = LocalDate.now().minusMonths(5).withDayOfMonth(28);
+        LocalDate from = to.minusDays(27);
+        LocalDate createdFrom = from.minusDays(90);
+
+        String plan = jdbc.queryForObject("EXPLAIN (FORMAT JSON) " + DemandForecastService.DEMAND_QUERY, String.class,
+            Date.valueOf(from), Date.valueOf(to), Date.valueOf(createdFrom), Date.valueOf(to),
+            Date.valueOf(from), Date.valueOf(to));
+        Set<String> scanned = new TreeSet<>();
+        collectRelations(new ObjectMapper().readTree(plan), scanned);
+
+        Set<String> expected = new TreeSet<>();
+        for (YearMonth month = YearMonth.from(createdFrom); !month.isAfter(YearMonth.from(to)); month = month.plusMonths(1)) {
+            expected.add(month.format(SUFFIX));
+        }
+        scanned.removeIf(relation -> !relation.startsWith("prescription_items"));
+        assertEquals(expected, scanned);
+    }
+
+    @Test
+    void runIsSkippedWhileAnotherNodeHoldsTheLock() throws Exception {
+        try (Connection otherNode = database.getDataSource().getConnection();
+             Statement statement = otherNode.createStatement()) {
+            statement.execute("SELECT pg_advisory_lock(hashtext('pdms_demand_forecast'))");
+
+            service.updateForecasts(LocalDate.now().minusDays(1));
+            assertEquals(0L, jdbc.queryForObject("SELECT COUNT(*) FROM demand_forecasts", Long.class));
+
+            statement.execute("SELECT pg_advisory_unlock(hashtext('pdms_demand_forecast'))");
+        }
+
+        service.updateForecasts(LocalDate.now().minusDays(1));
+        assertEquals(2L, jdbc.queryForObject("SELECT COUNT(*) FROM demand_forecasts", Long.class));
+        assertEquals(Date.valueOf(LocalDate.now().minusDays(1)),
+            jdbc.queryForObject("SELECT MIN(last_day) FROM demand_forecasts", Date.class));
+    }
+
+    private static void addItem(long medicineId, int quantity, String createdAt, String dispensedAt) {
+        jdbc.update("INSERT INTO prescription_items (prescription_id, medicine_id, quantity, created_at, updated_at,"
+            + " is_dispensed, dispensed_at, version) VALUES (1, ?, ?, " + createdAt + ", now(), "
+            + (dispensedAt != null) + ", " + dispensedAt + ", 0)", medicineId, quantity);
+    }
+
+    private static void collectRelations(JsonNode node, Set<String> relations) {
+        if (node.has("Relation Name")) {
+            relations.add(node.get("Relation Name").asText());
+        }
+        for (JsonNode child : node) {
+            collectRelations(child, relations);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.pharma.pdms.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.repositories.InventoryOutboxRepository;
+import com.pharma.pdms.repositories.MedicineLotRepository;
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.support.JpaTestPersistence;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import com.pharma.pdms.utils.concurrency.OptimisticRetryExecutor;
+import com.pharma.pdms.utils.inventory.LotAllocationIndex;
+import com.pharma.pdms.utils.notification.NotificationFactory;
+import com.pharma.pdms.utils.notification.NotificationService;
+import com.pharma.pdms.utils.notification.NotificationType;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The expiry sweep against a real database, run by nodes that each have their own lot
+ * index: ranges are checkpointed chunk by chunk, a run a node left unfinished is picked up
+ * from its checkpoint, a stalled node loses its range to another, and one report goes out.
+ */
+class ExpirySweepServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+    private static JpaTestPersistence persistence;
+
+    private final NotificationService email = mock(NotificationService.class);
+    private final NotificationFactory notifications = mock(NotificationFactory.class);
+    private final List<ExpirySweepService> nodes = new ArrayList<>();
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        persistence = new JpaTestPersistence(database.getDataSource());
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        persistence.close();
+        database.close();
+    }
+
+    @BeforeEach
+    void clearStock() {
+        jdbc.update("DELETE FROM expiry_sweep_ranges");
+        jdbc.update("DELETE FROM inventory_outbox");
+        jdbc.update("DELETE FROM medicine_lots");
+        jdbc.update("DELETE FROM medicines");
+        when(notifications.createNotificationService(NotificationType.EMAIL)).thenReturn(email);
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodes.forEach(ExpirySweepService::shutdown);
+    }
+
+    @Test
+    void rangesAreCheckpointedAndOneReportIsSent() {
+        seed(50);
+        ExpirySweepService node = node(medicineService(), 7, 3, 60);
+
+        Map<String, Object> report = node.sweep(TODAY);
+
+        assertEquals(3L, report.get("ranges"));
+        assertEquals(50L, report.get("medicinesChecked"));
+        assertEquals(25L, report.get("medicinesDeactivated"));
+        assertEquals(50L, report.get("lotsQuarantined"));
+        assertEquals(25L * 6 + 25L * 10, report.get("unitsQuarantined"));
+        assertEquals(400.0 * 2, (Double) report.get("valueQuarantined"), 0.001);
+        // Every range ran to its end, and together they saw each candidate once
+        for (Map<String, Object> range : ranges()) {
+            assertEquals(true, range.get("completed"));
+            assertTrue((Long) range.get("last_id") <= (Long) range.get("range_end"));
+        }
+        assertEquals(50, count("SELECT COUNT(*) FROM inventory_outbox WHERE event_type = 'EXPIRED'"));
+        assertEquals(0, count("SELECT COUNT(*) FROM medicines WHERE expiry_date < current_date AND quantity_in_stock > 0"));
+        assertEquals(25, count("SELECT COUNT(*) FROM medicines WHERE is_active = false"));
+        verify(email).sendNotification(eq("admin@pharmacy.com"), eq("Expiry sweep report " + TODAY), anyString(),
+            eq("expiry-sweep:" + TODAY));
+
+        // Running the finished run again does nothing and sends nothing
+        assertTrue(node.sweep(TODAY).isEmpty());
+        assertEquals(50L, sum("medicines_checked"));
+        verify(email, times(1)).sendNotification(anyString(), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void interruptedRunIsResumedFromItsCheckpointOnStartup() throws Exception {
+        seed(30);
+        // The node goes down as it reaches the first medicine of its third chunk
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch crashed = new CountDownLatch(1);
+        MedicineService crashing = spy(medicineService());
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() == 11) {
+                crashed.countDown();
+                Thread.sleep(60_000);
+            }
+            return invocation.callRealMethod();
+        }).when(crashing).quarantineExpired(anyLong(), any());
+        ExpirySweepService first = node(crashing, 5, 1, 1);
+        Thread runner = new Thread(() -> first.sweep(TODAY));
+        runner.start();
+        assertTrue(crashed.await(10, TimeUnit.SECONDS));
+        first.shutdown();
+        runner.interrupt();
+        runner.join(10_000);
+
+        Map<String, Object> checkpoint = ranges().get(0);
+        assertEquals(false, checkpoint.get("completed"));
+        assertEquals(10L, checkpoint.get("medicines_checked"));
+        assertEquals(id(10), checkpoint.get("last_id"));
+
+        ExpirySweepService second = node(medicineService(), 5, 1, 1);
+        second.resumeInterrupted();
+        waitFor(() -> !second.getLastReport().isEmpty());
+
+        assertEquals(30L, second.getLastReport().get("medicinesChecked"));
+        assertEquals(1L, second.getLastReport().get("ranges"));
+        assertNotEquals(checkpoint.get("claimed_by"), ranges().get(0).get("claimed_by"));
+        assertEquals(30, count("SELECT COUNT(*) FROM inventory_outbox WHERE event_type = 'EXPIRED'"));
+        verify(email, times(1)).sendNotification(anyString(), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void stalledNodeLosesItsRangeAndItsLateCheckpointIsRefused() throws Exception {
+        seed(20);
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        // Stalls after its first checkpoint, on the first medicine of the next chunk, for longer than its lease
+        MedicineService stalling = spy(medicineService());
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() == 6) {
+                stalled.countDown();
+                resume.await();
+            }
+            return invocation.callRealMethod();
+        }).when(stalling).quarantineExpired(anyLong(), any());
+        ExpirySweepService first = node(stalling, 5, 1, 1);
+        ExpirySweepService second = node(medicineService(), 5, 1, 1);
+
+        CompletableFuture<Map<String, Object>> firstRun = CompletableFuture.supplyAsync(() -> first.sweep(TODAY));
+        assertTrue(stalled.await(10, TimeUnit.SECONDS));
+        String stalledOwner = (String) ranges().get(0).get("claimed_by");
+        // The second node waits out the lease, then takes the range over and finishes the run
+        Map<String, Object> report = second.sweep(TODAY);
+        resume.countDown();
+
+        assertEquals(20L, report.get("medicinesChecked"));
+        assertNotEquals(stalledOwner, ranges().get(0).get("claimed_by"));
+        // The first node finds its lease gone; it neither adds to the counts nor reports
+        assertTrue(firstRun.get(30, TimeUnit.SECONDS).isEmpty());
+        assertEquals(20L, sum("medicines_checked"));
+        assertEquals(20, count("SELECT COUNT(*) FROM inventory_outbox WHERE event_type = 'EXPIRED'"));
+        assertEquals(20 * 6 / 2 + 20 * 10 / 2, count("SELECT SUM(quarantined_quantity) FROM medicine_lots"));
+        verify(email, times(1)).sendNotification(anyString(), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void nodesSweepingTogetherShareTheRangesAndSendOneReport() throws Exception {
+        seed(60);
+        ExpirySweepService first = node(medicineService(), 5, 4, 60);
+        ExpirySweepService second = node(medicineService(), 5, 4, 60);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<Map<String, Object>> firstRun = pool.submit(() -> first.sweep(TODAY));
+        Future<Map<String, Object>> secondRun = pool.submit(() -> second.sweep(TODAY));
+        Map<String, Object> firstReport = firstRun.get(60, TimeUnit.SECONDS);
+        Map<String, Object> secondReport = secondRun.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        // Exactly one of them reports, with the totals of both
+        assertTrue(firstReport.isEmpty() != secondReport.isEmpty());
+        Map<String, Object> report = firstReport.isEmpty() ? secondReport : firstReport;
+        assertEquals(4L, report.get("ranges"));
+        assertEquals(60L, report.get("medicinesChecked"));
+        assertEquals(30L, report.get("medicinesDeactivated"));
+        assertEquals(60, count("SELECT COUNT(*) FROM inventory_outbox WHERE event_type = 'EXPIRED'"));
+        verify(email, times(1)).sendNotification(anyString(), anyString(), anyString(), anyString());
+    }
+
+    /**
+     * Candidates with an expired lot of 6 units and a fresh lot of 4, alternating with ones
+     * holding only an expired lot of 10, which the sweep deactivates
+     */
+    private static void seed(int medicines) {
+        jdbc.update("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock, expiry_date, category,"
+            + " is_active) SELECT 'Medicine ' || g, 'Acme', 2.00, 10, current_date - 2, 'Category ' || (g % 3), true"
+            + " FROM generate_series(1, ?) g", medicines);
+        jdbc.update("INSERT INTO medicine_lots (medicine_id, batch_number, expiry_date, quantity)"
+            + " SELECT id, 'OLD', current_date - 2, CASE WHEN id % 2 = 0 THEN 6 ELSE 10 END FROM medicines");
+        jdbc.update("INSERT INTO medicine_lots (medicine_id, batch_number, expiry_date, quantity)"
+            + " SELECT id, 'NEW', current_date + 200, 4 FROM medicines WHERE id % 2 = 0");
+        // Not a candidate: nothing has expired
+        jdbc.update("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock, expiry_date, category)"
+            + " VALUES ('Fresh', 'Acme', 2.00, 5, current_date + 30, 'Category 0')");
+    }
+
+    /**
+     * Id of the n-th candidate
+     */
+    private static long id(int n) {
+        return jdbc.queryForObject("SELECT MIN(id) FROM medicines", Long.class) + n - 1;
+    }
+
+    private ExpirySweepService node(MedicineService medicineService, int chunkSize, int parallelism, int leaseSeconds) {
+        ExpirySweepService node = new ExpirySweepService(medicineService, jdbc, notifications, true, chunkSize,
+            parallelism, 10_000, leaseSeconds, 20, "admin@pharmacy.com");
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * The medicine service of one node, with its own lot index
+     */
+    private static MedicineService medicineService() {
+        MedicineRepository medicineRepository = persistence.repository(MedicineRepository.class);
+        MedicineLotService lotService = new MedicineLotService(persistence.repository(MedicineLotRepository.class),
+            medicineRepository, new LotAllocationIndex());
+        InventoryOutboxService outboxService = new InventoryOutboxService(
+            persistence.repository(InventoryOutboxRepository.class), new ObjectMapper());
+        return new MedicineService(medicineRepository, outboxService,
+            new OptimisticRetryExecutor(persistence.getTransactionManager(), 5, 5, 50), lotService,
+            mock(MedicineCatalogueService.class), mock(ReservationService.class));
+    }
+
+    private static List<Map<String, Object>> ranges() {
+        return jdbc.queryForList("SELECT * FROM expiry_sweep_ranges ORDER BY range_index");
+    }
+
+    private static long sum(String column) {
+        return jdbc.queryForObject("SELECT SUM(" + column + ") FROM expiry_sweep_ranges", Long.class);
+    }
+
+    private static int count(String sql) {
+        return jdbc.queryForObject(sql, Integer.class);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.models.InventoryOutboxEvent;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.repositories.InventoryOutboxRepository;
+import com.pharma.pdms.utils.observer.MedicineInventorySubject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Relay cycles over an outbox whose claim hands out a medicine's pending events in id order,
+ * as InventoryOutboxClaimTest checks against the real query.
+ */
+class InventoryOutboxRelayTest {
+
+    private final List<InventoryOutboxEvent> outbox = new ArrayList<>();
+    private final List<Long> delivered = new ArrayList<>();
+    private final MedicineInventorySubject subject = new MedicineInventorySubject();
+    private InventoryOutboxRelay relay;
+
+    @BeforeEach
+    void newRelay() {
+        InventoryOutboxRepository repository = mock(InventoryOutboxRepository.class);
+        when(repository.claimPending(anyInt())).thenAnswer(invocation -> outbox.stream()
+            .filter(event -> event.getDeliveredAt() == null && event.getFailedAt() == null)
+            .limit(invocation.<Integer>getArgument(0))
+            .collect(Collectors.toList()));
+
+        InventoryOutboxService outboxService = mock(InventoryOutboxService.class);
+        when(outboxService.toMedicine(any())).thenAnswer(invocation -> {
+            InventoryOutboxEvent event = invocation.getArgument(0);
+            Medicine medicine = new Medicine();
+            medicine.setId(event.getMedicineId());
+            medicine.setVersion(event.getId());
+            return medicine;
+        });
+
+        relay = new InventoryOutboxRelay(repository, outboxService, subject,
+            mock(PlatformTransactionManager.class), 4, 200, 3, 7);
+    }
+
+    @AfterEach
+    void stopRelay() {
+        relay.shutdown();
+    }
+
+    @Test
+    void oneCycleDrainsEveryEventOfABusyMedicine() {
+        addEvents(1L, 450);
+        subject.registerObserver(medicine -> delivered.add(medicine.getVersion()));
+
+        relay.relay();
+
+        assertEquals(450, delivered.size());
+        for (int i = 0; i < delivered.size(); i++) {
+            assertEquals(i + 1L, delivered.get(i));
+        }
+        assertEquals(3L, relay.getStats().get("batches"));
+    }
+
+    @Test
+    void failedEventHoldsBackTheRestOfItsMedicineUntilRetried() {
+        addEvents(1L, 5);
+        boolean[] failOnce = {true};
+        subject.registerObserver(medicine -> {
+            if (medicine.getVersion() == 3L && failOnce[0]) {
+                failOnce[0] = false;
+                throw new IllegalStateException("observer unavailable");
+            }
+            delivered.add(medicine.getVersion());
+        });
+
+        relay.relay();
+        assertEquals(List.of(1L, 2L), delivered);
+        assertEquals(1, outbox.get(2).getAttempts());
+
+        relay.relay();
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), delivered);
+    }
+
+    private void addEvents(long medicineId, int count) {
+        for (int i = 0; i < count; i++) {
+            InventoryOutboxEvent event = new InventoryOutboxEvent();
+            event.setId((long) outbox.size() + 1);
+            event.setMedicineId(medicineId);
+            event.setEventType("UPDATED");
+            outbox.add(event);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.pharma.pdms.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.support.JpaTestPersistence;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import com.pharma.pdms.utils.catalogue.CatalogueChange;
+import com.pharma.pdms.utils.catalogue.CatalogueEntry;
+import com.pharma.pdms.utils.catalogue.MedicineCatalogue;
+import com.pharma.pdms.utils.datasource.ReplicaRoutingDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Catalogue coherence between nodes over a real database: one node publishes inside its
+ * write transaction, the other listens and applies what committed
+ */
+class MedicineCatalogueServiceTest {
+
+    private static final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+    private static JpaTestPersistence persistence;
+    private static TransactionTemplate tx;
+
+    private final List<MedicineCatalogueService> nodes = new ArrayList<>();
+    private long medicineId;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        persistence = new JpaTestPersistence(database.getDataSource());
+        tx = new TransactionTemplate(persistence.getTransactionManager());
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        persistence.close();
+        database.close();
+    }
+
+    @BeforeEach
+    void addMedicine() {
+        jdbc.update("DELETE FROM medicines");
+        medicineId = jdbc.queryForObject("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock,"
+            + " expiry_date, category) VALUES ('Amoxicillin', 'Acme', 1.50, 10, current_date + 365, 'Antibiotics')"
+            + " RETURNING id", Long.class);
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodes.forEach(MedicineCatalogueService::stop);
+    }
+
+    @Test
+    void otherNodesSeeAChangeOnlyOnceItCommits() throws Exception {
+        MedicineCatalogueService writer = node();
+        MedicineCatalogueService reader = listening(node());
+
+        tx.executeWithoutResult(status -> {
+            writer.publishChange(changePrice(new BigDecimal("9.99")));
+            status.setRollbackOnly();
+        });
+        tx.executeWithoutResult(status -> {
+            writer.publishChange(changePrice(new BigDecimal("2.25")));
+            // Published but not committed: the reader still has the old price
+            sleep(700);
+            assertEquals(new BigDecimal("1.50"), price(reader));
+        });
+
+        waitFor(() -> new BigDecimal("2.25").equals(price(reader)));
+        assertEquals(1L, reader.getStats().get("received"));
+        assertEquals(1L, reader.getStats().get("applied"));
+        assertEquals(2L, writer.getStats().get("published"));
+    }
+
+    @Test
+    void changesMissedWhileDisconnectedArePickedUpByTheReloadOnReconnect() throws Exception {
+        MedicineCatalogueService reader = listening(node());
+
+        jdbc.queryForList("SELECT pg_terminate_backend(pid) FROM pg_stat_activity"
+            + " WHERE query = 'LISTEN " + MedicineCatalogueService.CHANNEL + "'");
+        waitFor(() -> !(Boolean) reader.getStats().get("listening"));
+        // Written without a notification, as a change committed during the outage would look
+        jdbc.update("UPDATE medicines SET unit_price = 3.00, version = version + 1 WHERE id = ?", medicineId);
+
+        waitFor(() -> (Long) reader.getStats().get("reloads") == 2 && (Boolean) reader.getStats().get("listening"));
+        assertEquals(new BigDecimal("3.00"), price(reader));
+        assertEquals(1L, reader.getStats().get("disconnects"));
+    }
+
+    @Test
+    void changeOlderThanTheHeldEntryIsIgnored() throws Exception {
+        MedicineCatalogueService reader = listening(node());
+        CatalogueEntry held = reader.get(medicineId).get();
+
+        send(new CatalogueEntry(medicineId, "Stale", BigDecimal.ONE, 1, null, "Antibiotics", held.getVersion() - 1));
+        send(new CatalogueEntry(medicineId, "Newer", BigDecimal.TEN, 1, null, "Antibiotics", held.getVersion() + 1));
+        waitFor(() -> handled(reader) == 2);
+
+        assertEquals(1L, reader.getStats().get("ignoredAsStale"));
+        assertEquals(1L, reader.getStats().get("applied"));
+        assertEquals("Newer", reader.get(medicineId).get().getName());
+
+        // Replaying the older change after the newer one changes nothing either
+        send(new CatalogueEntry(medicineId, "Stale", BigDecimal.ONE, 1, null, "Antibiotics", held.getVersion()));
+        waitFor(() -> handled(reader) == 3);
+        assertEquals("Newer", reader.get(medicineId).get().getName());
+        assertEquals(2L, reader.getStats().get("ignoredAsStale"));
+    }
+
+    @Test
+    void reconcileReloadsWhenTheChecksumDisagrees() throws Exception {
+        MedicineCatalogueService reader = listening(node());
+
+        reader.reconcile();
+        assertEquals(0L, reader.getStats().get("reconcileMismatches"));
+
+        jdbc.update("UPDATE medicines SET name = 'Amoxicillin 500', version = version + 1 WHERE id = ?", medicineId);
+        jdbc.update("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock, expiry_date, category)"
+            + " VALUES ('Ibuprofen', 'Acme', 0.80, 40, current_date + 365, 'Analgesics')");
+        reader.reconcile();
+
+        assertEquals(1L, reader.getStats().get("reconcileMismatches"));
+        assertEquals(2L, reader.getStats().get("reloads"));
+        assertEquals(2, reader.getAll().size());
+        assertEquals("Amoxicillin 500", reader.get(medicineId).get().getName());
+        reader.reconcile();
+        assertEquals(1L, reader.getStats().get("reconcileMismatches"));
+    }
+
+    /**
+     * One application node with its own catalogue, not yet listening
+     */
+    private MedicineCatalogueService node() {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(database.getDataSource(),
+            Collections.emptyMap(), 1000, 1000);
+        MedicineCatalogueService node = new MedicineCatalogueService(new MedicineCatalogue(),
+            persistence.repository(MedicineRepository.class), routing, objectMapper, persistence.getTransactionManager());
+        ReflectionTestUtils.setField(node, "entityManager", persistence.getEntityManager());
+        nodes.add(node);
+        return node;
+    }
+
+    private static MedicineCatalogueService listening(MedicineCatalogueService node) throws InterruptedException {
+        node.start();
+        waitFor(() -> (Boolean) node.getStats().get("listening") && (Long) node.getStats().get("reloads") == 1);
+        return node;
+    }
+
+    /**
+     * Change the price in the current transaction, as MedicineService does before publishing
+     */
+    private Medicine changePrice(BigDecimal price) {
+        MedicineRepository medicines = persistence.repository(MedicineRepository.class);
+        Medicine medicine = medicines.findById(medicineId).get();
+        medicine.setUnitPrice(price);
+        return medicines.saveAndFlush(medicine);
+    }
+
+    private BigDecimal price(MedicineCatalogueService node) {
+        return node.get(medicineId).map(CatalogueEntry::getUnitPrice).orElse(null);
+    }
+
+    /**
+     * Changes applied or ignored; received counts a change before it is handled
+     */
+    private static long handled(MedicineCatalogueService node) {
+        return (Long) node.getStats().get("applied") + (Long) node.getStats().get("ignoredAsStale");
+    }
+
+    private static void send(CatalogueEntry entry) throws Exception {
+        String payload = objectMapper.writeValueAsString(new CatalogueChange(CatalogueChange.UPSERT, entry.getId(), entry,
+            "other-node", System.currentTimeMillis()));
+        jdbc.queryForList("SELECT pg_notify(?, ?)", MedicineCatalogueService.CHANNEL, payload);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.pharma.pdms.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.repositories.InventoryOutboxRepository;
+import com.pharma.pdms.repositories.MedicineLotRepository;
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.support.JpaTestPersistence;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import com.pharma.pdms.utils.concurrency.OptimisticRetryExecutor;
+import com.pharma.pdms.utils.inventory.LotAllocationIndex;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Concurrent stock adjustments through Hibernate's @Version check on Medicine, from two
+ * nodes that each keep their own lot index: every adjustment lands exactly once, and the
+ * ones that lost a race are retried rather than overwriting the winner.
+ */
+class MedicineStockConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ADJUSTMENTS_PER_THREAD = 25;
+    private static final int INITIAL_STOCK = 1000;
+
+    private static PostgresTestDatabase database;
+    private static JpaTestPersistence persistence;
+    private static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        persistence = new JpaTestPersistence(database.getDataSource());
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        persistence.close();
+        database.close();
+    }
+
+    @Test
+    void concurrentAdjustmentsAreRetriedWithoutLostUpdates() throws Exception {
+        long medicineId = addMedicine();
+        long versionBefore = jdbc.queryForObject("SELECT version FROM medicines WHERE id = ?", Long.class, medicineId);
+        OptimisticRetryExecutor retryExecutor = new OptimisticRetryExecutor(persistence.getTransactionManager(), 30, 5, 100);
+        MedicineService[] nodes = {node(retryExecutor), node(retryExecutor)};
+
+        // Even threads receive two units at a time, odd threads take one
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            MedicineService node = nodes[t % nodes.length];
+            int quantity = t % 2 == 0 ? 2 : -1;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < ADJUSTMENTS_PER_THREAD; i++) {
+                    assertTrue(node.updateStock(medicineId, quantity).isPresent());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        int adjustments = THREADS * ADJUSTMENTS_PER_THREAD;
+        int expectedStock = INITIAL_STOCK + THREADS / 2 * ADJUSTMENTS_PER_THREAD * (2 - 1);
+        assertEquals(expectedStock, jdbc.queryForObject(
+            "SELECT quantity_in_stock FROM medicines WHERE id = ?", Integer.class, medicineId));
+        assertEquals(expectedStock, jdbc.queryForObject(
+            "SELECT SUM(quantity) FROM medicine_lots WHERE medicine_id = ?", Integer.class, medicineId));
+        assertEquals(versionBefore + adjustments, jdbc.queryForObject(
+            "SELECT version FROM medicines WHERE id = ?", Long.class, medicineId));
+        // Conflicting attempts were rolled back with their outbox events
+        assertEquals(adjustments, jdbc.queryForObject(
+            "SELECT COUNT(*) FROM inventory_outbox WHERE medicine_id = ? AND event_type = ?",
+            Integer.class, medicineId, InventoryOutboxService.STOCK_ADJUSTED));
+
+        Map<String, Object> stats = retryExecutor.getStats(1);
+        System.out.printf("concurrency.stock_adjustments adjustments=%d conflicts=%s retries=%s exhausted=%s%n",
+            adjustments, stats.get("conflicts"), stats.get("retries"), stats.get("exhausted"));
+        assertEquals((long) adjustments, stats.get("executions"));
+        assertEquals(stats.get("conflicts"), stats.get("retries"));
+        assertEquals(0L, stats.get("exhausted"));
+        assertTrue((Long) stats.get("conflicts") > 0, "adjustments never collided; the test did not exercise retries");
+    }
+
+    static long addMedicine() {
+        long medicineId = jdbc.queryForObject("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock,"
+            + " expiry_date, batch_number, category) VALUES ('Amoxicillin', 'Acme', 1.50, ?, current_date + 365, 'B-1',"
+            + " 'Antibiotics') RETURNING id", Long.class, INITIAL_STOCK);
+        jdbc.update("INSERT INTO medicine_lots (medicine_id, batch_number, expiry_date, quantity)"
+            + " VALUES (?, 'B-1', current_date + 365, ?)", medicineId, INITIAL_STOCK);
+        return medicineId;
+    }
+
+    /**
+     * One application node: its own lot index over the shared tables
+     */
+    static MedicineService node(OptimisticRetryExecutor retryExecutor) {
+        MedicineRepository medicineRepository = persistence.repository(MedicineRepository.class);
+        MedicineLotService lotService = new MedicineLotService(persistence.repository(MedicineLotRepository.class),
+            medicineRepository, new LotAllocationIndex());
+        InventoryOutboxService outboxService = new InventoryOutboxService(
+            persistence.repository(InventoryOutboxRepository.class), new ObjectMapper());
+        return new MedicineService(medicineRepository, outboxService, retryExecutor, lotService,
+            mock(MedicineCatalogueService.class), mock(ReservationService.class));
+    }
+}
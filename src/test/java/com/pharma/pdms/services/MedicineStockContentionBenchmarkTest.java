@@ -0,0 +1,120 @@
+package com.pharma.pdms.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.repositories.InventoryOutboxRepository;
+import com.pharma.pdms.repositories.MedicineLotRepository;
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.support.JpaTestPersistence;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import com.pharma.pdms.utils.concurrency.OptimisticRetryExecutor;
+import com.pharma.pdms.utils.inventory.LotAllocationIndex;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Stock adjustments per second with version checks and retries, against the same
+ * adjustments serialised by a SELECT ... FOR UPDATE on the medicine row, both on one hot
+ * medicine and spread over many. Run with -Pbenchmark.
+ */
+@Tag("benchmark")
+class MedicineStockContentionBenchmarkTest {
+
+    private static final int THREADS = 8;
+    private static final int ADJUSTMENTS_PER_THREAD = 100;
+    private static final int SPREAD_MEDICINES = 50;
+
+    @Test
+    void optimisticRetryAgainstRowLock() throws Exception {
+        try (PostgresTestDatabase database = PostgresTestDatabase.migrated();
+             JpaTestPersistence persistence = new JpaTestPersistence(database.getDataSource())) {
+            JdbcTemplate jdbc = database.getJdbcTemplate();
+            jdbc.update("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock, expiry_date,"
+                + " batch_number, category) SELECT 'Medicine ' || g, 'Acme', 1.00, 100000, current_date + 365, 'B-1',"
+                + " 'General' FROM generate_series(1, ?) g", SPREAD_MEDICINES);
+            jdbc.update("INSERT INTO medicine_lots (medicine_id, batch_number, expiry_date, quantity)"
+                + " SELECT id, 'B-1', current_date + 365, 100000 FROM medicines");
+
+            for (int medicines : new int[] {1, SPREAD_MEDICINES}) {
+                // The first pass warms up Hibernate and the JIT and is not reported
+                for (boolean report : new boolean[] {false, true}) {
+                    run(persistence, medicines, false, report);
+                    run(persistence, medicines, true, report);
+                }
+            }
+        }
+    }
+
+    private static void run(JpaTestPersistence persistence, int medicines, boolean rowLock, boolean report) throws Exception {
+        OptimisticRetryExecutor retryExecutor = new OptimisticRetryExecutor(persistence.getTransactionManager(), 50, 5, 100);
+        MedicineService service = node(persistence, retryExecutor);
+        TransactionTemplate tx = new TransactionTemplate(persistence.getTransactionManager());
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < ADJUSTMENTS_PER_THREAD; i++) {
+                    long medicineId = 1 + (thread * ADJUSTMENTS_PER_THREAD + i) % medicines;
+                    int quantity = i % 2 == 0 ? 1 : -1;
+                    if (rowLock) {
+                        // The adjustment joins this transaction and runs once, behind the lock
+                        tx.executeWithoutResult(status -> {
+                            persistence.getEntityManager()
+                                .createNativeQuery("SELECT id FROM medicines WHERE id = ? FOR UPDATE")
+                                .setParameter(1, medicineId)
+                                .getResultList();
+                            service.updateStock(medicineId, quantity);
+                        });
+                    } else {
+                        service.updateStock(medicineId, quantity);
+                    }
+                }
+                return null;
+            }));
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsedMillis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        pool.shutdown();
+
+        Map<String, Object> stats = retryExecutor.getStats(1);
+        assertEquals(0L, stats.get("exhausted"));
+        int adjustments = THREADS * ADJUSTMENTS_PER_THREAD;
+        if (!report) {
+            return;
+        }
+        System.out.printf("concurrency.benchmark mode=%s medicines=%d threads=%d adjustments=%d elapsed_ms=%d"
+                + " adjustments_per_s=%d conflicts=%s retries=%s%n",
+            rowLock ? "row_lock" : "optimistic", medicines, THREADS, adjustments, elapsedMillis,
+            adjustments * 1000L / elapsedMillis, stats.get("conflicts"), stats.get("retries"));
+    }
+
+    private static MedicineService node(JpaTestPersistence persistence, OptimisticRetryExecutor retryExecutor) {
+        MedicineRepository medicineRepository = persistence.repository(MedicineRepository.class);
+        MedicineLotService lotService = new MedicineLotService(persistence.repository(MedicineLotRepository.class),
+            medicineRepository, new LotAllocationIndex());
+        InventoryOutboxService outboxService = new InventoryOutboxService(
+            persistence.repository(InventoryOutboxRepository.class), new ObjectMapper());
+        return new MedicineService(medicineRepository, outboxService, retryExecutor, lotService,
+            mock(MedicineCatalogueService.class), mock(ReservationService.class));
+    }
+}
@@ -0,0 +1,248 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.models.NotificationDelivery;
+import com.pharma.pdms.repositories.NotificationDeliveryRepository;
+import com.pharma.pdms.support.JpaTestPersistence;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import com.pharma.pdms.utils.notification.CircuitBreaker;
+import com.pharma.pdms.utils.notification.EmailNotificationService;
+import com.pharma.pdms.utils.notification.NotificationType;
+import com.pharma.pdms.utils.notification.PushNotificationService;
+import com.pharma.pdms.utils.notification.SmsNotificationService;
+import com.pharma.pdms.utils.notification.StubNotificationGateway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The delivery engine against a real queue table, with the stub gateway standing in for the
+ * providers: failures back off and dead-letter, and each channel's rate limit, bulkhead and
+ * breaker bound what a dispatch claims and sends
+ */
+class NotificationDeliveryServiceTest {
+
+    private static PostgresTestDatabase database;
+    private static JpaTestPersistence persistence;
+    private static JdbcTemplate jdbc;
+
+    private NotificationDeliveryService service;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        persistence = new JpaTestPersistence(database.getDataSource());
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        persistence.close();
+        database.close();
+    }
+
+    @BeforeEach
+    void clearQueue() {
+        jdbc.update("DELETE FROM notification_deliveries");
+    }
+
+    @AfterEach
+    void shutdown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void failuresAreRetriedWithGrowingBackoffThenDeadLettered() throws Exception {
+        service = service(environment().withProperty("pdms.notifications.stub.sms.failure-rate", "1.0"), 3, 400);
+        service.enqueue(NotificationType.SMS, "555-0100", "Low stock", "Amoxicillin is low", "low-stock:1");
+
+        // Attempt n waits between half and all of 400 ms * 2^(n-1)
+        long[][] backoffBounds = {{200, 400}, {400, 800}};
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            int expectedAttempts = attempt;
+            dispatchUntil(() -> failedAfter(expectedAttempts));
+            double waitMillis = jdbc.queryForObject("SELECT EXTRACT(EPOCH FROM next_attempt_at - now()) * 1000"
+                + " FROM notification_deliveries", Double.class);
+            long[] bounds = backoffBounds[attempt - 1];
+            assertTrue(waitMillis <= bounds[1] && waitMillis > bounds[0] - 100,
+                "attempt " + attempt + " waits " + waitMillis + " ms");
+
+            // Not due yet: another dispatch leaves it alone
+            service.dispatch();
+            assertEquals(attempt, attempts());
+        }
+
+        dispatchUntil(() -> "DEAD".equals(status()));
+        assertEquals(3, attempts());
+        List<NotificationDelivery> deadLetters = service.getDeadLetters(10);
+        assertEquals(1, deadLetters.size());
+        assertTrue(deadLetters.get(0).getLastError().contains("rejected"));
+        Map<String, Object> sms = channelStats("SMS");
+        assertEquals(2L, sms.get("failedAttempts"));
+        assertEquals(1L, sms.get("deadLettered"));
+
+        // A dead letter stays put until retried by hand, then gets a fresh set of attempts
+        service.dispatch();
+        assertEquals("DEAD", status());
+        assertTrue(service.retryDeadLetter(deadLetters.get(0).getId()));
+        assertEquals("PENDING", status());
+        assertEquals(0, attempts());
+    }
+
+    @Test
+    void duplicateKeyIsQueuedOnce() {
+        service = service(environment(), 3, 1000);
+
+        assertTrue(service.enqueue(NotificationType.EMAIL, "a@example.com", "Expiring", "Batch B-1", "expiry:1"));
+        assertFalse(service.enqueue(NotificationType.EMAIL, "a@example.com", "Expiring", "Batch B-1", "expiry:1"));
+        assertEquals(1, count("PENDING"));
+    }
+
+    @Test
+    void rateLimitSpreadsABacklogOut() throws Exception {
+        service = service(environment()
+            .withProperty("pdms.notifications.sms.concurrency", "10")
+            .withProperty("pdms.notifications.sms.rate-per-second", "10")
+            .withProperty("pdms.notifications.sms.burst", "3"), 3, 1000);
+        for (int i = 0; i < 13; i++) {
+            service.enqueue(NotificationType.SMS, "555-01" + i, "Refill", "Your prescription is ready", null);
+        }
+
+        long started = System.nanoTime();
+        service.dispatch();
+        waitFor(() -> count("SENT") == 3);
+        assertEquals(10, count("PENDING"));
+
+        dispatchUntil(() -> count("SENT") == 13);
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        // Three at once, then ten more at ten a second
+        assertTrue(elapsedMillis >= 800, "13 sent in " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void saturatedChannelOnlyClaimsWhatItCanSend() throws Exception {
+        service = service(environment()
+            .withProperty("pdms.notifications.sms.concurrency", "2")
+            .withProperty("pdms.notifications.stub.sms.latency-ms", "500"), 3, 1000);
+        for (int i = 0; i < 5; i++) {
+            service.enqueue(NotificationType.SMS, "555-01" + i, "Refill", "Your prescription is ready", null);
+            service.enqueue(NotificationType.EMAIL, i + "@example.com", "Refill", "Your prescription is ready", null);
+        }
+
+        service.dispatch();
+        // Two SMS in flight hold the channel's slots; the rest wait unclaimed
+        assertEquals(2, jdbc.queryForObject("SELECT COUNT(*) FROM notification_deliveries"
+            + " WHERE channel = 'SMS' AND lease_until IS NOT NULL", Integer.class));
+        assertEquals(2, channelStats("SMS").get("inFlight"));
+        service.dispatch();
+        assertEquals(2, jdbc.queryForObject("SELECT SUM(attempts) FROM notification_deliveries"
+            + " WHERE channel = 'SMS'", Integer.class));
+
+        // The slow channel does not hold up email
+        dispatchUntil(() -> jdbc.queryForObject("SELECT COUNT(*) FROM notification_deliveries"
+            + " WHERE channel = 'EMAIL' AND status = 'SENT'", Integer.class) == 5);
+        assertTrue(jdbc.queryForObject("SELECT COUNT(*) FROM notification_deliveries"
+            + " WHERE channel = 'SMS' AND status = 'SENT'", Integer.class) < 5);
+        dispatchUntil(() -> count("SENT") == 10);
+    }
+
+    @Test
+    void openBreakerPutsClaimsBackWithoutUsingAttempts() throws Exception {
+        service = service(environment()
+            .withProperty("pdms.notifications.push.concurrency", "1")
+            .withProperty("pdms.notifications.push.breaker-failure-threshold", "2")
+            .withProperty("pdms.notifications.push.breaker-open-ms", "1000")
+            .withProperty("pdms.notifications.stub.push.failure-rate", "1.0"), 10, 1);
+        for (int i = 0; i < 4; i++) {
+            service.enqueue(NotificationType.PUSH, "device-" + i, "Refill", "Your prescription is ready", null);
+        }
+
+        dispatchUntil(() -> "OPEN".equals(breakerStats("PUSH").get("state").toString()));
+        for (int i = 0; i < 4; i++) {
+            service.dispatch();
+        }
+
+        // Two sends failed and opened the breaker; what was claimed since went back untouched,
+        // due again when the breaker lets a probe through
+        assertEquals(2, jdbc.queryForObject("SELECT SUM(attempts) FROM notification_deliveries", Integer.class));
+        assertTrue((Long) breakerStats("PUSH").get("rejectedCalls") >= 4);
+        assertTrue(jdbc.queryForObject("SELECT COUNT(*) FROM notification_deliveries"
+            + " WHERE next_attempt_at > now() + interval '500 milliseconds'", Integer.class) >= 1);
+
+        // Once open-ms has passed a probe goes out, fails, and the breaker opens again
+        dispatchUntil(() -> (Long) breakerStats("PUSH").get("timesOpened") == 2L);
+        assertEquals(CircuitBreaker.State.OPEN, breakerStats("PUSH").get("state"));
+        assertEquals(3, jdbc.queryForObject("SELECT SUM(attempts) FROM notification_deliveries", Integer.class));
+    }
+
+    private static MockEnvironment environment() {
+        return new MockEnvironment();
+    }
+
+    private static NotificationDeliveryService service(MockEnvironment environment, int maxAttempts, long baseBackoffMillis) {
+        StubNotificationGateway gateway = new StubNotificationGateway(environment);
+        return new NotificationDeliveryService(persistence.repository(NotificationDeliveryRepository.class), jdbc,
+            new EmailNotificationService(gateway), new SmsNotificationService(gateway), new PushNotificationService(gateway),
+            environment, 50, maxAttempts, baseBackoffMillis, 60_000, 60, 7);
+    }
+
+    private boolean failedAfter(int expectedAttempts) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM notification_deliveries WHERE attempts = ?"
+            + " AND lease_until IS NULL AND last_error IS NOT NULL", Integer.class, expectedAttempts) == 1;
+    }
+
+    private int attempts() {
+        return jdbc.queryForObject("SELECT attempts FROM notification_deliveries", Integer.class);
+    }
+
+    private String status() {
+        return jdbc.queryForObject("SELECT status FROM notification_deliveries", String.class);
+    }
+
+    private int count(String status) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM notification_deliveries WHERE status = ?", Integer.class, status);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> channelStats(String channel) {
+        return ((Map<String, Map<String, Object>>) service.getStats().get("channels")).get(channel);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> breakerStats(String channel) {
+        return (Map<String, Object>) channelStats(channel).get("breaker");
+    }
+
+    /**
+     * Run the poller as the scheduler would until the condition holds
+     */
+    private void dispatchUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            service.dispatch();
+            Thread.sleep(20);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Retention against real partitions: items are partitioned by created_at, so they must expire
+ * with their parent's month rather than their own.
+ */
+class PartitionMaintenanceServiceTest {
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("'_p'yyyy_MM");
+
+    private PostgresTestDatabase database;
+    private JdbcTemplate jdbc;
+    private PartitionMaintenanceService service;
+    private YearMonth cutoff;
+
+    @BeforeEach
+    void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        service = new PartitionMaintenanceService(jdbc, new DataSourceTransactionManager(database.getDataSource()),
+            3, 6, true);
+        cutoff = YearMonth.now().minusMonths(6);
+
+        for (String table : PartitionMaintenanceService.PARTITIONED_TABLES) {
+            jdbc.queryForList("SELECT pdms_ensure_month_partitions(?, (current_date - interval '12 months')::date, 3)",
+                table);
+        }
+        jdbc.update("INSERT INTO patients (first_name, last_name, phone) VALUES ('Ann', 'Lee', '555-0100')");
+        jdbc.update("INSERT INTO doctors (first_name, last_name, specialization, license_number, phone) "
+            + "VALUES ('Bo', 'Kim', 'GP', 'LIC-1', '555-0101')");
+        jdbc.update("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock, expiry_date, category) "
+            + "VALUES ('Amoxicillin', 'Acme', 1.50, 100, current_date + 365, 'Antibiotics')");
+    }
+
+    @AfterEach
+    void stopDatabase() throws Exception {
+        database.close();
+    }
+
+    @Test
+    void itemsInRetainedMonthsExpireWithTheirParent() {
+        // Prescription from an expired month, item added in the current month
+        jdbc.update("INSERT INTO prescriptions (id, patient_id, doctor_id, prescription_date, created_at) "
+            + "VALUES (1, 1, 1, current_date - interval '9 months', now() - interval '9 months')");
+        jdbc.update("INSERT INTO prescription_items (prescription_id, medicine_id, quantity, created_at, is_dispensed) "
+            + "VALUES (1, 1, 2, now() - interval '9 months', true), (1, 1, 1, now(), false)");
+        // Unrelated current prescription and item are untouched
+        jdbc.update("INSERT INTO prescriptions (id, patient_id, doctor_id, prescription_date, created_at) "
+            + "VALUES (2, 1, 1, current_date, now())");
+        jdbc.update("INSERT INTO prescription_items (prescription_id, medicine_id, quantity, created_at, is_dispensed) "
+            + "VALUES (2, 1, 1, now(), false)");
+
+        List<String> detached = service.expire(cutoff);
+
+        assertTrue(detached.contains("prescriptions" + YearMonth.now().minusMonths(9).format(SUFFIX)));
+        assertTrue(detached.contains("prescription_items" + YearMonth.now().minusMonths(9).format(SUFFIX)));
+        assertEquals(List.of(2L), jdbc.queryForList("SELECT prescription_id FROM prescription_items", Long.class));
+        assertEquals(List.of(2L), jdbc.queryForList("SELECT id FROM prescriptions", Long.class));
+    }
+
+    @Test
+    void oldItemMonthIsKeptWhileItHoldsItemsOfARetainedParent() {
+        // Item written before its (later dated) prescription's month
+        String itemMonth = "prescription_items" + YearMonth.now().minusMonths(8).format(SUFFIX);
+        jdbc.update("INSERT INTO prescriptions (id, patient_id, doctor_id, prescription_date, created_at) "
+            + "VALUES (1, 1, 1, current_date, now())");
+        jdbc.update("INSERT INTO prescription_items (prescription_id, medicine_id, quantity, created_at, is_dispensed) "
+            + "VALUES (1, 1, 1, now() - interval '8 months', false)");
+
+        List<String> detached = service.expire(cutoff);
+
+        assertFalse(detached.contains(itemMonth));
+        assertTrue(service.getPartitions("prescription_items").contains(itemMonth));
+        assertEquals(1, jdbc.queryForObject("SELECT COUNT(*) FROM prescription_items", Integer.class));
+
+        // Once the parent itself expires, the month goes too
+        jdbc.update("DELETE FROM prescriptions WHERE id = 1");
+        assertTrue(service.expire(cutoff).contains(itemMonth));
+    }
+}
@@ -0,0 +1,189 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.models.PurchaseOrder;
+import com.pharma.pdms.repositories.PurchaseOrderRepository;
+import com.pharma.pdms.support.JpaTestPersistence;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Purchase order generation against a real catalogue: who gets ordered, how much, and what
+ * a second run in the same cycle adds
+ */
+class PurchaseOrderServiceTest {
+
+    private static final long NORTH = 1;
+    private static final long SOUTH = 2;
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+    private static JpaTestPersistence persistence;
+    private static PurchaseOrderService service;
+    private static TransactionTemplate tx;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        persistence = new JpaTestPersistence(database.getDataSource());
+        tx = new TransactionTemplate(persistence.getTransactionManager());
+        jdbc.update("INSERT INTO suppliers (id, name, phone) VALUES (1, 'North', '555-0200'), (2, 'South', '555-0201')");
+        // Lead time 7 days, cover 14 days
+        service = new PurchaseOrderService(persistence.repository(PurchaseOrderRepository.class), jdbc,
+            persistence.getTransactionManager(), "daily", 7, 14);
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        persistence.close();
+        database.close();
+    }
+
+    @BeforeEach
+    void resetCatalogue() {
+        jdbc.update("DELETE FROM purchase_order_lines");
+        jdbc.update("DELETE FROM purchase_orders");
+        jdbc.update("DELETE FROM demand_forecasts");
+        jdbc.update("DELETE FROM medicines");
+        jdbc.update("INSERT INTO medicines (id, name, manufacturer, unit_price, quantity_in_stock, reorder_level,"
+            + " expiry_date, category, supplier_id, is_active) VALUES"
+            + " (1, 'Amoxicillin', 'Acme', 1.50, 2, 10, current_date + 365, 'Antibiotics', 1, true),"
+            + " (2, 'Ibuprofen', 'Acme', 0.80, 50, 10, current_date + 365, 'Analgesics', 1, true),"
+            + " (3, 'Insulin', 'Novo', 12.00, 0, 5, current_date + 365, 'Hormones', 2, true),"
+            + " (4, 'Saline', 'Baxter', 2.00, 0, 3, current_date + 365, 'Fluids', NULL, true),"
+            + " (5, 'Retired', 'Acme', 1.00, 0, 10, current_date + 365, 'Analgesics', 1, false),"
+            + " (6, 'Untracked', 'Acme', 1.00, 0, NULL, current_date + 365, 'Analgesics', 1, true)");
+        // Insulin sells 14 over the 7-day lead time, so 28 over the 14-day cover
+        jdbc.update("INSERT INTO demand_forecasts (medicine_id, level, trend, seasonal_factors, error_variance,"
+            + " observations, lead_time_demand) VALUES (3, 2, 0, '', 1, 90, 14)");
+    }
+
+    @Test
+    void oneStatementPassOrdersEveryLowMedicineUpToItsCover() {
+        Map<String, Object> summary = service.generate();
+
+        assertEquals(2, summary.get("ordersCreated"));
+        assertEquals(2, summary.get("linesAdded"));
+        assertEquals(1L, summary.get("lowStockWithoutSupplier"));
+        // Reorder level plus cover demand (the reorder level again without a forecast), less stock
+        assertEquals(Map.of(1L, 18), lines(NORTH));
+        assertEquals(Map.of(3L, 33), lines(SOUTH));
+        assertEquals(Map.of("line_count", 1, "total_amount", "27.00"), totals(NORTH));
+        assertEquals(Map.of("line_count", 1, "total_amount", "396.00"), totals(SOUTH));
+    }
+
+    @Test
+    void secondRunInTheCycleAddsNothingNew() {
+        service.generate();
+        List<Map<String, Object>> before = jdbc.queryForList("SELECT * FROM purchase_orders ORDER BY id");
+
+        Map<String, Object> summary = service.generate();
+
+        assertEquals(0, summary.get("ordersCreated"));
+        assertEquals(0, summary.get("linesAdded"));
+        // Not even the version moves
+        assertEquals(before, jdbc.queryForList("SELECT * FROM purchase_orders ORDER BY id"));
+        assertEquals(2, count("SELECT COUNT(*) FROM purchase_order_lines"));
+    }
+
+    @Test
+    void stockOnOrderIsNettedOff() {
+        service.generate();
+        // Amoxicillin sells out, but the 18 on order already cover its reorder level; ibuprofen goes low
+        jdbc.update("UPDATE medicines SET quantity_in_stock = 0 WHERE id = 1");
+        jdbc.update("UPDATE medicines SET quantity_in_stock = 5 WHERE id = 2");
+
+        Map<String, Object> summary = service.generate();
+
+        assertEquals(0, summary.get("ordersCreated"));
+        assertEquals(1, summary.get("linesAdded"));
+        assertEquals(Map.of(1L, 18, 2L, 15), lines(NORTH));
+        assertEquals(Map.of("line_count", 2, "total_amount", "39.00"), totals(NORTH));
+
+        // Received stock no longer counts as on order
+        jdbc.update("UPDATE purchase_orders SET status = 'RECEIVED' WHERE supplier_id = ?", NORTH);
+        jdbc.update("UPDATE medicines SET quantity_in_stock = 4 WHERE id = 1");
+        service.generate();
+        assertEquals(Map.of(1L, 16, 2L, 15), linesOf(orderId(NORTH, "DRAFT")));
+    }
+
+    @Test
+    void medicineGoingLowAfterTheDraftWasSentGoesOnAFollowUpDraft() {
+        service.generate();
+        long sent = orderId(NORTH, "DRAFT");
+        tx.executeWithoutResult(status -> service.updateStatus(sent, PurchaseOrder.Status.SENT));
+        jdbc.update("UPDATE medicines SET quantity_in_stock = 5 WHERE id = 2");
+
+        Map<String, Object> summary = service.generate();
+
+        assertEquals(1, summary.get("ordersCreated"));
+        assertEquals(1, summary.get("linesAdded"));
+        long followUp = orderId(NORTH, "DRAFT");
+        assertEquals(Map.of(1L, 18), linesOf(sent));
+        // Amoxicillin is on the sent order and is not ordered twice
+        assertEquals(Map.of(2L, 15), linesOf(followUp));
+        assertEquals(3, service.getOrdersForCycle(null).size());
+
+        assertEquals(0, service.generate().get("ordersCreated"));
+    }
+
+    @Test
+    void cancelledMedicinesWaitForTheNextCycle() {
+        service.generate();
+        long cancelled = orderId(SOUTH, "DRAFT");
+        tx.executeWithoutResult(status -> service.updateStatus(cancelled, PurchaseOrder.Status.CANCELLED));
+
+        Map<String, Object> summary = service.generate();
+
+        assertEquals(0, summary.get("ordersCreated"));
+        assertEquals(0, summary.get("linesAdded"));
+        assertEquals(0, count("SELECT COUNT(*) FROM purchase_orders WHERE supplier_id = 2 AND status = 'DRAFT'"));
+    }
+
+    /**
+     * Medicine id to quantity across the supplier's orders this cycle
+     */
+    private static Map<Long, Integer> lines(long supplierId) {
+        return linesWhere("o.supplier_id = ?", supplierId);
+    }
+
+    private static Map<Long, Integer> linesOf(long orderId) {
+        return linesWhere("o.id = ?", orderId);
+    }
+
+    private static Map<Long, Integer> linesWhere(String condition, long value) {
+        Map<Long, Integer> lines = new TreeMap<>();
+        jdbc.query("SELECT l.medicine_id, l.quantity FROM purchase_order_lines l"
+                + " JOIN purchase_orders o ON o.id = l.purchase_order_id WHERE " + condition,
+            resultSet -> {
+                lines.put(resultSet.getLong(1), resultSet.getInt(2));
+            }, value);
+        return lines;
+    }
+
+    private static Map<String, Object> totals(long supplierId) {
+        return jdbc.queryForObject("SELECT line_count, total_amount FROM purchase_orders WHERE supplier_id = ?",
+            (resultSet, rowNum) -> Map.of("line_count", resultSet.getInt(1),
+                "total_amount", resultSet.getBigDecimal(2).toPlainString()), supplierId);
+    }
+
+    private static long orderId(long supplierId, String status) {
+        return jdbc.queryForObject("SELECT id FROM purchase_orders WHERE supplier_id = ? AND status = ?", Long.class,
+            supplierId, status);
+    }
+
+    private static int count(String sql) {
+        return jdbc.queryForObject(sql, Integer.class);
+    }
+}
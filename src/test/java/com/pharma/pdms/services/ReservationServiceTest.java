@@ -0,0 +1,208 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.exceptions.InsufficientStockException;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.models.PrescriptionItem;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import com.pharma.pdms.utils.concurrency.OptimisticRetryExecutor;
+import com.pharma.pdms.utils.datasource.ReplicaRoutingDataSource;
+import com.pharma.pdms.utils.inventory.ReservationLedger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reservations against a real database: they are shared through prescription_items, lapse
+ * by date, are serialised on the medicine's version and are mirrored in each node's index.
+ */
+class ReservationServiceTest {
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+    private static DataSourceTransactionManager transactionManager;
+    private static TransactionTemplate tx;
+
+    private ReservationService reservations;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        transactionManager = new DataSourceTransactionManager(database.getDataSource());
+        tx = new TransactionTemplate(transactionManager);
+
+        jdbc.update("INSERT INTO patients (first_name, last_name, phone) VALUES ('Ann', 'Lee', '555-0100')");
+        jdbc.update("INSERT INTO doctors (first_name, last_name, specialization, license_number, phone) "
+            + "VALUES ('Bo', 'Kim', 'GP', 'LIC-1', '555-0101')");
+        jdbc.update("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock, expiry_date, category) "
+            + "VALUES ('Amoxicillin', 'Acme', 1.50, 10, current_date + 365, 'Antibiotics')");
+        jdbc.update("INSERT INTO prescriptions (patient_id, doctor_id, prescription_date, created_at) "
+            + "VALUES (1, 1, current_date, now())");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.close();
+    }
+
+    @BeforeEach
+    void newNode() {
+        jdbc.update("DELETE FROM prescription_items");
+        reservations = node();
+        reservations.load();
+    }
+
+    @AfterEach
+    void stopNode() {
+        reservations.stop();
+    }
+
+    @Test
+    void reservationsHoldStockAgainstOtherReductions() {
+        tx.executeWithoutResult(status -> addItem(reservations, 6));
+
+        assertEquals(4L, reservations.getAvailableToPromise(1L));
+        assertThrows(InsufficientStockException.class,
+            () -> tx.executeWithoutResult(status -> addItem(reservations, 5)));
+        assertThrows(InsufficientStockException.class,
+            () -> tx.executeWithoutResult(status -> reservations.checkAvailable(medicine(10), 5)));
+        tx.executeWithoutResult(status -> reservations.checkAvailable(medicine(10), 4));
+    }
+
+    @Test
+    void reservingBumpsTheMedicineVersion() {
+        long before = jdbc.queryForObject("SELECT version FROM medicines WHERE id = 1", Long.class);
+        tx.executeWithoutResult(status -> addItem(reservations, 1));
+
+        assertEquals(before + 1, jdbc.queryForObject("SELECT version FROM medicines WHERE id = 1", Long.class));
+    }
+
+    @Test
+    void lapsedReservationsNoLongerHoldStock() {
+        long itemId = tx.execute(status -> addItem(reservations, 6));
+        jdbc.update("UPDATE prescription_items SET reserved_until = now() - interval '1 minute'");
+        reservations.apply(List.of(String.valueOf(itemId)));
+
+        assertEquals(10L, reservations.getAvailableToPromise(1L));
+        assertEquals(0L, reservations.getStats().get("active"));
+    }
+
+    @Test
+    void indexIsRebuiltFromTheTableOnStart() {
+        tx.executeWithoutResult(status -> addItem(reservations, 3));
+        tx.executeWithoutResult(status -> addItem(reservations, 2));
+
+        ReservationService restarted = node();
+        restarted.load();
+        assertEquals(5L, restarted.getAvailableToPromise(1L));
+        assertEquals(2L, restarted.getStats().get("active"));
+    }
+
+    @Test
+    void otherNodesReservationsReachTheIndexByNotification() throws Exception {
+        reservations.start();
+        waitFor(() -> Boolean.TRUE.equals(reservations.getStats().get("listening")));
+
+        ReservationService otherNode = node();
+        long itemId = tx.execute(status -> addItem(otherNode, 4));
+        waitFor(() -> reservations.getAvailableToPromise(1L) == 6L);
+
+        // Dispensed elsewhere: the hold is cleared on the row and dropped here
+        jdbc.update("UPDATE prescription_items SET reserved_quantity = 0, reserved_until = NULL WHERE id = ?", itemId);
+        waitFor(() -> reservations.getAvailableToPromise(1L) == 10L);
+    }
+
+    @Test
+    void concurrentReservationsCannotOversell() throws Exception {
+        OptimisticRetryExecutor retryExecutor = new OptimisticRetryExecutor(transactionManager, 20, 5, 50);
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                try {
+                    retryExecutor.execute("Medicine#1", () -> addItem(reservations, 4));
+                    return true;
+                } catch (InsufficientStockException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int succeeded = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(30, TimeUnit.SECONDS)) {
+                succeeded++;
+            }
+        }
+        pool.shutdown();
+
+        assertEquals(2, succeeded);
+        assertEquals(8L, jdbc.queryForObject("SELECT SUM(reserved_quantity) FROM prescription_items", Long.class));
+        assertEquals(2L, reservations.getAvailableToPromise(1L));
+    }
+
+    private static ReservationService node() {
+        MedicineCatalogueService catalogue = mock(MedicineCatalogueService.class);
+        when(catalogue.get(anyLong())).thenReturn(Optional.empty());
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(database.getDataSource(),
+            Collections.emptyMap(), 1000, 1000);
+        return new ReservationService(jdbc, new ReservationLedger(1000, 64), catalogue, routing, 60);
+    }
+
+    private static Medicine medicine(int quantityInStock) {
+        Medicine medicine = new Medicine();
+        medicine.setId(1L);
+        medicine.setQuantityInStock(quantityInStock);
+        return medicine;
+    }
+
+    private static long addItem(ReservationService service, int quantity) {
+        PrescriptionItem item = new PrescriptionItem();
+        item.setMedicine(medicine(0));
+        item.setQuantity(quantity);
+
+        service.reserve(item);
+        Long id = jdbc.queryForObject("INSERT INTO prescription_items (prescription_id, medicine_id, quantity,"
+                + " created_at, is_dispensed, reserved_quantity, reserved_until, version)"
+                + " VALUES (1, 1, ?, now(), false, ?, ?, 0) RETURNING id", Long.class,
+            quantity, item.getReservedQuantity(), new Timestamp(item.getReservedUntil().getTime()));
+        item.setId(id);
+        return id;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.pharma.pdms.services;
+
+import com.pharma.pdms.repositories.MedicineRepository;
+import com.pharma.pdms.support.JpaTestPersistence;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import com.pharma.pdms.utils.reporting.SalesReport;
+import com.pharma.pdms.utils.reporting.SalesReportRow;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reports built by the parallel chunked scan, checked against the same sold lines read in
+ * one query and totalled into a HashMap
+ */
+class SalesReportServiceTest {
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+    private static JpaTestPersistence persistence;
+    private static SalesReportService parallel;
+    private static SalesReportService singleChunk;
+    private static LocalDate from;
+    private static LocalDate to;
+
+    @BeforeAll
+    static void seed() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        persistence = new JpaTestPersistence(database.getDataSource());
+        for (String table : new String[] {"transactions", "transaction_items"}) {
+            jdbc.queryForList("SELECT pdms_ensure_month_partitions(?, (current_date - interval '6 months')::date, 1)", table);
+        }
+        jdbc.update("INSERT INTO suppliers (name, phone) VALUES ('North', '555-0200'), ('South', '555-0201')");
+        jdbc.update("INSERT INTO medicines (name, manufacturer, unit_price, quantity_in_stock, expiry_date, category,"
+            + " supplier_id) SELECT 'Medicine ' || g, 'Maker ' || (g % 3), 1.00, 100, current_date + 365,"
+            + " CASE WHEN g % 4 = 0 THEN '' ELSE 'Category ' || (g % 4) END, CASE WHEN g % 5 = 0 THEN NULL ELSE 1 + g % 2 END"
+            + " FROM generate_series(1, 40) g");
+        // Spread over 120 days, a tenth of them not completed
+        jdbc.update("INSERT INTO transactions (transaction_date, total_amount, payment_status, created_at)"
+            + " SELECT now() - (g % 120) * interval '1 day' - (g % 17) * interval '1 hour', 0,"
+            + " CASE WHEN g % 10 = 0 THEN 'PENDING' ELSE 'COMPLETED' END, now() FROM generate_series(1, 3000) g");
+        jdbc.update("INSERT INTO transaction_items (transaction_id, medicine_id, quantity, unit_price, subtotal, created_at)"
+            + " SELECT t.id, m.id, 1 + (t.id + k) % 5, 1.25, (1 + (t.id + k) % 5) * (1.25 + k * 0.10), now()"
+            + " FROM transactions t CROSS JOIN generate_series(0, 2) k"
+            + " JOIN medicines m ON m.id = (SELECT MIN(id) FROM medicines) + (t.id * 7 + k * 13) % 40"
+            + " WHERE k <= t.id % 3");
+        jdbc.execute("ANALYZE");
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(database.getDataSource());
+        MedicineRepository medicines = persistence.repository(MedicineRepository.class);
+        parallel = new SalesReportService(database.getDataSource(), transactionManager, medicines, 4, 97, 50);
+        singleChunk = new SalesReportService(database.getDataSource(), transactionManager, medicines, 1, 1_000_000, 2000);
+        from = LocalDate.now().minusDays(100);
+        to = LocalDate.now().minusDays(5);
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        parallel.shutdown();
+        singleChunk.shutdown();
+        persistence.close();
+        database.close();
+    }
+
+    @ParameterizedTest
+    @CsvSource({"medicine,day", "medicine,month", "category,week", "supplier,total", "manufacturer,quarter"})
+    void parallelScanMatchesASequentialReference(String groupBy, String period) {
+        SalesReport report = parallel.getSalesReport(from, to, groupBy, period);
+        Map<String, long[]> expected = reference(groupBy, period);
+
+        assertTrue(report.getChunks() > 10, "chunks " + report.getChunks());
+        assertEquals(expected.size(), report.getRows().size());
+        long quantity = 0;
+        long cents = 0;
+        long lines = 0;
+        for (SalesReportRow row : report.getRows()) {
+            long[] total = expected.get(row.getKey() + "|" + row.getPeriodStart());
+            long rowCents = row.getRevenue().movePointRight(2).longValueExact();
+            assertEquals(Arrays.toString(total), Arrays.toString(new long[] {row.getQuantity(), rowCents, row.getLines()}),
+                "row " + row.getKey() + " " + row.getPeriodStart());
+            quantity += total[0];
+            cents += total[1];
+            lines += total[2];
+        }
+        assertEquals(quantity, report.getQuantity());
+        assertEquals(BigDecimal.valueOf(cents, 2), report.getRevenue());
+        assertEquals(lines, report.getLines());
+
+        SalesReport sequential = singleChunk.getSalesReport(from, to, groupBy, period);
+        assertEquals(1, sequential.getChunks());
+        // Rows with equal revenue in a period may come out in either order
+        assertEquals(new HashSet<>(report.getRows()), new HashSet<>(sequential.getRows()));
+    }
+
+    /**
+     * Totals per group key and period start, read row by row in a single query
+     */
+    private static Map<String, long[]> reference(String groupBy, String period) {
+        Map<String, long[]> totals = new HashMap<>();
+        jdbc.query("SELECT ti.medicine_id, m.category, m.manufacturer, m.supplier_id, t.transaction_date, ti.quantity,"
+                + " ROUND(ti.subtotal * 100)"
+                + " FROM transactions t JOIN transaction_items ti ON ti.transaction_id = t.id"
+                + " JOIN medicines m ON m.id = ti.medicine_id"
+                + " WHERE t.transaction_date >= ? AND t.transaction_date < ? AND t.payment_status = 'COMPLETED'",
+            resultSet -> {
+                String key;
+                switch (groupBy) {
+                    case "category":
+                        key = resultSet.getString(2).isEmpty() ? "none" : resultSet.getString(2);
+                        break;
+                    case "manufacturer":
+                        key = resultSet.getString(3);
+                        break;
+                    case "supplier":
+                        key = resultSet.getObject(4) == null ? "none" : String.valueOf(resultSet.getLong(4));
+                        break;
+                    default:
+                        key = String.valueOf(resultSet.getLong(1));
+                }
+                long[] total = totals.computeIfAbsent(key + "|" + periodStart(resultSet.getTimestamp(5), period),
+                    k -> new long[3]);
+                total[0] += resultSet.getLong(6);
+                total[1] += resultSet.getLong(7);
+                total[2]++;
+            }, Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+        return totals;
+    }
+
+    private static LocalDate periodStart(Timestamp timestamp, String period) {
+        LocalDateTime time = timestamp.toLocalDateTime();
+        LocalDate day = time.toLocalDate();
+        switch (period) {
+            case "day":
+                return day;
+            case "week":
+                return day.minusDays(day.getDayOfWeek().getValue() - 1);
+            case "month":
+                return day.withDayOfMonth(1);
+            case "quarter":
+                return LocalDate.of(day.getYear(), (day.getMonthValue() - 1) / 3 * 3 + 1, 1);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.pharma.pdms.support;
+
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.dao.support.PersistenceExceptionTranslationInterceptor;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.Properties;
+
+/**
+ * Hibernate over a test database, set up like spring.jpa.* in application.properties, for
+ * tests that need real entity versioning and flushing without starting the application
+ */
+public class JpaTestPersistence implements AutoCloseable {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final EntityManager entityManager;
+    private final JpaTransactionManager transactionManager;
+    private final JpaRepositoryFactory repositoryFactory;
+
+    public JpaTestPersistence(DataSource dataSource) {
+        Properties properties = new Properties();
+        properties.put("hibernate.hbm2ddl.auto", "validate");
+        properties.put("hibernate.hbm2ddl.extra_physical_table_types", "PARTITIONED TABLE");
+        properties.put("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        properties.put("hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.class.getName());
+        properties.put("hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName());
+
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setPackagesToScan("com.pharma.pdms.models");
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setJpaProperties(properties);
+        factory.afterPropertiesSet();
+
+        this.entityManagerFactory = factory.getObject();
+        this.entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        this.transactionManager = new JpaTransactionManager(entityManagerFactory);
+        this.repositoryFactory = new JpaRepositoryFactory(entityManager);
+        // As @Repository does in the application: a version conflict surfaces as OptimisticLockingFailureException
+        PersistenceExceptionTranslationInterceptor translation =
+            new PersistenceExceptionTranslationInterceptor(new HibernateJpaDialect());
+        repositoryFactory.addRepositoryProxyPostProcessor((proxy, repositoryInformation) -> proxy.addAdvice(translation));
+    }
+
+    /**
+     * A Spring Data repository bound to the transaction-scoped entity manager
+     */
+    public <T> T repository(Class<T> repositoryInterface) {
+        return repositoryFactory.getRepository(repositoryInterface);
+    }
+
+    public EntityManager getEntityManager() {
+        return entityManager;
+    }
+
+    public JpaTransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+
+    @Override
+    public void close() {
+        entityManagerFactory.close();
+    }
+}
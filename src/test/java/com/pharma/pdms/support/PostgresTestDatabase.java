@@ -0,0 +1,78 @@
+package com.pharma.pdms.support;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Throwaway PostgreSQL server for tests that need the real planner or real DDL.
+ * Each instance runs its own server on a random port and deletes it on close.
+ */
+public class PostgresTestDatabase implements AutoCloseable {
+
+    private final EmbeddedPostgres postgres;
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    private PostgresTestDatabase(EmbeddedPostgres postgres) {
+        this.postgres = postgres;
+        this.dataSource = postgres.getPostgresDatabase();
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Start an empty database
+     */
+    public static PostgresTestDatabase start() {
+        try {
+            return new PostgresTestDatabase(EmbeddedPostgres.start());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start embedded PostgreSQL", e);
+        }
+    }
+
+    /**
+     * Start a database and apply every migration in db/migration, as the application does
+     */
+    public static PostgresTestDatabase migrated() {
+        PostgresTestDatabase database = start();
+        database.flyway().load().migrate();
+        return database;
+    }
+
+    /**
+     * Flyway configured like spring.flyway.* in application.properties
+     */
+    public FluentConfiguration flyway() {
+        return Flyway.configure()
+            .dataSource(dataSource)
+            .locations("classpath:db/migration")
+            .baselineOnMigrate(true)
+            .baselineVersion("1");
+    }
+
+    /**
+     * JDBC URL of the database, for a separate process to connect as user postgres
+     */
+    public String getJdbcUrl() {
+        return postgres.getJdbcUrl("postgres", "postgres");
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    @Override
+    public void close() throws IOException {
+        postgres.close();
+    }
+}
@@ -0,0 +1,137 @@
+package com.pharma.pdms.utils.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void limitGrowsWhileLatencyHoldsAndTheSlotsAreUsed() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(RequestClass.CATALOGUE, 4, 1, 50, 0, 0, 2.0);
+
+        for (int round = 0; round < 20; round++) {
+            fillAndRelease(limit, FAST);
+        }
+
+        assertTrue(limit(limit) > 20, "limit " + limit(limit));
+        assertTrue(limit(limit) <= 50);
+    }
+
+    @Test
+    void limitDoesNotGrowOnLightTraffic() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(RequestClass.CATALOGUE, 10, 1, 50, 0, 0, 2.0);
+
+        for (int i = 0; i < 200; i++) {
+            assertTrue(limit.acquire(false));
+            limit.release(FAST);
+        }
+
+        assertEquals(10, limit(limit));
+    }
+
+    @Test
+    void limitFallsWhenLatencyRisesAndRecoversAfterwards() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(RequestClass.DISPENSING, 40, 2, 40, 0, 0, 2.0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limit.acquire(false));
+            limit.release(FAST);
+        }
+        assertEquals(40, limit(limit));
+
+        for (int i = 0; i < 30; i++) {
+            assertTrue(limit.acquire(false));
+            limit.release(SLOW);
+        }
+        int degraded = limit(limit);
+        assertTrue(degraded < 10, "limit " + degraded);
+
+        for (int round = 0; round < 30; round++) {
+            fillAndRelease(limit, FAST);
+        }
+        assertTrue(limit(limit) > degraded * 2, "limit " + limit(limit));
+    }
+
+    @Test
+    void limitNeverLeavesItsBounds() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(RequestClass.REPORTING, 6, 6, 12, 0, 0, 2.0);
+
+        for (int round = 0; round < 50; round++) {
+            fillAndRelease(limit, FAST);
+        }
+        assertEquals(12, limit(limit));
+
+        // Without the floor, rising latency would settle the limit near 4
+        for (int i = 0; i < 200; i++) {
+            assertTrue(limit.acquire(false));
+            limit.release(SLOW * (i + 1));
+        }
+        assertEquals(6, limit(limit));
+    }
+
+    @Test
+    void overTheLimitRequestsQueueUpToTheQueueSize() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(RequestClass.DISPENSING, 1, 1, 1, 1, 5_000, 2.0);
+        assertTrue(limit.acquire(true));
+
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> limit.acquire(true));
+        waitFor(limit::hasWaiting);
+        assertTrue(limit.isSaturated());
+        assertFalse(limit.acquire(true), "queue is full");
+        assertFalse(limit.acquire(false), "not allowed to queue");
+
+        limit.release(FAST);
+        assertTrue(waiter.get(10, TimeUnit.SECONDS));
+        assertEquals(1L, limit.getStats().get("queued"));
+        assertEquals(1L, limit.getStats().get("admittedAfterQueue"));
+        assertEquals(2L, limit.getStats().get("shedQueueFull"));
+        assertEquals(1, limit.getStats().get("inFlight"));
+    }
+
+    @Test
+    void queuedRequestIsShedAfterMaxWait() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(RequestClass.REPORTING, 1, 1, 1, 2, 100, 2.0);
+        assertTrue(limit.acquire(true));
+
+        long started = System.nanoTime();
+        assertFalse(limit.acquire(true));
+
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1L, limit.getStats().get("shedTimedOut"));
+        assertFalse(limit.hasWaiting());
+    }
+
+    /**
+     * Take every slot, then give them back with the same duration
+     */
+    private static void fillAndRelease(AdaptiveConcurrencyLimit limit, long durationNanos) {
+        int slots = limit(limit);
+        for (int i = 0; i < slots; i++) {
+            assertTrue(limit.acquire(false));
+        }
+        for (int i = 0; i < slots; i++) {
+            limit.release(durationNanos);
+        }
+    }
+
+    private static int limit(AdaptiveConcurrencyLimit limit) {
+        return (int) limit.getStats().get("limit");
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.pharma.pdms.utils.admission;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Priority shedding across request classes, each held to a single slot so the test decides
+ * exactly when a class is saturated or has requests waiting
+ */
+class AdmissionControlFilterTest {
+
+    private final CountDownLatch finish = new CountDownLatch(1);
+    private final AtomicInteger passed = new AtomicInteger();
+    private final List<CompletableFuture<MockHttpServletResponse>> running = new ArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void releaseHeldRequests() throws Exception {
+        finish.countDown();
+        for (CompletableFuture<MockHttpServletResponse> request : running) {
+            request.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    void lowerClassesAreShedWhileDispensingHasRequestsWaiting() throws Exception {
+        AdmissionControlFilter filter = filter(new MockEnvironment());
+        CompletableFuture<MockHttpServletResponse> first = hold(filter, "POST", "/api/prescriptions");
+        waitFor(() -> inFlight(filter, RequestClass.DISPENSING) == 1);
+        CompletableFuture<MockHttpServletResponse> queued = hold(filter, "PUT", "/api/medicines/5/stock");
+        waitFor(() -> waiting(filter, RequestClass.DISPENSING) == 1);
+
+        MockHttpServletResponse report = send(filter, "GET", "/api/reports/sales");
+        MockHttpServletResponse catalogue = send(filter, "GET", "/api/medicines");
+
+        assertEquals(503, report.getStatus());
+        assertEquals("15", report.getHeader("Retry-After"));
+        assertEquals(503, catalogue.getStatus());
+        assertEquals("1", catalogue.getHeader("Retry-After"));
+        assertEquals(1L, classStats(filter, RequestClass.REPORTING).get("shedForPriority"));
+        assertEquals(1L, classStats(filter, RequestClass.CATALOGUE).get("shedForPriority"));
+        // Only the two dispensing requests reached the chain
+        finish.countDown();
+        assertEquals(200, first.get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(200, queued.get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(2, passed.get());
+        assertEquals(1L, classStats(filter, RequestClass.DISPENSING).get("admittedAfterQueue"));
+    }
+
+    @Test
+    void lowerClassIsRefusedRatherThanQueuedWhileAHigherOneIsAtItsLimit() throws Exception {
+        AdmissionControlFilter filter = filter(new MockEnvironment());
+        hold(filter, "POST", "/api/prescriptions");
+        hold(filter, "GET", "/api/reports/sales");
+        waitFor(() -> inFlight(filter, RequestClass.DISPENSING) == 1 && inFlight(filter, RequestClass.REPORTING) == 1);
+
+        long started = System.nanoTime();
+        MockHttpServletResponse report = send(filter, "GET", "/api/reports/stock");
+
+        // Reporting may queue for up to a second, but not while dispensing is saturated
+        assertTrue(System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(503, report.getStatus());
+        assertEquals(1L, classStats(filter, RequestClass.REPORTING).get("shedQueueFull"));
+        assertEquals(0L, classStats(filter, RequestClass.REPORTING).get("queued"));
+    }
+
+    @Test
+    void higherClassStillQueuesWhenALowerOneIsFull() throws Exception {
+        AdmissionControlFilter filter = filter(new MockEnvironment());
+        hold(filter, "GET", "/api/reports/sales");
+        hold(filter, "POST", "/api/prescriptions");
+        waitFor(() -> inFlight(filter, RequestClass.DISPENSING) == 1 && inFlight(filter, RequestClass.REPORTING) == 1);
+
+        CompletableFuture<MockHttpServletResponse> queued = hold(filter, "POST", "/api/prescriptions");
+        waitFor(() -> waiting(filter, RequestClass.DISPENSING) == 1);
+        finish.countDown();
+
+        assertEquals(200, queued.get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(0L, classStats(filter, RequestClass.DISPENSING).get("shedQueueFull"));
+    }
+
+    @Test
+    void rejectStatusAndRetryAfterFollowConfiguration() throws Exception {
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("pdms.admission.reject-status", "429")
+            .withProperty("pdms.admission.reporting.retry-after-seconds", "30");
+        AdmissionControlFilter filter = filter(environment);
+        hold(filter, "GET", "/api/reports/sales");
+        waitFor(() -> inFlight(filter, RequestClass.REPORTING) == 1);
+        hold(filter, "GET", "/api/reports/sales");
+        waitFor(() -> waiting(filter, RequestClass.REPORTING) == 1);
+
+        MockHttpServletResponse refused = send(filter, "GET", "/api/reports/sales");
+
+        assertEquals(429, refused.getStatus());
+        assertEquals("30", refused.getHeader("Retry-After"));
+    }
+
+    @Test
+    void unclassifiedRequestsAndDisabledFilterPassThrough() throws Exception {
+        AdmissionControlFilter filter = filter(new MockEnvironment());
+        hold(filter, "POST", "/api/prescriptions");
+        hold(filter, "POST", "/api/prescriptions");
+        waitFor(() -> waiting(filter, RequestClass.DISPENSING) == 1);
+
+        assertEquals(200, send(filter, "GET", "/api/dashboard/stream").getStatus());
+        assertEquals(200, send(filter, "POST", "/api/auth/login").getStatus());
+        AdmissionControlFilter disabled = new AdmissionControlFilter(new MockEnvironment(), false, 2.0);
+        assertEquals(200, send(disabled, "GET", "/api/reports/sales").getStatus());
+        assertEquals(false, disabled.getStats().get("enabled"));
+    }
+
+    @Test
+    void requestsAreClassifiedByEndpoint() {
+        assertEquals(RequestClass.DISPENSING, RequestClass.of("POST", "/api/prescriptions"));
+        assertEquals(RequestClass.DISPENSING, RequestClass.of("POST", "/api/screening/check"));
+        assertEquals(RequestClass.DISPENSING, RequestClass.of("PUT", "/api/medicines/5/stock"));
+        assertEquals(RequestClass.DISPENSING, RequestClass.of("GET", "/api/medicines/5/available"));
+        assertEquals(RequestClass.CATALOGUE, RequestClass.of("GET", "/api/medicines/5"));
+        assertEquals(RequestClass.CATALOGUE, RequestClass.of("GET", "/api/search"));
+        assertEquals(RequestClass.DASHBOARD, RequestClass.of("GET", "/api/dashboard/summary"));
+        assertEquals(RequestClass.REPORTING, RequestClass.of("GET", "/api/medicines/5/forecast"));
+        assertEquals(RequestClass.REPORTING, RequestClass.of("GET", "/api/reports/sales"));
+        assertEquals(RequestClass.REPORTING, RequestClass.of("POST", "/api/purchase-orders/generate"));
+        assertNull(RequestClass.of("GET", "/api/purchase-orders/generate"));
+        assertNull(RequestClass.of("GET", "/api/dashboard/stream"));
+        assertNull(RequestClass.of("POST", "/api/auth/login"));
+    }
+
+    /**
+     * Every class limited to one request at a time, with room for one more to wait
+     */
+    private static AdmissionControlFilter filter(MockEnvironment environment) {
+        for (RequestClass requestClass : RequestClass.values()) {
+            String prefix = "pdms.admission." + requestClass.name().toLowerCase() + ".";
+            environment.setProperty(prefix + "initial-limit", "1");
+            environment.setProperty(prefix + "min-limit", "1");
+            environment.setProperty(prefix + "max-limit", "1");
+            environment.setProperty(prefix + "queue-size", "1");
+            if (environment.getProperty(prefix + "max-wait-ms") == null) {
+                environment.setProperty(prefix + "max-wait-ms", "10000");
+            }
+        }
+        return new AdmissionControlFilter(environment, true, 2.0);
+    }
+
+    /**
+     * Send a request whose handler runs until the test finishes it
+     */
+    private CompletableFuture<MockHttpServletResponse> hold(AdmissionControlFilter filter, String method, String uri) {
+        CompletableFuture<MockHttpServletResponse> request = CompletableFuture.supplyAsync(() -> {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            try {
+                filter.doFilter(new MockHttpServletRequest(method, uri), response, (servletRequest, servletResponse) -> {
+                    passed.incrementAndGet();
+                    try {
+                        finish.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return response;
+        }, executor);
+        running.add(request);
+        return request;
+    }
+
+    private static MockHttpServletResponse send(AdmissionControlFilter filter, String method, String uri)
+            throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (servletRequest, servletResponse) -> { };
+        filter.doFilter(new MockHttpServletRequest(method, uri), response, chain);
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> classStats(AdmissionControlFilter filter, RequestClass requestClass) {
+        return (Map<String, Object>) ((Map<String, Object>) filter.getStats().get("classes")).get(requestClass.name());
+    }
+
+    private static int inFlight(AdmissionControlFilter filter, RequestClass requestClass) {
+        return (int) classStats(filter, requestClass).get("inFlight");
+    }
+
+    private static int waiting(AdmissionControlFilter filter, RequestClass requestClass) {
+        return (int) classStats(filter, requestClass).get("waiting");
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.pharma.pdms.utils.archive;
+
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.Date;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two nodes, each with its own archive directory, share the archive index and the
+ * shared directory it points into
+ */
+class PrescriptionArchiveTest {
+
+    private static final YearMonth MONTH = YearMonth.of(2024, 3);
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+    private static TransactionTemplate tx;
+
+    @TempDir
+    Path nodeA;
+
+    @TempDir
+    Path nodeB;
+
+    @TempDir
+    Path shared;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+        tx = new TransactionTemplate(new DataSourceTransactionManager(database.getDataSource()));
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.close();
+    }
+
+    @BeforeEach
+    void clearArchive() {
+        jdbc.update("DELETE FROM prescription_archive_files");
+    }
+
+    @Test
+    void monthWrittenOnOneNodeIsReadOnAnother() throws Exception {
+        PrescriptionArchive writer = archive(nodeA);
+        PrescriptionArchive reader = archive(nodeB);
+        reader.load();
+        assertTrue(reader.isEmpty());
+
+        write(writer, 1L, 2L);
+        reader.refresh();
+        assertEquals(2, reader.get(MONTH).orElseThrow().getRowCount(PrescriptionArchive.PRESCRIPTIONS));
+
+        // A rewrite replaces the reader's copy rather than adding another file
+        write(writer, 1L, 2L, 3L);
+        reader.refresh();
+        assertEquals(3, reader.get(MONTH).orElseThrow().getRowCount(PrescriptionArchive.PRESCRIPTIONS));
+        try (Stream<Path> files = Files.list(nodeB)) {
+            assertEquals(1, files.count());
+        }
+        // The database holds only the index row
+        assertEquals(jdbc.queryForObject("SELECT file_name FROM prescription_archive_files WHERE content IS NULL",
+            String.class), reader.get(MONTH).orElseThrow().getPath().getFileName().toString());
+    }
+
+    @Test
+    void rolledBackWriteIsReplacedByTheCommittedCopy() throws Exception {
+        PrescriptionArchive writer = archive(nodeA);
+        write(writer, 1L);
+
+        assertThrows(IllegalStateException.class, () -> tx.executeWithoutResult(status -> {
+            writeTables(writer, 1L, 2L);
+            throw new IllegalStateException("rows could not be deleted");
+        }));
+        assertEquals(2, writer.get(MONTH).orElseThrow().getRowCount(PrescriptionArchive.PRESCRIPTIONS));
+
+        writer.refresh();
+        assertEquals(1, writer.get(MONTH).orElseThrow().getRowCount(PrescriptionArchive.PRESCRIPTIONS));
+    }
+
+    @Test
+    void supersededAndRolledBackFilesAreDeletedOnceOld() throws Exception {
+        PrescriptionArchive writer = archive(nodeA);
+        write(writer, 1L);
+        assertThrows(IllegalStateException.class, () -> tx.executeWithoutResult(status -> {
+            writeTables(writer, 1L, 2L);
+            throw new IllegalStateException("rows could not be deleted");
+        }));
+        write(writer, 1L, 2L, 3L);
+        try (Stream<Path> files = Files.list(shared)) {
+            assertEquals(3, files.count());
+        }
+
+        // Too recent: an uncommitted write or a node still copying may need them
+        assertEquals(0, writer.deleteOrphans());
+        String current = jdbc.queryForObject("SELECT file_name FROM prescription_archive_files", String.class);
+        try (Stream<Path> files = Files.list(shared)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - 2 * 3_600_000L));
+            }
+        }
+        assertEquals(2, writer.deleteOrphans());
+        try (Stream<Path> files = Files.list(shared)) {
+            assertEquals(List.of(current), files.map(path -> path.getFileName().toString()).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void contentStoredInTheTableIsExportedToSharedStorage() throws Exception {
+        Path legacyFile = ArchiveFile.write(nodeA.resolve("legacy.pdca"), tables(1L, 2L), 16).getPath();
+        jdbc.update("INSERT INTO prescription_archive_files (month, version, size_bytes, content) VALUES (?, 5, ?, ?)",
+            Date.valueOf(MONTH.atDay(1)), Files.size(legacyFile), Files.readAllBytes(legacyFile));
+
+        PrescriptionArchive node = archive(nodeB);
+        node.load();
+
+        assertEquals(2, node.get(MONTH).orElseThrow().getRowCount(PrescriptionArchive.PRESCRIPTIONS));
+        assertEquals(Map.of("file_name", "prescriptions-" + MONTH + ".v5.pdca", "stored", false),
+            jdbc.queryForMap("SELECT file_name, content IS NOT NULL AS stored FROM prescription_archive_files"));
+        assertTrue(Files.exists(shared.resolve("prescriptions-" + MONTH + ".v5.pdca")));
+    }
+
+    @Test
+    void filesFromBeforeTheArchiveTableAreImported() throws Exception {
+        PrescriptionArchive legacy = archive(nodeA);
+        ArchiveFile.write(nodeA.resolve("prescriptions-" + MONTH + ".pdca"), tables(1L, 2L), 16);
+
+        legacy.load();
+        assertEquals(1, jdbc.queryForObject("SELECT COUNT(*) FROM prescription_archive_files", Integer.class));
+
+        PrescriptionArchive other = archive(nodeB);
+        other.load();
+        assertEquals(2, other.get(MONTH).orElseThrow().getRowCount(PrescriptionArchive.PRESCRIPTIONS));
+    }
+
+    private PrescriptionArchive archive(Path directory) {
+        return new PrescriptionArchive(jdbc, directory.toString(), shared.toString(), 16);
+    }
+
+    private static void write(PrescriptionArchive archive, Long... ids) {
+        tx.executeWithoutResult(status -> writeTables(archive, ids));
+    }
+
+    private static void writeTables(PrescriptionArchive archive, Long... ids) {
+        try {
+            archive.write(MONTH, tables(ids));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<ArchiveTable> tables(Long... ids) {
+        ArchiveTable table = new ArchiveTable(PrescriptionArchive.PRESCRIPTIONS, new String[] {"id", "patient_id"},
+            new ColumnType[] {ColumnType.LONG, ColumnType.LONG});
+        for (Long id : ids) {
+            table.add(new Object[] {id, 7L});
+        }
+        return Collections.singletonList(table);
+    }
+}
@@ -0,0 +1,119 @@
+package com.pharma.pdms.utils.cluster;
+
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PgChannelListenerTest {
+
+    private static final String CHANNEL = "listener_test";
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+    private static TransactionTemplate tx;
+
+    private final AtomicInteger connects = new AtomicInteger();
+    private final List<String> payloads = new CopyOnWriteArrayList<>();
+    private final PgChannelListener listener = new PgChannelListener(CHANNEL, database.getDataSource(),
+        new PgChannelListener.Handler() {
+            @Override
+            public void connected() {
+                connects.incrementAndGet();
+            }
+
+            @Override
+            public void received(List<String> received) {
+                payloads.addAll(received);
+            }
+        });
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.start();
+        jdbc = database.getJdbcTemplate();
+        tx = new TransactionTemplate(new DataSourceTransactionManager(database.getDataSource()));
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.close();
+    }
+
+    @AfterEach
+    void stopListener() {
+        listener.stop();
+    }
+
+    @Test
+    void notificationsArriveOnlyWhenTheirTransactionCommits() throws Exception {
+        listener.start();
+        waitFor(listener::isListening);
+
+        tx.executeWithoutResult(status -> {
+            notify("rolled back");
+            status.setRollbackOnly();
+        });
+        tx.executeWithoutResult(status -> {
+            notify("first");
+            notify("second");
+            // Still uncommitted, so nothing can have arrived yet
+            sleep(700);
+            assertEquals(List.of(), payloads);
+        });
+
+        waitFor(() -> payloads.size() == 2);
+        Thread.sleep(700);
+        assertEquals(List.of("first", "second"), payloads);
+    }
+
+    @Test
+    void lostConnectionIsReopenedAndTheHandlerToldToCatchUp() throws Exception {
+        listener.start();
+        waitFor(listener::isListening);
+        assertEquals(1, connects.get());
+
+        jdbc.queryForList("SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE query = 'LISTEN " + CHANNEL + "'");
+        // Sent while nobody listens: lost, which is why the handler reloads on connect
+        notify("missed");
+        waitFor(() -> connects.get() == 2 && listener.isListening());
+
+        assertEquals(1, listener.getDisconnects());
+        assertEquals(0, listener.getDisconnectedForMillis());
+        notify("after");
+        waitFor(() -> payloads.contains("after"));
+        assertEquals(List.of("after"), payloads);
+    }
+
+    private static void notify(String payload) {
+        jdbc.queryForList("SELECT pg_notify(?, ?)", CHANNEL, payload);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
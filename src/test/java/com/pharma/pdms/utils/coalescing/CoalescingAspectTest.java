@@ -0,0 +1,157 @@
+package com.pharma.pdms.utils.coalescing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The aspect applied through an auto-proxy, as it is applied to the services
+ */
+class CoalescingAspectTest {
+
+    private static final int THREADS = 6;
+
+    private AnnotationConfigApplicationContext context;
+
+    @AfterEach
+    void close() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void concurrentCallsWithEqualArgumentsShareOneExecution() throws Exception {
+        Lookups target = new Lookups();
+        target.gate = new CountDownLatch(1);
+        Lookups proxy = proxy(target, true);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> proxy.find(7L)));
+        }
+        assertTrue(target.started.await(5, TimeUnit.SECONDS));
+        // Every other caller has to be waiting on the first before it is released
+        while ((long) methodStats("find").get("joinedInFlight") < THREADS - 1) {
+            Thread.sleep(5);
+        }
+        target.gate.countDown();
+
+        for (Future<String> future : futures) {
+            assertEquals("medicine-7#1", future.get());
+        }
+        pool.shutdown();
+        assertEquals(1, target.calls.get());
+    }
+
+    @Test
+    void differentArgumentsAndOpenTransactionsRunSeparately() {
+        Lookups target = new Lookups();
+        Lookups proxy = proxy(target, true);
+
+        assertEquals("medicine-1#1", proxy.find(1L));
+        assertEquals("medicine-2#2", proxy.find(2L));
+
+        // Within a transaction the caller may need its own uncommitted changes
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        assertEquals("medicine-1#3", proxy.find(1L));
+        assertEquals(3, target.calls.get());
+    }
+
+    @Test
+    void timeToLiveIsResolvedFromProperties() {
+        Lookups target = new Lookups();
+        Lookups proxy = proxy(target, true);
+
+        assertEquals("medicine-1#1", proxy.findCached(1L));
+        assertEquals("medicine-1#1", proxy.findCached(1L));
+        assertEquals(1, target.calls.get());
+    }
+
+    @Test
+    void disabledAspectCallsThrough() {
+        Lookups target = new Lookups();
+        Lookups proxy = proxy(target, false);
+
+        assertEquals("medicine-1#1", proxy.findCached(1L));
+        assertNotEquals("medicine-1#1", proxy.findCached(1L));
+    }
+
+    @Test
+    void statsAreKeptPerMethod() {
+        Lookups proxy = proxy(new Lookups(), true);
+
+        proxy.findCached(1L);
+        proxy.findCached(1L);
+
+        Map<String, Object> findCached = methodStats("findCached");
+        assertEquals(60000L, findCached.get("ttlMillis"));
+        assertEquals(1L, findCached.get("executions"));
+        assertEquals(1L, findCached.get("servedFromTtl"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> methodStats(String method) {
+        Map<String, Object> methods = (Map<String, Object>) context.getBean(CoalescingAspect.class)
+            .getStats().get("methods");
+        return (Map<String, Object>) methods.getOrDefault("Lookups." + method, Map.of("joinedInFlight", 0L));
+    }
+
+    private Lookups proxy(Lookups target, boolean enabled) {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+            "pdms.coalescing.enabled", enabled, "pdms.coalescing.ttl-ms", 60000)));
+        context.register(AopConfig.class, CoalescingAspect.class);
+        context.registerBean(Lookups.class, () -> target);
+        context.refresh();
+        return context.getBean(Lookups.class);
+    }
+
+    @EnableAspectJAutoProxy(proxyTargetClass = true)
+    static class AopConfig {
+    }
+
+    static class Lookups {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile CountDownLatch gate;
+
+        @Coalesced
+        public String find(Long id) {
+            int call = calls.incrementAndGet();
+            started.countDown();
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return "medicine-" + id + "#" + call;
+        }
+
+        @Coalesced(ttlMillis = "${pdms.coalescing.ttl-ms:1000}")
+        public String findCached(Long id) {
+            return "medicine-" + id + "#" + calls.incrementAndGet();
+        }
+    }
+}
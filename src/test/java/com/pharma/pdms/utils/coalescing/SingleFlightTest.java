@@ -0,0 +1,126 @@
+package com.pharma.pdms.utils.coalescing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        SingleFlight flights = new SingleFlight();
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Object shared = new Object();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        Future<Object> leader = pool.submit(call(flights, "key", 0, () -> {
+            computations.incrementAndGet();
+            leaderStarted.countDown();
+            release.await();
+            return shared;
+        }));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+
+        List<Future<Object>> followers = new ArrayList<>();
+        for (int t = 1; t < THREADS; t++) {
+            followers.add(pool.submit(call(flights, "key", 0, () -> {
+                computations.incrementAndGet();
+                return new Object();
+            })));
+        }
+        // Every follower has to be waiting on the leader before it is released
+        while ((long) flights.getStats().get("joinedInFlight") < THREADS - 1) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertSame(shared, leader.get());
+        for (Future<Object> follower : followers) {
+            assertSame(shared, follower.get());
+        }
+        pool.shutdown();
+
+        Map<String, Object> stats = flights.getStats();
+        assertEquals(1, computations.get());
+        assertEquals(1L, stats.get("executions"));
+        assertEquals(0, stats.get("keys"));
+    }
+
+    @Test
+    void failureReachesEveryWaiterAndIsNotKept() throws Throwable {
+        SingleFlight flights = new SingleFlight();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<Object> leader = pool.submit(call(flights, "key", 60000, () -> {
+            release.await();
+            throw new IllegalStateException("query failed");
+        }));
+        while (flights.getStats().get("keys").equals(0)) {
+            Thread.sleep(5);
+        }
+        Future<Object> follower = pool.submit(call(flights, "key", 60000, () -> "unused"));
+        while ((long) flights.getStats().get("joinedInFlight") < 1) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        for (Future<Object> future : List.of(leader, follower)) {
+            Exception e = assertThrows(Exception.class, future::get);
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        pool.shutdown();
+
+        assertEquals("recomputed", flights.execute("key", 60000, () -> "recomputed"));
+        assertEquals(1L, flights.getStats().get("failures"));
+    }
+
+    @Test
+    void resultIsServedUntilItsTimeToLivePasses() throws Throwable {
+        SingleFlight flights = new SingleFlight();
+        AtomicInteger computations = new AtomicInteger();
+        SingleFlight.Computation count = computations::incrementAndGet;
+
+        assertEquals(1, flights.execute("key", 60000, count));
+        assertEquals(1, flights.execute("key", 60000, count));
+        assertEquals(1L, flights.getStats().get("servedFromTtl"));
+        assertEquals(2, flights.execute("other", 60000, count));
+
+        assertEquals(3, flights.execute("short", 1, count));
+        Thread.sleep(5);
+        flights.purgeExpired();
+        assertEquals(2, flights.getStats().get("keys"));
+        assertEquals(4, flights.execute("short", 1, count));
+    }
+
+    private static Callable<Object> call(SingleFlight flights, Object key, long ttlMillis,
+            SingleFlight.Computation computation) {
+        return () -> {
+            try {
+                return flights.execute(key, ttlMillis, computation);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package com.pharma.pdms.utils.concurrency;
+
+import com.pharma.pdms.exceptions.ConcurrentUpdateException;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OptimisticRetryExecutorTest {
+
+    private static final int THREADS = 8;
+    private static final int INCREMENTS_PER_THREAD = 250;
+
+    private final NoOpTransactionManager transactionManager = new NoOpTransactionManager();
+
+    @Test
+    void concurrentIncrementsAreRetriedWithoutLostUpdates() throws Exception {
+        OptimisticRetryExecutor executor = new OptimisticRetryExecutor(transactionManager, 30, 5, 100);
+        VersionedCounter counter = new VersionedCounter();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < INCREMENTS_PER_THREAD; i++) {
+                    executor.execute("Counter#1", counter::increment);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        Map<String, Object> stats = executor.getStats(10);
+        assertEquals(THREADS * INCREMENTS_PER_THREAD, counter.value());
+        assertEquals((long) THREADS * INCREMENTS_PER_THREAD, stats.get("executions"));
+        assertEquals(stats.get("conflicts"), stats.get("retries"));
+        assertEquals(0L, stats.get("exhausted"));
+        assertTrue(counter.conflicts.get() > 0, "threads never collided; the test did not exercise retries");
+    }
+
+    @Test
+    void givesUpWithConcurrentUpdateExceptionAfterMaxAttempts() {
+        OptimisticRetryExecutor executor = new OptimisticRetryExecutor(transactionManager, 3, 1, 1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ConcurrentUpdateException.class, () -> executor.execute("Counter#1", () -> {
+            attempts.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException("Counter", 1L);
+        }));
+        assertEquals(3, attempts.get());
+        assertEquals(1L, executor.getStats(1).get("exhausted"));
+    }
+
+    @Test
+    void runsOnceInsideAnActiveTransaction() {
+        OptimisticRetryExecutor executor = new OptimisticRetryExecutor(transactionManager, 5, 1, 1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () ->
+            new TransactionTemplate(transactionManager).execute(status -> executor.execute("Counter#1", () -> {
+                attempts.incrementAndGet();
+                throw new ObjectOptimisticLockingFailureException("Counter", 1L);
+            })));
+        assertEquals(1, attempts.get());
+    }
+
+    /**
+     * A row with a @Version column: writes only succeed against the version that was read
+     */
+    private static class VersionedCounter {
+        private final AtomicReference<long[]> row = new AtomicReference<>(new long[] {0, 0});
+        private final AtomicInteger conflicts = new AtomicInteger();
+
+        Integer increment() {
+            long[] read = row.get();
+            // Widen the window between read and write
+            Thread.yield();
+            long[] written = {read[0] + 1, read[1] + 1};
+            if (!row.compareAndSet(read, written)) {
+                conflicts.incrementAndGet();
+                throw new ObjectOptimisticLockingFailureException("Counter", 1L);
+            }
+            return (int) written[1];
+        }
+
+        int value() {
+            return (int) row.get()[1];
+        }
+    }
+
+    /**
+     * Transaction manager with real synchronization bookkeeping but no resource
+     */
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
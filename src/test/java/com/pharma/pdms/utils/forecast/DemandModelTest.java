@@ -0,0 +1,125 @@
+package com.pharma.pdms.utils.forecast;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Holt-Winters behaviour on synthetic series with a known shape
+ */
+class DemandModelTest {
+
+    // The weights the nightly job uses by default
+    private static final DemandModel.Parameters PARAMETERS = new DemandModel.Parameters(0.2, 0.05, 0.1, 0.98, 0.2);
+
+    // Monday first; a pharmacy busy early in the week and quiet on Sunday
+    private static final double[] WEEKLY = {6, 4, 1, 0, -2, 1, -10};
+    private static final double BASE = 20;
+    private static final LocalDate START = LocalDate.of(2025, 1, 5);
+
+    @Test
+    void learnsTheWeeklyPatternOfASeasonalSeries() {
+        DemandModel model = new DemandModel(START);
+        LocalDate day = START;
+        for (int i = 0; i < 52 * 7; i++) {
+            day = day.plusDays(1);
+            model.update(day, BASE + WEEKLY[day.getDayOfWeek().getValue() - 1], PARAMETERS);
+        }
+
+        for (int h = 1; h <= 7; h++) {
+            DayOfWeek dayOfWeek = day.plusDays(h).getDayOfWeek();
+            double expected = BASE + WEEKLY[dayOfWeek.getValue() - 1];
+            assertEquals(expected, model.forecast(h, PARAMETERS), 0.5, dayOfWeek.toString());
+        }
+        assertEquals(7 * BASE + sum(WEEKLY), model.forecastTotal(7, PARAMETERS), 1.0);
+        assertEquals(0, model.getTrend(), 0.05);
+        assertTrue(model.getErrorVariance() < 0.25, "error variance " + model.getErrorVariance());
+        assertEquals(52 * 7, model.getObservations());
+    }
+
+    @Test
+    void noiseShowsUpInTheErrorVariance() {
+        DemandModel model = new DemandModel(START);
+        LocalDate day = START;
+        for (int i = 0; i < 52 * 7; i++) {
+            day = day.plusDays(1);
+            // Alternates four above and four below the weekly pattern
+            double noise = i % 2 == 0 ? 4 : -4;
+            model.update(day, BASE + WEEKLY[day.getDayOfWeek().getValue() - 1] + noise, PARAMETERS);
+        }
+
+        assertTrue(model.getErrorVariance() > 9, "error variance " + model.getErrorVariance());
+        // The last few noisy days pull the level, by about a unit a day
+        assertEquals(7 * BASE + sum(WEEKLY), model.forecastTotal(7, PARAMETERS), 7.0);
+    }
+
+    @Test
+    void dampedTrendFlattensLongRangeForecasts() {
+        DemandModel model = new DemandModel(START);
+        LocalDate day = START;
+        for (int i = 0; i < 120; i++) {
+            day = day.plusDays(1);
+            model.update(day, 10 + 0.5 * i, PARAMETERS);
+        }
+
+        assertTrue(model.getTrend() > 0.3, "trend " + model.getTrend());
+        double nextWeek = model.forecast(7, PARAMETERS) - model.forecast(1, PARAMETERS);
+        double weekInAYear = model.forecast(365, PARAMETERS) - model.forecast(359, PARAMETERS);
+        assertTrue(nextWeek > 1.5, "growth over the next week " + nextWeek);
+        assertTrue(Math.abs(weekInAYear) < 0.1, "growth a year out " + weekInAYear);
+    }
+
+    @Test
+    void slowMoverIsNeverForecastBelowZero() {
+        DemandModel model = new DemandModel(START);
+        LocalDate day = START;
+        for (int i = 0; i < 90; i++) {
+            day = day.plusDays(1);
+            model.update(day, i % 30 == 0 ? 12 : 0, PARAMETERS);
+        }
+
+        for (int h = 1; h <= 60; h++) {
+            assertTrue(model.forecast(h, PARAMETERS) >= 0);
+        }
+    }
+
+    @Test
+    void savedStateResumesExactlyWhereItLeftOff() {
+        DemandModel uninterrupted = new DemandModel(START);
+        DemandModel nightly = new DemandModel(START);
+        LocalDate day = START;
+        for (int i = 0; i < 60; i++) {
+            day = day.plusDays(1);
+            double demand = BASE + WEEKLY[day.getDayOfWeek().getValue() - 1] + (i % 3);
+            uninterrupted.update(day, demand, PARAMETERS);
+            nightly.update(day, demand, PARAMETERS);
+            // Stored and loaded again after every day, as the nightly job does
+            nightly = new DemandModel(nightly.getLevel(), nightly.getTrend(),
+                DemandModel.parseSeasonal(nightly.formatSeasonal()), nightly.getErrorVariance(),
+                nightly.getObservations(), nightly.getLastDay());
+        }
+
+        assertArrayEquals(uninterrupted.getSeasonal(), nightly.getSeasonal());
+        assertEquals(uninterrupted.forecastTotal(7, PARAMETERS), nightly.forecastTotal(7, PARAMETERS));
+        assertEquals(uninterrupted.getErrorVariance(), nightly.getErrorVariance());
+    }
+
+    @Test
+    void malformedSeasonalFactorsStartFlat() {
+        assertArrayEquals(new double[DemandModel.SEASON], DemandModel.parseSeasonal("1.0,2.0"));
+        assertArrayEquals(new double[DemandModel.SEASON], DemandModel.parseSeasonal(null));
+    }
+
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
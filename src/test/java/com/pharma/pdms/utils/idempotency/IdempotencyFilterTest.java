@@ -0,0 +1,181 @@
+package com.pharma.pdms.utils.idempotency;
+
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Keyed requests through the filter: the handler runs once per key and request, and
+ * everything else is answered without reaching it
+ */
+class IdempotencyFilterTest {
+
+    private static final int MAX_REQUEST_BYTES = 1024;
+
+    private static PostgresTestDatabase database;
+
+    private final AtomicInteger handled = new AtomicInteger();
+    private IdempotencyStore store;
+    private IdempotencyFilter filter;
+    private volatile CountDownLatch handlerRelease = new CountDownLatch(0);
+    private volatile int handlerStatus = 201;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.close();
+    }
+
+    @BeforeEach
+    void newFilter() {
+        database.getJdbcTemplate().update("DELETE FROM idempotency_keys");
+        store = new IdempotencyStore(database.getJdbcTemplate(), 24, 100, 60, 5000, 20);
+        filter = new IdempotencyFilter(store, true, 65536, MAX_REQUEST_BYTES);
+    }
+
+    @Test
+    void retryIsReplayedWithoutReachingTheHandler() throws Exception {
+        MockHttpServletResponse first = send(request("key-1", "{\"patient\":1}"));
+        MockHttpServletResponse retry = send(request("key-1", "{\"patient\":1}"));
+
+        assertEquals(1, handled.get());
+        assertEquals(201, first.getStatus());
+        assertNull(first.getHeader("Idempotent-Replayed"));
+        assertEquals(201, retry.getStatus());
+        assertEquals("true", retry.getHeader("Idempotent-Replayed"));
+        assertEquals(first.getContentAsString(), retry.getContentAsString());
+    }
+
+    @Test
+    void keyReusedWithADifferentBodyGets422() throws Exception {
+        send(request("key-1", "{\"patient\":1}"));
+        MockHttpServletResponse reused = send(request("key-1", "{\"patient\":2}"));
+
+        assertEquals(422, reused.getStatus());
+        assertEquals(1, handled.get());
+    }
+
+    @Test
+    void concurrentDuplicateWaitsAndIsReplayed() throws Exception {
+        handlerRelease = new CountDownLatch(1);
+        CompletableFuture<MockHttpServletResponse> first = CompletableFuture.supplyAsync(
+            () -> sendUnchecked(request("key-1", "{\"patient\":1}")));
+        waitFor(() -> handled.get() == 1);
+        CompletableFuture<MockHttpServletResponse> duplicate = CompletableFuture.supplyAsync(
+            () -> sendUnchecked(request("key-1", "{\"patient\":1}")));
+        waitFor(() -> (Long) store.getStats().get("waitedForDuplicate") == 1L);
+
+        handlerRelease.countDown();
+        assertEquals(201, first.get(10, TimeUnit.SECONDS).getStatus());
+        MockHttpServletResponse replayed = duplicate.get(10, TimeUnit.SECONDS);
+        assertEquals(201, replayed.getStatus());
+        assertEquals("true", replayed.getHeader("Idempotent-Replayed"));
+        assertEquals(1, handled.get());
+    }
+
+    @Test
+    void serverErrorIsNotStoredSoTheRetryRunsAgain() throws Exception {
+        handlerStatus = 503;
+        assertEquals(503, send(request("key-1", "{}")).getStatus());
+        handlerStatus = 201;
+        assertEquals(201, send(request("key-1", "{}")).getStatus());
+        assertEquals(2, handled.get());
+    }
+
+    @Test
+    void oversizedBodyIsRefusedWith413() throws Exception {
+        String large = "x".repeat(MAX_REQUEST_BYTES + 1);
+        assertEquals(413, send(request("key-1", large)).getStatus());
+
+        // Chunked: no length up front, so the limit is enforced while reading
+        MockHttpServletRequest chunked = new MockHttpServletRequest("POST", "/api/prescriptions") {
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+        };
+        chunked.addHeader("Idempotency-Key", "key-2");
+        chunked.setContent(large.getBytes(StandardCharsets.UTF_8));
+        assertEquals(413, send(chunked).getStatus());
+        assertEquals(0, handled.get());
+    }
+
+    @Test
+    void handlerGetsTheBufferedBodyButNoReadListener() throws Exception {
+        FilterChain chain = (request, response) -> {
+            assertEquals("{\"patient\":1}", StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8));
+            IllegalStateException refused = assertThrows(IllegalStateException.class,
+                () -> request.getInputStream().setReadListener(null));
+            assertTrue(refused.getMessage().contains("Idempotency-Key"));
+            ((HttpServletResponse) response).setStatus(204);
+        };
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("key-1", "{\"patient\":1}"), response, chain);
+        assertEquals(204, response.getStatus());
+    }
+
+    private MockHttpServletRequest request(String key, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/prescriptions");
+        request.addHeader("Idempotency-Key", key);
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (servletRequest, servletResponse) -> {
+            int id = handled.incrementAndGet();
+            try {
+                handlerRelease.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StreamUtils.copyToByteArray(servletRequest.getInputStream());
+            HttpServletResponse http = (HttpServletResponse) servletResponse;
+            http.setStatus(handlerStatus);
+            http.setContentType("application/json");
+            http.getWriter().write("{\"id\":" + id + "}");
+        });
+        return response;
+    }
+
+    private MockHttpServletResponse sendUnchecked(MockHttpServletRequest request) {
+        try {
+            return send(request);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
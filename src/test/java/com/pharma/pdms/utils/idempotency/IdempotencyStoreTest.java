@@ -0,0 +1,156 @@
+package com.pharma.pdms.utils.idempotency;
+
+import com.pharma.pdms.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Keys claimed, replayed and waited for through the idempotency_keys table, with each
+ * store standing in for one node
+ */
+class IdempotencyStoreTest {
+
+    private static final byte[] REQUEST = "POST /api/prescriptions {\"patient\":1}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OTHER_REQUEST = "POST /api/prescriptions {\"patient\":2}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESPONSE = "{\"id\":7}".getBytes(StandardCharsets.UTF_8);
+
+    private static PostgresTestDatabase database;
+    private static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.migrated();
+        jdbc = database.getJdbcTemplate();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.close();
+    }
+
+    @BeforeEach
+    void clearKeys() {
+        jdbc.update("DELETE FROM idempotency_keys");
+    }
+
+    @Test
+    void firstRequestProceedsAndItsRetryIsReplayed() {
+        IdempotencyStore node = node(60, 1000);
+
+        assertEquals(IdempotencyStore.Outcome.PROCEED, node.begin("k", REQUEST).getOutcome());
+        node.complete("k", REQUEST, 201, "application/json", RESPONSE);
+
+        IdempotencyStore.Claim retry = node.begin("k", REQUEST);
+        assertEquals(IdempotencyStore.Outcome.REPLAY, retry.getOutcome());
+        assertEquals(201, retry.getResponse().getStatus());
+        assertArrayEquals(RESPONSE, retry.getResponse().getBody());
+        assertEquals(1L, node.getStats().get("replayedFromMemory"));
+    }
+
+    @Test
+    void retryOnAnotherNodeIsReplayedFromTheTable() {
+        IdempotencyStore first = node(60, 1000);
+        IdempotencyStore second = node(60, 1000);
+        first.begin("k", REQUEST);
+        first.complete("k", REQUEST, 201, "application/json", RESPONSE);
+
+        IdempotencyStore.Claim retry = second.begin("k", REQUEST);
+        assertEquals(IdempotencyStore.Outcome.REPLAY, retry.getOutcome());
+        assertArrayEquals(RESPONSE, retry.getResponse().getBody());
+        assertEquals(1L, second.getStats().get("replayedFromDatabase"));
+    }
+
+    @Test
+    void keyReusedForADifferentRequestIsRefused() {
+        IdempotencyStore first = node(60, 1000);
+        IdempotencyStore second = node(60, 1000);
+
+        first.begin("running", REQUEST);
+        assertEquals(IdempotencyStore.Outcome.MISMATCH, second.begin("running", OTHER_REQUEST).getOutcome());
+
+        first.begin("done", REQUEST);
+        first.complete("done", REQUEST, 201, "application/json", RESPONSE);
+        assertEquals(IdempotencyStore.Outcome.MISMATCH, first.begin("done", OTHER_REQUEST).getOutcome());
+        assertEquals(IdempotencyStore.Outcome.MISMATCH, second.begin("done", OTHER_REQUEST).getOutcome());
+    }
+
+    @Test
+    void concurrentDuplicatesWaitForTheFirstRequest() throws Exception {
+        IdempotencyStore first = node(60, 5000);
+        IdempotencyStore second = node(60, 5000);
+        assertEquals(IdempotencyStore.Outcome.PROCEED, first.begin("k", REQUEST).getOutcome());
+
+        CompletableFuture<IdempotencyStore.Claim> sameNode = CompletableFuture.supplyAsync(() -> first.begin("k", REQUEST));
+        CompletableFuture<IdempotencyStore.Claim> otherNode = CompletableFuture.supplyAsync(() -> second.begin("k", REQUEST));
+        waitFor(() -> (Long) first.getStats().get("waitedForDuplicate") == 1L);
+        Thread.sleep(100);
+        first.complete("k", REQUEST, 201, "application/json", RESPONSE);
+
+        assertEquals(IdempotencyStore.Outcome.REPLAY, sameNode.get(5, TimeUnit.SECONDS).getOutcome());
+        assertEquals(IdempotencyStore.Outcome.REPLAY, otherNode.get(5, TimeUnit.SECONDS).getOutcome());
+        assertEquals(1L, first.getStats().get("claimed"));
+        assertEquals(0L, second.getStats().get("claimed"));
+    }
+
+    @Test
+    void duplicateGivesUpWhileTheFirstIsStillRunning() {
+        IdempotencyStore first = node(60, 200);
+        IdempotencyStore second = node(60, 200);
+        first.begin("k", REQUEST);
+
+        assertEquals(IdempotencyStore.Outcome.IN_PROGRESS, first.begin("k", REQUEST).getOutcome());
+        assertEquals(IdempotencyStore.Outcome.IN_PROGRESS, second.begin("k", REQUEST).getOutcome());
+    }
+
+    @Test
+    void runningRequestKeepsItsLeaseUntilItsNodeStopsRenewing() throws Exception {
+        IdempotencyStore running = node(1, 100);
+        IdempotencyStore other = node(1, 100);
+        running.begin("k", REQUEST);
+
+        // Twice the lease, renewed as the scheduler would
+        for (int i = 0; i < 8; i++) {
+            Thread.sleep(250);
+            running.renewLeases();
+        }
+        assertEquals(IdempotencyStore.Outcome.IN_PROGRESS, other.begin("k", REQUEST).getOutcome());
+
+        // The node died: nothing renews the lease any more
+        Thread.sleep(1500);
+        assertEquals(IdempotencyStore.Outcome.PROCEED, other.begin("k", REQUEST).getOutcome());
+    }
+
+    @Test
+    void abandonedKeyRunsAgain() {
+        IdempotencyStore first = node(60, 1000);
+        IdempotencyStore second = node(60, 1000);
+        first.begin("k", REQUEST);
+        first.abandon("k");
+
+        assertEquals(IdempotencyStore.Outcome.PROCEED, second.begin("k", REQUEST).getOutcome());
+    }
+
+    private static IdempotencyStore node(int leaseSeconds, long maxWaitMillis) {
+        return new IdempotencyStore(jdbc, 24, 100, leaseSeconds, maxWaitMillis, 20);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
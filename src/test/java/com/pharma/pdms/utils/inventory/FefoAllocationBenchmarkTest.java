@@ -0,0 +1,97 @@
+package com.pharma.pdms.utils.inventory;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares FEFO allocation from the lot heap with scanning every lot for the earliest
+ * expiry, which is what allocation costs without an index. Run with -Pbenchmark.
+ */
+@Tag("benchmark")
+class FefoAllocationBenchmarkTest {
+
+    private static final int LOTS = 2_000;
+    private static final int UNITS_PER_LOT = 50;
+    private static final int ROUNDS = 5;
+    private static final LocalDate START = LocalDate.of(2026, 1, 1);
+
+    @Test
+    void heapAllocationAgainstLinearScan() {
+        long seed = 42;
+        long bestHeapNanos = Long.MAX_VALUE;
+        long bestScanNanos = Long.MAX_VALUE;
+        int allocations = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            List<Integer> requests = requests(new Random(seed));
+            allocations = requests.size();
+
+            FefoLotQueue queue = new FefoLotQueue();
+            List<long[]> lots = new ArrayList<>();
+            Random expiries = new Random(seed);
+            for (int lot = 0; lot < LOTS; lot++) {
+                int expiryDay = expiries.nextInt(720);
+                queue.add(lot, "B" + lot, START.plusDays(expiryDay), UNITS_PER_LOT);
+                lots.add(new long[] {lot, expiryDay, UNITS_PER_LOT});
+            }
+
+            long heapChecksum = 0;
+            long started = System.nanoTime();
+            for (int quantity : requests) {
+                for (LotAllocation allocation : queue.allocate(quantity)) {
+                    heapChecksum = heapChecksum * 31 + allocation.getLotId() * 7 + allocation.getQuantity();
+                }
+            }
+            bestHeapNanos = Math.min(bestHeapNanos, System.nanoTime() - started);
+
+            long scanChecksum = 0;
+            started = System.nanoTime();
+            for (int quantity : requests) {
+                int remaining = quantity;
+                while (remaining > 0) {
+                    long[] earliest = null;
+                    for (long[] lot : lots) {
+                        if (lot[2] > 0 && (earliest == null || lot[1] < earliest[1]
+                                || (lot[1] == earliest[1] && lot[0] < earliest[0]))) {
+                            earliest = lot;
+                        }
+                    }
+                    int taken = (int) Math.min(remaining, earliest[2]);
+                    earliest[2] -= taken;
+                    remaining -= taken;
+                    scanChecksum = scanChecksum * 31 + earliest[0] * 7 + taken;
+                }
+            }
+            bestScanNanos = Math.min(bestScanNanos, System.nanoTime() - started);
+
+            // Both must hand out exactly the same lots in the same order
+            assertEquals(scanChecksum, heapChecksum);
+            assertEquals(0, queue.getOnHand());
+        }
+
+        System.out.printf("fefo.benchmark lots=%d allocations=%d heap_ns_per_allocation=%d scan_ns_per_allocation=%d speedup=%.1fx%n",
+            LOTS, allocations, bestHeapNanos / allocations, bestScanNanos / allocations,
+            (double) bestScanNanos / bestHeapNanos);
+    }
+
+    /**
+     * Dispense requests of 1-5 units that drain the stock exactly
+     */
+    private static List<Integer> requests(Random random) {
+        List<Integer> requests = new ArrayList<>();
+        int remaining = LOTS * UNITS_PER_LOT;
+        while (remaining > 0) {
+            int quantity = Math.min(remaining, 1 + random.nextInt(5));
+            requests.add(quantity);
+            remaining -= quantity;
+        }
+        return requests;
+    }
+}
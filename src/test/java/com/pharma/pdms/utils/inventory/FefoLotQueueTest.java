@@ -0,0 +1,69 @@
+package com.pharma.pdms.utils.inventory;
+
+import com.pharma.pdms.exceptions.InsufficientStockException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FefoLotQueueTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 15);
+
+    @Test
+    void allocatesEarliestExpiryFirstAcrossLots() {
+        FefoLotQueue queue = new FefoLotQueue();
+        queue.add(1, "LATE", TODAY.plusDays(90), 10);
+        queue.add(2, "EARLY", TODAY.plusDays(10), 4);
+        queue.add(3, "MID", TODAY.plusDays(30), 5);
+
+        List<LotAllocation> allocations = queue.allocate(7);
+
+        assertEquals(2, allocations.size());
+        assertEquals(2L, allocations.get(0).getLotId().longValue());
+        assertEquals(4, allocations.get(0).getQuantity());
+        assertEquals(3L, allocations.get(1).getLotId().longValue());
+        assertEquals(3, allocations.get(1).getQuantity());
+        assertEquals(5, allocations.get(1).getQuantityBefore());
+        assertEquals(12, queue.getOnHand());
+        assertEquals("MID", queue.getEarliestBatchNumber());
+    }
+
+    @Test
+    void rejectsAllocationBeyondStockWithoutChangingIt() {
+        FefoLotQueue queue = new FefoLotQueue();
+        queue.add(1, "A", TODAY, 3);
+
+        assertThrows(InsufficientStockException.class, () -> queue.allocate(4));
+        assertEquals(3, queue.getOnHand());
+    }
+
+    @Test
+    void removesOnlyExpiredLots() {
+        FefoLotQueue queue = new FefoLotQueue();
+        queue.add(1, "OLD", TODAY.minusDays(1), 6);
+        queue.add(2, "NEW", TODAY.plusDays(1), 2);
+
+        List<LotAllocation> removed = queue.removeExpiredBefore(TODAY);
+
+        assertEquals(1, removed.size());
+        assertEquals(6, removed.get(0).getQuantity());
+        assertEquals(2, queue.getOnHand());
+        assertEquals(TODAY.plusDays(1), queue.getEarliestExpiry());
+    }
+
+    @Test
+    void emptyQueueHasNoEarliestLot() {
+        FefoLotQueue queue = new FefoLotQueue();
+        queue.add(1, "A", TODAY, 2);
+        queue.allocate(2);
+
+        assertNull(queue.getEarliestExpiry());
+        assertNull(queue.getEarliestBatchNumber());
+        assertEquals(0, queue.getLotCount());
+    }
+}
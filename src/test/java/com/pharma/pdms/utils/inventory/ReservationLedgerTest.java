@@ -0,0 +1,55 @@
+package com.pharma.pdms.utils.inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReservationLedgerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final ReservationLedger ledger = new ReservationLedger(1000, 16, now::get);
+
+    @Test
+    void holdsExpireOnTheWheelAtTheirReservedUntil() {
+        ledger.put(1, 7, 4, now.get() + 5_000);
+        ledger.put(2, 7, 3, now.get() + 60_000);
+        assertEquals(7, ledger.getReserved(7));
+
+        now.addAndGet(6_000);
+        assertEquals(1, ledger.expireDue());
+        assertEquals(3, ledger.getReserved(7));
+
+        // Beyond one rotation of the wheel, the later hold still expires on time
+        now.addAndGet(60_000);
+        assertEquals(1, ledger.expireDue());
+        assertEquals(0, ledger.getReserved(7));
+    }
+
+    @Test
+    void putReplacesAnItemsHoldAndLapsedHoldsAreDropped() {
+        ledger.put(1, 7, 4, now.get() + 5_000);
+        ledger.put(1, 7, 2, now.get() + 5_000);
+        assertEquals(2, ledger.getReserved(7));
+
+        ledger.put(1, 7, 2, now.get() - 1);
+        assertEquals(0, ledger.getReserved(7));
+        assertEquals(0, ledger.size());
+    }
+
+    @Test
+    void replaceAllRebuildsTotalsFromRows() {
+        ledger.put(1, 7, 4, now.get() + 5_000);
+        ledger.replaceAll(List.of(
+            new long[] {2, 7, 3, now.get() + 5_000},
+            new long[] {3, 8, 5, now.get() + 5_000},
+            new long[] {4, 8, 1, now.get() - 5_000}));
+
+        assertEquals(3, ledger.getReserved(7));
+        assertEquals(5, ledger.getReserved(8));
+        assertArrayEquals(new long[] {2, 8}, ledger.getLiveTotals(now.get()));
+    }
+}
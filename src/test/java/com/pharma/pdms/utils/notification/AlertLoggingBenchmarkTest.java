@@ -0,0 +1,202 @@
+package com.pharma.pdms.utils.notification;
+
+import ch.qos.logback.classic.LoggerContext;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.utils.observer.LowStockAlertObserver;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.logging.LoggingInitializationContext;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Low-stock alerts per second from many request threads, each alert sending an email
+ * notification and logging the alert. The old path printed both to System.out; the current
+ * one logs through logback-spring.xml, configured by Spring Boot as the application is,
+ * with the prod profile's queue settings, with and without alert sampling. Console output
+ * goes to a file in every case, through a stream built like System.out. The rate is what
+ * the calling threads see; lines written counts what reached the file once the async
+ * appender had drained, and alert lines the sampled WARN lines among them. Run with
+ * -Pbenchmark.
+ */
+@Tag("benchmark")
+class AlertLoggingBenchmarkTest {
+
+    private static final int THREADS = 8;
+    private static final int ALERTS_PER_THREAD = 50_000;
+    private static final int MEDICINES = 100;
+
+    @TempDir
+    Path work;
+
+    @Test
+    void printlnAgainstAsyncAppender() throws Exception {
+        PrintStream console = System.out;
+        LoggingSystem loggingSystem = LoggingSystem.get(getClass().getClassLoader());
+        List<Medicine> medicines = medicines();
+        try {
+            // Each path once unmeasured, so that every measured run is compiled
+            System.setOut(sink(work.resolve("warm-up.log")));
+            alertsPerSecond(medicines, this::printlnAlert);
+            logbackAlertsPerSecond(loggingSystem, work.resolve("warm-up-logback.log"), medicines, 0);
+
+            Path printlnFile = work.resolve("println.log");
+            System.setOut(sink(printlnFile));
+            long printlnRate = alertsPerSecond(medicines, this::printlnAlert);
+            System.out.flush();
+
+            Path sampledFile = work.resolve("sampled.log");
+            long sampledRate = logbackAlertsPerSecond(loggingSystem, sampledFile, medicines, 300_000);
+            Path unsampledFile = work.resolve("unsampled.log");
+            long unsampledRate = logbackAlertsPerSecond(loggingSystem, unsampledFile, medicines, 0);
+
+            System.setOut(console);
+            long alerts = (long) THREADS * ALERTS_PER_THREAD;
+            assertEquals(alerts * 6, lines(printlnFile));
+            console.printf("notification.benchmark threads=%d alerts=%d println_alerts_per_s=%d println_lines=%d"
+                    + " async_sampled_alerts_per_s=%d async_sampled_lines=%d async_sampled_alert_lines=%d"
+                    + " async_unsampled_alerts_per_s=%d async_unsampled_lines=%d async_unsampled_alert_lines=%d"
+                    + " cpus=%d%n",
+                THREADS, alerts, printlnRate, lines(printlnFile),
+                sampledRate, lines(sampledFile), alertLines(sampledFile),
+                unsampledRate, lines(unsampledFile), alertLines(unsampledFile),
+                Runtime.getRuntime().availableProcessors());
+        } finally {
+            System.setOut(console);
+            loggingSystem.cleanUp();
+            loggingSystem.initialize(new LoggingInitializationContext(new MockEnvironment()), null, null);
+        }
+    }
+
+    /**
+     * Alert rate through LowStockAlertObserver with logging configured from logback-spring.xml
+     *
+     * @param sampleWindowMillis Alert log sampling window; 0 logs every alert
+     */
+    private long logbackAlertsPerSecond(LoggingSystem loggingSystem, Path file, List<Medicine> medicines,
+                                        long sampleWindowMillis) throws Exception {
+        System.setOut(sink(file));
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("pdms.logging.queue-size", "16384")
+            .withProperty("pdms.logging.discarding-threshold", "3276");
+        loggingSystem.cleanUp();
+        loggingSystem.beforeInitialize();
+        loggingSystem.initialize(new LoggingInitializationContext(environment), "classpath:logback-spring.xml", null);
+
+        // Sends straight through EmailNotification instead of queueing for the delivery engine
+        EmailNotification email = new EmailNotification();
+        NotificationService emailService = (recipient, subject, message) -> {
+            email.send(recipient, subject, message);
+            return true;
+        };
+        NotificationFactory factory = new NotificationFactory(null) {
+            @Override
+            public NotificationService createNotificationService(NotificationType type) {
+                return emailService;
+            }
+        };
+        LowStockAlertObserver observer = new LowStockAlertObserver(factory, new AlertLogSampler(sampleWindowMillis, 10_000));
+
+        long rate = alertsPerSecond(medicines, observer::update);
+        // Drains the queue, waiting up to the appender's maxFlushTime
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+        System.out.flush();
+        return rate;
+    }
+
+    private long alertsPerSecond(List<Medicine> medicines, AlertPath path) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> threads = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t;
+                threads.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < ALERTS_PER_THREAD; i++) {
+                        path.alert(medicines.get((offset + i) % MEDICINES));
+                    }
+                    return null;
+                }));
+            }
+            long started = System.nanoTime();
+            start.countDown();
+            for (Future<?> thread : threads) {
+                thread.get();
+            }
+            long nanos = System.nanoTime() - started;
+            return (long) THREADS * ALERTS_PER_THREAD * 1_000_000_000L / nanos;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The alert as written before the logging pipeline: the email notification's five lines
+     * and the alert line, each a separate println
+     */
+    private void printlnAlert(Medicine medicine) {
+        String message = String.format("LOW STOCK ALERT: %s is running low! Current stock: %d, Reorder Level: %d",
+            medicine.getName(), medicine.getQuantityInStock(), medicine.getReorderLevel());
+        System.out.println("Sending EMAIL notification:");
+        System.out.println("To: " + "admin@pharmacy.com");
+        System.out.println("Subject: " + "Low Stock Alert");
+        System.out.println("Message: " + message);
+        System.out.println("----------------------------------");
+        System.out.println(message);
+    }
+
+    private static List<Medicine> medicines() {
+        List<Medicine> medicines = new ArrayList<>();
+        for (long id = 1; id <= MEDICINES; id++) {
+            Medicine medicine = new Medicine();
+            medicine.setId(id);
+            medicine.setName("Medicine " + id);
+            medicine.setQuantityInStock(2);
+            medicine.setReorderLevel(10);
+            medicines.add(medicine);
+        }
+        return medicines;
+    }
+
+    /**
+     * A stream like System.out: line-flushed over a small buffer
+     */
+    private static PrintStream sink(Path file) throws IOException {
+        return new PrintStream(new BufferedOutputStream(new FileOutputStream(file.toFile()), 128), true);
+    }
+
+    private static long lines(Path file) throws IOException {
+        try (Stream<String> lines = Files.lines(file)) {
+            return lines.count();
+        }
+    }
+
+    private static long alertLines(Path file) throws IOException {
+        try (Stream<String> lines = Files.lines(file)) {
+            return lines.filter(line -> line.contains("alert.low_stock")).count();
+        }
+    }
+
+    private interface AlertPath {
+        void alert(Medicine medicine);
+    }
+}
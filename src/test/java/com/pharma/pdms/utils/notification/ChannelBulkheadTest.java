@@ -0,0 +1,93 @@
+package com.pharma.pdms.utils.notification;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A channel's own slots and rate limit bound what it sends at once, with the stub gateway
+ * standing in for a slow provider
+ */
+class ChannelBulkheadTest {
+
+    private ChannelBulkhead bulkhead;
+
+    @AfterEach
+    void shutdown() {
+        bulkhead.shutdown();
+    }
+
+    @Test
+    void saturatedChannelRefusesFurtherSends() throws Exception {
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("pdms.notifications.sms.concurrency", "2")
+            .withProperty("pdms.notifications.sms.rate-per-second", "100")
+            .withProperty("pdms.notifications.sms.burst", "100")
+            .withProperty("pdms.notifications.stub.sms.latency-ms", "300");
+        SmsNotificationService sms = new SmsNotificationService(new StubNotificationGateway(environment));
+        bulkhead = new ChannelBulkhead(NotificationType.SMS, sms, environment);
+
+        CountDownLatch finished = new CountDownLatch(2);
+        Runnable send = () -> {
+            sms.sendNotification("555-0100", "Low stock", "Amoxicillin is low");
+            finished.countDown();
+        };
+        assertTrue(bulkhead.submit(send));
+        assertTrue(bulkhead.submit(send));
+        assertEquals(0, bulkhead.capacity(10));
+        assertFalse(bulkhead.submit(send));
+        assertEquals(2, bulkhead.getStats().get("inFlight"));
+        assertEquals(1L, bulkhead.getStats().get("bulkheadRejected"));
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        waitFor(() -> bulkhead.capacity(10) == 2);
+        assertTrue(bulkhead.submit(() -> { }));
+    }
+
+    @Test
+    void capacityIsBoundedByTheRateLimit() {
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("pdms.notifications.email.concurrency", "10")
+            .withProperty("pdms.notifications.email.rate-per-second", "1")
+            .withProperty("pdms.notifications.email.burst", "3");
+        bulkhead = new ChannelBulkhead(NotificationType.EMAIL,
+            new EmailNotificationService(new StubNotificationGateway(environment)), environment);
+
+        assertEquals(3, bulkhead.capacity(50));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bulkhead.submit(() -> { }));
+        }
+        assertEquals(0, bulkhead.capacity(50));
+        assertEquals(0, bulkhead.getStats().get("tokensAvailable"));
+    }
+
+    @Test
+    void failuresTripTheChannelsBreaker() {
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("pdms.notifications.push.breaker-failure-threshold", "2");
+        bulkhead = new ChannelBulkhead(NotificationType.PUSH,
+            new PushNotificationService(new StubNotificationGateway(environment)), environment);
+
+        bulkhead.recordFailure(false);
+        bulkhead.recordFailure(true);
+        assertEquals(CircuitBreaker.State.OPEN, bulkhead.getBreaker().getState());
+        assertEquals(1L, bulkhead.getStats().get("failedAttempts"));
+        assertEquals(1L, bulkhead.getStats().get("deadLettered"));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.pharma.pdms.utils.notification;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 200;
+
+    @Test
+    void opensAfterConsecutiveFailuresOnly() {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN_MILLIS, 1);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertTrue(breaker.getRemainingOpenMillis() > 0 && breaker.getRemainingOpenMillis() <= OPEN_MILLIS);
+        assertEquals(1L, breaker.getStats().get("timesOpened"));
+        assertEquals(1L, breaker.getStats().get("rejectedCalls"));
+    }
+
+    @Test
+    void successfulProbeClosesTheBreaker() throws Exception {
+        CircuitBreaker breaker = opened(2);
+        Thread.sleep(OPEN_MILLIS + 50);
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // Only two probes while half-open
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(0L, breaker.getRemainingOpenMillis());
+    }
+
+    @Test
+    void failedProbeOpensTheBreakerAgain() throws Exception {
+        CircuitBreaker breaker = opened(1);
+        Thread.sleep(OPEN_MILLIS + 50);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2L, breaker.getStats().get("timesOpened"));
+    }
+
+    @Test
+    void cancelledProbeGivesItsPlaceBack() throws Exception {
+        CircuitBreaker breaker = opened(1);
+        Thread.sleep(OPEN_MILLIS + 50);
+
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.onCancelled();
+        assertTrue(breaker.tryAcquire());
+    }
+
+    private static CircuitBreaker opened(int halfOpenProbes) {
+        CircuitBreaker breaker = new CircuitBreaker(1, OPEN_MILLIS, halfOpenProbes);
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+}
@@ -0,0 +1,46 @@
+package com.pharma.pdms.utils.notification;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void burstIsAllowedThenTheRateApplies() throws Exception {
+        TokenBucket bucket = new TokenBucket(10, 5);
+
+        assertEquals(5, bucket.available());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+
+        // Ten a second: two or three tokens after a quarter of a second
+        Thread.sleep(250);
+        int refilled = bucket.available();
+        assertTrue(refilled >= 2 && refilled <= 4, "tokens after 250 ms: " + refilled);
+    }
+
+    @Test
+    void idleBucketRefillsOnlyUpToItsBurst() throws Exception {
+        TokenBucket bucket = new TokenBucket(1000, 3);
+        bucket.tryAcquire();
+
+        Thread.sleep(50);
+        assertEquals(3, bucket.available());
+    }
+
+    @Test
+    void acquireWaitsForTheNextToken() throws Exception {
+        TokenBucket bucket = new TokenBucket(20, 1);
+        bucket.tryAcquire();
+
+        long started = System.nanoTime();
+        bucket.acquire();
+        long waitedMillis = (System.nanoTime() - started) / 1_000_000;
+        assertTrue(waitedMillis >= 30, "waited " + waitedMillis + " ms for a token issued every 50 ms");
+    }
+}
@@ -0,0 +1,151 @@
+package com.pharma.pdms.utils.reporting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Accumulator totals checked against a HashMap filled with the same lines one by one
+ */
+class SalesAccumulatorTest {
+
+    private static final long DAY = 86_400_000L;
+
+    @Test
+    void growingFromTheSmallestTableKeepsEveryGroup() {
+        SalesAccumulator sales = new SalesAccumulator(1);
+        Map<String, long[]> expected = new HashMap<>();
+        Random random = new Random(7);
+
+        // 20,000 groups take the 32-slot table through eleven doublings, at up to half full, so
+        // probe chains are common; repeated keys land both before and after each doubling
+        for (int i = 0; i < 200_000; i++) {
+            long medicineId = random.nextInt(2_000);
+            long period = random.nextInt(10) * DAY;
+            long quantity = 1 + random.nextInt(5);
+            long cents = random.nextInt(10_000);
+            sales.add(medicineId, period, quantity, cents);
+            add(expected, medicineId, period, quantity, cents, 1);
+        }
+
+        assertEquals(expected.size(), sales.size());
+        assertMatches(expected, sales);
+    }
+
+    @Test
+    void similarAndExtremeKeysStayApart() {
+        // Swapped components, zero, negative and maximum values, all within one 32-slot table
+        SalesAccumulator sales = new SalesAccumulator(1);
+        Map<String, long[]> expected = new HashMap<>();
+        long[][] keys = {
+            {1, 2}, {2, 1}, {0, 0}, {0, 1}, {1, 0}, {-1, 0}, {0, -1},
+            {Long.MAX_VALUE, 0}, {3, Long.MAX_VALUE}, {3, -DAY}, {42, 0}, {42, DAY}
+        };
+
+        for (int round = 1; round <= 3; round++) {
+            for (long[] key : keys) {
+                sales.add(key[0], key[1], round, 100L * round);
+                add(expected, key[0], key[1], round, 100L * round, 1);
+            }
+        }
+
+        assertEquals(keys.length, sales.size());
+        assertMatches(expected, sales);
+    }
+
+    @Test
+    void mergeSumsOverlappingGroupsWhicheverSideIsLarger() {
+        Map<String, long[]> expected = new HashMap<>();
+        SalesAccumulator small = new SalesAccumulator();
+        SalesAccumulator large = new SalesAccumulator();
+        for (long medicineId = 0; medicineId < 50; medicineId++) {
+            small.add(medicineId, 0, 1, 10);
+            add(expected, medicineId, 0, 1, 10, 1);
+        }
+        for (long medicineId = 25; medicineId < 5_000; medicineId++) {
+            large.add(medicineId, 0, 2, 20);
+            add(expected, medicineId, 0, 2, 20, 1);
+        }
+
+        SalesAccumulator merged = small.merge(large);
+
+        assertEquals(large, merged);
+        assertEquals(5_000, merged.size());
+        assertMatches(expected, merged);
+        assertEquals(5_000, new SalesAccumulator().merge(merged).size());
+    }
+
+    @Test
+    void forkJoinScanMatchesASequentialPass() {
+        long lastId = 100_000;
+        Map<String, long[]> expected = new HashMap<>();
+        for (long id = 1; id <= lastId; id++) {
+            add(expected, medicineOf(id), periodOf(id), quantityOf(id), centsOf(id), 1);
+        }
+
+        Map<Long, Long> scanned = new ConcurrentHashMap<>();
+        AtomicLong leaves = new AtomicLong();
+        SalesScanTask.ChunkScanner scanner = (fromId, toId, accumulator) -> {
+            leaves.incrementAndGet();
+            for (long id = fromId; id <= toId; id++) {
+                assertEquals(null, scanned.put(id, id), "id " + id + " scanned twice");
+                accumulator.add(medicineOf(id), periodOf(id), quantityOf(id), centsOf(id));
+            }
+        };
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SalesAccumulator sales = pool.invoke(new SalesScanTask(scanner, 1, lastId, 777));
+
+            assertEquals(lastId, scanned.size());
+            assertEquals(256, leaves.get());
+            assertEquals(expected.size(), sales.size());
+            assertMatches(expected, sales);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static long medicineOf(long id) {
+        return id * 31 % 1_009;
+    }
+
+    private static long periodOf(long id) {
+        return id % 13 * DAY;
+    }
+
+    private static long quantityOf(long id) {
+        return 1 + id % 4;
+    }
+
+    private static long centsOf(long id) {
+        return id % 997 * 25;
+    }
+
+    private static void add(Map<String, long[]> expected, long medicineId, long period, long quantity, long cents,
+                            long lines) {
+        long[] total = expected.computeIfAbsent(medicineId + "|" + period, key -> new long[3]);
+        total[0] += quantity;
+        total[1] += cents;
+        total[2] += lines;
+    }
+
+    private static void assertMatches(Map<String, long[]> expected, SalesAccumulator sales) {
+        Map<String, long[]> actual = new HashMap<>();
+        sales.forEach((medicineId, period, quantity, cents, lines) -> {
+            long[] previous = actual.put(medicineId + "|" + period, new long[] {quantity, cents, lines});
+            assertEquals(null, previous, "group " + medicineId + "|" + period + " held twice");
+        });
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((key, total) ->
+            assertEquals(Arrays.toString(total), Arrays.toString(actual.get(key)), "group " + key));
+    }
+}
@@ -0,0 +1,111 @@
+package com.pharma.pdms.utils.screening;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Screens new items against 50k interaction pairs and compares lookups in the packed graph
+ * with a hash map keyed by the medicine pair, which is what a lookup costs without the graph.
+ * Run with -Pbenchmark.
+ */
+@Tag("benchmark")
+class ScreeningBenchmarkTest {
+
+    private static final int PAIRS = 50_000;
+    private static final int MEDICINES = 5_000;
+    private static final int PATIENTS = 10_000;
+    private static final int ITEMS_PER_PATIENT = 8;
+    private static final int SCREENS = 200_000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void screenAgainstFiftyThousandPairs() {
+        Random random = new Random(42);
+        InteractionGraph.Builder builder = new InteractionGraph.Builder(PAIRS);
+        Map<String, Integer> pairMap = new HashMap<>();
+        while (pairMap.size() < PAIRS) {
+            long a = 1 + random.nextInt(MEDICINES);
+            long b = 1 + random.nextInt(MEDICINES);
+            if (a == b || pairMap.containsKey(key(a, b))) {
+                continue;
+            }
+            int severity = random.nextInt(4);
+            builder.add(a, b, severity, null);
+            pairMap.put(key(a, b), severity);
+        }
+
+        InteractionGraph graph = builder.build();
+        ScreeningEngine engine = new ScreeningEngine();
+        engine.replaceGraph(graph);
+        long now = System.currentTimeMillis();
+        long[][] activeMedicines = new long[PATIENTS][ITEMS_PER_PATIENT];
+        long itemId = 1;
+        for (int patient = 0; patient < PATIENTS; patient++) {
+            for (int item = 0; item < ITEMS_PER_PATIENT; item++) {
+                long medicineId = 1 + random.nextInt(MEDICINES);
+                activeMedicines[patient][item] = medicineId;
+                engine.addActiveItem((long) patient, itemId++, medicineId, now);
+            }
+        }
+
+        long[][] screens = new long[SCREENS][2];
+        for (int i = 0; i < SCREENS; i++) {
+            screens[i][0] = random.nextInt(PATIENTS);
+            screens[i][1] = 1 + random.nextInt(MEDICINES);
+        }
+
+        long bestScreenNanos = Long.MAX_VALUE;
+        long bestGraphNanos = Long.MAX_VALUE;
+        long bestMapNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            // Full screen: active items, duplicates, interactions and the warnings themselves
+            long screenWarnings = 0;
+            long started = System.nanoTime();
+            for (long[] screen : screens) {
+                screenWarnings += engine.screen(screen[0], screen[1], now).size();
+            }
+            bestScreenNanos = Math.min(bestScreenNanos, System.nanoTime() - started);
+
+            long graphHits = 0;
+            started = System.nanoTime();
+            for (long[] screen : screens) {
+                for (long activeMedicineId : activeMedicines[(int) screen[0]]) {
+                    if (activeMedicineId == screen[1] || graph.find(screen[1], activeMedicineId) != InteractionGraph.NONE) {
+                        graphHits++;
+                    }
+                }
+            }
+            bestGraphNanos = Math.min(bestGraphNanos, System.nanoTime() - started);
+
+            long mapHits = 0;
+            started = System.nanoTime();
+            for (long[] screen : screens) {
+                for (long activeMedicineId : activeMedicines[(int) screen[0]]) {
+                    if (activeMedicineId == screen[1] || pairMap.containsKey(key(screen[1], activeMedicineId))) {
+                        mapHits++;
+                    }
+                }
+            }
+            bestMapNanos = Math.min(bestMapNanos, System.nanoTime() - started);
+
+            // All three must find the same interactions and duplicates
+            assertEquals(mapHits, graphHits);
+            assertEquals(mapHits, screenWarnings);
+        }
+
+        System.out.printf("screening.benchmark pairs=%d active_items=%d screens=%d screen_ns=%d graph_lookup_ns_per_screen=%d"
+                + " map_lookup_ns_per_screen=%d graph_bytes=%d lookup_speedup=%.1fx%n",
+            PAIRS, PATIENTS * ITEMS_PER_PATIENT, SCREENS, bestScreenNanos / SCREENS, bestGraphNanos / SCREENS,
+            bestMapNanos / SCREENS, graph.getSizeBytes(), (double) bestMapNanos / bestGraphNanos);
+    }
+
+    private static String key(long a, long b) {
+        return Math.min(a, b) + ":" + Math.max(a, b);
+    }
+}
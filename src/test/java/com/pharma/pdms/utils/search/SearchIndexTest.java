@@ -0,0 +1,65 @@
+package com.pharma.pdms.utils.search;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchIndexTest {
+
+    private SearchIndex index;
+
+    @BeforeEach
+    void createIndex() throws Exception {
+        index = new SearchIndex();
+    }
+
+    @AfterEach
+    void closeIndex() throws Exception {
+        index.close();
+    }
+
+    @Test
+    void queuedOperationsWaitForTheRebuild() throws Exception {
+        index.put(new SearchDocument(SearchDocument.SUPPLIER, 1L, "Acme", null, "Acme"));
+        index.index(new SearchDocument(SearchDocument.SUPPLIER, 1L, "Acme Pharma", null, "Acme Pharma"));
+        index.delete(SearchDocument.SUPPLIER, 2L);
+        Thread.sleep(50);
+        assertTrue(index.hasPendingOperations());
+
+        index.markRebuilt();
+        awaitIdle();
+        assertEquals(1, index.search("pharma", SearchDocument.SUPPLIER, 10).getHits().size());
+    }
+
+    @Test
+    void countsAndIdsArePerType() throws Exception {
+        index.markRebuilt();
+        index.index(new SearchDocument(SearchDocument.SUPPLIER, 1L, "Acme", null, "Acme"));
+        index.index(new SearchDocument(SearchDocument.SUPPLIER, 2L, "Globex", null, "Globex"));
+        index.index(new SearchDocument(SearchDocument.MEDICINE, 2L, "Aspirin", null, "Aspirin"));
+        index.delete(SearchDocument.SUPPLIER, 1L);
+        awaitIdle();
+
+        assertEquals(1, index.count(SearchDocument.SUPPLIER));
+        assertEquals(Set.of(2L), index.ids(SearchDocument.SUPPLIER));
+        assertEquals(Set.of(2L), index.ids(SearchDocument.MEDICINE));
+        assertEquals(Set.of(), index.ids(SearchDocument.DOCTOR));
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            // Drained and applied once the queue is empty and the lag of the last batch is recorded
+            if (!index.hasPendingOperations() && ((Long) index.getStats().get("currentLagMillis")) == 0) {
+                return;
+            }
+        }
+        throw new AssertionError("Index operations were not applied in time");
+    }
+}
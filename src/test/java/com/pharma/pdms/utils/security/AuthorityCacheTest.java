@@ -0,0 +1,64 @@
+package com.pharma.pdms.utils.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AuthorityCacheTest {
+
+    private final AuthorityCache cache = new AuthorityCache();
+
+    @Test
+    void firstTokenSeedsTheEntryAndLaterOnesHitIt() {
+        List<GrantedAuthority> authorities = cache.resolve(claims(1, "ROLE_PHARMACIST"));
+
+        assertEquals(List.of(new SimpleGrantedAuthority("ROLE_PHARMACIST")), authorities);
+        assertEquals(authorities, cache.resolve(claims(1, "ROLE_PHARMACIST")));
+        assertEquals(1L, cache.getStats().get("fromClaims"));
+        assertEquals(1L, cache.getStats().get("hits"));
+    }
+
+    @Test
+    void roleChangeRetiresTokensIssuedBeforeIt() {
+        cache.resolve(claims(1, "ROLE_ADMIN"));
+
+        cache.update(7, 2, true, List.of("ROLE_PATIENT"));
+        assertNull(cache.resolve(claims(1, "ROLE_ADMIN")));
+        assertEquals(List.of(new SimpleGrantedAuthority("ROLE_PATIENT")), cache.resolve(claims(2, "ROLE_PATIENT")));
+        assertEquals(1L, cache.getStats().get("staleTokensRejected"));
+    }
+
+    @Test
+    void deactivationRejectsEvenTheCurrentToken() {
+        cache.update(7, 2, false, List.of("ROLE_PHARMACIST"));
+
+        assertNull(cache.resolve(claims(2, "ROLE_PHARMACIST")));
+    }
+
+    @Test
+    void olderChangeArrivingLateDoesNotUndoANewerOne() {
+        cache.update(7, 3, true, List.of("ROLE_PATIENT"));
+        cache.update(7, 2, true, List.of("ROLE_ADMIN"));
+
+        assertNull(cache.resolve(claims(2, "ROLE_ADMIN")));
+        assertEquals(List.of(new SimpleGrantedAuthority("ROLE_PATIENT")), cache.resolve(claims(3, "ROLE_PATIENT")));
+    }
+
+    @Test
+    void tokenNewerThanTheEntryReplacesIt() {
+        cache.resolve(claims(1, "ROLE_PHARMACIST"));
+
+        // Issued after a role change this node has not synced yet
+        assertEquals(List.of(new SimpleGrantedAuthority("ROLE_ADMIN")), cache.resolve(claims(2, "ROLE_ADMIN")));
+        assertNull(cache.resolve(claims(1, "ROLE_PHARMACIST")));
+    }
+
+    private static TokenClaims claims(long rolesVersion, String role) {
+        return new TokenClaims(7, "ann", List.of(role), rolesVersion, System.currentTimeMillis() + 60_000);
+    }
+}
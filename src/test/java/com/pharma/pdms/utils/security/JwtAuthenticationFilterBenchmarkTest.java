@@ -0,0 +1,57 @@
+package com.pharma.pdms.utils.security;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.servlet.FilterChain;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Time the filter adds to a request: without a token, with a token already in the verified
+ * cache, and with the cache disabled so every request checks the signature and parses the
+ * claims. Run with -Pbenchmark.
+ */
+@Tag("benchmark")
+class JwtAuthenticationFilterBenchmarkTest {
+
+    private static final String SECRET = "test-secret-that-is-at-least-256-bits-long!!";
+    private static final int WARM_UP = 20_000;
+    private static final int REQUESTS = 100_000;
+
+    private final FilterChain chain = (request, response) -> SecurityContextHolder.clearContext();
+
+    @Test
+    void perRequestOverhead() throws Exception {
+        JwtTokenService cached = new JwtTokenService(SECRET, 3_600_000, 4096);
+        JwtTokenService uncached = new JwtTokenService(SECRET, 3_600_000, 0);
+        String token = cached.issue(7, "ann", List.of("ROLE_PHARMACIST"), 0);
+
+        MockHttpServletRequest anonymous = new MockHttpServletRequest("GET", "/api/medicines");
+        MockHttpServletRequest bearer = new MockHttpServletRequest("GET", "/api/medicines");
+        bearer.addHeader("Authorization", "Bearer " + token);
+
+        long noToken = nanosPerRequest(new JwtAuthenticationFilter(cached, new AuthorityCache()), anonymous);
+        long cacheHit = nanosPerRequest(new JwtAuthenticationFilter(cached, new AuthorityCache()), bearer);
+        long verified = nanosPerRequest(new JwtAuthenticationFilter(uncached, new AuthorityCache()), bearer);
+
+        assertEquals(0L, uncached.getStats().get("cacheHits"));
+        System.out.printf("security.benchmark requests=%d no_token_ns=%d cached_token_ns=%d verified_token_ns=%d%n",
+            REQUESTS, noToken, cacheHit, verified);
+    }
+
+    private long nanosPerRequest(JwtAuthenticationFilter filter, MockHttpServletRequest request) throws Exception {
+        for (int i = 0; i < WARM_UP; i++) {
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+        }
+        return (System.nanoTime() - started) / REQUESTS;
+    }
+}
@@ -0,0 +1,88 @@
+package com.pharma.pdms.utils.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JwtAuthenticationFilterTest {
+
+    private static final String SECRET = "test-secret-that-is-at-least-256-bits-long!!";
+
+    private final JwtTokenService tokens = new JwtTokenService(SECRET, 60_000, 16);
+    private final AuthorityCache authorities = new AuthorityCache();
+    private final JwtAuthenticationFilter filter = new JwtAuthenticationFilter(tokens, authorities);
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void bearerTokenAuthenticatesWithItsRoles() throws Exception {
+        Authentication authentication = authenticate(request("/api/medicines",
+            tokens.issue(7, "ann", List.of("ROLE_PHARMACIST"), 0)));
+
+        assertEquals("ann", authentication.getName());
+        assertEquals(List.of(new SimpleGrantedAuthority("ROLE_PHARMACIST")), List.copyOf(authentication.getAuthorities()));
+    }
+
+    @Test
+    void forgedOrExpiredTokenLeavesTheRequestUnauthenticated() throws Exception {
+        String forged = new JwtTokenService("another-secret-that-is-at-least-256-bits-long", 60_000, 16)
+            .issue(7, "ann", List.of("ROLE_ADMIN"), 0);
+        assertNull(authenticate(request("/api/medicines", forged)));
+
+        String expired = new JwtTokenService(SECRET, -1_000, 16).issue(7, "ann", List.of("ROLE_ADMIN"), 0);
+        assertNull(authenticate(request("/api/medicines", expired)));
+        assertEquals(2L, tokens.getStats().get("rejected"));
+    }
+
+    @Test
+    void tokenIssuedBeforeARoleChangeIsTurnedAway() throws Exception {
+        String token = tokens.issue(7, "ann", List.of("ROLE_ADMIN"), 0);
+        authenticate(request("/api/medicines", token));
+
+        authorities.update(7, 1, true, List.of("ROLE_PATIENT"));
+        assertNull(authenticate(request("/api/medicines", token)));
+    }
+
+    @Test
+    void queryParameterTokenIsOnlyAcceptedOnTheDashboardStream() throws Exception {
+        String token = tokens.issue(7, "ann", List.of("ROLE_PHARMACIST"), 0);
+
+        MockHttpServletRequest stream = new MockHttpServletRequest("GET", "/api/dashboard/stream");
+        stream.setParameter("access_token", token);
+        assertEquals("ann", authenticate(stream).getName());
+
+        MockHttpServletRequest other = new MockHttpServletRequest("GET", "/api/medicines");
+        other.setParameter("access_token", token);
+        assertNull(authenticate(other));
+    }
+
+    private static MockHttpServletRequest request(String path, String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+
+    /**
+     * @return The authentication the rest of the chain sees, or null
+     */
+    private Authentication authenticate(MockHttpServletRequest request) throws Exception {
+        SecurityContextHolder.clearContext();
+        AtomicReference<Authentication> seen = new AtomicReference<>();
+        filter.doFilter(request, new MockHttpServletResponse(),
+            (servletRequest, servletResponse) -> seen.set(SecurityContextHolder.getContext().getAuthentication()));
+        return seen.get();
+    }
+}
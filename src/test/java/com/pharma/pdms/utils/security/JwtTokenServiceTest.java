@@ -0,0 +1,89 @@
+package com.pharma.pdms.utils.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JwtTokenServiceTest {
+
+    private static final String SECRET = "test-secret-that-is-at-least-256-bits-long!!";
+
+    @Test
+    void verifiedTokenIsServedFromTheCache() {
+        JwtTokenService tokens = new JwtTokenService(SECRET, 60_000, 16);
+        String token = tokens.issue(7, "ann", List.of("ROLE_PHARMACIST"), 3);
+
+        TokenClaims first = tokens.verify(token);
+        TokenClaims second = tokens.verify(token);
+
+        assertEquals(7, first.getUserId());
+        assertEquals("ann", first.getUsername());
+        assertEquals(List.of("ROLE_PHARMACIST"), first.getRoles());
+        assertEquals(3, first.getRolesVersion());
+        assertEquals(first, second);
+        assertEquals(1L, tokens.getStats().get("cacheMisses"));
+        assertEquals(1L, tokens.getStats().get("cacheHits"));
+    }
+
+    @Test
+    void tokenSignedWithAnotherKeyIsRejected() {
+        JwtTokenService tokens = new JwtTokenService(SECRET, 60_000, 16);
+        JwtTokenService otherIssuer = new JwtTokenService("another-secret-that-is-at-least-256-bits-long", 60_000, 16);
+        String forged = otherIssuer.issue(7, "ann", List.of("ROLE_ADMIN"), 3);
+
+        assertNull(tokens.verify(forged));
+        assertNull(tokens.verify(forged));
+        assertEquals(2L, tokens.getStats().get("rejected"));
+        assertEquals(0, tokens.getStats().get("cachedTokens"));
+    }
+
+    @Test
+    void tamperedClaimsAreRejected() {
+        JwtTokenService tokens = new JwtTokenService(SECRET, 60_000, 16);
+        String[] parts = tokens.issue(7, "ann", List.of("ROLE_PATIENT"), 3).split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(parts[1]))
+            .replace("ROLE_PATIENT", "ROLE_ADMIN");
+        String tampered = parts[0] + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes())
+            + "." + parts[2];
+
+        assertNull(tokens.verify(tampered));
+        assertNull(tokens.verify("not-a-token"));
+    }
+
+    @Test
+    void expiredTokenIsRejectedAndLeavesTheCache() throws Exception {
+        JwtTokenService tokens = new JwtTokenService(SECRET, 1_000, 16);
+        String cached = tokens.issue(7, "ann", List.of("ROLE_PHARMACIST"), 0);
+        String neverSeen = tokens.issue(8, "bo", List.of("ROLE_DOCTOR"), 0);
+        assertNotNull(tokens.verify(cached));
+
+        Thread.sleep(1_100);
+        assertNull(tokens.verify(cached));
+        assertNull(tokens.verify(neverSeen));
+        assertEquals(0, tokens.getStats().get("cachedTokens"));
+        assertEquals(2L, tokens.getStats().get("rejected"));
+    }
+
+    @Test
+    void cacheKeepsOnlyTheMostRecentlyUsedTokens() {
+        JwtTokenService tokens = new JwtTokenService(SECRET, 60_000, 2);
+        String first = tokens.issue(1, "a", List.of(), 0);
+        String second = tokens.issue(2, "b", List.of(), 0);
+        String third = tokens.issue(3, "c", List.of(), 0);
+
+        tokens.verify(first);
+        tokens.verify(second);
+        tokens.verify(first);
+        tokens.verify(third);
+        assertEquals(2, tokens.getStats().get("cachedTokens"));
+
+        // The second was least recently used and has to be verified again
+        tokens.verify(second);
+        assertEquals(4L, tokens.getStats().get("cacheMisses"));
+    }
+}
@@ -0,0 +1,203 @@
+package com.pharma.pdms.utils.sse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharma.pdms.models.Medicine;
+import com.pharma.pdms.support.PostgresTestDatabase;
+import com.pharma.pdms.utils.datasource.ReplicaRoutingDataSource;
+import com.pharma.pdms.utils.observer.DashboardFeedObserver;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Per-subscriber buffering, and fan-out of deltas to the subscribers of every node
+ */
+class DashboardEventBroadcasterTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = Jackson2ObjectMapperBuilder.json().build();
+
+    private static PostgresTestDatabase database;
+
+    private final List<DashboardEventBroadcaster> nodes = new ArrayList<>();
+
+    @BeforeAll
+    static void startDatabase() {
+        database = PostgresTestDatabase.start();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.close();
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodes.forEach(DashboardEventBroadcaster::shutdown);
+    }
+
+    @Test
+    void slowSubscriberKeepsTheNewestEventsAndIsToldToResync() throws Exception {
+        DashboardEventBroadcaster broadcaster = node(4);
+        RecordingEmitter slow = new RecordingEmitter(new CountDownLatch(1));
+        RecordingEmitter fast = new RecordingEmitter(new CountDownLatch(0));
+        broadcaster.subscribe(slow);
+        broadcaster.subscribe(fast);
+        // The slow client's writer is stuck sending its hello; the other writer serves the fast client
+        waitFor(() -> slow.attempts() == 1 && fast.names().size() == 1);
+
+        for (int i = 0; i < 10; i++) {
+            broadcaster.publishLocal("stock", Collections.singletonMap("n", i));
+            int expected = i + 2;
+            waitFor(() -> fast.names().size() == expected);
+        }
+        // Only the slow client's buffer overflowed
+        assertEquals(6L, broadcaster.getStats().get("dropped"));
+
+        slow.release.countDown();
+        waitFor(() -> slow.names().size() == 6);
+        assertEquals(List.of("hello", "resync", "stock", "stock", "stock", "stock"), slow.names());
+        assertTrue(slow.text().contains("{n=6}") && !slow.text().contains("{n=5}"));
+
+        assertEquals(10, Collections.frequency(fast.names(), "stock"));
+        assertEquals(0, Collections.frequency(fast.names(), "resync"));
+    }
+
+    @Test
+    void deltasReachTheSubscribersOfEveryNode() throws Exception {
+        DashboardEventBroadcaster relaying = startedNode();
+        DashboardEventBroadcaster other = startedNode();
+        DashboardFeedObserver relayingObserver = new DashboardFeedObserver(relaying);
+        new DashboardFeedObserver(other);
+        RecordingEmitter client = new RecordingEmitter(new CountDownLatch(0));
+        other.subscribe(client);
+
+        Medicine medicine = new Medicine();
+        medicine.setId(7L);
+        medicine.setName("Amoxicillin");
+        medicine.setQuantityInStock(2);
+        medicine.setReorderLevel(10);
+        relayingObserver.update(medicine);
+        waitFor(() -> client.names().contains("low-stock"));
+
+        medicine.setQuantityInStock(50);
+        relayingObserver.update(medicine);
+        waitFor(() -> client.names().contains("low-stock-cleared"));
+        assertEquals(List.of("hello", "stock", "low-stock", "stock", "low-stock-cleared"), client.names());
+    }
+
+    @Test
+    void deltaPublishedAfterCommitIsDroppedOnRollback() throws Exception {
+        DashboardEventBroadcaster broadcaster = startedNode();
+        RecordingEmitter client = new RecordingEmitter(new CountDownLatch(0));
+        broadcaster.subscribe(client);
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(database.getDataSource()));
+
+        tx.executeWithoutResult(status -> {
+            broadcaster.publishAfterCommit("prescriptions", Map.of("id", 1, "delta", 1));
+            status.setRollbackOnly();
+        });
+        tx.executeWithoutResult(status -> broadcaster.publishAfterCommit("prescriptions", Map.of("id", 2, "delta", 1)));
+
+        waitFor(() -> client.names().contains("prescriptions"));
+        assertEquals(1L, broadcaster.getStats().get("published"));
+        assertEquals(List.of("hello", "prescriptions"), client.names());
+    }
+
+    private DashboardEventBroadcaster node(int bufferSize) {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(database.getDataSource(),
+            Collections.emptyMap(), 1000, 1000);
+        DashboardEventBroadcaster broadcaster = new DashboardEventBroadcaster(routing, OBJECT_MAPPER, 2,
+            bufferSize, 60_000);
+        nodes.add(broadcaster);
+        return broadcaster;
+    }
+
+    private DashboardEventBroadcaster startedNode() throws InterruptedException {
+        DashboardEventBroadcaster broadcaster = node(16);
+        broadcaster.start();
+        waitFor(() -> Boolean.TRUE.equals(broadcaster.getStats().get("listening")));
+        return broadcaster;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 10 s");
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Emitter recording the events written to it; sends block until released
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private static final Pattern EVENT_NAME = Pattern.compile("event:([\\w-]+)");
+
+        private final CountDownLatch release;
+        private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        private volatile int attempts;
+
+        private RecordingEmitter(CountDownLatch release) {
+            super(60_000L);
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            attempts++;
+            try {
+                if (!release.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("send was never released");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            StringBuilder text = new StringBuilder();
+            builder.build().forEach(part -> text.append(part.getData()));
+            sent.add(text.toString());
+        }
+
+        private int attempts() {
+            return attempts;
+        }
+
+        private List<String> names() {
+            List<String> names = new ArrayList<>();
+            synchronized (sent) {
+                for (String event : sent) {
+                    Matcher matcher = EVENT_NAME.matcher(event);
+                    if (matcher.find()) {
+                        names.add(matcher.group(1));
+                    }
+                }
+            }
+            return names;
+        }
+
+        private String text() {
+            synchronized (sent) {
+                return String.join("", sent);
+            }
+        }
+    }
+}